@@ -0,0 +1,285 @@
+package tlang;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * What an earlier run of the compiler learned about each of the units it compiled without error,
+ * kept in the output directory so that a later run processes only the units that have changed and
+ * those that depend on them. A unit whose source has the recorded hash and whose class file is the
+ * one that was recorded is up to date: its proofs succeeded and its classes are in the output
+ * directory.
+ * <p>
+ * For each <code>.t</code> or <code>.java</code> file the record holds the hash of its source, the
+ * hash of the Java generated from it, the hashes of its proof obligations, the name of the type it
+ * declares, the names of the types it refers to, and the path and hash of the class file of the
+ * type it declares. The class file is hashed when the record is saved, after the Java compiler has
+ * run, and a unit whose class file is missing then is not recorded at all. A unit depends on
+ * another when it refers to the type that the other declares. The names are simple names, so a
+ * unit may appear to depend on a unit that it does not, which costs only a needless recompile.
+ * <p>
+ * The whole record is discarded when the run is configured differently, i.e., when the options or
+ * the prover theory differ from those it was recorded with, since either may change the result of
+ * every unit.
+ *
+ * @implNote The record is a single text file. The first line holds the fingerprint of the
+ *           configuration, and each following line holds the fields of one unit separated by tabs.
+ *           The file is rewritten as a whole at the end of each run.
+ */
+final class BuildState {
+
+static final String stateFileName = "tlang.buildstate";
+private static final String configurationPrefix = "# build ";
+
+/** What is recorded about one unit. */
+static final class UnitRecord {
+  final String sourceHash;
+  /** The hash of the generated Java, which is empty for a Java file */
+  final String generatedHash;
+  final List<String> obligationHashes;
+  final String declaredType;
+  final Set<String> referencedTypes;
+  /** The class file of the declared type, relative to the output directory */
+  final String classFile;
+  /** The hash of the class file, which is empty until the record is saved */
+  final String classHash;
+
+  UnitRecord( String sourceHash, String generatedHash, List<String> obligationHashes
+            , String declaredType, Set<String> referencedTypes, String classFile
+            ) {
+    this(sourceHash, generatedHash, obligationHashes, declaredType, referencedTypes, classFile, "");
+  }
+
+  private UnitRecord( String sourceHash, String generatedHash, List<String> obligationHashes
+                    , String declaredType, Set<String> referencedTypes, String classFile
+                    , String classHash
+                    ) {
+    this.sourceHash       = sourceHash;
+    this.generatedHash    = generatedHash;
+    this.obligationHashes = obligationHashes;
+    this.declaredType     = declaredType;
+    this.referencedTypes  = referencedTypes;
+    this.classFile        = classFile;
+    this.classHash        = classHash;
+  }
+
+  private UnitRecord withClassHash(String hash) {
+    return new UnitRecord( sourceHash, generatedHash, obligationHashes, declaredType
+                         , referencedTypes, classFile, hash);
+  }
+
+  /** Whether the units that depend on this unit may be affected by its change to the other
+   *  record: they are when either its Java or what it proves is different. */
+  boolean isInterchangeableWith(UnitRecord other) {
+    return generatedHash.equals(other.generatedHash)
+        && obligationHashes.equals(other.obligationHashes)
+        && declaredType.equals(other.declaredType);
+  }
+
+  private String toLine(String unitName) {
+    return String.join("\t", unitName, sourceHash, generatedHash
+                           , String.join(",", obligationHashes)
+                           , declaredType
+                           , String.join(",", referencedTypes)
+                           , classFile, classHash);
+  }
+
+  private static @Nullable UnitRecord fromFields(String[] fields) {
+    if (fields.length != 8)
+      return null;
+    return new UnitRecord( fields[1], fields[2], listOf(fields[3])
+                         , fields[4], new TreeSet<>(listOf(fields[5]))
+                         , fields[6], fields[7]
+                         );
+  }
+
+  private static List<String> listOf(String commaSeparated) {
+    return commaSeparated.isEmpty() ? notNull(Collections.emptyList())
+                                    : notNull(Arrays.asList(commaSeparated.split(",")));
+  }
+} // end nested class UnitRecord
+
+
+private final Path directory;
+private final Path stateFile;
+private final String configuration;
+private final Map<String, UnitRecord> units = new TreeMap<>();
+
+/**
+ * Read the record of the earlier runs, if there is one that was recorded with the same
+ * configuration.
+ * @param directory     the output directory of the compiler, where the record is kept
+ * @param configuration a fingerprint of the options and the prover theory of this run
+ */
+BuildState(Path directory, String configuration) {
+  this.directory = directory;
+  this.stateFile = notNull(directory.resolve(stateFileName));
+  this.configuration = configuration;
+  load();
+}
+
+/** The record of the unit from an earlier run, or null if it has none. */
+@Nullable UnitRecord recordOf(String unitName) {
+  return units.get(unitName);
+}
+
+/** Whether the unit's source is the one that was recorded and its class file is still the one
+ * that was compiled from it, so that it need not be compiled. */
+boolean isUpToDate(String unitName, String sourceHash) {
+  final @Nullable UnitRecord record = units.get(unitName);
+  return record != null && record.sourceHash.equals(sourceHash)
+      && ! record.classHash.isEmpty() && record.classHash.equals(classHashOf(record));
+}
+
+/** The hash of the unit's class file as it is now, or an empty string when it cannot be read. */
+private String classHashOf(UnitRecord record) {
+  try {
+    return hashOfFile(notNull(directory.resolve(record.classFile)));
+  } catch (IOException | InvalidPathException e) {
+    return "";
+  }
+}
+
+void record(String unitName, UnitRecord record) {
+  units.put(unitName, record);
+}
+
+/** Forget the unit, so that the next run compiles it again, e.g., because it had errors. */
+void forget(String unitName) {
+  units.remove(unitName);
+}
+
+/** The units, among the candidates, that refer to any of the types. */
+List<String> dependentsOf(Collection<String> types, Collection<String> candidates) {
+  final List<String> dependents = new ArrayList<>();
+  if (types.isEmpty())
+    return dependents;
+  for (String candidate : candidates) {
+    final @Nullable UnitRecord record = units.get(candidate);
+    if (record == null || ! Collections.disjoint(record.referencedTypes, types))
+      dependents.add(candidate);
+  }
+  return dependents;
+}
+
+/** Write the record for the next run, with the hash of each unit's class file as the Java compiler
+ * left it. A unit whose class file cannot be read is forgotten. A failure only costs the next run a
+ * full compile, so it is reported and otherwise ignored. */
+void save() {
+  for (String unitName : new ArrayList<>(units.keySet())) {
+    final UnitRecord record = notNull(units.get(unitName));
+    final String classHash = classHashOf(record);
+    if (classHash.isEmpty())
+      units.remove(unitName);
+    else
+      units.put(unitName, record.withClassHash(classHash));
+  }
+  try {
+    TUtil.ensureDirExists(notNull(stateFile.toAbsolutePath().getParent()).toString());
+    try (BufferedWriter writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8)) {
+      writer.write(configurationPrefix + configuration +"\n");
+      for (Map.Entry<String, UnitRecord> unit : units.entrySet())
+        writer.write(unit.getValue().toLine(notNull(unit.getKey())) +"\n");
+    }
+  } catch (IOException e) {
+    System.out.println("Unable to record the build state in "+ stateFile +": "+ e.getMessage());
+  }
+}
+
+private void load() {
+  if (Files.notExists(stateFile))
+    return;
+  try {
+    final List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+    if (lines.isEmpty() || ! lines.get(0).equals(configurationPrefix + configuration))
+      return; // recorded under another configuration, so none of it can be trusted
+    for (String line : lines.subList(1, lines.size())) {
+      final String[] fields = line.split("\t", -1);
+      final @Nullable UnitRecord record = UnitRecord.fromFields(fields);
+      if (record != null)
+        units.put(notNull(fields[0]), record);
+    }
+  } catch (IOException e) {
+    units.clear();
+  }
+}
+
+/** The path of the class file of a type, relative to the output directory.
+ * @param packageName the name of the type's package, which is empty for the default package */
+static String classFileOf(String packageName, String typeName) {
+  return (packageName.isEmpty() ? "" : packageName.replace('.', '/') +"/") + typeName +".class";
+}
+
+/** The name of the package that the tokens of a unit declare, or an empty string for the default
+ * package. Since <code>package</code> is a keyword, its first occurrence starts the declaration. */
+static String packageName(CommonTokenStream tokens) {
+  final StringBuilder name = new StringBuilder();
+  boolean isInPackageDeclaration = false;
+  tokens.fill();
+  for (Token token : tokens.getTokens()) {
+    if (token.getChannel() != Token.DEFAULT_CHANNEL)
+      continue;
+    final String text = token.getText();
+    if (isInPackageDeclaration && text.equals(";"))
+      break;
+    if (isInPackageDeclaration)
+      name.append(text);
+    else if (text.equals("package"))
+      isInPackageDeclaration = true;
+  }
+  return notNull(name.toString());
+}
+
+/** The hash of the contents of a source file. */
+static String hashOfFile(Path file) throws IOException {
+  return ProofCache.toHex(notNull(ProofCache.newSha256().digest(Files.readAllBytes(file))));
+}
+
+/**
+ * The names that the tokens of a unit may use for types: every identifier that begins with an
+ * upper case letter, as the names of types do by convention, other than the unit's own.
+ */
+static Set<String> referencedTypes(CommonTokenStream tokens, String declaredType) {
+  final Set<String> types = new TreeSet<>();
+  tokens.fill();
+  for (Token token : tokens.getTokens()) {
+    final String text = token.getText();
+    if ( token.getType() == TLantlrLexer.UndecoratedIdentifier
+      && ! text.isEmpty() && Character.isUpperCase(text.charAt(0)))
+      types.add(text);
+  }
+  types.remove(declaredType);
+  return types;
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class BuildState
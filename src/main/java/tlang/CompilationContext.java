@@ -0,0 +1,49 @@
+package tlang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.RuleContext;
+import org.eclipse.jdt.annotation.NonNull;
+import tlang.TLantlrParser.*;
+
+/**
+ * What the compiler learns about one compile unit while it compiles it: the scope that each parse
+ * context defines, and the manager that was created for each loop, quantifier, variant and loop
+ * invariant. All of it is keyed by the parse contexts of the unit, so a context is created when a
+ * unit is parsed and dropped when the unit is finished, and its parse tree goes with it. Nothing in
+ * it is shared with the other units of a compile, so units may be compiled on separate threads,
+ * each with its own context.
+ * <p>
+ * The visitors of a unit are all given the same context: the {@link ContextCheckVisitor} fills it
+ * in, and the {@link TLantlrJavaRewriter} and the {@link TLantlrProofVisitor} read it.
+ */
+final class CompilationContext {
+
+/** Map from a parse context (ctx) to the scope that the ctx's code defines. */
+final Map<RuleContext, Scope> scopeMap = new HashMap<>();
+
+/** The managers of the looping statements. See {@link LoopMgr} */
+final Map<T_statementContext, @NonNull LoopMgr> loops = new HashMap<>();
+
+/** The managers of the quantified expressions. See {@link QuantifierMgr} */
+final Map<T_expressionDetailContext, @NonNull QuantifierMgr> quantifiers = new HashMap<>();
+
+/** The managers of the variants of loops. See {@link VariantMgr} */
+final Map<T_variantContext, @NonNull VariantMgr> variants = new HashMap<>();
+
+/** The managers of the loop invariants. See {@link LoopInvariantMgr} */
+final Map<T_loopInvariantContext, @NonNull LoopInvariantMgr> invariants = new HashMap<>();
+
+/** The hashes of the statements that the unit must prove, in the order they were proven. See
+ *  {@link BuildState} */
+final List<String> proofObligations = new ArrayList<>();
+
+/** What the prover said during the proofs of the unit that did not come out as hoped, for the unit
+ *  to print with the rest of its output. The proofs of a unit may run at once, so it is a
+ *  <code>StringBuffer</code>.
+ *  See {@link KnowledgeBase#setProverOutput(java.util.function.Consumer)} */
+final StringBuffer proverOutput = new StringBuffer();
+
+} // end class CompilationContext
@@ -0,0 +1,356 @@
+package tlang;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import alice.tuprolog.Var;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Takes the ground equalities and disequalities out of a formula before the tableau sees it. The
+ * equalities among the conjuncts of the formula, such as those that assignments and initialized
+ * variables add to the facts, are merged into classes of equal terms by union-find, together with
+ * every pair of terms that the classes make equal by congruence: when <code>a = b</code>, then
+ * <code>f(a) = f(b)</code>. A disequality between two terms of one class makes the formula
+ * inconsistent without any search. Otherwise the rest of the formula is given to the tableau with
+ * each term replaced by the representative of its class, so the tableau neither checks both
+ * <code>A = B</code> and <code>B = A</code> nor expands the rules of equality for them.
+ * <p>
+ * The residual formula is consistent exactly when the formula is:
+ * <ul>
+ * <li>the disequalities are kept, in terms of the representatives, so the tableau can still find
+ *     that the rest of the formula makes the two sides equal;
+ * <li>a compound term of a class whose representative is a different term is kept as the equality
+ *     <code>f(Representatives) = Representative</code>, so that a term that the tableau builds
+ *     later, by instantiating an <code>all</code>, still meets the equality; and
+ * <li>an equality between atoms, the most common case, disappears entirely.
+ * </ul>
+ * Functions, numbers included, are uninterpreted, as they are in etleantap.pl: <code>1 = 2</code> is
+ * not a contradiction by itself. Only the conjuncts at the top of the formula are absorbed; an
+ * equality inside a disjunction, or one with a variable, stays in the residual formula.
+ */
+final class CongruenceClosure {
+
+/** The logical operators, whose arguments are formulas rather than terms. */
+private static final Set<String> connectives
+    = Set.of("/\\", "\\/", "-", "==>", "<==", "===", "=#=");
+private static final String and = "/\\";
+
+/** The node of each ground term, keyed by its functor and the representatives of its arguments. */
+private final Map<String, Integer> nodeBySignature = new HashMap<>();
+private final List<Term> terms = new ArrayList<>();
+private final List<int[]> argNodes = new ArrayList<>();
+private final List<Integer> sizes = new ArrayList<>();
+private final List<Integer> parent = new ArrayList<>();
+/** For the representative of each class, the compound terms with an argument in that class. */
+private final List<List<Integer>> uses = new ArrayList<>();
+private final Map<Integer, Term> canonical = new HashMap<>();
+/** The smallest member of each class, found once all the classes are merged. */
+private @Nullable Map<Integer, Integer> smallestMembers = null;
+
+private CongruenceClosure() {}
+
+/** The formula with its ground equalities and disequalities absorbed, as described for the class.
+ * @return the same formula when it has none, or null when they contradict each other */
+static @Nullable Term residual(Term formula) {
+  final CongruenceClosure closure = new CongruenceClosure();
+  final List<Term> rest = new ArrayList<>();
+  final List<int[]> disequalities = new ArrayList<>();
+  for (Term conjunct : conjuncts(formula)) {
+    final @Nullable Boolean isEquality = equalitySign(conjunct);
+    if (isEquality == null) {
+      if ( ! isTrue(conjunct))
+        rest.add(conjunct);
+      continue;
+    }
+    final Struct equation = equation(conjunct);
+    final int left = closure.node(notNull(equation.getArg(0)));
+    final int right = closure.node(notNull(equation.getArg(1)));
+    if (isEquality)
+      closure.merge(left, right);
+    else
+      disequalities.add(new int[] {left, right});
+  }
+  if (closure.terms.isEmpty())
+    return formula;
+
+  final List<Term> residual = new ArrayList<>();
+  for (Term conjunct : rest)
+    residual.add(closure.canonicalFormula(conjunct));
+  final Set<String> kept = new HashSet<>();
+  for (int[] pair : disequalities) {
+    final int left = closure.find(pair[0]);
+    final int right = closure.find(pair[1]);
+    if (left == right)
+      return null;
+    if (kept.add(Math.min(left, right) +"#"+ Math.max(left, right)))
+      residual.add(new Struct("-", new Struct("=", closure.canonical(left), closure.canonical(right))));
+  }
+  for (int node = 0; node < closure.terms.size(); node++) {
+    final int[] args = closure.argNodes.get(node);
+    if (args.length > 0) {
+      final String signature = closure.signature(node);
+      final Term representative = closure.canonical(closure.find(node));
+      final Term term = closure.canonicalArgs(node);
+      if (kept.add(signature) && ! term.isEqual(representative))
+        residual.add(new Struct("=", term, representative));
+    }
+  }
+  return conjoined(residual);
+}
+
+/** The node of a ground term, adding it and its subterms when they are new. */
+private int node(Term term) {
+  final Term t = notNull(term.getTerm());
+  final int[] args;
+  if (t instanceof Struct) {
+    final Struct s = (Struct)t;
+    args = new int[s.getArity()];
+    for (int i = 0; i < args.length; i++)
+      args[i] = node(notNull(s.getArg(i)));
+  } else {
+    args = new int[0];
+  }
+  final String signature = signature(t, args);
+  final @Nullable Integer known = nodeBySignature.get(signature);
+  if (known != null)
+    return known;
+  final int node = terms.size();
+  int size = 1;
+  for (int arg : args)
+    size += sizes.get(arg);
+  terms.add(t);
+  argNodes.add(args);
+  sizes.add(size);
+  parent.add(node);
+  uses.add(new ArrayList<>());
+  for (int arg : args)
+    uses.get(find(arg)).add(node);
+  nodeBySignature.put(signature, node);
+  return node;
+}
+
+/** The node of a ground term that is equal to a term already known, or null if there is none. */
+private @Nullable Integer lookUp(Term term) {
+  final Term t = notNull(term.getTerm());
+  if (t instanceof Var)
+    return null;
+  final int[] args;
+  if (t instanceof Struct) {
+    final Struct s = (Struct)t;
+    args = new int[s.getArity()];
+    for (int i = 0; i < args.length; i++) {
+      final @Nullable Integer arg = lookUp(notNull(s.getArg(i)));
+      if (arg == null)
+        return null;
+      args[i] = arg;
+    }
+  } else {
+    args = new int[0];
+  }
+  return nodeBySignature.get(signature(t, args));
+}
+
+/** Merge the classes of the two nodes, and then the classes of any terms that became congruent. */
+private void merge(int first, int second) {
+  final Deque<int[]> pending = new ArrayDeque<>();
+  pending.push(new int[] {first, second});
+  while ( ! pending.isEmpty()) {
+    final int[] pair = pending.pop();
+    int from = find(pair[0]);
+    int into = find(pair[1]);
+    if (from == into)
+      continue;
+    if (uses.get(from).size() > uses.get(into).size()) {
+      final int swap = from;
+      from = into;
+      into = swap;
+    }
+    parent.set(from, into);
+    for (int user : uses.get(from)) {
+      final String signature = signature(user);
+      final @Nullable Integer other = nodeBySignature.putIfAbsent(signature, user);
+      if (other != null && find(other) != find(user))
+        pending.push(new int[] {user, other});
+    }
+    uses.get(into).addAll(uses.get(from));
+    uses.set(from, new ArrayList<>());
+  }
+}
+
+private int find(int node) {
+  int root = node;
+  while (parent.get(root) != root)
+    root = parent.get(root);
+  while (parent.get(node) != root) { // compress the path
+    final int next = parent.get(node);
+    parent.set(node, root);
+    node = next;
+  }
+  return root;
+}
+
+/** The signature of a node with the current representatives of its arguments. */
+private String signature(int node) {
+  return signature(notNull(terms.get(node)), notNull(argNodes.get(node)));
+}
+
+private String signature(Term term, int[] args) {
+  if ( ! (term instanceof Struct))
+    return "#"+ term; // a number
+  final StringBuilder signature = new StringBuilder("(");
+  for (int arg : args)
+    signature.append(find(arg)).append(',');
+  return notNull(signature.append(')').append(((Struct)term).getName()).toString());
+}
+
+/** The representative term of a class: its smallest member, with the representatives of their
+ * classes as its arguments. An atom or a number is always the representative of its class. */
+private Term canonical(int representative) {
+  final @Nullable Term known = canonical.get(representative);
+  if (known != null)
+    return known;
+  @Nullable Map<Integer, Integer> smallest = smallestMembers;
+  if (smallest == null) {
+    smallest = new HashMap<>();
+    for (int node = 0; node < terms.size(); node++) {
+      smallest.merge(find(node), node, (a, b) -> sizes.get(a) <= sizes.get(b) ? a : b);
+    }
+    smallestMembers = smallest;
+  }
+  final Term term = canonicalArgs(notNull(smallest.get(representative)));
+  canonical.put(representative, term);
+  return term;
+}
+
+/** The term of the node with the representatives of the classes of its arguments. The arguments
+ * are smaller than the term, so this always ends. */
+private Term canonicalArgs(int node) {
+  final Term term = notNull(terms.get(node));
+  final int[] args = argNodes.get(node);
+  if (args.length == 0)
+    return term;
+  final Term[] canonicalArgs = new Term[args.length];
+  for (int i = 0; i < args.length; i++)
+    canonicalArgs[i] = canonical(find(args[i]));
+  return new Struct(((Struct)term).getName(), canonicalArgs);
+}
+
+/** The formula with each term of a predicate replaced by its representative. */
+private Term canonicalFormula(Term formula) {
+  final Term f = notNull(formula.getTerm());
+  if ( ! (f instanceof Struct))
+    return f;
+  final Struct s = (Struct)f;
+  final String name = s.getName();
+  final boolean isQuantifier = name.equals("all") || name.equals("ex");
+  final Term[] args = new Term[s.getArity()];
+  boolean isChanged = false;
+  for (int i = 0; i < args.length; i++) {
+    final Term arg = notNull(s.getArg(i));
+    if (isQuantifier && i == 0)
+      args[i] = arg; // the quantified variable
+    else if (isQuantifier || connectives.contains(name))
+      args[i] = canonicalFormula(arg);
+    else
+      args[i] = canonicalTerm(arg);
+    isChanged |= args[i] != arg;
+  }
+  return isChanged ? new Struct(name, args) : s;
+}
+
+/** The term with each of its subterms that belongs to a class replaced by the representative. */
+private Term canonicalTerm(Term term) {
+  final Term t = notNull(term.getTerm());
+  final @Nullable Integer node = lookUp(t);
+  if (node != null)
+    return canonical(find(node));
+  if ( ! (t instanceof Struct) || ((Struct)t).getArity() == 0)
+    return t;
+  final Struct s = (Struct)t;
+  final Term[] args = new Term[s.getArity()];
+  boolean isChanged = false;
+  for (int i = 0; i < args.length; i++) {
+    final Term arg = notNull(s.getArg(i));
+    args[i] = canonicalTerm(arg);
+    isChanged |= args[i] != arg;
+  }
+  return isChanged ? new Struct(s.getName(), args) : s;
+}
+
+/** Is the conjunct a ground equality (true), a ground disequality (false), or neither (null)? */
+private static @Nullable Boolean equalitySign(Term conjunct) {
+  final Term c = notNull(conjunct.getTerm());
+  if ( ! c.isGround() || ! (c instanceof Struct))
+    return null;
+  final Struct s = (Struct)c;
+  final boolean isNegated = s.getName().equals("-") && s.getArity() == 1;
+  final Term equation = isNegated ? notNull(s.getArg(0).getTerm()) : s;
+  if ( ! (equation instanceof Struct) || ((Struct)equation).getArity() != 2)
+    return null;
+  switch (((Struct)equation).getName()) {
+  case "=":  return ! isNegated;
+  case "#=": return isNegated;
+  default:   return null;
+  }
+}
+
+/** The equality or disequality of a conjunct for which {@link #equalitySign(Term)} is not null. */
+private static Struct equation(Term conjunct) {
+  final Struct s = (Struct)conjunct.getTerm();
+  return (Struct)(s.getName().equals("-") ? s.getArg(0).getTerm() : s);
+}
+
+private static boolean isTrue(Term conjunct) {
+  final Term c = conjunct.getTerm();
+  return c instanceof Struct && ((Struct)c).getName().equals("true") && ((Struct)c).getArity() == 0;
+}
+
+/** The conjuncts of the formula, taking apart nested conjunctions. */
+private static List<Term> conjuncts(Term formula) {
+  final List<Term> conjuncts = new ArrayList<>();
+  final Deque<Term> pending = new ArrayDeque<>();
+  pending.push(formula);
+  while ( ! pending.isEmpty()) {
+    final Term t = notNull(pending.pop().getTerm());
+    if (t instanceof Struct && ((Struct)t).getName().equals(and) && ((Struct)t).getArity() == 2) {
+      pending.push(notNull(((Struct)t).getArg(1)));
+      pending.push(notNull(((Struct)t).getArg(0)));
+    } else {
+      conjuncts.add(t);
+    }
+  }
+  return conjuncts;
+}
+
+private static Term conjoined(List<Term> conjuncts) {
+  if (conjuncts.isEmpty())
+    return new Struct("true");
+  Term conjunction = notNull(conjuncts.get(conjuncts.size() - 1));
+  for (int i = conjuncts.size() - 2; i >= 0; i--)
+    conjunction = new Struct(and, conjuncts.get(i), conjunction);
+  return conjunction;
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class CongruenceClosure
@@ -53,6 +53,7 @@ private boolean isInMeans      = false;
 enum BranchState { InitialBranch, FollowingBranch, NotInsideConditionalStatement }
 BranchState branchState = BranchState.NotInsideConditionalStatement;
 static final String contextCheck = "Context Check";
+final CompilationContext context;
 Map<RuleContext, Scope> scopeMap;
 public Map<RuleContext, tlang.Scope> getScopeMap() { return scopeMap; }
 
@@ -83,10 +84,11 @@ private String formerReturnDecoration = "";
 
 public ContextCheckVisitor(ParseTree tree,
                            CollectingMsgListener msgListener,
-                           Map<RuleContext, Scope> scopeMap )
+                           CompilationContext context )
 {
   this.errs = msgListener;
-  this.scopeMap = scopeMap;
+  this.context = context;
+  this.scopeMap = context.scopeMap;
   new FieldVisitor(contextCheck, errs, scopeMap).visit(tree);
 }
 
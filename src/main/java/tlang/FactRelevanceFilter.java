@@ -0,0 +1,121 @@
+package tlang;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import tlang.KnowledgeBase.Fact;
+
+/**
+ * Chooses the facts that may matter to a proof: those that share a symbol with the statement, those
+ * that share a symbol with one of those facts, and so on. A symbol is a value name, such as
+ * <code>'this.x^'</code>, or the name of a function or predicate. The facts and the symbols form a
+ * graph, and only the facts in the part of the graph that is connected to the statement are given
+ * to the prover. Every other fact just adds branches to the tableau that cannot close.
+ * <p>
+ * The logical operators, equality, comparisons and arithmetic are not symbols, since almost every
+ * fact uses them. A fact with no symbols at all, such as <code>all(X, all(Y, X = Y))</code>, may
+ * bear on any statement and is always chosen.
+ * <p>
+ * Leaving out a fact can only turn a proof that would succeed into one that does not, so a
+ * statement that is consistent with the chosen facts must still be checked against all of them.
+ * See {@link KnowledgeBase#checkConsistency(String)}
+ *
+ * @implNote The filter indexes the facts of one {@link KnowledgeBase.Conjunction} by symbol, and the
+ *           facts cache their own symbols, so a filter for a conjunction that gained a fact reads
+ *           only that fact's term.
+ */
+final class FactRelevanceFilter {
+
+/** The names that are not symbols: operators that almost every fact uses. */
+private static final Set<String> operators
+    = Set.of( "/\\", "\\/", "-", "==>", "<==", "===", "=#=", ",", ";", "all", "ex", "true", "false"
+            , "=", "#=", "<", ">", "=<", ">=", "<=", "+", "*", "/", "//", "mod", "rem");
+
+private final List<Fact> facts; // most recent first
+private final Map<String, List<Integer>> factsBySymbol = new HashMap<>();
+private final BitSet alwaysRelevant = new BitSet();
+
+/** @param facts the facts to choose from, most recent first */
+FactRelevanceFilter(List<Fact> facts) {
+  this.facts = facts;
+  for (int i = 0; i < facts.size(); i++) {
+    final Set<String> symbols = facts.get(i).symbols();
+    if (symbols.isEmpty())
+      alwaysRelevant.set(i);
+    for (String symbol : symbols)
+      factsBySymbol.computeIfAbsent(symbol, s -> new ArrayList<>()).add(i);
+  }
+}
+
+/** The facts that are connected to the statement through their symbols, in their original order.
+ * @return all of the facts, as the same list, when every one of them is connected */
+List<Fact> relevantTo(Term statement) {
+  final BitSet isRelevant = (BitSet)alwaysRelevant.clone();
+  final Set<String> reached = new HashSet<>(symbols(statement));
+  final Deque<String> pending = new ArrayDeque<>(reached);
+  while ( ! pending.isEmpty()) {
+    for (int i : factsBySymbol.getOrDefault(pending.pop(), List.of())) {
+      if (isRelevant.get(i))
+        continue;
+      isRelevant.set(i);
+      for (String symbol : facts.get(i).symbols())
+        if (reached.add(symbol))
+          pending.push(symbol);
+    }
+  }
+  if (isRelevant.cardinality() == facts.size())
+    return facts;
+  final List<Fact> relevant = new ArrayList<>(isRelevant.cardinality());
+  for (int i = isRelevant.nextSetBit(0); i >= 0; i = isRelevant.nextSetBit(i + 1))
+    relevant.add(facts.get(i));
+  return relevant;
+}
+
+/** Is the list of facts returned by {@link #relevantTo(Term)} all of the facts? */
+boolean isAll(List<Fact> relevant) {
+  return relevant == facts;
+}
+
+/** The value names and the function and predicate names of the term. */
+static Set<String> symbols(Term term) {
+  final Set<String> symbols = new HashSet<>();
+  final Deque<Term> pending = new ArrayDeque<>();
+  pending.push(term);
+  while ( ! pending.isEmpty()) {
+    final Term t = notNull(pending.pop().getTerm());
+    if ( ! (t instanceof Struct))
+      continue; // a variable or a number
+    final Struct s = (Struct)t;
+    if ( ! operators.contains(s.getName()))
+      symbols.add(notNull(s.getName()));
+    for (int i = 0; i < s.getArity(); i++)
+      pending.push(notNull(s.getArg(i)));
+  }
+  return symbols;
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class FactRelevanceFilter
@@ -6,50 +6,93 @@ import java.io.PrintWriter;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.ArrayList;
 import java.util.Scanner;
 import java.util.Arrays;
 
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.eclipse.jdt.annotation.Nullable;
+
 import static tlang.TUtil.*;
 
 /**
  * Java files may be compiled along with T files, and also the T Compiler
  * generates a Java file corresponding to each T compilation unit. This class
- * controls the writing of the generated files and the compilation of all the
- * Java files.
+ * keeps the generated files, writes them to disk when they are to be kept,
+ * and controls the compilation of all the Java files. The generated files are
+ * compiled from memory, so unless a location is given for them, they are
+ * never written, read back and deleted.
  *
  * @author George S. Cowan
  *
  */
 public class JavaFileHandler {
 
-private final String generatedFileLocation; // without any final file separator
+private final @Nullable String generatedFileLocation; // without any final file separator
 private List<String> runParameters;
 
-//TODO: either change the implementation to set or change the comment
-/** IMPLEMENTATION NOTE: We use a set to avoid storing duplicates. Entries for
- * both generated files and any Java files intermixed with the T
- * source files have the same form. The entries are of the form
+/** The Java compiler of the JVM that runs the T compiler, or null when the JVM has none,
+ *  e.g., when it is a JRE, in which case a command-line javac is run instead. */
+private static final @Nullable JavaCompiler systemCompiler = ToolProvider.getSystemJavaCompiler();
+
+/** The Java files intermixed with the T source files, as they were given to the T compiler. */
+private List<String> intermixedJavaLocations = new ArrayList<>();
+
+/** The Java files generated from the T compilation units, in the order they were saved. */
+private List<GeneratedSource> generatedSources = new ArrayList<>();
+
+/**
+ * The locations on disk of the Java files intermixed with the T source files and of the generated
+ * Java files that were written. The entries are of the form
  * <p><code>mydir/lowerdir/*.java</code> or <code>*.java</code>
  *                                            (for the default package)</p>
  */
-private List<String> javaSourceLocations = new ArrayList<>();
-  List<String> getJavaSourceLocations() { return javaSourceLocations; }
+synchronized List<String> getJavaSourceLocations() {
+  final List<String> locations = new ArrayList<>(intermixedJavaLocations);
+  for (GeneratedSource source : generatedSources) {
+    final String location = source.location;
+    if (location != null)
+      locations.add(location);
+  }
+  return locations;
+}
 
 
 /**
- * Construction of the JavaFileHandler requires the generatedLocation and the
- * command-line argument for compilerInput
+ * Construct a JavaFileHandler that keeps the generated Java files in memory
+ * only. Nothing is written except the class files.
+ *
+ * @param runParameters The filtered Java command-line arguments, as for
+ *            {@link #JavaFileHandler(String, List)}
+ */
+public // constructor
+JavaFileHandler(List<String> runParameters) {
+  this.generatedFileLocation = null;
+  this.runParameters         = runParameters;
+}
+
+/**
+ * Construct a JavaFileHandler that also writes the generated Java files to the
+ * generatedLocation, where they are kept for later examination.
  *
  * @param generatedLocation The location where generated Java files
  *            corresponding to T source files are to be placed. An empty string
  *            indicates that the files should be placed at the location from
  *            which the T compiler was executed. (Any Java files intermixed with
  *            T source files are left in place and do not require a location.)
- *            If the generatedLocation is temporary it is the responsibility of
- *            the calling program to delete it.
  * @param runParameters The filtered array of Java command-line argument Strings
  *            that were passed to the T compiler. Note that this is a List of
  *            Strings, not an Array of Strings. The arguments must be
@@ -77,15 +120,16 @@ JavaFileHandler( String generatedLocation
  * @param location The path of a Java source file as provided to the
  *                 T compiler. Therefore, the string will end with ".java".
  */
-public void
+public synchronized void
 saveIntermixedJava(String location) {
-  javaSourceLocations.add(location);
+  intermixedJavaLocations.add(location);
 }
 
 /**
- * Writes the generated Java file corresponding to a T file to the correct
- * location and saves that location for later submission
- * to a command-line invocation of javac.
+ * Saves the generated Java file corresponding to a T file for later submission
+ * to the Java compiler, and writes it to the correct location when there is a
+ * location for generated files. Compile units that are compiled at
+ * the same time may save their files at the same time.
  *
  * @param compilationUnit The complete translation of the T compilation
  *                        unit into Java
@@ -95,27 +139,39 @@ saveIntermixedJava(String location) {
  * @throws IOException    Thrown when the directory for the package cannot be
  *                        created or when the file cannot be written
  */
-public void
+public synchronized void
 saveGeneratedJava( String compilationUnit, String packageName, String className)
       throws IOException
-{ final String packageLocation = packagePath(packageName);
+{ final @Nullable String root = generatedFileLocation;
+  final @Nullable String location = (root == null) ? null
+                        : writeJava(root, compilationUnit, packageName, className);
+  generatedSources.add(new GeneratedSource(compilationUnit, packageName, className, location));
+}
+
+/** Write a generated Java file under the root directory.
+ * @return the location of the file */
+private static String
+writeJava(String root, String compilationUnit, String packageName, String className)
+      throws IOException
+{ final String packageLocation = packagePath(root, packageName);
   ensureDirExists(packageLocation);
-  javaSourceLocations.add(packageLocation + File.separator + className + ".java");
   try (PrintWriter javaWriter = newJavaWriter(packageLocation, className)) {
     javaWriter.print(compilationUnit);
   }
+  return packageLocation + File.separator + className + ".java";
 }
 
 /** The directory path including the common path used for all generated files
  *  together with the additional directory names for this specific package
+ * @param root        the common path, without an ending file name separator
  * @param packageName the package as specified in the program (with periods)
  * @return the path without an ending file name separator (slash)
  */
-private String packagePath(String packageName) {
+private static String packagePath(String root, String packageName) {
   final Character sep = File.separatorChar;
   final String packPath
-      = (packageName == "") ? "" : sep + packageName.replace('.', sep);
-  return generatedFileLocation + packPath;
+      = (packageName.isEmpty()) ? "" : sep + packageName.replace('.', sep);
+  return root + packPath;
 } //TODO: use File or Path to concatenate a path
 
 private static PrintWriter
@@ -130,8 +186,12 @@ newJavaWriter(String dir, String className) throws IOException {
 }
 
 /**
- * Submit the generated Java files and any Java files that were intermixed with
- * the T files to a command-line javac for compilation.
+ * Compile the generated Java files and any Java files that were intermixed with
+ * the T files. The Java compiler of this JVM is used when there is one: it reads
+ * the generated files from memory, and each of its diagnostics is collected as a
+ * message with its line number. Otherwise, the files are submitted to a
+ * command-line javac, for which any generated files that were not written are
+ * written to a temporary directory, and its output is collected as a single error.
  *
  * @throws IOException
  * @throws InterruptedException
@@ -139,12 +199,89 @@ newJavaWriter(String dir, String className) throws IOException {
 public void
 compileJavaFiles(CollectingMsgListener msgCollector)
       throws IOException, InterruptedException {
-  if (javaSourceLocations.isEmpty())
+  if (intermixedJavaLocations.isEmpty() && generatedSources.isEmpty())
     return;
 
-  final List<String> javac = Arrays.asList("javac");
-  //TODO: write javaSourceLocations to a file theSrc and use with @theSrc parameter
-  runCommand(msgCollector, javac, runParameters, javaSourceLocations);
+  final JavaCompiler compiler = systemCompiler;
+  if (compiler == null)
+    compileWithCommand(msgCollector);
+  else
+    compileInProcess(compiler, msgCollector);
+}
+
+private void
+compileWithCommand(CollectingMsgListener msgCollector)
+      throws IOException, InterruptedException {
+  final Path tempDir = Files.createTempDirectory("generatedTJava");
+  try {
+    final List<String> javaSourceLocations = new ArrayList<>(intermixedJavaLocations);
+    for (GeneratedSource source : generatedSources) {
+      final String location = source.location;
+      javaSourceLocations.add( (location != null) ? location
+                             : writeJava( tempDir.toString(), source.compilationUnit
+                                        , source.packageName, source.className
+                                        )
+                             );
+    }
+    final List<String> javac = Arrays.asList("javac");
+    //TODO: write javaSourceLocations to a file theSrc and use with @theSrc parameter
+    runCommand(msgCollector, javac, runParameters, javaSourceLocations);
+  } finally {
+    deleteDirectory(tempDir);
+  }
+}
+
+private void
+compileInProcess(JavaCompiler compiler, CollectingMsgListener msgCollector) throws IOException {
+  final StringWriter otherOutput = new StringWriter(); // e.g., for -version
+  try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, null)) {
+    final List<JavaFileObject> sources = new ArrayList<>(generatedSources);
+    for (JavaFileObject intermixed : files.getJavaFileObjectsFromStrings(intermixedJavaLocations))
+      sources.add(intermixed);
+    compiler.getTask( otherOutput, files
+                    , diagnostic -> collectDiagnostic(diagnostic, msgCollector)
+                    , inProcessOptions(), null, sources
+                    )
+            .call();
+  } catch (IllegalArgumentException e) { // an option that javac does not know
+    msgCollector.collectError(String.valueOf(e.getMessage()));
+  }
+  msgCollector.collectMsg(otherOutput.toString());
+}
+
+/** The run parameters as the in-process compiler takes them: without the blank ones and without
+ *  the quotes that a command line would have removed. */
+private List<String> inProcessOptions() {
+  final List<String> options = new ArrayList<>(runParameters.size());
+  for (String parameter : runParameters) {
+    if (isWhiteSpace(parameter))
+      continue;
+    final boolean isQuoted = parameter.length() > 1
+                          && parameter.startsWith("\"") && parameter.endsWith("\"");
+    options.add(isQuoted ? parameter.substring(1, parameter.length() - 1) : parameter);
+  }
+  return options;
+}
+
+/** Collect a diagnostic in the form that javac prints it, e.g.,
+ *  <code>mydir/Abc.java:12: error: ';' expected</code>, as an error when it is one and as a
+ *  message otherwise. */
+private static void
+collectDiagnostic(Diagnostic<? extends JavaFileObject> diagnostic,
+                  CollectingMsgListener msgCollector) {
+  final JavaFileObject source = diagnostic.getSource();
+  final long position = diagnostic.getLineNumber();
+  final int line = (position == Diagnostic.NOPOS) ? 0 : (int)position;
+  final String kind = (diagnostic.getKind() == Diagnostic.Kind.MANDATORY_WARNING)
+                     ? "warning"
+                     : diagnostic.getKind().toString().toLowerCase(Locale.ROOT);
+  final String where = (source == null) ? ""
+                     : source.getName() + ((line == 0) ? "" : ":"+ line) +": ";
+  final String msg = where + kind +": "+ diagnostic.getMessage(Locale.getDefault());
+  if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+    msgCollector.collectError(line, msg);
+  else
+    msgCollector.collectMsg(line, msg);
 }
 
 
@@ -174,5 +311,41 @@ runCommand(CollectingMsgListener msgCollector, Collection<String>... commandChun
   return javacProcess.waitFor();
 }
 
+/** A generated Java file, which the Java compiler reads from memory. */
+private static final class GeneratedSource extends SimpleJavaFileObject {
+  final String compilationUnit;
+  final String packageName;
+  final String className;
+  /** Where the file was written, or null when it was not */
+  final @Nullable String location;
+
+  GeneratedSource( String compilationUnit, String packageName, String className
+                 , @Nullable String location
+                 ) {
+    super(URI.create("string:///"+ sourcePath(packageName, className)), Kind.SOURCE);
+    this.compilationUnit = compilationUnit;
+    this.packageName     = packageName;
+    this.className       = className;
+    this.location        = location;
+  }
+
+  private static String sourcePath(String packageName, String className) {
+    final String packagePath = packageName.isEmpty() ? "" : packageName.replace('.', '/') +"/";
+    return packagePath + className + Kind.SOURCE.extension;
+  }
+
+  /** The name in the compiler's messages: the location, or the path that the file would have */
+  @Override
+  public String getName() {
+    final String written = location;
+    return (written != null) ? written : sourcePath(packageName, className);
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+    return compilationUnit;
+  }
+} // end inner class GeneratedSource
+
 } // end class JavaFileHandler
 
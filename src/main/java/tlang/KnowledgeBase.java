@@ -1,13 +1,24 @@
 package tlang;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import alice.tuprolog.*;
-import alice.tuprolog.event.*;
 import alice.tuprolog.lib.InvalidObjectIdException;
 import alice.tuprolog.lib.OOLibrary;
 import org.eclipse.jdt.annotation.*;
@@ -136,25 +147,268 @@ public SolverInTestMode testMode = SolverInTestMode.off;
  * are kept in a queue data structure in the hope that the most recently entered fact will be the
  * one most important in proving a new fact.
  */
-private ArrayDeque<String> facts = null;
+private ArrayDeque<Fact> facts = null;
 
   boolean hasNoFacts() { return facts == null || facts.isEmpty(); }
   boolean hasFacts()   { return ! hasNoFacts(); }
-  ArrayDeque<String> getFacts() { return facts; }
+  ArrayDeque<String> getFacts() {
+    return facts.stream().map(fact -> fact.text).collect(Collectors.toCollection(ArrayDeque::new));
+  }
+
+/** The facts of this KnowledgeBase and of its ancestors, parsed and conjoined for the prover. It is
+ * built when a proof first needs it and is dropped whenever the facts change. See
+ * {@link #conjunction()} */
+private volatile @Nullable Conjunction conjunction = null;
+
+/** The budget for the proofs of this KnowledgeBase and its children, or null to use the budget of
+ * the parent. See {@link #setProverBudget(ProverBudget)} */
+private @Nullable ProverBudget budget = null;
+
+/** Where the prover's output is written when a proof does not come out as hoped, for this
+ * KnowledgeBase and its children, or null to write it where the parent does. See
+ * {@link #setProverOutput(Consumer)} */
+private @Nullable Consumer<String> proverOutput = null;
+
+/** Where the prover's output is written when no KnowledgeBase says otherwise. */
+private static final Consumer<String> standardOutput = text -> {
+  System.out.print(text);
+  System.out.flush();
+};
+
+/** The numeric types of the value names of this KnowledgeBase whose variables have one, by the
+ * value name without its quotes. See {@link #assumeType(String, String)} and
+ * {@link #numericTypeOf(String)} */
+private Map<String, LinearArithmetic.NumericType> numericTypes = new ConcurrentHashMap<>();
+
+/** The value names of this KnowledgeBase whose type rules have been assumed, without their quotes.
+ * See {@link #assumeType(String, String)} */
+private Set<String> typedValueNames = ConcurrentHashMap.newKeySet();
+
+/** The facts that came from type rules, which {@link #substitute(String)} keeps. */
+private Set<Fact> typeFacts = ConcurrentHashMap.newKeySet();
+
+/** A fact in both its text form and its parsed form. A fact is parsed only once unless it contains
+ * variables; the prover binds the variables of a term, so a fact with variables is parsed again for
+ * each proof, while a ground fact is shared by every proof that uses it. */
+static final class Fact {
+  final String text;
+  private volatile @Nullable Term groundTerm = null;
+  private volatile boolean hasVariables = false;
+  private volatile @Nullable Set<String> symbols = null;
+
+  Fact(String text) { this.text = text; }
+
+  Term term() {
+    final @Nullable Term ground = groundTerm;
+    if (ground != null)
+      return ground;
+    final Term term = engines.parse(text);
+    if (term.isGround())
+      groundTerm = term;
+    else
+      hasVariables = true;
+    return term;
+  }
+
+  boolean isGround() {
+    if (groundTerm == null && ! hasVariables)
+      term();
+    return ! hasVariables;
+  }
+
+  /** The value names and the function and predicate names of the fact. See
+   * {@link FactRelevanceFilter} */
+  Set<String> symbols() {
+    @Nullable Set<String> known = symbols;
+    if (known == null) {
+      known = FactRelevanceFilter.symbols(term());
+      symbols = known;
+    }
+    return known;
+  }
+}
+
+/** The facts of a KnowledgeBase conjoined with those of its context, that is, its parent
+ * KnowledgeBase. When all of them are ground, the conjoined term is built once and shared by every
+ * proof; otherwise it is built for each proof from the shared ground facts and freshly parsed facts
+ * with variables. The digest identifies the facts for the {@link ProofCache}.
+ * <p>
+ * A conjunction never changes, so a prover engine that holds the facts of a conjunction in its
+ * context can tell, by identity, whether they are still current. See
+ * {@link ProverEnginePool.ProverEngine#contextFrames}. */
+static final class Conjunction {
+  final List<Fact> ownFacts; // most recent first
+  final @Nullable Conjunction context;
+  private final boolean isGround;
+  private volatile @Nullable Term groundTerm = null;
+  private volatile @Nullable ProverTerm groundProverTerm = null;
+  private volatile @Nullable FactRelevanceFilter relevance = null;
+  final String digest;
+
+  Conjunction(List<Fact> ownFacts, @Nullable Conjunction context) {
+    this.ownFacts = ownFacts;
+    this.context = context;
+    this.isGround = (context == null || context.isGround)
+                    && ownFacts.stream().allMatch(Fact::isGround);
+
+    StringBuilder text = new StringBuilder(context == null ? "true" : context.digest);
+    for (Fact fact : ownFacts)
+      text.append('\n').append(ProofCache.normalized(fact.text));
+    this.digest = ProofCache.sha256(text.toString());
+  }
+
+  Term term() {
+    if ( ! isGround)
+      return build();
+    @Nullable Term ground = groundTerm;
+    if (ground == null) {
+      ground = build();
+      groundTerm = ground;
+    }
+    return ground;
+  }
 
+  /** The facts in the form used by the {@link TableauProver}. Like {@link #term()}, it is built once
+   * when all the facts are ground. */
+  ProverTerm proverTerm() {
+    if ( ! isGround)
+      return ProverTerm.from(build());
+    @Nullable ProverTerm ground = groundProverTerm;
+    if (ground == null) {
+      ground = ProverTerm.from(term());
+      groundProverTerm = ground;
+    }
+    return ground;
+  }
 
+  /** The facts linked in the same shape as {@link KnowledgeBase#conjoinedFacts()}: the facts of
+   * this KnowledgeBase, most recent first, then those of its context. */
+  private Term build() {
+    final int last = ownFacts.size() - 1;
+    Term own = (last < 0) ? new Struct("true") : ownFacts.get(last).term();
+    for (int i = last - 1; i >= 0; i--)
+      own = conjoin(ownFacts.get(i).term(), own);
+    return conjoin(own, (context == null) ? new Struct("true") : context.term());
+  }
 
-/** Is the prolog engine printing its output? */
-private static boolean isDebugging = false;
-private static Prolog engine = createPrologEngine();
-private static Theory theory;
-private static String prologStdOut = "";
+  /** The facts of this conjunction that are connected to the statement through their symbols,
+   * together with those of its context, as a conjunction without a context. See
+   * {@link FactRelevanceFilter}
+   * @return this conjunction when every fact is connected to the statement */
+  Conjunction relevantTo(Term statement) {
+    @Nullable FactRelevanceFilter filter = relevance;
+    if (filter == null) {
+      final List<Fact> all = new ArrayList<>();
+      for (@Nullable Conjunction c = this; c != null; c = c.context)
+        all.addAll(c.ownFacts);
+      filter = new FactRelevanceFilter(all);
+      relevance = filter;
+    }
+    final List<Fact> relevant = filter.relevantTo(statement);
+    return filter.isAll(relevant) ? this : new Conjunction(relevant, null);
+  }
+
+  /** This conjunction and those of its context, outermost first. */
+  List<Conjunction> chain() {
+    final ArrayDeque<Conjunction> chain = new ArrayDeque<>();
+    for (@Nullable Conjunction c = this; c != null; c = c.context)
+      chain.push(c);
+    return new ArrayList<>(chain);
+  }
+
+  /** Is this the earlier conjunction with only newer facts of its own added? */
+  boolean extendsFacts(Conjunction earlier) {
+    final int added = ownFacts.size() - earlier.ownFacts.size();
+    if (added < 0 || context != earlier.context)
+      return false;
+    for (int i = 0; i < earlier.ownFacts.size(); i++)
+      if (ownFacts.get(added + i) != earlier.ownFacts.get(i))
+        return false;
+    return true;
+  }
+
+  /** The facts that this conjunction added to an earlier one that it extends, most recent first. */
+  List<Fact> factsAddedSince(Conjunction earlier) {
+    return ownFacts.subList(0, ownFacts.size() - earlier.ownFacts.size());
+  }
+}
+
+private static Term conjoin(Term left, Term right) {
+  return new Struct(and.strip(), left, right);
+}
+
+
+
+/** Is the prolog engine printing its output? See {@link #debugProver(boolean)} */
+private static volatile boolean isDebugging = false;
+/** Runs the proofs of {@link #proveAll(List)} and the checks of
+ * {@link #findInconsistentFacts(String)}. The number of proofs that actually run at once is
+ * also limited by the pool of prover engines. */
+private static final ExecutorService batchProver
+    = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors()
+                                  , runnable -> {
+                                      Thread thread = new Thread(runnable, "batch prover");
+                                      thread.setDaemon(true); // never keeps the compiler running
+                                      return thread;
+                                    });
+/** The engines that run the prover, one proof per engine at a time, with the production theory
+ * that has no debugging goals. See {@link #setProverEngineLimit(int)} */
+private static final ProverEnginePool engines = createEnginePool(true);
+/** The engines with the instrumented theory, for the proofs that are traced. They are created the
+ * first time that a proof is traced. See {@link #instrumentedEngines()} */
+private static volatile @Nullable ProverEnginePool instrumentedEngines = null;
+private static int engineLimit = Runtime.getRuntime().availableProcessors();
+private static String theoryFingerprint = "";
+/** Are the facts of enclosing scopes kept in the prover between proofs? See
+ * {@link #useFactContext(boolean)} */
+private static boolean isUsingFactContext = false;
+/** Are the provers given only the facts that are connected to the statement? See
+ * {@link #useRelevantFacts(boolean)} */
+private static boolean isUsingRelevantFacts = true;
+/** Are ground equalities absorbed before the tableau sees them? See
+ * {@link #useEqualityClosure(boolean)} */
+private static boolean isUsingEqualityClosure = true;
+/** Is the linear arithmetic of the statement and facts decided before the prover sees them? See
+ * {@link #useArithmetic(boolean)} */
+private static boolean isUsingArithmetic = true;
+/** Are ground formulas decided by the {@link SatSolver} instead of the prover? See
+ * {@link #useSatSolver(boolean)} */
+private static boolean isUsingSatSolver = true;
+/** Are the quantified formulas instantiated for the terms that match their triggers, and the
+ * instances decided by the {@link SatSolver}, before the prover sees them? See
+ * {@link #useTriggers(boolean)} */
+private static boolean isUsingTriggers = true;
+/** Which prover checks consistency. See {@link #useProver(Prover)} */
+private static Prover prover = Prover.prolog;
+/** The budget of each proof unless a KnowledgeBase sets its own. See
+ * {@link #setDefaultProverBudget(ProverBudget)} */
+private static ProverBudget defaultBudget = ProverBudget.unlimited;
+/** The limits that each proof tries in turn. See {@link #setProverLimitSchedule(List)} */
+private static List<ProverLimits> limitSchedule = ProverLimits.defaultSchedule;
+/** The limits that decided earlier proofs, where the next proof of each statement starts. */
+private static LearnedLimits learnedLimits = new LearnedLimits(null);
+/** Results of earlier consistency checks, or null when the results are not being cached. */
+private static @Nullable ProofCache proofCache = null;
 /** Name of the prolog code field where the result is stored. See method
  * {@link #prologConsistencyResult(SolveInfo)} */
 private static final String prologConsistencyResult = "ConsistencyResult";
+/** Name of the prolog code field where the limits that decided the result are stored. */
+private static final String prologDecidedLimits = "DecidedLimits";
 
 private static final String relativeDir = "./";
 private static final String relativePrologDir = relativeDir +"src/main/prolog/leantap/";
+/** Where the build puts the theory files on the classpath. */
+private static final String prologResourceDir = "leantap/";
+/** The theory files that are loaded into each prover engine, in order. */
+private static final List<String> theoryNames = List.of( "mydebug.prolog"
+                                                       , "nnf.pl"
+                                                       , "etleantap.pl"
+//                                                       , "tLangProof.prolog"
+                                                       );
+/** Identifies the form of the command that {@link #prologCommand(String)} sends to the prover, and
+ * what the checks made before the prover mean. Change it whenever either changes, so that cached
+ * results are no longer used. */
+private static final String proverCommandVersion = "nnf-runProver-5";
 
 /** The logical conjunction operator, AND, is written as <code>/\</code> in the first-order
  * predicate language for the KnowledgeBase and the Prolog prover. */
@@ -237,26 +491,81 @@ public KnowledgeBase copy() {
   else
     result = new KnowledgeBase(this.parentKB);
   result.facts = this.facts.clone();
+  result.conjunction = this.conjunction;
+  result.budget = this.budget;
+  result.proverOutput = this.proverOutput;
+  result.numericTypes.putAll(this.numericTypes);
+  result.typedValueNames.addAll(this.typedValueNames);
+  result.typeFacts.addAll(this.typeFacts);
+
+  return result;
+}
 
+/** A top-level KnowledgeBase with only the facts and the type information of this one, without
+ * those of its ancestors. A statement proven in it holds whatever the ancestors' facts may be. */
+KnowledgeBase detached() {
+  final KnowledgeBase result = new KnowledgeBase();
+  result.facts = this.facts.clone();
+  result.budget = proverBudget();
+  result.proverOutput = proverOutput();
+  result.numericTypes.putAll(this.numericTypes);
+  result.typedValueNames.addAll(this.typedValueNames);
+  result.typeFacts.addAll(this.typeFacts);
   return result;
 }
 
-/** Add Type information for a value name. Look up the predicates that define the type, substitute
- * the value name for all occurrences of the example name in the definition's predicates, and copy
- * the predicates individually to the list of type information. Unlike other facts, type information
- * is preserved when a means statement subsumes the preceding facts.
+/** Add Type information for a value name. The rules of the type are taken from the
+ * {@link TypeRuleIndex}, which is shared by every KnowledgeBase, and instantiated for the value
+ * name as facts. Unlike other facts, type information is preserved when a means statement subsumes
+ * the preceding facts. The rules of a value name are assumed only once, however often its type is
+ * given, in this KnowledgeBase or in its ancestors.
+ * <p>
+ * Note that no consistency check is necessary because this is a new value name.
  *
- * @param variableType
- * @param valueName
+ * @param variableType the type of the variable of the value name, as it is declared
+ * @param valueName    the value name in its Prolog form, e.g., <code>'this.x^'</code>
  */
-// TODO Create a separate list of type facts to hold these assumptions
-// TODO Write a method to insert a list of rule templates for a type into a map
 public void assumeType(String variableType, String valueName) {
-  // Note that no consistency check is necessary because this is a new valueName
-    // should we keep a list in the KnowledgeBase of used valueNames to make sure?
-  // use the map to find the list of templates
-  // insert the valueName into the templates to create a list of facts
-  // add these new facts to the type facts
+  final TypeRuleIndex.TypeRules typeRules = TypeRuleIndex.rulesFor(variableType);
+  final String name = unquoted(valueName);
+  if (typeRules.numericType != LinearArithmetic.NumericType.rational)
+    numericTypes.put(name, typeRules.numericType);
+  if (typeRules.rules.isEmpty() || isTyped(name))
+    return;
+  typedValueNames.add(name);
+  for (TypeRuleIndex.TypeRule rule : typeRules.rules) {
+    final Fact fact = new Fact(rule.instantiate(valueName));
+    facts.push(fact);
+    typeFacts.add(fact);
+  }
+  conjunction = null;
+}
+
+/** Have the type rules of the value name already been assumed, here or in an ancestor? */
+private boolean isTyped(String name) {
+  for (@Nullable KnowledgeBase kb = this; kb != null; kb = kb.parentKB)
+    if (kb.typedValueNames.contains(name))
+      return true;
+  return false;
+}
+
+/** The numeric type of the value name, according to the types assumed in this KnowledgeBase or its
+ * ancestors, which is rational when no type is known. See {@link #assumeType(String, String)}
+ * @param valueName the value name, with or without its quotes */
+LinearArithmetic.NumericType numericTypeOf(String valueName) {
+  final String name = unquoted(valueName);
+  for (@Nullable KnowledgeBase kb = this; kb != null; kb = kb.parentKB) {
+    final LinearArithmetic.@Nullable NumericType type = kb.numericTypes.get(name);
+    if (type != null)
+      return type;
+  }
+  return LinearArithmetic.NumericType.rational;
+}
+
+private static String unquoted(String valueName) {
+  return (valueName.length() >= 2 && valueName.startsWith("'") && valueName.endsWith("'"))
+         ? valueName.substring(1, valueName.length() - 1)
+         : valueName;
 }
 
 /**
@@ -274,7 +583,8 @@ public void assumeType(String variableType, String valueName) {
  * <code>KnowledgeBase</code> would be corrupted.
  */
 public void assume(String fact) {
-  facts.push(fact);
+  facts.push(new Fact(fact));
+  conjunction = null;
 }
 
 /** Add a fact to the knowledge base that is expected to be consistent with the current facts. To
@@ -295,7 +605,8 @@ public void assumeIfConsistent(String statement) throws InvalidConsistencyResult
   if (consistencyResult == ConsistencyResult.consistent)
     assume(statement);
   else
-    throw new InvalidConsistencyResultException(consistencyResult, statement);
+    throw new InvalidConsistencyResultException(consistencyResult, statement,
+                                                conflictsOf(consistencyResult, statement));
 }
 
 /** Checks whether a statement is consistent with the {@link KnowledgeBase} facts and adds it
@@ -317,17 +628,34 @@ public ConsistencyResult assumeUnlessInconsistent(String newText)
   if ( c == ConsistencyResult.consistent || c == ConsistencyResult.reachedLimit)
     assume(newText);
   else
-      throw new InvalidConsistencyResultException(c, newText);
+      throw new InvalidConsistencyResultException(c, newText, conflictsOf(c, newText));
   return c;
 }
 
+/** The facts that an inconsistent statement conflicts with, for the report of a statement that
+ * could not be assumed. See {@link #findInconsistentFacts(String)} */
+private List<String> conflictsOf(ConsistencyResult c, String statement) {
+  return (c == ConsistencyResult.inconsistent) ? findInconsistentFacts(statement) : List.of();
+}
+
 public class InvalidConsistencyResultException extends Exception {
 private ConsistencyResult consistency;
+private List<String> conflictingFacts;
 /*getter*/ public ConsistencyResult getStatus() { return consistency; }
-
-InvalidConsistencyResultException(ConsistencyResult consistency, String msg) {
-    super("The new fact: "+ msg +"\n is not provably consistent: " + consistency);
+/*getter*/ public List<String> getConflictingFacts() { return conflictingFacts; }
+
+/** @param conflictingFacts a minimal set of the facts that the new fact is inconsistent with, or an
+ *                          empty list when none was found */
+InvalidConsistencyResultException(ConsistencyResult consistency, String msg,
+                                  List<String> conflictingFacts) {
+    super("The new fact: "+ msg +"\n is not provably consistent: " + consistency
+          + (conflictingFacts.isEmpty()
+                ? ""
+                : "\n It conflicts with the facts: "
+                  + conflictingFacts.stream().map(KnowledgeBase::parenthesized)
+                                    .collect(Collectors.joining(and))));
     this.consistency = consistency;
+    this.conflictingFacts = conflictingFacts;
   }
 }
 
@@ -351,7 +679,7 @@ public String getMeaning() {
  * If, instead, it fails with a {@link ProofResult} of <code>unsupported</code> or
  * <code>reachedLimit</code>, it means that the statement
  * cannot be proven. (After confirming that the statement to be proven  is not internally inconsistent,
- * we can find a conflicting fact using findInconsistentFact - not yet implemented.)
+ * we can find the facts it conflicts with using {@link #findInconsistentFacts(String)}.)
  * <p>
  * For technical reasons, the negation of the statement is checked to see if it is
  * <code>inconsistent</code> with some of the facts from the KnowledgeBase. This is equivalent to
@@ -360,7 +688,6 @@ public String getMeaning() {
  * proven, and more assumptions or facts are needed in order  to make the statement be either
  * provably true or inconsistent.
  *
- * TODO: Implement findInconsistentFact().
  * TODO: We could use inverse resolution to find the new assumption needed to prove the statement.
  *
  * @param statement The statement to be shown either true or unsupported
@@ -372,12 +699,55 @@ public ProofResult prove(String statement, SolverInTestMode... modeOfTest) {
   if (modeOfTest.length > 0)
     testMode = modeOfTest[0];
 
-  final ConsistencyResult c = checkConsistency(negation(statement));
+  final ConsistencyResult c = checkConsistency(negation(statement), isUsingFactContext,
+                                               ConsistencyResult.inconsistent);
 
   testMode = savedTestMode;
   return proofResults(c);
 }
 
+/** Prove each of the statements from the facts as they stand, independently of one another, as
+ * though {@link #prove(String, SolverInTestMode...)} were called for each one. The facts are parsed,
+ * conjoined and indexed only once for all of the statements, and the statements are proven at the
+ * same time, each by the first prover engine that is free. When the facts are kept in the prover
+ * (see {@link #useFactContext(boolean)}), each engine holds them in its context, so it normalizes
+ * them once, for the first statement it proves, and then normalizes only the statements. Facts
+ * assumed while the proofs are running do not take part in them.
+ * @param statements the statements to be proven
+ * @return           the result for each statement, in the order of the statements */
+public List<ProofResult> proveAll(List<String> statements) {
+  conjunction(); // built here, so every proof shares it
+  final KnowledgeBase currentFacts = copy();
+  final List<Future<ProofResult>> pendingResults = new ArrayList<>();
+  for (String statement : statements)
+    pendingResults.add(batchProver.submit(() -> currentFacts.proofResults(
+                           currentFacts.checkConsistency(negation(statement), isUsingFactContext,
+                                                         ConsistencyResult.inconsistent))));
+  try {
+    final List<ProofResult> results = new ArrayList<>();
+    for (Future<ProofResult> pending : pendingResults)
+      results.add(resultOf(pending));
+    return results;
+  } finally {
+    for (Future<ProofResult> pending : pendingResults)
+      pending.cancel(true);
+  }
+}
+
+private static <T> T resultOf(Future<T> pendingResult) {
+  try {
+    return pendingResult.get();
+  } catch (InterruptedException e) {
+    Thread.currentThread().interrupt();
+    throw new RuntimeException("Interrupted while waiting for a proof", e);
+  } catch (ExecutionException e) {
+    final Throwable cause = e.getCause();
+    if (cause instanceof RuntimeException)
+      throw (RuntimeException)cause;
+    throw new RuntimeException(cause);
+  }
+}
+
 private String negation(String statement) {
   return "-("+ statement +")";
 }
@@ -428,15 +798,12 @@ public ProofResult assumeIfProven(String newFact, SolverInTestMode... modeOfTest
  * following TrueJ code is allowed to legally reference a value, but nothing could be proven with it
  * because its definition was eclipsed by the <code>means</code> statement.
  * <p>
- * TODO: We need to treat type information separately, ?typeFacts map from variable or value names?
- * to the list of value-facts implied by the type of the variable. Then we can easily eliminate all
- * the facts that are not type declarations and eliminate all the facts for local variable names
- * that are no longer used. If we were to chain KnowledgeBases, then we would not need to recreate a
- * KnowledgeBase from its predecessor, but could just manipulate the current KnowledgeBase.
+ * The facts that came from the rules of a type (see {@link #assumeType(String, String)}) are kept.
+ * TODO: eliminate the type facts for local variable names that are no longer used.
  *
  * @param newFact */
 public void substitute(String newFact) {
-  facts.clear();
+  facts.removeIf(fact -> ! typeFacts.contains(fact));
   assume(newFact);
 }
 
@@ -448,15 +815,300 @@ public ProofResult substituteIfProven(String newFact) {
   return result;
 }
 
-/** Check a statement to see if it is consistent with the {@link KnowledgeBase} facts.
+/** Check a statement to see if it is consistent with the {@link KnowledgeBase} facts. When the
+ * results are being cached (see {@link #useProofCache(Path)}), a test formula that was checked
+ * before is answered without calling the prover. The prover's output is written when the statement
+ * is not found consistent. See {@link #setProverOutput(Consumer)}
  * @param statement
  * @return a {@link ConsistencyResult}
  */
 public ConsistencyResult checkConsistency(String statement) {
-  String testString = parenthesized(statement) + and + conjoinedFacts();
-  SolveInfo solutionInfo = checkForConsistency(testString);
-  return prologConsistencyResult(solutionInfo);
+  return checkConsistency(statement, isUsingFactContext, ConsistencyResult.consistent);
+}
+
+/** Check a statement for consistency with the facts, as {@link #checkConsistency(String)} does.
+ * @param inContext should the Prolog prover hold the facts in its context? See
+ *                  {@link #useFactContext(boolean)}
+ * @param hoped     the result that the caller hopes for; the prover's output is written only when
+ *                  the result is another */
+private ConsistencyResult checkConsistency(String statement, boolean inContext,
+                                           ConsistencyResult hoped) {
+  final Conjunction allFacts = conjunction();
+  final @Nullable ProofCache cache = proofCache;
+  if (cache == null || testMode == SolverInTestMode.on) // a test needs to see the prover's trace
+    return reportedResult(checkForConsistency(statement, allFacts, inContext), hoped);
+
+  final ProverBudget proofBudget = proverBudget();
+  final String testKey = (prover == Prover.java ? "java " : "")
+                         + (inContext ? "in context " : "")
+                         + (isUsingRelevantFacts && ! inContext ? "relevant " : "")
+                         + (isUsingEqualityClosure && ! isUsingFactContext ? "closure " : "")
+                         + (isUsingArithmetic && ! isUsingFactContext ? "arithmetic " : "")
+                         + (isUsingSatSolver && ! isUsingFactContext ? "sat " : "")
+                         + (isUsingSatSolver && isUsingTriggers && ! isUsingFactContext
+                                ? "triggers " : "")
+                         + (proofBudget.hasStepLimit() ? "steps "+ proofBudget.stepLimit +" " : "")
+                         + (limitSchedule.equals(ProverLimits.defaultSchedule)
+                                ? "" : "limits "+ ProverLimits.toString(limitSchedule) +" ")
+                         + ((isUsingArithmetic || isUsingSatSolver) && ! isUsingFactContext
+                                ? numericTypesIn(conjoin(engines.parse(statement), allFacts.term()))
+                                : "")
+                         + parenthesized(statement) + and + allFacts.digest;
+  Optional<ConsistencyResult> cachedResult = cache.lookup(testKey);
+  if (cachedResult.isPresent())
+    return cachedResult.get();
+  ConsistencyResult result
+      = reportedResult(checkForConsistency(statement, allFacts, inContext), hoped);
+  if ( ! (result == ConsistencyResult.reachedLimit && proofBudget.hasTimeLimit()))
+    cache.record(testKey, result); // a proof that ran out of time might finish on a faster run
+  return result;
+}
+
+/** The numeric types of the value names of the formula that have one, e.g.,
+ * <code>types x:int32 y:floating </code>, for the key of a cached result. The arithmetic reads the
+ * same text differently for different types, and a type adds no fact to the digest of the facts.
+ * See {@link #numericTypeOf(String)} */
+private String numericTypesIn(Term formula) {
+  final Set<String> typed = new TreeSet<>();
+  for (String symbol : FactRelevanceFilter.symbols(formula)) {
+    final LinearArithmetic.NumericType type = numericTypeOf(symbol);
+    if (type != LinearArithmetic.NumericType.rational)
+      typed.add(symbol +":"+ type);
+  }
+  return typed.isEmpty() ? "" : "types "+ String.join(" ", typed) +" ";
+}
+
+/** The result of the outcome, after writing what the prover said if the result is not the one
+ * hoped for. */
+private ConsistencyResult reportedResult(ProverLimits.Outcome outcome, ConsistencyResult hoped) {
+  if (outcome.result != hoped && ! outcome.proverOutput.isEmpty())
+    proverOutput().accept(outcome.proverOutput);
+  return outcome.result;
+}
+
+/** The parsed facts of this KnowledgeBase and its ancestors. They are rebuilt only when the facts
+ * of this KnowledgeBase have changed or an ancestor has rebuilt its own. */
+private Conjunction conjunction() {
+  final @Nullable Conjunction context = hasParent() ? parentKB.conjunction() : null;
+  final @Nullable Conjunction current = conjunction;
+  if (current != null && current.context == context)
+    return current;
+  final Conjunction rebuilt = new Conjunction(new ArrayList<>(facts), context);
+  conjunction = rebuilt;
+  return rebuilt;
+}
+
+/** Start answering consistency checks from the results recorded in the directory, and record new
+ * results there. The results persist from one run of the compiler to the next.
+ * @param  directory where the results are kept, usually under the build directory
+ * @return           the cache, which also counts its hits and misses */
+static ProofCache useProofCache(Path directory) {
+  ProofCache cache = new ProofCache(directory, theoryFingerprint());
+  proofCache = cache;
+  return cache;
+}
+
+/** Stop using any cached results; every consistency check is sent to the prover. */
+static void stopUsingProofCache() {
+  proofCache = null;
+}
+
+static @Nullable ProofCache proofCache() { return proofCache; }
+
+/** A hash of the theory files that were loaded into the prover together with the form of the
+ * command that is sent to it. Any change to either gives a different fingerprint. */
+static String theoryFingerprint() {
+  if (theoryFingerprint.isEmpty())
+    theoryFingerprint = ProofCache.sha256(engines.theoryFingerprint() +"\n"+ proverCommandVersion);
+  return theoryFingerprint;
+}
+
+/** Keep the facts of each KnowledgeBase and of its enclosing KnowledgeBases asserted in the prover
+ * between proofs, instead of sending every fact with every statement. Facts are normalized once,
+ * when they are asserted, and only the statement being checked is normalized for each proof, so
+ * the cost of a proof no longer grows with the number of facts that must be sent. The facts of a
+ * KnowledgeBase are asserted the first time that one of its proofs needs them and retracted when a
+ * proof needs different ones, so entering and leaving a scope pushes and pops its facts.
+ * @param isOn should the facts be kept in the prover? */
+static void useFactContext(boolean isOn) {
+  isUsingFactContext = isOn;
+}
+
+/** Give the prover only the facts that are connected to the statement through the value names and
+ * the function and predicate names that they share, rather than every fact. A statement that is
+ * consistent with those facts is checked again with all of them, so the results are the same,
+ * except that a proof that reaches a limit among all the facts may be decided among fewer. The
+ * default is on. The facts are not filtered while they are kept in the prover's context (see
+ * {@link #useFactContext(boolean)}), since the context holds all of them. See
+ * {@link FactRelevanceFilter}
+ * @param isOn should the facts be filtered? */
+static void useRelevantFacts(boolean isOn) {
+  isUsingRelevantFacts = isOn;
+}
+
+/** Absorb the ground equalities and disequalities among the statement and the facts into classes
+ * of equal terms before the prover sees them, so that a contradiction among them is found without
+ * a search, and the prover works on the rest of the formula with one term for each class. The
+ * default is on. Like {@link #useRelevantFacts(boolean)}, this is not done while the facts are kept
+ * in the prover's context. See {@link CongruenceClosure}
+ * @param isOn should the equalities be absorbed? */
+static void useEqualityClosure(boolean isOn) {
+  isUsingEqualityClosure = isOn;
+}
+
+/** Decide the linear arithmetic among the statement and the facts before the prover sees them, so
+ * that, e.g., <code>'x' < 'y'</code> and <code>'y' < 'x'</code> are found to contradict each other,
+ * which the tableau cannot find since it knows nothing of numbers. The default is on. Like
+ * {@link #useRelevantFacts(boolean)}, this is not done while the facts are kept in the prover's
+ * context. See {@link LinearArithmetic}
+ * @param isOn should the arithmetic be decided? */
+static void useArithmetic(boolean isOn) {
+  isUsingArithmetic = isOn;
+}
+
+/** Decide a statement conjoined with facts that has no <code>all</code> or <code>ex</code> by the
+ * {@link SatSolver}, which learns from each failed assignment of its atoms, instead of by the
+ * tableau, which branches on every disjunction. The prover still gets each formula with a
+ * quantifier, and each one that the solver gives up on. The default is on. Like
+ * {@link #useRelevantFacts(boolean)}, this is not done while the facts are kept in the prover's
+ * context.
+ * @param isOn should ground formulas be decided without the prover? */
+static void useSatSolver(boolean isOn) {
+  isUsingSatSolver = isOn;
+}
+
+/** Before a formula with quantifiers goes to the prover, instantiate each universal formula for
+ * the ground terms that match its triggers, and decide the instances with the ground part of the
+ * formula by the {@link SatSolver}. A contradiction among them is a proof; otherwise the prover
+ * still gets the whole formula. The default is on, but it needs {@link #useSatSolver(boolean)}.
+ * See {@link TriggerInstantiation}
+ * @param isOn should quantified formulas be instantiated by their triggers? */
+static void useTriggers(boolean isOn) {
+  isUsingTriggers = isOn;
+}
+
+/** The provers that can check the consistency of a statement with the facts. */
+enum Prover {
+  /** etleantap.pl and nnf.pl, interpreted by tuProlog */
+  prolog,
+  /** the {@link TableauProver}, which follows etleantap.pl and nnf.pl in Java */
+  java,
+  /** both provers, reporting any statement where they disagree and using the Prolog result */
+  crossCheck
+}
+
+/** Choose the prover that checks consistency. The default is {@link Prover#prolog}.
+ * @param chosen the prover for every following check */
+static void useProver(Prover chosen) {
+  prover = chosen;
+}
+
+/** Set the budget of every proof whose KnowledgeBase does not set its own. The default is
+ * {@link ProverBudget#unlimited}.
+ * @param chosen the most time and the most inference steps for each proof */
+static void setDefaultProverBudget(ProverBudget chosen) {
+  defaultBudget = chosen;
+}
+
+static ProverBudget defaultProverBudget() { return defaultBudget; }
+
+/** Choose the limits that each proof tries in turn, until one of them decides it. The default is
+ * {@link ProverLimits#defaultSchedule}. See {@link ProverLimits}
+ * @param schedule the limits, smallest first; not empty */
+static void setProverLimitSchedule(List<ProverLimits> schedule) {
+  if (schedule.isEmpty())
+    throw new IllegalArgumentException("The prover needs at least one set of limits");
+  limitSchedule = List.copyOf(schedule);
+}
+
+/** Keep the limits that decided each proof in the directory, so that later compiles start their
+ * proofs at those limits. Without a directory, they are kept only for this compile.
+ * @param directory where the limits are kept, usually the directory of the proof cache, or null */
+static void useLearnedLimits(@Nullable Path directory) {
+  learnedLimits = new LearnedLimits(directory);
+}
+
+/** Set the budget for the proofs of this KnowledgeBase and of its children, e.g., for the proofs of
+ * one method.
+ * @param chosen the most time and the most inference steps for each proof, or null to use the
+ *               budget of the parent KnowledgeBase again */
+void setProverBudget(@Nullable ProverBudget chosen) {
+  budget = chosen;
+}
+
+/** Write what the prover says during a proof of this KnowledgeBase or of its children that does not
+ * come out as hoped, i.e., a statement that is not proven or a fact that is not consistent, e.g.,
+ * into the output of a compile unit, so that the output of units compiled at the same time does
+ * not interleave. The default is the standard output.
+ * @param output takes the prover's output, and may be called from several threads at once; or
+ *               null to write where the parent KnowledgeBase does again */
+void setProverOutput(@Nullable Consumer<String> output) {
+  proverOutput = output;
+}
+
+/** Where the prover's output of this KnowledgeBase is written: its own, or else that of its nearest
+ * ancestor that has one, or else the standard output. */
+private Consumer<String> proverOutput() {
+  for (@Nullable KnowledgeBase kb = this; kb != null; kb = kb.parentKB) {
+    final @Nullable Consumer<String> own = kb.proverOutput;
+    if (own != null)
+      return own;
+  }
+  return standardOutput;
+}
+
+/** The budget of each proof of this KnowledgeBase: its own, or else that of its nearest ancestor
+ * that has one, or else the default. */
+ProverBudget proverBudget() {
+  for (@Nullable KnowledgeBase kb = this; kb != null; kb = kb.parentKB) {
+    final @Nullable ProverBudget own = kb.budget;
+    if (own != null)
+      return own;
+  }
+  return defaultBudget;
+}
+
+/** Set the most prover engines that may run at once. Each engine holds its own copy of the prover
+ * theory, so each one costs both the time to load the theory and the memory to hold it. The
+ * default is the number of available processors.
+ * @param count the most proofs that may run at the same time */
+static synchronized void setProverEngineLimit(int count) {
+  engineLimit = count;
+  engines.setMaxEngines(count);
+  final @Nullable ProverEnginePool instrumented = instrumentedEngines;
+  if (instrumented != null)
+    instrumented.setMaxEngines(count);
+}
+
+/** The most prover engines that may run at once. See {@link #setProverEngineLimit(int)} */
+static synchronized int proverEngineLimit() {
+  return engineLimit;
+}
+
+/** Print what the prover and its engines are doing, and run every Prolog proof on the instrumented
+ * theory so that the prover's own debugging goals can be turned on. The default is off, when the
+ * proofs run on the production theory, whose debugging goals were taken out by the build. The
+ * proofs of a knowledge base in {@link SolverInTestMode#on} always run on the instrumented theory.
+ * @param isOn should the prover be debugged? */
+static void debugProver(boolean isOn) {
+  isDebugging = isOn;
+}
+
+/** The pool of engines loaded with the instrumented theory, created on first use. */
+private static ProverEnginePool instrumentedEngines() {
+  @Nullable ProverEnginePool instrumented = instrumentedEngines;
+  if (instrumented == null) {
+    synchronized (KnowledgeBase.class) {
+      instrumented = instrumentedEngines;
+      if (instrumented == null) {
+        instrumented = createEnginePool(false);
+        instrumented.setMaxEngines(engineLimit);
+        instrumentedEngines = instrumented;
+      }
+    }
   }
+  return instrumented;
+}
 
 //@formatter:off
 private ConsistencyResult prologConsistencyResult(SolveInfo solutionInfo) {
@@ -482,6 +1134,16 @@ private ConsistencyResult prologConsistencyResult(SolveInfo solutionInfo) {
   }
 } // @formatter:on
 
+/** The limits that decided the result of the prover. */
+private static ProverLimits prologDecidedLimits(SolveInfo solutionInfo) {
+  try {
+    return ProverLimits.from(solutionInfo.getTerm(prologDecidedLimits));
+  } catch (NoSolutionException | UnknownVarException e) {
+    throw new RuntimeException("Mismatch with prover code in etleantap.pl. Expected variable "
+                              +"'"+ prologDecidedLimits +"'", e);
+  }
+}
+
 @SuppressWarnings("serial")
 private class InvalidResultFromProverException extends RuntimeException {
 InvalidResultFromProverException(String resultState) {
@@ -489,87 +1151,324 @@ InvalidResultFromProverException(String resultState) {
   }
 }
 
-private SolveInfo checkForConsistency(String testString) {
-  SolveInfo info;
-  try {
-    info = engine.solve(Term.createTerm(prologCommand(testString), engine.getOperatorManager()));
-  } catch (InvalidTermException iTE) {
-    throw iTE;
-  }
+/** Run the chosen prover on the statement conjoined with the facts, starting at the limits that
+ * last decided the statement. See {@link #useProver(Prover)}
+ * @param inContext should the Prolog prover hold the facts in its context? */
+private ProverLimits.Outcome checkForConsistency(String statement, Conjunction facts,
+                                                 boolean inContext) {
+  final List<ProverLimits> schedule = learnedLimits.scheduleFor(statement, limitSchedule);
+  final Conjunction relevantFacts = (isUsingRelevantFacts && ! inContext)
+                                    ? facts.relevantTo(engines.parse(statement))
+                                    : facts;
+  ProverLimits.Outcome outcome = checkWithChosenProver(statement, relevantFacts, schedule, inContext);
+  if (outcome.result == ConsistencyResult.consistent && relevantFacts != facts) // a fact left out
+    outcome = checkWithChosenProver(statement, facts, schedule, inContext);   // may be needed
+  if (outcome.result != ConsistencyResult.reachedLimit)
+    learnedLimits.learn(statement, outcome.limits);
+  return outcome;
+}
 
-  if (testMode == SolverInTestMode.on) {
-    System.out.println("\nIN TEST MODE: Attempting to prove: "+ testString);
-    System.out.println(info.toString().replace('\n', ' ')+"\n");
+/** Run the chosen prover on the statement conjoined with the facts, first absorbing their ground
+ * equalities and deciding their arithmetic when those are chosen, and deciding the whole formula
+ * without the prover when it is ground or when the trigger instances of its quantified formulas
+ * contradict it. See {@link #useEqualityClosure(boolean)}, {@link #useArithmetic(boolean)},
+ * {@link #useSatSolver(boolean)} and {@link #useTriggers(boolean)} */
+private ProverLimits.Outcome checkWithChosenProver(String statement, Conjunction facts,
+                                                   List<ProverLimits> schedule, boolean inContext) {
+  final Term formula = engines.parse(statement);
+  final Term whole = conjoin(formula, facts.term());
+  @Nullable Term residual = null; // the whole formula, with its equalities absorbed
+  if (isUsingEqualityClosure && ! isUsingFactContext) {
+    residual = CongruenceClosure.residual(whole);
+    if (residual == null)
+      return new ProverLimits.Outcome(ConsistencyResult.inconsistent, schedule.get(0));
   }
-  return info;
+  // The arithmetic reads the whole formula, since the residual drops an equality of two atoms,
+  // such as 'y' = 2, once it has absorbed it.
+  if ( isUsingArithmetic && ! isUsingFactContext
+    && LinearArithmetic.refutes(whole, this::numericTypeOf))
+    return new ProverLimits.Outcome(ConsistencyResult.inconsistent, schedule.get(0));
+  if (isUsingSatSolver && ! isUsingFactContext) {
+    final @Nullable ConsistencyResult decided
+        = SatSolver.check(whole, this::numericTypeOf, isUsingEqualityClosure, isUsingArithmetic);
+    if (decided != null)
+      return new ProverLimits.Outcome(decided, schedule.get(0));
+    final @Nullable Term instances = isUsingTriggers ? TriggerInstantiation.instances(whole) : null;
+    if ( instances != null
+      && SatSolver.check(instances, this::numericTypeOf, isUsingEqualityClosure, isUsingArithmetic)
+         == ConsistencyResult.inconsistent)
+      return new ProverLimits.Outcome(ConsistencyResult.inconsistent, schedule.get(0));
+  }
+  switch (prover) {
+  case java:
+    return checkWithTableauProver(statement, proverFormula(formula, residual, facts), schedule);
+  case crossCheck:
+    final ProverTerm javaFormula = proverFormula(formula, residual, facts); // before Prolog binds it
+    final ProverLimits.Outcome outcome = checkWithProlog(statement, formula, residual, facts, schedule, inContext);
+    final ConsistencyResult javaResult = checkWithTableauProver(statement, javaFormula, schedule).result;
+    if (javaResult != outcome.result)
+      System.out.println("\nWARNING: The provers disagree. The Prolog prover found "+ outcome.result
+                         +" and the Java prover found "+ javaResult +" for: "
+                         + parenthesized(statement) + and + conjoinedFacts());
+    return outcome;
+  default:
+    return checkWithProlog(statement, formula, residual, facts, schedule, inContext);
+  }
+}
+
+/** The formula for the {@link TableauProver}: the residual formula, or else the statement conjoined
+ * with the facts, which are converted only once when they are ground. */
+private static ProverTerm proverFormula(Term formula, @Nullable Term residual, Conjunction facts) {
+  if (residual != null)
+    return ProverTerm.from(residual);
+  return new ProverTerm.Struct(ProverTerm.and, ProverTerm.from(formula), facts.proverTerm());
 }
 
-private String prologCommand(String formula) {
-  String command = "nnf( ("+ formula +"), NNF ), runProver(NNF, "+ prologConsistencyResult +")";
+/** Run the {@link TableauProver} on the formula, which is the statement conjoined with the facts.
+ * The facts are given in full even when the Prolog prover would hold them in its context. */
+private ProverLimits.Outcome checkWithTableauProver(String statement, ProverTerm formula,
+                                                    List<ProverLimits> schedule) {
+  final ProverLimits.Outcome outcome = TableauProver.check(formula, proverBudget(), schedule);
   if (testMode == SolverInTestMode.on)
-    command = "db_start_debugging, "+ command;
-  return command;
+    System.out.println("\nIN TEST MODE: Java prover found "+ outcome.result +" at limits "
+                       + outcome.limits +" for: "
+                       + parenthesized(statement) + and + conjoinedFacts() +"\n");
+  return outcome;
 }
 
-/** NOT YET IMPLEMENTED.
- * For an inconsistent statement, returns an inconsistent fact. The fact may not directly
- * contradict the statement, but instead be part of a set of statements that together form the
- * contradiction. And there may be additional ways that the facts contradict the statement; this
- * method returns only one.
- * @param statement
- * @return one of the facts that is involved in the inconsistency with the statement
- *
- * @throws NotYetImplementedException This method has not been implemented. Do not use it. This
- *                                    exception will make you gum up your code if you try to use
- *                                    this method. The exception will be removed when the method is
- *                                    implemented.
+/** Run the Prolog prover on the statement conjoined with the facts, with an engine leased for the
+ * length of the proof. When the facts are kept in the prover's context, only the facts that the engine
+ * does not already hold are sent to it, and an engine that holds the enclosing facts is preferred.
+ * @param formula   the parsed statement
+ * @param residual  the statement conjoined with the facts, with its equalities absorbed, or null to
+ *                  conjoin the facts with the statement here
+ * @param inContext should the engine hold the facts in its context? */
+private ProverLimits.Outcome checkWithProlog(String statement, Term formula, @Nullable Term residual,
+                                             Conjunction facts, List<ProverLimits> schedule,
+                                             boolean inContext) {
+  final boolean isTracing = testMode == SolverInTestMode.on;
+  final ProverBudget proofBudget = proverBudget();
+  final List<Conjunction> chain = inContext ? facts.chain() : List.of();
+  final boolean isEchoing = isTracing || isDebugging;
+  final ProverEnginePool pool = isEchoing ? instrumentedEngines() : engines;
+  return pool.withEngine(engine -> holdsContextOf(engine, chain), engine -> {
+    final Prolog prolog = engine.prolog;
+    if (isEchoing)
+      engine.output.echoTo(System.out);
+    try {
+      final Term command;
+      if (inContext) {
+        synchronizeContext(engine, chain);
+        command = prologCommand(formula, chain.stream().anyMatch(c -> ! c.ownFacts.isEmpty()),
+                                proofBudget, schedule);
+      } else {
+        command = prologCommand((residual != null) ? residual : conjoin(formula, facts.term()),
+                                false, proofBudget, schedule);
+      }
+      final @Nullable SolveInfo info = engine.solve(command, proofBudget);
+      if (isTracing) {
+        System.out.println("\nIN TEST MODE: Attempting to prove: "
+                           + parenthesized(statement) + and + conjoinedFacts());
+        System.out.println((info == null) ? "Halted after "+ proofBudget.timeLimitMillis +" ms\n"
+                                          : info.toString().replace('\n', ' ')+"\n");
+        prolog.solve(new Struct("db_stop_debugging")); // so the next lease of this engine is quiet
+      }
+      // What the prover said is taken before the engine goes back to the pool, and written only
+      // if the caller did not hope for this result. See reportedResult(Outcome, ConsistencyResult)
+      return (info == null) ? new ProverLimits.Outcome(ConsistencyResult.reachedLimit,
+                                                       schedule.get(schedule.size() - 1),
+                                                       engine.output.drain())
+                            : new ProverLimits.Outcome(prologConsistencyResult(info),
+                                                       prologDecidedLimits(info),
+                                                       engine.output.drain());
+    } catch (RuntimeException e) {
+      final String said = engine.output.drain();
+      if ( ! said.isEmpty())
+        proverOutput().accept(said);
+      throw e;
+    }
+  });
+}
 
- */
-/* Implementation note:
- * For an inconsistent statement, try removing all facts cumulatively, one-by-one. Once a consistent
- * result is found, report the last promise removed as "involved in an inconsistency" with the
- * statement. More elaborate schemes might add back all the other facts to see if the found fact
- * alone contradicted the statement or if the contradiction involved a set of statements. The above
- * removal process could be repeated to find another fact involved and repeat until the remaining
- * facts did not contradict. Then a report could list all the statements that could
- * not be added back as the contradicting set of statements. It is an empirical question whether
- * only one fact would normally be involved, or whether reporting it to the programmer would be
- * useful, or whether, when several facts are involved, reporting one fact or the full set of facts
- * that contradict the statement would be useful.
- * OR
- * could we test eliminating one fact at a time, non-cumulatively, working with the most recent
- * facts first, to find the most recent fact that is involved in a contradiction? Are there
- * possible contradictions where no single statement is sufficient?
- * SURE
- * For a simple case, there may be multiple individual contradicting statements.
- *
- * We might provide another method that returns all sets of contradicting statements for complicated
- * situations, but that's a lot of work for something that we don't even know is useful.
- */
-@SuppressWarnings("unused") // for the NotYetImplementedException
-public String findInconsistentFact(String statement) throws NotYetImplementedException {
-  if (false)
-    throw new NotYetImplementedException("The method findInconsistentFact has not been implemented");
-  else
-    System.exit(0);
-  return "ERROR IN " + statement;
+/** Does the engine already hold the facts of the enclosing scopes in its context? For a chain of
+ * one conjunction, does it hold that conjunction or an earlier version of it? */
+private static boolean holdsContextOf(ProverEnginePool.ProverEngine engine, List<Conjunction> chain) {
+  if (chain.isEmpty())
+    return true;
+  final List<Conjunction> frames = engine.contextFrames;
+  final int enclosing = chain.size() - 1;
+  if (enclosing == 0)
+    return ! frames.isEmpty() && chain.get(0).extendsFacts(frames.get(0));
+  return frames.size() >= enclosing && frames.get(enclosing - 1) == chain.get(enclosing - 1);
+}
+
+/** Bring the facts held in the engine's context into line with the chain of conjunctions,
+ * retracting and asserting only the frames that differ. A frame whose conjunction has only gained
+ * facts since it was asserted keeps its old facts and has just the new ones asserted. The facts
+ * are asserted oldest first, each frame after the frames that enclose it, so that the prover sees
+ * the most recent facts first, as it does in {@link Conjunction#term()}. */
+private static void synchronizeContext(ProverEnginePool.ProverEngine engine, List<Conjunction> chain) {
+  final List<Conjunction> frames = engine.contextFrames;
+  final Prolog prolog = engine.prolog;
+  int depth = 0;
+  while (depth < frames.size() && depth < chain.size() && frames.get(depth) == chain.get(depth))
+    depth++;
+  final boolean canExtend = depth < frames.size() && depth < chain.size()
+                            && chain.get(depth).extendsFacts(frames.get(depth));
+  retractFrames(prolog, frames, canExtend ? depth + 1 : depth);
+  if (canExtend) {
+    assertFacts(prolog, depth, chain.get(depth).factsAddedSince(frames.get(depth)));
+    frames.set(depth, chain.get(depth));
+    depth++;
+  }
+  for ( ; depth < chain.size(); depth++) {
+    assertFacts(prolog, depth, chain.get(depth).ownFacts);
+    frames.add(chain.get(depth));
+  }
+}
+
+private static void retractFrames(Prolog prolog, List<Conjunction> frames, int fromDepth) {
+  for (int depth = frames.size() - 1; depth >= fromDepth; depth--) {
+    prolog.solve(new Struct("kb_retract_frame", new Int(depth)));
+    frames.remove(depth);
+  }
 }
 
-/** This method has not been implemented. Do not use it.
+private static void assertFacts(Prolog prolog, int depth, List<Fact> mostRecentFirst) {
+  for (int i = mostRecentFirst.size() - 1; i >= 0; i--) {
+    final Fact fact = mostRecentFirst.get(i);
+    if ( ! prolog.solve(new Struct("kb_assume", new Int(depth), fact.term())).isSuccess())
+      throw new RuntimeException("The prover was unable to normalize the fact: "+ fact.text);
+  }
+}
+
+/** The goal <code>set_step_budget(Steps), nnf(Formula, NNF),
+ * runProver(NNF, Schedule, ConsistencyResult, DecidedLimits)</code>, preceded by
+ * <code>db_start_debugging</code> in test mode. When the facts are held in the prover's context,
+ * the goal uses <code>runProverWithContext</code>, which conjoins them with the formula.
+ * @param formula      the formula to be checked, which includes the facts unless they are held in
+ *                     the context
+ * @param usingContext should the facts held in the context be conjoined with the formula?
+ * @param budget       gives the most inference steps that the proof may take
+ * @param schedule     the limits to try in turn */
+private Term prologCommand(Term formula, boolean usingContext, ProverBudget budget,
+                           List<ProverLimits> schedule) {
+  final Var nnf = new Var("NNF");
+  final String prover = usingContext ? "runProverWithContext" : "runProver";
+  final Term steps = budget.hasStepLimit() ? new alice.tuprolog.Long(budget.stepLimit)
+                                           : new Struct("none");
+  Term command = new Struct(",", new Struct("set_step_budget", steps),
+                            new Struct(",", new Struct("nnf", formula, nnf),
+                                            new Struct(prover, nnf, ProverLimits.term(schedule),
+                                                       new Var(prologConsistencyResult),
+                                                       new Var(prologDecidedLimits))));
+  if (testMode == SolverInTestMode.on)
+    command = new Struct(",", new Struct("db_start_debugging"), command);
+  return command;
+}
+
+/** Find a smallest set of the facts, of this KnowledgeBase and its ancestors, that the statement is
+ * inconsistent with, so that a programmer can be shown which facts a statement conflicts with
+ * instead of bisecting a large method by hand. The set is minimal: the statement is consistent with
+ * it less any one of its facts. There may be other such sets, and only one of them is found.
  * <p>
- * This exception will make you gum up your code if you try to use a method that includes it.
- */
-@SuppressWarnings("serial")
-public class NotYetImplementedException extends Exception {
-  NotYetImplementedException(String message) {super(message);}
+ * The search is the divide and conquer of QuickXplain, so the number of consistency checks grows
+ * with the size of the set times the logarithm of the number of facts. While one check runs, the
+ * check that the search needs next, if it succeeds, is started on another prover engine. A check
+ * that reaches the prover's limits counts as consistent, so the facts found are always enough to
+ * show the inconsistency.
+ * @param statement a statement that is inconsistent with the facts
+ * @return the facts of the set, most recent first, or an empty list when the statement is
+ *         inconsistent by itself or is not shown to be inconsistent with all of the facts */
+public List<String> findInconsistentFacts(String statement) {
+  final List<Fact> all = new ArrayList<>();
+  for (@Nullable KnowledgeBase kb = this; kb != null; kb = kb.parentKB)
+    all.addAll(kb.facts);
+  final ConflictSearch search = new ConflictSearch(statement, all);
+  try {
+    search.start(List.of());
+    if ( ! search.isInconsistent(all) || search.isInconsistent(List.of()))
+      return List.of();
+    final Set<Fact> conflict = Set.copyOf(search.conflict(List.of(), false, all));
+    return all.stream().filter(conflict::contains).map(fact -> fact.text)
+              .collect(Collectors.toList());
+  } finally {
+    search.cancel();
+  }
 }
 
-private ArrayDeque<String> saveState() {
+/** The QuickXplain search of {@link #findInconsistentFacts(String)}. Each check of the statement
+ * with a set of facts runs on the {@link #batchProver} and is kept by its set of facts, so a check
+ * is never run twice, and one that was started early is only waited for. The sets are always kept
+ * in the order of the facts, so that equal sets are found to be equal. */
+private final class ConflictSearch {
+  private final String statement;
+  private final List<Fact> facts;
+  private final Map<List<Fact>, Future<Boolean>> checks = new ConcurrentHashMap<>();
+
+  ConflictSearch(String statement, List<Fact> facts) {
+    this.statement = statement;
+    this.facts = facts;
+  }
+
+  /** Start checking the statement with the facts, unless it has already been started. */
+  Future<Boolean> start(List<Fact> chosen) {
+    return checks.computeIfAbsent(chosen, c -> batchProver.submit(() ->
+               checkForConsistency(statement, new Conjunction(c, null), false).result
+                   == ConsistencyResult.inconsistent));
+  }
+
+  boolean isInconsistent(List<Fact> chosen) {
+    return resultOf(start(chosen));
+  }
+
+  /**
+   * A minimal set of the candidates that, with the background facts, is inconsistent with the
+   * statement. When facts were just added to the background and it is already inconsistent, none
+   * of the candidates is needed. Otherwise the second half of the candidates is searched with the
+   * first half added to the background, and then the first half is searched with what was found in
+   * the second half added instead.
+   * @param isAdded were facts added to the background since it was last checked? */
+  List<Fact> conflict(List<Fact> background, boolean isAdded, List<Fact> candidates) {
+    final int half = candidates.size() / 2;
+    final List<Fact> first = candidates.subList(0, half);
+    final List<Fact> second = candidates.subList(half, candidates.size());
+    if (isAdded) {
+      if (half > 0)
+        start(union(background, first)); // the next check, if this one finds no inconsistency
+      if (isInconsistent(background))
+        return List.of();
+    }
+    if (half == 0)
+      return candidates;
+    final List<Fact> inSecond = conflict(union(background, first), true, second);
+    final List<Fact> inFirst = conflict(union(background, inSecond), ! inSecond.isEmpty(), first);
+    return union(inFirst, inSecond);
+  }
+
+  /** The facts of both sets, in the order of the facts. */
+  private List<Fact> union(List<Fact> some, List<Fact> others) {
+    final Set<Fact> either = Set.copyOf(some);
+    final List<Fact> result = new ArrayList<>();
+    for (Fact fact : facts)
+      if (either.contains(fact) || others.contains(fact))
+        result.add(fact);
+    return result;
+  }
+
+  void cancel() {
+    for (Future<Boolean> check : checks.values())
+      check.cancel(true);
+  }
+}
+
+private ArrayDeque<Fact> saveState() {
   return facts.clone();
 }
 
-private void restoreState(ArrayDeque<String> deque) {
+private void restoreState(ArrayDeque<Fact> deque) {
   facts = deque;
+  conjunction = null;
 }
 
 /**
@@ -586,7 +1485,8 @@ String conjoinedFacts() {
   String theseFacts = hasFacts()
                         //TODO: facts.stream().map(fact -> parenthesized(fact))
                         //                    .Collectors.joining(" ,");
-                        ? parenthesized(facts.stream().collect(Collectors.joining(andWithParens)))
+                        ? parenthesized(facts.stream().map(fact -> fact.text)
+                                                      .collect(Collectors.joining(andWithParens)))
                         : "true";
   String contextFacts = hasParent() ? parentKB.conjoinedFacts() : "true";
   return theseFacts + and + contextFacts;
@@ -607,122 +1507,32 @@ private static String parenthesized(String s) {
   return "("+ s +")";
 }
 
-static private Prolog createPrologEngine() {
-  ensurePrologEngine();
-  setTheories();
-  return engine;
-}
-
-static private void ensurePrologEngine() {
-  if (engine == null) {
-    final String[] libs = {"alice.tuprolog.lib.BasicLibrary"
-                          ,"alice.tuprolog.lib.ISOLibrary"
-                          ,"alice.tuprolog.lib.IOLibrary"
-                          ,"alice.tuprolog.lib.ISOIOLibrary"
-                              // ISOIOLibrary overrides some IOLibrary predicates
-                          ,"alice.tuprolog.lib.OOLibrary"
-                          ,"alice.tuprolog.lib.ThreadLibrary"
-                          };
-//    final String[] libs = {"alice.tuprolog.lib.BasicLibrary"
-//                           ,"alice.tuprolog.lib.ISOLibrary"
-//                           ,"alice.tuprolog.lib.IOLibrary"
-//                           ,"alice.tuprolog.lib.ISOIOLibrary"
-//                              // ISOIOLibrary overrides some IOLibrary predicates
-//                           ,"alice.tuprolog.lib.OOLibrary"
-//                           ,"alice.tuprolog.lib.ThreadLibrary"
-//                           };
-    try {
-      engine = new Prolog(libs);
-//      OOLibrary lib = (OOLibrary)engine.getLibrary("alice.tuprolog.lib.OOLibrary");
-//      lib.register(new Struct("stdout"), System.out);
-    } catch (InvalidLibraryException e) { //(InvalidLibraryException | InvalidObjectIdException e) {
-      e.printStackTrace();
-    }
-    engine.addOutputListener(  new OutputListener()
-      { @Override
-      public void onOutput(@Nullable OutputEvent e) {
-          postToStdOut("\n"+ e.getMsg(), isDebugging);
-        }
-      }
-    );
-    engine.addExceptionListener(new ExceptionListener()
-      { @Override
-      public void onException(@Nullable ExceptionEvent e) {
-          postToStdOut("\n***** EXCEPTION: "+ e.getMsg(), isDebugging);
-        }
-      }
-    );
-    engine.addWarningListener(new WarningListener()
-      { @Override
-      public void onWarning(@Nullable WarningEvent e) {
-          postToStdOut("\n"+ e.getMsg(), isDebugging);
-        }
-      }
-    );
-  }
-}
-
-static private void postToStdOut(String msg, boolean... shouldPostToSysout) {
-//  System.out.println("RUNNING METHOD postToStdOut( <"+ msg +">, "+ shouldPostToSysout[0] +")");
-  prologStdOut = prologStdOut + msg;
-//  if (shouldPostToSysout.length > 0 && shouldPostToSysout[0] == true)
-    System.out.print(msg);
-}
-
-private static void setTheories() {
+/** The pool of prover engines, each of which is loaded with the theory files. They are taken from
+ * the classpath, where the build also leaves a {@link ProverTheorySnapshot} of them, or else from
+ * {@value #relativePrologDir} when the compiler is run without its built resources.
+ * @param isProduction should the debugging goals be taken out of the theory? */
+private static ProverEnginePool createEnginePool(boolean isProduction) {
+  final int processors = Runtime.getRuntime().availableProcessors();
   try {
-    setAFileTheory(new File(relativePrologDir +"mydebug.prolog"));
-    addAFileTheory(new File(relativePrologDir +"nnf.pl"));
-    addAFileTheory(new File(relativePrologDir +"etleantap.pl"));
-//    addAFileTheory(new File(relativePrologDir +"tLangProof.prolog"));
-  } catch (InvalidTheoryException theoryException) {
-    theoryException.printStackTrace();
+    final @Nullable ProverEnginePool packaged
+        = ProverEnginePool.fromClasspath(processors, prologResourceDir, theoryNames, isProduction);
+    if (packaged != null)
+      return packaged;
+    final List<File> theoryFiles = new ArrayList<>();
+    for (String name : theoryNames)
+      theoryFiles.add(new File(relativePrologDir + name));
+    return ProverEnginePool.fromFiles(processors, theoryFiles, isProduction);
   } catch (IOException io) {
     String relativePathName = Paths.get(relativeDir).toAbsolutePath().toString();
     System.out.println("\nThe execution environment pathname is "+ relativePathName);
     String relativePrologPath = Paths.get(relativePrologDir).toAbsolutePath().toString();
     System.out.println("\nThe pathname to Prolog code is "+ relativePrologPath);
     io.printStackTrace();
-  }
-}
-
-private static void addAFileTheory(File thFile) throws IOException, InvalidTheoryException {
-  //todo: see setAFileTheory()
-  theory = new Theory(new FileInputStream(thFile));
-  addATheory(theory, thFile);
-}
-
-private static void setAFileTheory(File thFile)
-      throws IOException, InvalidTheoryException {
-  //todo: set directory to make finding the file easier
-  // System.out.println("Current User Directory: "+ System.getProperty("user.dir"));
-  theory = new Theory(new FileInputStream(thFile));
-  setATheory(theory, thFile);
-}
-
-private static void addATheory(Theory th, File thFile) throws InvalidTheoryException {
-  ensurePrologEngine();
-  try {
-    engine.addTheory(th);
-  } catch (InvalidTheoryException e) {
-    throw improveMsg(thFile, e);
-  }
-}
-
-//TODO: Point to previous exception in the new exception
-private static InvalidTheoryException improveMsg(File thFile, InvalidTheoryException e) {
-  final String msg = "at "+ thFile.getName() +" line "+ e.line +":"+ (1+e.pos) +" - "
-      + e.getLocalizedMessage();
-  return new InvalidTheoryException(msg);
-}
-
-private static void setATheory(Theory th, File thFile) throws InvalidTheoryException {
-  prologStdOut = "";
-  ensurePrologEngine();
-  try {
-    engine.setTheory(th);
-  } catch (InvalidTheoryException e) {
-    throw improveMsg(thFile, e);
+    try {
+      return new ProverEnginePool(processors, List.of());
+    } catch (IOException impossible) {
+      throw new RuntimeException("Impossible Error - no theory file was read", impossible);
+    }
   }
 }
 
@@ -733,10 +1543,10 @@ public boolean equals(KnowledgeBase otherKB) {
   if (this.parentKB != otherKB.parentKB || this.facts.size() != otherKB.facts.size())
     return false;
 
-  String[] thisFacts = this.facts.toArray(new @NonNull String[this.facts.size()]);
-  String[] otherFacts = otherKB.facts.toArray(new @NonNull String[otherKB.facts.size()]);
+  Fact[] thisFacts = this.facts.toArray(new @NonNull Fact[this.facts.size()]);
+  Fact[] otherFacts = otherKB.facts.toArray(new @NonNull Fact[otherKB.facts.size()]);
   for (int i = 0; i < thisFacts.length; i++)
-    if (thisFacts[i] != otherFacts[i])
+    if (thisFacts[i].text != otherFacts[i].text)
       return false;
 
   return true;
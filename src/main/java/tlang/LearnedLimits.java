@@ -0,0 +1,115 @@
+package tlang;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The prover limits that last decided the proof at each site, so that the next proof at that site,
+ * in this compile or a later one, starts its iterative deepening at those limits instead of at the
+ * smallest limits of the schedule. See {@link ProverLimits}
+ * <p>
+ * A site is identified by the text of the statement that is checked, normalized as the
+ * {@link ProofCache} normalizes it, rather than by its line, so that what was learned is kept when
+ * an edit only moves the statement.
+ *
+ * @implNote The limits are kept in memory and, when a directory is given, in a text file in that
+ *           directory, usually beside the proof cache. Each line holds the hash of a site and the
+ *           limits that decided it, and a later line for a site replaces an earlier one. New limits
+ *           are appended as they are learned.
+ */
+final class LearnedLimits {
+
+private static final String fileName = "learnedLimits.txt";
+
+private final @Nullable Path file;
+private final Map<String, ProverLimits> limits = new ConcurrentHashMap<>();
+private boolean isLoaded = false;
+
+/** @param directory where the limits are kept from one compile to the next, or null to keep them
+ *                   only in memory */
+LearnedLimits(@Nullable Path directory) {
+  this.file = (directory == null) ? null : directory.resolve(fileName);
+}
+
+/** The part of the schedule that a proof at the site should try: all of it, or the rest of it from
+ * the limits that last decided a proof at the site. */
+List<ProverLimits> scheduleFor(String site, List<ProverLimits> schedule) {
+  ensureLoaded();
+  final @Nullable ProverLimits learned = limits.get(key(site));
+  final int start = (learned == null) ? -1 : schedule.indexOf(learned);
+  return (start <= 0) ? schedule : notNull(schedule.subList(start, schedule.size()));
+}
+
+/** Remember the limits that decided the proof at the site. A failure to write the file only costs
+ * the benefit in later compiles, so it is reported and otherwise ignored. */
+void learn(String site, ProverLimits decided) {
+  ensureLoaded();
+  final String key = key(site);
+  if (decided.equals(limits.put(key, decided)))
+    return;
+  final @Nullable Path path = file;
+  if (path == null)
+    return;
+  synchronized (this) {
+    try {
+      TUtil.ensureDirExists(notNull(path.getParent()).toString());
+      try (BufferedWriter writer = Files.newBufferedWriter( path, StandardCharsets.UTF_8
+                                                          , StandardOpenOption.CREATE
+                                                          , StandardOpenOption.APPEND)) {
+        writer.write(key +" "+ decided +"\n");
+      }
+    } catch (IOException e) {
+      System.out.println("Unable to record the prover limits in "+ path +": "+ e.getMessage());
+    }
+  }
+}
+
+/** Read the limits learned in earlier compiles, ignoring any line that cannot be understood. */
+private synchronized void ensureLoaded() {
+  if (isLoaded)
+    return;
+  isLoaded = true;
+  final @Nullable Path path = file;
+  if (path == null || Files.notExists(path))
+    return;
+  try {
+    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+      final int space = line.indexOf(' ');
+      if (space > 0) {
+        try {
+          limits.put(notNull(line.substring(0, space)), ProverLimits.parse(line.substring(space + 1)));
+        } catch (IllegalArgumentException ignored) { /* e.g., a line that was cut short */ }
+      }
+    }
+  } catch (IOException e) {
+    limits.clear();
+  }
+}
+
+private static String key(String site) {
+  return ProofCache.sha256(ProofCache.normalized(site));
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class LearnedLimits
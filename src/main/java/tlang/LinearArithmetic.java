@@ -0,0 +1,678 @@
+package tlang;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+
+/**
+ * Decides the linear arithmetic among the conjuncts of a formula, which the tableau cannot do since
+ * it treats <code>+</code>, <code>&lt;</code> and <code>=&lt;</code> as uninterpreted symbols. The
+ * ground relations <code>=</code>, <code>&lt;</code>, <code>=&lt;</code>, <code>&gt;</code> and
+ * <code>&gt;=</code> at the top of the formula, and their negations, are read as linear
+ * constraints over the value names, and the constraints are checked by the simplex method in exact
+ * rational arithmetic. When the constraints have no solution, the formula is inconsistent.
+ * <p>
+ * A value name whose variable has an integral type (see {@link KnowledgeBase#assumeType(String,
+ * String)}) must have an integer value, so a strict inequality among integers is tightened, e.g.,
+ * <code>i &lt; n</code> becomes <code>i + 1 =&lt; n</code>, and a solution with a fractional integer
+ * is split into two smaller problems, branch and bound, up to {@link #branchLimit} of them. A value
+ * name whose type is not known, such as one of a specification, may be any rational number, which
+ * never finds an inconsistency that the integers would not.
+ * <p>
+ * The primitive integral types are read as Java computes them: a value name lies within the bounds
+ * of its type, and a sum of <code>int</code> or <code>long</code> values wraps around on overflow,
+ * so the sum is a new variable of the type that differs from the exact sum by a multiple of
+ * 2<sup>32</sup> or 2<sup>64</sup>. Thus <code>y = x + 1</code> does not make <code>y &gt; x</code>
+ * for an <code>int x</code> unless <code>x</code> is known to be below the largest <code>int</code>.
+ * A relation that mentions a <code>float</code> or <code>double</code> is ignored, since the value
+ * may be NaN or infinite, and so is a sum that mixes types whose arithmetic the encoding cannot
+ * follow, such as an <code>int</code> with a <code>long</code>.
+ * <p>
+ * Anything else in a relation, such as a product of two value names, a division, or a function, is
+ * taken as a value of its own. A disequality says nothing about a conjunction of constraints, so it
+ * is ignored. The answer for a formula is only ever "inconsistent" or "don't know": a formula whose
+ * arithmetic has a solution may still be inconsistent for other reasons, which the prover looks for.
+ * For the literals of an assignment, {@link #decide(List, Function)} also answers "consistent" when
+ * it read each of their relations and found a solution.
+ */
+final class LinearArithmetic {
+
+/** The most problems that branch and bound may try before giving up on finding an inconsistency. */
+static final int branchLimit = 64;
+
+private LinearArithmetic() {}
+
+/** The values that a value name may have, according to the Java type of its variable. */
+enum NumericType {
+  /** Any rational number, for a value name whose type is not known */
+  rational(false, 0, true),
+  /** A value computed from typed value names in a way that the arithmetic does not read, such as a
+   * product, which may be compared but not added to */
+  opaque(false, 0, true),
+  /** Any integer, as for a <code>BigInteger</code> */
+  integer(true, 0, true),
+  int8(true, 8, true),
+  int16(true, 16, true),
+  char16(true, 16, false),
+  int32(true, 32, true),
+  int64(true, 64, true),
+  /** A <code>float</code> or <code>double</code>, which may be NaN or infinite */
+  floating(false, 0, true);
+
+  final boolean isIntegral;
+  /** The width of a fixed-width integer, or 0 for any other type */
+  final int bits;
+  private final boolean isSigned;
+
+  NumericType(boolean isIntegral, int bits, boolean isSigned) {
+    this.isIntegral = isIntegral;
+    this.bits = bits;
+    this.isSigned = isSigned;
+  }
+
+  /** The width at which Java adds values of this type, after promoting them to at least an
+   * <code>int</code>, or 0 when the sum does not wrap. */
+  int arithmeticBits() { return (bits == 0) ? 0 : Math.max(bits, 32); }
+
+  BigInteger minimum() {
+    return isSigned ? notNull(BigInteger.ONE.shiftLeft(bits - 1).negate()) : notNull(BigInteger.ZERO);
+  }
+
+  BigInteger maximum() {
+    return notNull(BigInteger.ONE.shiftLeft(isSigned ? bits - 1 : bits).subtract(BigInteger.ONE));
+  }
+}
+
+/** Do the arithmetic relations among the conjuncts of the formula contradict each other?
+ * @param numericTypes gives the numeric type of the value name of an atom */
+static boolean refutes(Term formula, Function<String, NumericType> numericTypes) {
+  return decide(literals(formula), numericTypes) == ConsistencyResult.inconsistent;
+}
+
+/** Decide the arithmetic relations among the literals. A literal that is not an arithmetic relation
+ * is ignored.
+ * @param numericTypes gives the numeric type of the value name of an atom
+ * @return inconsistent when the relations contradict each other, consistent when they have a
+ *         solution and each of them was read, or null when one was ignored, such as a disequality
+ *         or a relation of a <code>float</code>, or when branch and bound gave up */
+static @Nullable ConsistencyResult decide( List<Term> literals
+                                         , Function<String, NumericType> numericTypes) {
+  final Problem problem = new Problem(numericTypes);
+  for (Term literal : literals)
+    problem.add(literal);
+  if (problem.hasRelations && problem.isInfeasible())
+    return ConsistencyResult.inconsistent;
+  return problem.isComplete ? ConsistencyResult.consistent : null;
+}
+
+private static final List<String> relations = List.of("=", "#=", "<", "=<", "<=", ">", ">=");
+
+/** Is the literal an arithmetic relation, or its negation, which {@link #decide(List, Function)}
+ * reads? */
+static boolean isRelation(Term literal) {
+  Term t = notNull(literal.getTerm());
+  while (t instanceof Struct && is((Struct)t, "-", 1))
+    t = notNull(((Struct)t).getArg(0).getTerm());
+  return t instanceof Struct && ((Struct)t).getArity() == 2
+      && relations.contains(((Struct)t).getName());
+}
+
+/** The literals at the top of the formula: its conjuncts, with the negations of disjunctions and
+ * implications taken apart into conjunctions as well. */
+static List<Term> literals(Term formula) {
+  final List<Term> literals = new ArrayList<>();
+  final Deque<Term> pending = new ArrayDeque<>();
+  pending.push(formula);
+  while ( ! pending.isEmpty()) {
+    final Term t = notNull(pending.pop().getTerm());
+    final @Nullable Struct s = (t instanceof Struct) ? (Struct)t : null;
+    final @Nullable Struct negated = (s != null && is(s, "-", 1) && s.getArg(0).getTerm() instanceof Struct)
+                                     ? (Struct)s.getArg(0).getTerm() : null;
+    if (s != null && is(s, "/\\", 2)) {
+      pending.push(notNull(s.getArg(1)));
+      pending.push(notNull(s.getArg(0)));
+    } else if (negated != null && is(negated, "\\/", 2)) {
+      pending.push(new Struct("-", negated.getArg(1)));
+      pending.push(new Struct("-", negated.getArg(0)));
+    } else if (negated != null && is(negated, "==>", 2)) {
+      pending.push(new Struct("-", negated.getArg(1)));
+      pending.push(notNull(negated.getArg(0)));
+    } else if (negated != null && is(negated, "-", 1)) {
+      pending.push(notNull(negated.getArg(0)));
+    } else {
+      literals.add(t);
+    }
+  }
+  return literals;
+}
+
+private static boolean is(Struct s, String name, int arity) {
+  return s.getArity() == arity && s.getName().equals(name);
+}
+
+
+/** The constraints read from the literals, each meaning <code>expression relation 0</code>. */
+private static final class Problem {
+  private final Function<String, NumericType> numericTypes;
+  private final Map<String, Integer> variables = new HashMap<>();
+  private final List<NumericType> variableTypes = new ArrayList<>();
+  private final List<Constraint> constraints = new ArrayList<>();
+  private boolean hasRelations = false;
+  /** Was each relation read, and did branch and bound finish? */
+  private boolean isComplete = true;
+  private int branches = 0;
+
+  Problem(Function<String, NumericType> numericTypes) { this.numericTypes = numericTypes; }
+
+  void add(Term literal) {
+    Term t = notNull(literal.getTerm());
+    boolean isPositive = true;
+    while (t instanceof Struct && is((Struct)t, "-", 1)) {
+      isPositive = ! isPositive;
+      t = notNull(((Struct)t).getArg(0).getTerm());
+    }
+    if ( ! isRelation(t))
+      return;
+    final Struct relation = (Struct)t;
+    final String name = relation.getName();
+    final boolean isEquality = name.equals("=") || name.equals("#=");
+    if ( ! t.isGround() || (isEquality && isPositive != name.equals("="))) {
+      isComplete = false; // a disequality, or a relation of unknown values
+      return;
+    }
+    final Linear leftTerm = linear(notNull(relation.getArg(0)));
+    final Linear rightTerm = linear(notNull(relation.getArg(1)));
+    final @Nullable Linear left = javaValue(leftTerm, isEquality ? narrowType(rightTerm) : null);
+    final @Nullable Linear right = javaValue(rightTerm, isEquality ? narrowType(leftTerm) : null);
+    if (left == null || right == null) {
+      isComplete = false;
+      return;
+    }
+    hasRelations = true;
+    final Linear difference = left.plus(right.times(Rational.minusOne)); // left - right
+    final Linear reversed = difference.times(Rational.minusOne);       // right - left
+    switch (name) {
+    case "=":
+    case "#=": addEquality(difference);                                                  break;
+    case "<":  if (isPositive) addStrict(difference);    else addNonStrict(reversed);    break;
+    case "=<":
+    case "<=": if (isPositive) addNonStrict(difference); else addStrict(reversed);       break;
+    case ">":  if (isPositive) addStrict(reversed);      else addNonStrict(difference);  break;
+    case ">=": if (isPositive) addNonStrict(reversed);   else addStrict(difference);     break;
+    default:   break;
+    }
+  }
+
+  private void addEquality(Linear e)  { constraints.add(new Constraint(e, Relation.equal)); }
+  private void addNonStrict(Linear e) { constraints.add(new Constraint(e, Relation.atMost)); }
+
+  /** <code>e &lt; 0</code>, which is <code>e + 1 =&lt; 0</code> when all of it is integral. */
+  private void addStrict(Linear e) {
+    if (isIntegral(e)) {
+      final Linear scaled = e.times(new Rational(e.commonDenominator(), BigInteger.ONE));
+      constraints.add(new Constraint(scaled.plus(Linear.constant(Rational.one)), Relation.atMost));
+    } else {
+      constraints.add(new Constraint(e, Relation.below));
+    }
+  }
+
+  private boolean isIntegral(Linear e) {
+    for (int variable : e.coefficients.keySet())
+      if ( ! variableTypes.get(variable).isIntegral)
+        return false;
+    return true;
+  }
+
+  /**
+   * The value that Java computes for the expression, or null when the arithmetic cannot tell. A
+   * single value name or a constant is its own value, and so is the exact sum of value names of no
+   * known type or of any integer. A sum of fixed-width integers is a new variable of their width,
+   * which differs from the exact sum by a multiple of 2 to the power of the width.
+   * @param narrowing the <code>byte</code>, <code>short</code> or <code>char</code> type of the
+   *                  value name that the expression is equated with, whose width the sum wraps at
+   *                  instead, as it does in a compound assignment such as <code>b += 1</code>
+   */
+  private @Nullable Linear javaValue(Linear e, @Nullable NumericType narrowing) {
+    final Set<NumericType> types = EnumSet.noneOf(NumericType.class);
+    for (int variable : e.coefficients.keySet())
+      types.add(notNull(variableTypes.get(variable)));
+    if (types.contains(NumericType.floating))
+      return null;
+    if (e.coefficients.isEmpty() || isSingleVariable(e))
+      return e;
+    if (EnumSet.of(NumericType.rational, NumericType.integer).containsAll(types))
+      return e;
+    final int bits = types.iterator().next().arithmeticBits();
+    for (NumericType type : types)
+      if (type.arithmeticBits() != bits || bits == 0)
+        return null; // opaque, or a mix that Java would not add at one width
+    final NumericType sumType = (bits == 32) ? NumericType.int32 : NumericType.int64;
+    if ( ! fits(e.constant, sumType))
+      return null; // a fraction or a wider literal, which Java would not add at this width
+    for (Rational coefficient : e.coefficients.values())
+      if ( ! fits(coefficient, sumType))
+        return null;
+    final NumericType wrapped = (narrowing != null) ? narrowing : sumType;
+    final int value = newVariable(wrapped);
+    final int wraps = newVariable(NumericType.integer);
+    final Rational modulus = new Rational(notNull(BigInteger.ONE.shiftLeft(wrapped.bits)), BigInteger.ONE);
+    addEquality(Linear.variable(value).plus(e.times(Rational.minusOne))   // value = e + modulus * wraps
+                                      .plus(Linear.variable(wraps).times(modulus.times(Rational.minusOne))));
+    return Linear.variable(value);
+  }
+
+  /** The type of the expression if it is a single value name of a type narrower than an int. */
+  private @Nullable NumericType narrowType(Linear e) {
+    if ( ! isSingleVariable(e))
+      return null;
+    final NumericType type = notNull(variableTypes.get(e.coefficients.keySet().iterator().next()));
+    return (type.bits > 0 && type.bits < type.arithmeticBits()) ? type : null;
+  }
+
+  private static boolean isSingleVariable(Linear e) {
+    return e.coefficients.size() == 1 && e.constant.signum() == 0
+        && e.coefficients.values().iterator().next().compareTo(Rational.one) == 0;
+  }
+
+  private static boolean fits(Rational r, NumericType type) {
+    return r.isInteger() && r.numerator.compareTo(type.minimum()) >= 0
+                         && r.numerator.compareTo(type.maximum()) <= 0;
+  }
+
+  /** A new variable of the type, within the bounds of the type when it has a fixed width. */
+  private int newVariable(NumericType type) {
+    final int variable = variableTypes.size();
+    variableTypes.add(type);
+    if (type.bits > 0) {
+      final Linear v = Linear.variable(variable);
+      addNonStrict(v.plus(Linear.constant(new Rational(type.maximum(), BigInteger.ONE)
+                                              .times(Rational.minusOne))));   // v =< maximum
+      addNonStrict(v.times(Rational.minusOne)
+                    .plus(Linear.constant(new Rational(type.minimum(), BigInteger.ONE)))); // minimum =< v
+    }
+    return variable;
+  }
+
+  /** The linear expression of a term; anything that is not linear arithmetic is a variable. */
+  private Linear linear(Term term) {
+    final Term t = notNull(term.getTerm());
+    if (t instanceof alice.tuprolog.Number)
+      return Linear.constant(Rational.of(notNull(new BigDecimal(t.toString()))));
+    final Struct s = (Struct)t;
+    if (is(s, "+", 2))
+      return linear(notNull(s.getArg(0))).plus(linear(notNull(s.getArg(1))));
+    if (is(s, "-", 2))
+      return linear(notNull(s.getArg(0))).plus(linear(notNull(s.getArg(1))).times(Rational.minusOne));
+    if (is(s, "-", 1))
+      return linear(notNull(s.getArg(0))).times(Rational.minusOne);
+    if (is(s, "*", 2)) {
+      final Linear left = linear(notNull(s.getArg(0)));
+      final Linear right = linear(notNull(s.getArg(1)));
+      if (left.coefficients.isEmpty())
+        return right.times(left.constant);
+      if (right.coefficients.isEmpty())
+        return left.times(right.constant);
+    }
+    final String name = (s.getArity() == 0) ? s.getName() : s.toString();
+    @Nullable Integer variable = variables.get(name);
+    if (variable == null) {
+      variable = newVariable((s.getArity() == 0) ? numericTypes.apply(name) : opaqueType(s));
+      variables.put(name, variable);
+    }
+    return Linear.variable(variable);
+  }
+
+  /** The type of a term that is taken as a value of its own: floating when it mentions a floating
+   * value name, which may make it NaN, and opaque when it mentions another typed value name. */
+  private NumericType opaqueType(Struct term) {
+    NumericType type = NumericType.rational;
+    final Deque<Term> pending = new ArrayDeque<>();
+    pending.push(term);
+    while ( ! pending.isEmpty()) {
+      final Term t = notNull(pending.pop().getTerm());
+      if ( ! (t instanceof Struct))
+        continue;
+      final Struct s = (Struct)t;
+      if (s.getArity() == 0) {
+        final NumericType atomType = numericTypes.apply(s.getName());
+        if (atomType == NumericType.floating)
+          return NumericType.floating;
+        if (atomType != NumericType.rational)
+          type = NumericType.opaque;
+      }
+      for (int i = 0; i < s.getArity(); i++)
+        pending.push(notNull(s.getArg(i)));
+    }
+    return type;
+  }
+
+  boolean isInfeasible() {
+    return ! isFeasible(constraints);
+  }
+
+  /** Is there a solution, with integers for the integral variables? When branch and bound gives up,
+   * the answer is yes, since only a "no" is relied on, and the problem is not complete. */
+  private boolean isFeasible(List<Constraint> problem) {
+    final Rational @Nullable[] solution = new Simplex(problem, variableTypes.size()).solve();
+    if (solution == null)
+      return false;
+    for (int variable = 0; variable < solution.length; variable++) {
+      final Rational value = notNull(solution[variable]);
+      if (variableTypes.get(variable).isIntegral && ! value.isInteger()) {
+        if (++branches > branchLimit) {
+          isComplete = false;
+          return true;
+        }
+        final List<Constraint> below = new ArrayList<>(problem);  // variable =< floor(value)
+        below.add(new Constraint( Linear.variable(variable)
+                                        .plus(Linear.constant(value.floor().times(Rational.minusOne)))
+                                , Relation.atMost));
+        if (isFeasible(below))
+          return true;
+        final List<Constraint> above = new ArrayList<>(problem);  // ceiling(value) =< variable
+        above.add(new Constraint( Linear.variable(variable).times(Rational.minusOne)
+                                        .plus(Linear.constant(value.floor().plus(Rational.one)))
+                                , Relation.atMost));
+        return isFeasible(above);
+      }
+    }
+    return true;
+  }
+}
+
+private enum Relation { equal, atMost, below }
+
+/** <code>expression relation 0</code> */
+private static final class Constraint {
+  final Linear expression;
+  final Relation relation;
+
+  Constraint(Linear expression, Relation relation) {
+    this.expression = expression;
+    this.relation = relation;
+  }
+}
+
+
+/** A sum of rational multiples of variables and a rational constant. */
+private static final class Linear {
+  final Map<Integer, Rational> coefficients;
+  final Rational constant;
+
+  private Linear(Map<Integer, Rational> coefficients, Rational constant) {
+    this.coefficients = coefficients;
+    this.constant = constant;
+  }
+
+  static Linear constant(Rational c) { return new Linear(Map.of(), c); }
+  static Linear variable(int v)      { return new Linear(Map.of(v, Rational.one), Rational.zero); }
+
+  Linear plus(Linear other) {
+    final Map<Integer, Rational> sum = new HashMap<>(coefficients);
+    other.coefficients.forEach((v, c) -> {
+      final Rational total = sum.getOrDefault(v, Rational.zero).plus(c);
+      if (total.signum() == 0)
+        sum.remove(v);
+      else
+        sum.put(v, total);
+    });
+    return new Linear(sum, constant.plus(other.constant));
+  }
+
+  Linear times(Rational factor) {
+    if (factor.signum() == 0)
+      return constant(Rational.zero);
+    final Map<Integer, Rational> product = new HashMap<>();
+    coefficients.forEach((v, c) -> product.put(v, c.times(factor)));
+    return new Linear(product, constant.times(factor));
+  }
+
+  /** The least common multiple of the denominators of the coefficients and the constant. */
+  BigInteger commonDenominator() {
+    BigInteger lcm = constant.denominator;
+    for (Rational c : coefficients.values())
+      lcm = lcm.multiply(c.denominator).divide(lcm.gcd(c.denominator));
+    return lcm;
+  }
+}
+
+
+/**
+ * The two-phase simplex method with Bland's rule, which cannot cycle. Each variable may have any
+ * sign, so it is the difference of two non-negative columns. A strict constraint
+ * <code>e &lt; 0</code> becomes <code>e + d =&lt; 0</code> for a single <code>d</code> between 0
+ * and 1, and the strict constraints can all hold exactly when the largest such <code>d</code> is
+ * positive.
+ */
+private static final class Simplex {
+  private final int variables;
+  private final int slackStart;
+  private final int artificialStart;
+  private final int columns;
+  private final int delta; // the column of d, or -1 when there are no strict constraints
+  private final Rational[][] rows;
+  private final int[] basis;
+
+  Simplex(List<Constraint> constraints, int variables) {
+    this.variables = variables;
+    final boolean hasStrict = constraints.stream().anyMatch(c -> c.relation == Relation.below);
+    final List<Constraint> all = new ArrayList<>(constraints);
+    this.delta = hasStrict ? 2 * variables : -1;
+    int slacks = 0;
+    for (Constraint c : all)
+      if (c.relation != Relation.equal)
+        slacks++;
+    if (hasStrict)
+      slacks++; // for d =< 1
+    this.slackStart = 2 * variables + (hasStrict ? 1 : 0);
+    final int rowCount = all.size() + (hasStrict ? 1 : 0);
+    this.artificialStart = slackStart + slacks;
+    this.columns = artificialStart + rowCount;
+    this.rows = new Rational[rowCount][columns + 1];
+    this.basis = new int[rowCount];
+
+    int slack = slackStart;
+    for (int i = 0; i < rowCount; i++) {
+      final Rational[] row = rows[i];
+      java.util.Arrays.fill(row, Rational.zero);
+      if (i < all.size()) {
+        final Constraint c = notNull(all.get(i));
+        c.expression.coefficients.forEach((v, coefficient) -> {
+          row[2 * v] = coefficient;
+          row[2 * v + 1] = coefficient.times(Rational.minusOne);
+        });
+        if (c.relation == Relation.below)
+          row[delta] = Rational.one;
+        if (c.relation != Relation.equal)
+          row[slack++] = Rational.one;
+        row[columns] = c.expression.constant.times(Rational.minusOne);
+      } else { // d =< 1
+        row[delta] = Rational.one;
+        row[slack++] = Rational.one;
+        row[columns] = Rational.one;
+      }
+      if (row[columns].signum() < 0)
+        for (int j = 0; j <= columns; j++)
+          row[j] = row[j].times(Rational.minusOne);
+      row[artificialStart + i] = Rational.one;
+      basis[i] = artificialStart + i;
+    }
+  }
+
+  /** A solution of the constraints, or null when there is none. */
+  Rational @Nullable[] solve() {
+    final Rational[] phaseOne = new Rational[columns];
+    for (int j = 0; j < columns; j++)
+      phaseOne[j] = (j >= artificialStart) ? Rational.minusOne : Rational.zero;
+    maximize(phaseOne, columns);
+    for (int i = 0; i < rows.length; i++)
+      if (basis[i] >= artificialStart && rows[i][columns].signum() != 0)
+        return null;
+    for (int i = 0; i < rows.length; i++) // so that no artificial variable can grow in phase two
+      for (int j = 0; j < artificialStart && basis[i] >= artificialStart; j++)
+        if (rows[i][j].signum() != 0)
+          pivot(i, j);
+    if (delta >= 0) {
+      final Rational[] phaseTwo = new Rational[columns];
+      java.util.Arrays.fill(phaseTwo, Rational.zero);
+      phaseTwo[delta] = Rational.one;
+      maximize(phaseTwo, artificialStart); // an artificial variable may not enter again
+      if (value(delta).signum() <= 0)
+        return null;
+    }
+    final Rational[] solution = new Rational[variables];
+    for (int v = 0; v < variables; v++)
+      solution[v] = value(2 * v).plus(value(2 * v + 1).times(Rational.minusOne));
+    return solution;
+  }
+
+  private Rational value(int column) {
+    for (int i = 0; i < rows.length; i++)
+      if (basis[i] == column)
+        return rows[i][columns];
+    return Rational.zero;
+  }
+
+  /** Maximize the objective, with only the columns before the limit allowed to enter the basis.
+   * The objective is bounded in both uses here, since d is at most 1. */
+  private void maximize(Rational[] objective, int enteringLimit) {
+    while (true) {
+      int entering = -1;
+      for (int j = 0; j < enteringLimit && entering < 0; j++) {
+        if (isBasic(j))
+          continue;
+        Rational reducedCost = objective[j];
+        for (int i = 0; i < rows.length; i++)
+          reducedCost = reducedCost.plus(objective[basis[i]].times(rows[i][j]).times(Rational.minusOne));
+        if (reducedCost.signum() > 0)
+          entering = j;
+      }
+      if (entering < 0)
+        return;
+      int leaving = -1;
+      Rational bestRatio = Rational.zero;
+      for (int i = 0; i < rows.length; i++) {
+        if (rows[i][entering].signum() <= 0)
+          continue;
+        final Rational ratio = rows[i][columns].dividedBy(rows[i][entering]);
+        if ( leaving < 0 || ratio.compareTo(bestRatio) < 0
+          || (ratio.compareTo(bestRatio) == 0 && basis[i] < basis[leaving])) {
+          leaving = i;
+          bestRatio = ratio;
+        }
+      }
+      if (leaving < 0)
+        return; // unbounded, which cannot happen for the objectives used here
+      pivot(leaving, entering);
+    }
+  }
+
+  private boolean isBasic(int column) {
+    for (int b : basis)
+      if (b == column)
+        return true;
+    return false;
+  }
+
+  private void pivot(int row, int column) {
+    final Rational[] pivotRow = rows[row];
+    final Rational pivot = pivotRow[column];
+    for (int j = 0; j <= columns; j++)
+      pivotRow[j] = pivotRow[j].dividedBy(pivot);
+    for (int i = 0; i < rows.length; i++) {
+      final Rational factor = rows[i][column];
+      if (i == row || factor.signum() == 0)
+        continue;
+      for (int j = 0; j <= columns; j++)
+        rows[i][j] = rows[i][j].plus(factor.times(pivotRow[j]).times(Rational.minusOne));
+    }
+    basis[row] = column;
+  }
+}
+
+
+/** An exact rational number in lowest terms, with a positive denominator. */
+private static final class Rational implements Comparable<Rational> {
+  static final Rational zero     = new Rational(BigInteger.ZERO, BigInteger.ONE);
+  static final Rational one      = new Rational(BigInteger.ONE, BigInteger.ONE);
+  static final Rational minusOne = new Rational(BigInteger.ONE.negate(), BigInteger.ONE);
+
+  final BigInteger numerator;
+  final BigInteger denominator;
+
+  Rational(BigInteger numerator, BigInteger denominator) {
+    final BigInteger gcd = numerator.gcd(denominator);
+    final BigInteger sign = BigInteger.valueOf(denominator.signum());
+    this.numerator = numerator.divide(gcd).multiply(sign);
+    this.denominator = denominator.divide(gcd).multiply(sign);
+  }
+
+  static Rational of(BigDecimal decimal) {
+    return (decimal.scale() <= 0)
+           ? new Rational(decimal.toBigIntegerExact(), BigInteger.ONE)
+           : new Rational(decimal.unscaledValue(), BigInteger.TEN.pow(decimal.scale()));
+  }
+
+  Rational plus(Rational r) {
+    return new Rational( numerator.multiply(r.denominator).add(r.numerator.multiply(denominator))
+                       , denominator.multiply(r.denominator));
+  }
+
+  Rational times(Rational r) {
+    return new Rational(numerator.multiply(r.numerator), denominator.multiply(r.denominator));
+  }
+
+  Rational dividedBy(Rational r) {
+    return new Rational(numerator.multiply(r.denominator), denominator.multiply(r.numerator));
+  }
+
+  int signum() { return numerator.signum(); }
+
+  boolean isInteger() { return denominator.equals(BigInteger.ONE); }
+
+  /** The largest integer that is not greater than this number. */
+  Rational floor() {
+    final BigInteger[] qr = numerator.divideAndRemainder(denominator);
+    final BigInteger floor = (qr[1].signum() < 0) ? qr[0].subtract(BigInteger.ONE) : qr[0];
+    return new Rational(floor, BigInteger.ONE);
+  }
+
+  @Override
+  public int compareTo(Rational r) {
+    return numerator.multiply(r.denominator).compareTo(r.numerator.multiply(denominator));
+  }
+
+  @Override
+  public String toString() {
+    return isInteger() ? numerator.toString() : numerator +"/"+ denominator;
+  }
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class LinearArithmetic
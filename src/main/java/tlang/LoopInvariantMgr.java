@@ -1,7 +1,5 @@
 package tlang;
 
-import java.util.Map;
-import java.util.HashMap;
 import org.eclipse.jdt.annotation.*;
 
 import tlang.TLantlrParser.*;
@@ -21,22 +19,20 @@ import static tlang.TUtil.*;
  */
 final class LoopInvariantMgr {
 
-  private static Map< T_loopInvariantContext, LoopInvariantMgr> invariantMap = new HashMap<>();
-
-    /** Find (or create) and return the while statement manager for the context. */
-    private static LoopInvariantMgr findLoopInvariantMgr(T_loopInvariantContext ctx) {
-      LoopInvariantMgr nullableMgr = invariantMap.get(ctx);
-      return isNull(nullableMgr) ? new LoopInvariantMgr(ctx) : nullableMgr;
+    /** Find (or create) and return the while statement manager for the context. The managers of
+     * a compile unit are kept in its {@link CompilationContext#invariants}. */
+    private static LoopInvariantMgr findLoopInvariantMgr( T_loopInvariantContext ctx
+                                                        , CompilationContext context) {
+      return notNull(context.invariants.computeIfAbsent(ctx, LoopInvariantMgr::new));
     }
 
 
   LoopInvariantMgr(T_loopInvariantContext ctx) {
-    invariantMap.put(ctx, this);
   }
 
 
   static void checkContext(T_loopInvariantContext inv, ContextCheckVisitor checker) {
-    LoopInvariantMgr mgr = findLoopInvariantMgr(inv);
+    LoopInvariantMgr mgr = findLoopInvariantMgr(inv, checker.context);
 //    checker.visitT_booleanExpression(v.t_booleanExpression());
 
     // visit both sides of the relational expression
@@ -46,7 +42,7 @@ final class LoopInvariantMgr {
   }
 
   static void validateLoopInvariant(T_loopInvariantContext ctx, TLantlrProofVisitor validator) {
-    var mgr = findLoopInvariantMgr(ctx);
+    var mgr = findLoopInvariantMgr(ctx, validator.context);
 //    LoopInvariantStatement.validate(verifier);
   }
 
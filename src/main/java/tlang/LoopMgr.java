@@ -20,22 +20,21 @@ import static tlang.TUtil.*;
 final class LoopMgr {
 
   /**
-   * A map from the previous looping contexts that have been found to the corresponding managers
-   * that were created for them.
+   * Find (or create) and return the while statement manager for the context. The managers of a
+   * compile unit are kept in its {@link CompilationContext#loops}.
    *
    * @implNote The T_statementContext is expected to be a context for a looping statement.
    */
-  private static Map< T_statementContext, @NonNull LoopMgr> loopMap = new HashMap<>();
-
-    /** Find (or create) and return the while statement manager for the context. */
-    private static LoopMgr findLoopMgr(T_statementContext ctx) {
-      @Nullable LoopMgr nullableMgr = loopMap.get(ctx);
-      return isNull(nullableMgr) ? new LoopMgr(ctx) : nullableMgr;
+    private static LoopMgr findLoopMgr(T_statementContext ctx, CompilationContext context) {
+      return notNull(context.loops.computeIfAbsent(ctx, LoopMgr::new));
     }
 
+  /** A map from variable names to the current status of the ValueChange for that variable in the
+   * body of this loop */
+  private final Map<String, ValueChange> valueChangeMap = new HashMap<>();
+
 
   public LoopMgr(T_statementContext ctx) {
-    loopMap.put(ctx, this);
   }
 
 
@@ -58,7 +57,7 @@ final class LoopMgr {
 //}
 
   public static void checkContext(WhileStmtContext wh, ContextCheckVisitor checker) {
-    LoopMgr mgr = findLoopMgr(wh);
+    LoopMgr mgr = findLoopMgr(wh, checker.context);
     checker.visitT_expression(wh.t_condition().t_expression());
 
 //    if (mgr.variant != null)
@@ -70,7 +69,7 @@ final class LoopMgr {
   }
 
   public static void validateWhile(WhileStmtContext ctx, TLantlrProofVisitor validator) {
-    var mgr = findLoopMgr(ctx);
+    var mgr = findLoopMgr(ctx, validator.context);
 //    whileStatement.validate(visitor);
   }
 
@@ -103,9 +102,6 @@ final class LoopMgr {
    */
   class ValueChange {
 
-    /** A map from variable names to the current status of the ValueChange for that variable */
-    static Map<String, ValueChange> valueChangeMap = new HashMap<>();
-
     /** the value name at the beginning of the while statement */
     Token beginningValue;
 
@@ -119,21 +115,21 @@ final class LoopMgr {
       valueChangeMap.put(variableName(newValue), null /*FIX scope.map.get(var name)*/);
     }
 
-    /**
-     * Record the new value for a variable, and if the ValueChange object does not
-     * exist for the variable, create one with the current valueName and the new one.
-     */
-    static void changeValue(Token newValue) {
-      String varName = variableName(newValue);
-      if (valueChangeMap.containsKey(varName)) {
-        var changeInValue = valueChangeMap.get(varName);
-        changeInValue.endingValue = newValue;
-      } else { // create the ValueChange
+  } // end inner class ValueChange
+
+  /**
+   * Record the new value for a variable, and if the ValueChange object does not
+   * exist for the variable, create one with the current valueName and the new one.
+   */
+  void changeValue(Token newValue) {
+    String varName = variableName(newValue);
+    if (valueChangeMap.containsKey(varName)) {
+      var changeInValue = valueChangeMap.get(varName);
+      changeInValue.endingValue = newValue;
+    } else { // create the ValueChange
 //        Token currentValue = currentScope.
-      }
     }
-
-  } // end inner class ValueChange
+  }
 
 
 }
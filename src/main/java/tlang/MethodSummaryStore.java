@@ -0,0 +1,200 @@
+package tlang;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The proven contracts of methods, kept so that a call to a method can assume what the method's
+ * final means-statement says about its result instead of knowing nothing about it. A method is
+ * proven once, in its own {@link KnowledgeBase}, and each call site then assumes its summary with
+ * the arguments of the call put in place of the parameters, so the cost of proving a program grows
+ * with the number of its methods rather than with the number of paths through its calls.
+ * <p>
+ * A summary is kept only for a method whose final means-statement relates the initial values of
+ * its parameters to its result and mentions no other value name. The final means of a method that
+ * changes a field, or that speaks of an intermediate value, cannot be moved to a call site by
+ * renaming its parameters, so callers of such a method see no summary.
+ * <p>
+ * Summaries are kept by the signature of the method, <code>Class.method(type,type)</code>, for the
+ * compile unit being proven only. Calls are matched by class, name and number of arguments, and a
+ * name that is declared more than once with the same number of parameters gets no summary.
+ */
+final class MethodSummaryStore {
+
+/** The contract of one method in a form that can be instantiated at a call site. */
+static final class MethodSummary {
+  final String signature;
+  final String className;
+  final String methodName;
+  final int arity;
+  /** The final means, with {@link #argument(int)} for the initial value of each parameter and
+   * {@link #result} for the returned value. */
+  final String contract;
+
+  private MethodSummary( String signature, String className, String methodName
+                       , int arity, String contract) {
+    this.signature = signature;
+    this.className = className;
+    this.methodName = methodName;
+    this.arity = arity;
+    this.contract = contract;
+  }
+
+  /** What the method's final means says about one call, in the KnowledgeBase language.
+   * @param arguments the arguments of the call, in the KnowledgeBase language
+   * @param call      the call itself, which stands for the value that it returns */
+  String instantiate(List<String> arguments, String call) {
+    if (arguments.size() != arity)
+      throw new IllegalArgumentException(signature +" takes "+ arity +" arguments, not "
+                                         + arguments.size());
+    final Map<String, String> words = new HashMap<>();
+    for (int i = 0; i < arity; i++)
+      words.put(argument(i), "("+ arguments.get(i) +")");
+    words.put(result, call);
+    return substituted(contract, Map.of(), words);
+  }
+
+  @Override
+  public String toString() {
+    return signature +": "+ contract;
+  }
+}
+
+/** The stand-in for the returned value in a contract. */
+static final String result = "Result";
+
+/** The stand-in for the initial value of a parameter in a contract. */
+static String argument(int index) {
+  return "Arg"+ (index + 1);
+}
+
+/** A quoted atom, such as a value name, or an unquoted word. */
+private static final Pattern atomOrWord = Pattern.compile("'[^']*'|[A-Za-z_][A-Za-z0-9_]*");
+
+private final Map<String, MethodSummary> summaries = new ConcurrentHashMap<>();
+/** Every method that has been declared, with or without a summary, by signature. The value is the
+ * <code>Class.method/arity</code> that a call is matched with. */
+private final Map<String, String> declared = new ConcurrentHashMap<>();
+
+
+/**
+ * The summary of a method whose final means has been proven, or null when the final means cannot
+ * be moved to a call site.
+ * @param signature       the method's <code>Class.method(type,type)</code>
+ * @param className       the class that declares the method
+ * @param methodName      the name of the method
+ * @param parameterNames  the method's parameters, in order
+ * @param initialValues   the Prolog value name of the initial value of each parameter
+ * @param returnValues    the Prolog value names that stand for the returned value, e.g.,
+ *                        <code>'return^'</code> and <code>return</code>
+ * @param finalMeans      the proven final means, in the KnowledgeBase language
+ */
+static @Nullable MethodSummary summarize( String signature, String className
+                                        , String methodName, List<String> parameterNames
+                                        , List<String> initialValues, List<String> returnValues
+                                        , String finalMeans ) {
+  final Map<String, String> quoted = new HashMap<>();
+  final Map<String, String> words = new HashMap<>();
+  for (int i = 0; i < initialValues.size(); i++)
+    quoted.put(initialValues.get(i), argument(i));
+  for (String returnValue : returnValues) {
+    if (returnValue.startsWith("'"))
+      quoted.put(returnValue, result);
+    else
+      words.put(returnValue, result);
+  }
+
+  final Matcher m = atomOrWord.matcher(finalMeans);
+  boolean mentionsResult = false;
+  while (m.find()) {
+    final String token = notNull(m.group());
+    if (quoted.containsKey(token) || words.containsKey(token)) {
+      mentionsResult |= result.equals(quoted.get(token)) || result.equals(words.get(token));
+      continue;
+    }
+    if (token.startsWith("'") ? token.indexOf('^') >= 0 // the decorator of a Prolog value name
+                              : parameterNames.contains(token) || isStandIn(token))
+      return null; // another value name, or an undecorated name that a caller cannot rename
+  }
+  if ( ! mentionsResult)
+    return null;
+  return new MethodSummary(signature, className, methodName, initialValues.size(),
+                           substituted(finalMeans, quoted, words));
+}
+
+/** Is the word one of the stand-ins of a contract, which must not also be used by the code? */
+private static boolean isStandIn(String word) {
+  return word.equals(result) || word.matches("Arg[1-9][0-9]*");
+}
+
+/** Note a method that has been declared, forgetting any summary of an earlier declaration of it.
+ * Every method must be declared, so that a call to an overloaded method is never given the summary
+ * of another method with the same name. */
+void declare(String signature, String className, String methodName, int arity) {
+  summaries.remove(signature);
+  declared.put(signature, callKey(className, methodName, arity));
+}
+
+/** Keep the summary of a declared method. */
+void record(MethodSummary summary) {
+  declared.put(summary.signature, callKey(summary.className, summary.methodName, summary.arity));
+  summaries.put(summary.signature, summary);
+}
+
+/** The summary of the method that a call names, or null when there is none or more than one
+ * method could be meant. */
+@Nullable MethodSummary forCall(String className, String methodName, int arity) {
+  final String key = callKey(className, methodName, arity);
+  @Nullable String found = null;
+  for (Map.Entry<String, String> method : declared.entrySet()) {
+    if ( ! method.getValue().equals(key))
+      continue;
+    if (found != null)
+      return null; // overloaded, and the types of the arguments are not known here
+    found = method.getKey();
+  }
+  return (found == null) ? null : summaries.get(found);
+}
+
+private static String callKey(String className, String methodName, int arity) {
+  return className +"."+ methodName +"/"+ arity;
+}
+
+/** The text with the quoted atoms and the unquoted words of the maps replaced. Quoted atoms are
+ * never searched for words, so a value name is never changed by the renaming of a word. */
+private static String substituted( String text, Map<String, String> quoted
+                                 , Map<String, String> words) {
+  final StringBuilder out = new StringBuilder(text.length());
+  final Matcher m = atomOrWord.matcher(text);
+  int end = 0;
+  while (m.find()) {
+    final String token = notNull(m.group());
+    final @Nullable String replacement = token.startsWith("'") ? quoted.get(token)
+                                                                 : words.get(token);
+    out.append(text, end, m.start()).append((replacement != null) ? replacement : token);
+    end = m.end();
+  }
+  out.append(text, end, text.length());
+  return notNull(out.toString());
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class MethodSummaryStore
@@ -0,0 +1,180 @@
+package tlang;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+
+/**
+ * A content-addressed record, kept on disk, of the results that the prover returned for earlier
+ * consistency checks. A test formula that was checked in an earlier run of the compiler is
+ * answered from the record instead of being sent to the prover again.
+ * <p>
+ * The key for a result is a hash of the prover theory's fingerprint together with the normalized
+ * test formula, that is, the statement conjoined with all the facts of the
+ * {@link KnowledgeBase}. When the theory files, e.g., <code>etleantap.pl</code> or
+ * <code>nnf.pl</code>, change, the fingerprint changes and the whole record is discarded the next
+ * time it is loaded.
+ *
+ * @implNote The record is a single text file. The first line holds the theory fingerprint and each
+ *           following line holds a key and its {@link ConsistencyResult}. New results are appended
+ *           to the file as they are found, so an interrupted compile loses nothing that it had
+ *           already proven.
+ */
+final class ProofCache {
+
+/** The location of the cache, relative to the directory where the compiler is run, when no other
+ * location is given. */
+static final String defaultDirectory = "build/tlang/proofCache";
+
+private static final String cacheFileName = "proofResults.cache";
+private static final String fingerprintPrefix = "# theory ";
+
+private final Path cacheFile;
+private final String theoryFingerprint;
+private final Map<String, ConsistencyResult> results = new ConcurrentHashMap<>();
+private boolean isLoaded = false;
+
+private final AtomicInteger hitCount  = new AtomicInteger();
+private final AtomicInteger missCount = new AtomicInteger();
+
+  int hitCount()  { return hitCount.get();  }
+  int missCount() { return missCount.get(); }
+
+
+/**
+ * @param directory         where the cache file is kept; it is created when the first result is
+ *                          recorded
+ * @param theoryFingerprint a hash of everything that was loaded into the prover. Results recorded
+ *                          under any other fingerprint are discarded.
+ */
+ProofCache(Path directory, String theoryFingerprint) {
+  this.cacheFile = notNull(directory.resolve(cacheFileName));
+  this.theoryFingerprint = theoryFingerprint;
+}
+
+/** The result recorded for the test formula, if there is one. Each call counts as either a hit or
+ * a miss. */
+Optional<ConsistencyResult> lookup(String testFormula) {
+  ensureLoaded();
+  final @Nullable ConsistencyResult result = results.get(key(testFormula));
+  if (result == null) {
+    missCount.incrementAndGet();
+    return notNull(Optional.empty());
+  }
+  hitCount.incrementAndGet();
+  return notNull(Optional.of(result));
+}
+
+/** Record the prover's result for the test formula, both in memory and on disk. A failure to write
+ * the file only costs the benefit of the cache in later runs, so it is reported and otherwise
+ * ignored. */
+void record(String testFormula, ConsistencyResult result) {
+  ensureLoaded();
+  final String key = key(testFormula);
+  if (results.put(key, result) == result)
+    return;
+  synchronized (this) {
+    try {
+      final boolean isNewFile = Files.notExists(cacheFile);
+      if (isNewFile)
+        TUtil.ensureDirExists(notNull(cacheFile.getParent()).toString());
+      try (BufferedWriter writer = Files.newBufferedWriter( cacheFile, StandardCharsets.UTF_8
+                                                          , StandardOpenOption.CREATE
+                                                          , StandardOpenOption.APPEND)) {
+        if (isNewFile)
+          writer.write(fingerprintPrefix + theoryFingerprint + "\n");
+        writer.write(key +" "+ result.name() +"\n");
+      }
+    } catch (IOException e) {
+      System.out.println("Unable to record a proof result in "+ cacheFile +": "+ e.getMessage());
+    }
+  }
+}
+
+/** Read the results of earlier runs, discarding them if they were recorded with a different
+ * prover theory or if the file cannot be understood. */
+private synchronized void ensureLoaded() {
+  if (isLoaded)
+    return;
+  isLoaded = true;
+  if (Files.notExists(cacheFile))
+    return;
+
+  try {
+    final List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+    if (lines.isEmpty() || ! lines.get(0).equals(fingerprintPrefix + theoryFingerprint)) {
+      Files.delete(cacheFile); // the theory has changed, so none of the results can be trusted
+      return;
+    }
+    for (String line : lines.subList(1, lines.size())) {
+      final int space = line.indexOf(' ');
+      if (space > 0)
+        results.put(notNull(line.substring(0, space)),
+                    ConsistencyResult.valueOf(line.substring(space + 1)));
+    }
+  } catch (IOException | IllegalArgumentException e) {
+    results.clear();
+    try {
+      Files.deleteIfExists(cacheFile);
+    } catch (IOException ignored) { /* the next record() will report the problem */ }
+  }
+}
+
+/** The content address of a test formula under the current theory. */
+String key(String testFormula) {
+  return sha256(theoryFingerprint +"\n"+ normalized(testFormula));
+}
+
+/** The formula with insignificant differences in white space removed. */
+static String normalized(String formula) {
+  return notNull(formula.strip().replaceAll("\\s+", " "));
+}
+
+/** The hexadecimal SHA-256 hash of the text. */
+static String sha256(String text) {
+  return toHex(newSha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+}
+
+static MessageDigest newSha256() {
+  try {
+    return notNull(MessageDigest.getInstance("SHA-256"));
+  } catch (NoSuchAlgorithmException e) {
+    throw new RuntimeException("Every Java platform is required to provide SHA-256", e);
+  }
+}
+
+static String toHex(byte[] bytes) {
+  StringBuilder hex = new StringBuilder(2 * bytes.length);
+  for (byte b : bytes)
+    hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+  return notNull(hex.toString());
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProofCache
@@ -0,0 +1,64 @@
+package tlang;
+
+/**
+ * The most that a single proof may spend, both in wall-clock time and in inference steps. A proof
+ * that exceeds either limit is cancelled and reported as {@link KnowledgeBase.ProofResult#reachedLimit},
+ * so no one proof obligation can hold up the compile for longer than its budget.
+ * <p>
+ * An inference step is one call of <code>inconsistent/6</code>, i.e., the expansion of one formula
+ * on one branch of the tableau. Both etleantap.pl and the {@link TableauProver} count the calls, and
+ * both stop a proof that has used up its steps as though it had reached the depth limit: every
+ * later call fails at once, so the search unwinds quickly, and the result is <code>limit</code>
+ * unless an inconsistency has already been found. The time limit is checked by the Java prover as
+ * it goes; a Prolog engine is halted from a timer when the time runs out.
+ * <p>
+ * A budget never changes. A limit of zero means that there is no limit.
+ */
+final class ProverBudget {
+
+/** No limit on either time or steps, which is the default for every proof. */
+static final ProverBudget unlimited = new ProverBudget(0, 0);
+
+/** The most milliseconds that a proof may run, or 0 when there is no limit. */
+final long timeLimitMillis;
+/** The most inference steps that a proof may take, or 0 when there is no limit. */
+final long stepLimit;
+
+/**
+ * @param timeLimitMillis the most milliseconds that a proof may run, or 0 for no limit
+ * @param stepLimit       the most inference steps that a proof may take, or 0 for no limit
+ */
+ProverBudget(long timeLimitMillis, long stepLimit) {
+  if (timeLimitMillis < 0 || stepLimit < 0)
+    throw new IllegalArgumentException("A prover budget cannot be negative");
+  this.timeLimitMillis = timeLimitMillis;
+  this.stepLimit = stepLimit;
+}
+
+boolean hasTimeLimit() { return timeLimitMillis > 0; }
+boolean hasStepLimit() { return stepLimit > 0; }
+
+/** This budget with its time limit replaced. */
+ProverBudget withTimeLimit(long millis) { return new ProverBudget(millis, stepLimit); }
+
+/** This budget with its step limit replaced. */
+ProverBudget withStepLimit(long steps) { return new ProverBudget(timeLimitMillis, steps); }
+
+/** The budget written as <code>millis</code> or <code>millis,steps</code>, as it is given on the
+ * command line, e.g., <code>2000</code> or <code>0,50000</code>.
+ * @throws NumberFormatException when the text is not in that form */
+static ProverBudget parse(String text) {
+  final String[] limits = text.split(",", -1);
+  if (limits.length > 2 || text.startsWith("-") || text.contains(",-"))
+    throw new NumberFormatException("Not a prover budget: "+ text);
+  return new ProverBudget( Long.parseLong(limits[0])
+                         , (limits.length > 1) ? Long.parseLong(limits[1]) : 0);
+}
+
+@Override
+public String toString() {
+  return (hasTimeLimit() ? timeLimitMillis +" ms" : "no time limit") +", "
+         + (hasStepLimit() ? stepLimit +" steps" : "no step limit");
+}
+
+} // end class ProverBudget
@@ -0,0 +1,408 @@
+package tlang;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import alice.tuprolog.*;
+import alice.tuprolog.event.*;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A bounded pool of Prolog engines, each with its own copy of the prover theory and its own
+ * capture of the prover's output. A consistency check leases an engine for the length of one
+ * proof, so several proofs can run at once, one per engine.
+ * <p>
+ * The engines must be kept apart because the prover keeps global state: etleantap.pl records its
+ * depth limits with <code>assert</code> and <code>retractall</code> of <code>limit/1</code>,
+ * <code>maxLimit/1</code>, <code>reached_limit</code> and <code>with_limit</code>, and
+ * mydebug.prolog records <code>debug_on</code>. Two proofs that shared an engine would overwrite
+ * each other's limits.
+ *
+ * @implNote The theory files are read once, when the pool is made. Engines are created from those
+ *           contents only when a lease finds no idle engine, so a compile that proves one
+ *           obligation at a time never creates more than one engine. When the theory comes from
+ *           the classpath with a {@link ProverTheorySnapshot}, the engines consult its parsed
+ *           clauses instead of parsing the Prolog source. A production pool, whose theory has no
+ *           debugging goals, makes its own snapshot of the stripped theory when the build has
+ *           not left one.
+ */
+final class ProverEnginePool {
+
+private static final String[] libraries = {"alice.tuprolog.lib.BasicLibrary"
+                                          ,"alice.tuprolog.lib.ISOLibrary"
+                                          ,"alice.tuprolog.lib.IOLibrary"
+                                          ,"alice.tuprolog.lib.ISOIOLibrary"
+                                              // ISOIOLibrary overrides some IOLibrary predicates
+                                          ,"alice.tuprolog.lib.OOLibrary"
+                                          ,"alice.tuprolog.lib.ThreadLibrary"
+                                          };
+
+/** The name and contents of one theory file. */
+private static final class TheoryFile {
+  final String name;
+  final byte[] contents;
+  TheoryFile(String name, byte[] contents) {
+    this.name = name;
+    this.contents = contents;
+  }
+}
+
+/** A Prolog engine with the prover theory loaded. The most recent of its output is kept for the
+ * length of a lease, so that it can be written out when a proof fails. See {@link ProverOutput} */
+static final class ProverEngine {
+  final Prolog prolog;
+  /** The KnowledgeBase facts that are asserted in this engine, one frame for each scope, outermost
+   * first. They are kept from one lease to the next. */
+  final List<KnowledgeBase.Conjunction> contextFrames = new ArrayList<>();
+  /** What the prover has written since this engine was leased. */
+  final ProverOutput output = new ProverOutput();
+
+  private ProverEngine(Prolog prolog) {
+    this.prolog = prolog;
+    prolog.addOutputListener(   (@Nullable OutputEvent    e)
+                                    -> output.post(ProverOutput.output,    notNull(e).getMsg()));
+    prolog.addExceptionListener((@Nullable ExceptionEvent e)
+                                    -> output.post(ProverOutput.exception, notNull(e).getMsg()));
+    prolog.addWarningListener(  (@Nullable WarningEvent   e)
+                                    -> output.post(ProverOutput.warning,   notNull(e).getMsg()));
+  }
+
+  /** Solve the goal, halting the engine if the proof runs past the time limit of the budget.
+   * @return the solution, or null when the engine was halted */
+  @Nullable SolveInfo solve(Term goal, ProverBudget budget) {
+    if ( ! budget.hasTimeLimit())
+      return prolog.solve(goal);
+    final Halt halt = new Halt(prolog);
+    final ScheduledFuture<?> timer
+        = haltTimer.schedule(halt, budget.timeLimitMillis, TimeUnit.MILLISECONDS);
+    final SolveInfo info;
+    try {
+      info = prolog.solve(goal);
+    } finally {
+      timer.cancel(false);
+    }
+    return halt.disarm() ? null : info;
+  }
+}
+
+/** Halts a proof that has run out of time. It is disarmed as soon as the proof ends, so that it
+ * can never halt a later proof that runs in the same engine. */
+private static final class Halt implements Runnable {
+  private final Prolog prolog;
+  private boolean isArmed = true;
+  private boolean hasHalted = false;
+
+  Halt(Prolog prolog) { this.prolog = prolog; }
+
+  @Override
+  public synchronized void run() {
+    if (isArmed) {
+      hasHalted = true;
+      prolog.solveHalt();
+    }
+  }
+
+  /** Keep the halt from happening.
+   * @return did it already happen? */
+  synchronized boolean disarm() {
+    isArmed = false;
+    return hasHalted;
+  }
+}
+
+/** Halts the proofs that run out of time. See {@link ProverEngine#solve(Term, ProverBudget)} */
+private static final ScheduledExecutorService haltTimer
+    = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "prover halt timer");
+        thread.setDaemon(true); // never keeps the compiler running
+        return thread;
+      });
+
+private final List<TheoryFile> theoryFiles;
+/** The parsed theory, which is loaded instead of the theory files when it is not null. */
+private final byte @Nullable [] snapshot;
+private final String theoryFingerprint;
+private final LinkedBlockingQueue<ProverEngine> idleEngines = new LinkedBlockingQueue<>();
+private int maxEngines;
+private int engineCount = 0;
+/** A copy of the operators that the theory defines, for parsing the language of the KnowledgeBase.
+ * It is taken from the first engine that is created. */
+private volatile @Nullable OperatorManager operators = null;
+
+/**
+ * @param maxEngines  the most engines that will ever be created, and so the most proofs that can
+ *                    run at once
+ * @param theoryFiles the Prolog files to load into each engine, in order
+ * @throws IOException when a theory file cannot be read
+ */
+ProverEnginePool(int maxEngines, List<File> theoryFiles) throws IOException {
+  this(maxEngines, readFiles(theoryFiles), null, "");
+}
+
+private ProverEnginePool( int maxEngines, List<TheoryFile> theoryFiles
+                        , byte @Nullable [] snapshot, String snapshotFingerprint) {
+  this.maxEngines = Math.max(1, maxEngines);
+  this.theoryFiles = theoryFiles;
+  this.snapshot = snapshot;
+  final List<byte[]> contents = new ArrayList<>();
+  for (TheoryFile file : theoryFiles)
+    contents.add(file.contents);
+  this.theoryFingerprint = snapshotFingerprint.isEmpty() ? fingerprint(contents) : snapshotFingerprint;
+}
+
+/** A snapshot of the theory files without their debugging goals, or null when the files cannot be
+ * parsed, so that the engines load the files themselves and report the error. */
+private static byte @Nullable [] productionSnapshot(List<TheoryFile> theoryFiles) {
+  final List<String> names = new ArrayList<>();
+  final List<byte[]> contents = new ArrayList<>();
+  for (TheoryFile file : theoryFiles) {
+    names.add(file.name);
+    contents.add(file.contents);
+  }
+  try {
+    return ProverTheorySnapshot.write(names, contents, true);
+  } catch (InvalidTheoryException e) {
+    return null;
+  }
+}
+
+/**
+ * A pool whose engines load the theory files from the classpath, preferring the
+ * {@link ProverTheorySnapshot} of those files that the build leaves beside them.
+ * @param maxEngines    the most engines that will ever be created
+ * @param resourceDir   the classpath directory of the theory files, ending with a slash
+ * @param theoryNames   the names of the theory files to load into each engine, in order
+ * @param isProduction  should the debugging goals be taken out of the theory?
+ * @return              the pool, or null when a theory file is not on the classpath
+ * @throws IOException  when a theory file cannot be read
+ */
+static @Nullable ProverEnginePool fromClasspath( int maxEngines, String resourceDir
+                                              , List<String> theoryNames, boolean isProduction)
+      throws IOException {
+  final byte @Nullable [] snapshot
+      = readResource(resourceDir + (isProduction ? ProverTheorySnapshot.productionFileName
+                                                 : ProverTheorySnapshot.fileName));
+  if (snapshot != null) {
+    final @Nullable String fingerprint = ProverTheorySnapshot.fingerprint(snapshot, theoryNames);
+    if (fingerprint != null)
+      return new ProverEnginePool(maxEngines, List.of(), snapshot, fingerprint);
+  }
+  final List<TheoryFile> theoryFiles = new ArrayList<>();
+  for (String name : theoryNames) {
+    final byte @Nullable [] contents = readResource(resourceDir + name);
+    if (contents == null)
+      return null;
+    theoryFiles.add(new TheoryFile(name, contents));
+  }
+  return new ProverEnginePool( maxEngines, theoryFiles
+                             , isProduction ? productionSnapshot(theoryFiles) : null, "");
+}
+
+/**
+ * A pool whose engines load the theory files, without their debugging goals when that is chosen.
+ * @param maxEngines   the most engines that will ever be created
+ * @param theoryFiles  the Prolog files to load into each engine, in order
+ * @param isProduction should the debugging goals be taken out of the theory? See
+ *                     {@link ProverTheoryStripper}
+ * @throws IOException when a theory file cannot be read
+ */
+static ProverEnginePool fromFiles(int maxEngines, List<File> theoryFiles, boolean isProduction)
+      throws IOException {
+  final List<TheoryFile> files = readFiles(theoryFiles);
+  return new ProverEnginePool(maxEngines, files, isProduction ? productionSnapshot(files) : null, "");
+}
+
+private static List<TheoryFile> readFiles(List<File> files) throws IOException {
+  final List<TheoryFile> theoryFiles = new ArrayList<>();
+  for (File file : files)
+    theoryFiles.add(new TheoryFile( notNull(file.getName())
+                                  , notNull(Files.readAllBytes(file.toPath()))));
+  return theoryFiles;
+}
+
+private static byte @Nullable [] readResource(String name) throws IOException {
+  try (@Nullable InputStream in = ProverEnginePool.class.getResourceAsStream("/"+ name)) {
+    return (in == null) ? null : in.readAllBytes();
+  }
+}
+
+/** A hash of the contents of the theory files, in order. */
+static String fingerprint(List<byte[]> contents) {
+  final MessageDigest digest = ProofCache.newSha256();
+  for (byte[] fileContents : contents)
+    digest.update(fileContents);
+  return ProofCache.toHex(notNull(digest.digest()));
+}
+
+/** A hash of the contents of every theory file loaded into the engines. */
+String theoryFingerprint() { return theoryFingerprint; }
+
+/** Parse a formula of the KnowledgeBase language, which uses operators defined by the theory. The
+ * term may be given to any engine in the pool.
+ * @throws InvalidTermException when the text is not a formula */
+Term parse(String formula) {
+  @Nullable OperatorManager parsingOperators = operators;
+  if (parsingOperators == null) {
+    withEngine(engine -> engine); // creates the first engine, which supplies the operators
+    parsingOperators = notNull(operators);
+  }
+  return notNull(Term.createTerm(formula, parsingOperators));
+}
+
+/** Change the most engines that may be created. Engines that already exist are kept. */
+synchronized void setMaxEngines(int maxEngines) {
+  this.maxEngines = Math.max(1, maxEngines);
+}
+
+/** Run an action with an engine that no other thread is using, waiting for one if all the engines
+ * are busy.
+ * @param  action uses the engine, which must not be kept after the action returns
+ * @return        the result of the action */
+<T> T withEngine(Function<ProverEngine, T> action) {
+  return withEngine(engine -> true, action);
+}
+
+/** Run an action with an engine that no other thread is using, preferring an idle engine that
+ * passes the test, e.g., one that holds the facts that the action needs in its context.
+ * @param  preferred tests whether an idle engine is better suited to the action than the others,
+ *                   which it may read freely since no other thread holds the engine meanwhile
+ * @param  action    uses the engine, which must not be kept after the action returns
+ * @return           the result of the action */
+<T> T withEngine(Predicate<ProverEngine> preferred, Function<ProverEngine, T> action) {
+  final ProverEngine engine = lease(preferred);
+  try {
+    return action.apply(engine);
+  } finally {
+    idleEngines.add(engine);
+  }
+}
+
+/** Lease an idle engine, the first one that passes the test if any does, or else a new engine. Each
+ * idle engine is taken out of the queue before it is tested, so that no other thread can lease it
+ * and change its context while the test reads it, and those passed over are put back. */
+private ProverEngine lease(Predicate<ProverEngine> preferred) {
+  final List<ProverEngine> passedOver = new ArrayList<>();
+  try {
+    for (int untested = idleEngines.size(); untested > 0; untested--) {
+      final @Nullable ProverEngine candidate = idleEngines.poll();
+      if (candidate == null)
+        break;
+      passedOver.add(candidate);
+      if (preferred.test(candidate)) {
+        passedOver.remove(passedOver.size() - 1);
+        return startLease(candidate);
+      }
+    }
+    if ( ! passedOver.isEmpty())
+      return startLease(notNull(passedOver.remove(0)));
+  } finally {
+    idleEngines.addAll(passedOver);
+  }
+
+  synchronized (this) {
+    if (engineCount < maxEngines)
+      engineCount++;
+    else
+      return startLease(awaitIdleEngine());
+  }
+  try {
+    return newEngine();
+  } catch (RuntimeException e) {
+    synchronized (this) { engineCount--; }
+    throw e;
+  }
+}
+
+private ProverEngine awaitIdleEngine() {
+  try {
+    return notNull(idleEngines.take());
+  } catch (InterruptedException e) {
+    Thread.currentThread().interrupt();
+    throw new RuntimeException("Interrupted while waiting for a prover engine", e);
+  }
+}
+
+private static ProverEngine startLease(ProverEngine engine) {
+  engine.output.clear();
+  engine.output.echoTo(null);
+  return engine;
+}
+
+private ProverEngine newEngine() {
+  final ProverEngine engine = new ProverEngine(newProlog());
+  engine.output.echoTo(System.out); // the warnings of loading the theory are always shown
+  try {
+    final byte @Nullable [] parsedTheory = snapshot;
+    if (parsedTheory != null)
+      ProverTheorySnapshot.loadInto(engine.prolog, parsedTheory);
+    else {
+      boolean isFirst = true;
+      for (TheoryFile file : theoryFiles) {
+        loadTheory(engine.prolog, file, isFirst);
+        isFirst = false;
+      }
+    }
+  } catch (InvalidTheoryException theoryException) {
+    theoryException.printStackTrace();
+  }
+  if (operators == null)
+    operators = engine.prolog.getOperatorManager().clone();
+  return startLease(engine);
+}
+
+/** A Prolog engine with the libraries that the prover uses, but no theory. */
+static Prolog newProlog() {
+  try {
+    return new Prolog(libraries);
+  } catch (InvalidLibraryException e) {
+    throw new RuntimeException("Unable to load the Prolog libraries for the prover", e);
+  }
+}
+
+private static void loadTheory(Prolog prolog, TheoryFile file, boolean isFirst)
+      throws InvalidTheoryException {
+  try {
+    final Theory theory = new Theory(new ByteArrayInputStream(file.contents));
+    if (isFirst)
+      prolog.setTheory(theory);
+    else
+      prolog.addTheory(theory);
+  } catch (InvalidTheoryException e) {
+    throw improveMsg(file, e);
+  }
+}
+
+//TODO: Point to previous exception in the new exception
+private static InvalidTheoryException improveMsg(TheoryFile file, InvalidTheoryException e) {
+  final String msg = "at "+ file.name +" line "+ e.line +":"+ (1+e.pos) +" - "
+      + e.getLocalizedMessage();
+  return new InvalidTheoryException(msg);
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProverEnginePool
@@ -0,0 +1,160 @@
+package tlang;
+
+import java.util.ArrayList;
+import java.util.List;
+import alice.tuprolog.Int;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+
+/**
+ * The three limits that keep a tableau proof from running forever, as the term
+ * <code>limits(AllLimit, DepthLimit, Continuations)</code> gives them to <code>runProver/3</code>
+ * in etleantap.pl:
+ * <ul>
+ * <li>{@link #allLimit}, the most free variables that expanding ALL-expressions may add to a branch;
+ * <li>{@link #depthLimit}, the depth that a branch starts with, i.e., how many times guarded
+ *     expressions, such as the rules of equality, may add to its unexpanded formulas; and
+ * <li>{@link #continuations}, how many times a proof may go on to the next formula after a branch
+ *     reaches one of the other limits.
+ * </ul>
+ * A proof is tried with each limits of a schedule in turn, the smallest first, until one of them
+ * decides it. An easy proof is decided quickly at small limits, while a hard one still reaches the
+ * large limits that it needs. A formula that is consistent at small limits, with no limit reached,
+ * is consistent at any limits, so the larger limits are only tried after a proof reaches a limit.
+ */
+final class ProverLimits {
+
+/** The schedule when no other is chosen. It ends with the single limit of 8 that the prover has
+ * always used, so no proof reaches a limit that it did not reach before. */
+static final List<ProverLimits> defaultSchedule = List.of(of(2), of(4), of(8));
+
+final int allLimit;
+final int depthLimit;
+final int continuations;
+
+ProverLimits(int allLimit, int depthLimit, int continuations) {
+  if (allLimit < 1 || depthLimit < 1 || continuations < 0)
+    throw new IllegalArgumentException("Prover limits must be positive");
+  this.allLimit = allLimit;
+  this.depthLimit = depthLimit;
+  this.continuations = continuations;
+}
+
+/** The same number for all three limits. */
+static ProverLimits of(int limit) {
+  return new ProverLimits(limit, limit, limit);
+}
+
+/** The term <code>limits(AllLimit, DepthLimit, Continuations)</code> */
+Term term() {
+  return new Struct("limits", new Int(allLimit), new Int(depthLimit), new Int(continuations));
+}
+
+/** The Prolog list of the limits of the schedule, for <code>runProver/4</code>. */
+static Term term(List<ProverLimits> schedule) {
+  final Term[] rungs = new Term[schedule.size()];
+  for (int i = 0; i < rungs.length; i++)
+    rungs[i] = schedule.get(i).term();
+  return new Struct(rungs);
+}
+
+/** The limits of a <code>limits(AllLimit, DepthLimit, Continuations)</code> term.
+ * @throws IllegalArgumentException when the term is not in that form */
+static ProverLimits from(Term term) {
+  final Term t = term.getTerm();
+  if ( ! (t instanceof Struct && ((Struct)t).getName().equals("limits") && ((Struct)t).getArity() == 3))
+    throw new IllegalArgumentException("Not a term of prover limits: "+ term);
+  final Struct s = (Struct)t;
+  return new ProverLimits( ((alice.tuprolog.Number)s.getArg(0).getTerm()).intValue()
+                         , ((alice.tuprolog.Number)s.getArg(1).getTerm()).intValue()
+                         , ((alice.tuprolog.Number)s.getArg(2).getTerm()).intValue());
+}
+
+/** Parse limits written as <code>n</code>, for the same number for all three limits, or as
+ * <code>all/depth/continuations</code>.
+ * @throws NumberFormatException when the text is not in either form */
+static ProverLimits parse(String text) {
+  final String[] limits = text.split("/", -1);
+  if (limits.length == 1)
+    return of(Integer.parseInt(limits[0]));
+  if (limits.length != 3)
+    throw new NumberFormatException("Not prover limits: "+ text);
+  return new ProverLimits( Integer.parseInt(limits[0]), Integer.parseInt(limits[1])
+                         , Integer.parseInt(limits[2]));
+}
+
+/** Parse a schedule written as a comma-separated list of limits, e.g., <code>2,4,8,16</code> or
+ * <code>2/4/2,8/8/8</code>. See {@link #parse(String)}
+ * @throws NumberFormatException when the text is not in that form */
+static List<ProverLimits> parseSchedule(String text) {
+  final List<ProverLimits> schedule = new ArrayList<>();
+  for (String rung : text.split(",", -1))
+    schedule.add(parse(notNull(rung)));
+  return schedule;
+}
+
+/** The schedule written as {@link #parseSchedule(String)} reads it. */
+static String toString(List<ProverLimits> schedule) {
+  final StringBuilder text = new StringBuilder();
+  for (ProverLimits limits : schedule)
+    text.append(text.length() == 0 ? "" : ",").append(limits);
+  return notNull(text.toString());
+}
+
+@Override
+public String toString() {
+  return allLimit +"/"+ depthLimit +"/"+ continuations;
+}
+
+@Override
+public boolean equals(@Nullable Object other) {
+  return other instanceof ProverLimits
+         && ((ProverLimits)other).allLimit == allLimit
+         && ((ProverLimits)other).depthLimit == depthLimit
+         && ((ProverLimits)other).continuations == continuations;
+}
+
+@Override
+public int hashCode() {
+  return (allLimit * 31 + depthLimit) * 31 + continuations;
+}
+
+
+/** The result of a proof together with the limits that decided it, i.e., the limits of the
+ * schedule at which it was proven inconsistent or consistent, or the last limits that it tried. */
+static final class Outcome {
+  final ConsistencyResult result;
+  final ProverLimits limits;
+  /** What the prover said during the proof, which is written only when the result is not the one
+   * that the proof hoped for. See {@link ProverOutput} */
+  final String proverOutput;
+
+  Outcome(ConsistencyResult result, ProverLimits limits, String proverOutput) {
+    this.result = result;
+    this.limits = limits;
+    this.proverOutput = proverOutput;
+  }
+
+  Outcome(ConsistencyResult result, ProverLimits limits) {
+    this(result, limits, "");
+  }
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProverLimits
@@ -0,0 +1,127 @@
+package tlang;
+
+import java.io.PrintStream;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The most recent output of a prover engine during one proof: what the theory prints, and the
+ * warnings and exceptions of the engine. Only the last {@link #capacity} messages are kept, so a
+ * proof that prints on every step of a long search holds no more than that, and the messages that
+ * were overwritten are only counted.
+ * <p>
+ * The messages are kept as the engine gives them, beside the prefix of their kind, and are put
+ * together only when they are written, which is when the proof does not come out as hoped or when
+ * the prover is being debugged. A proof that succeeds quietly never builds a string of its output.
+ */
+final class ProverOutput {
+
+/** The number of messages kept by default. */
+static final int defaultCapacity = 256;
+
+/** The kinds of message, which are written with their prefix. */
+static final String output = "\n";
+static final String warning = "\n";
+static final String exception = "\n***** EXCEPTION: ";
+
+final int capacity;
+private final @Nullable String[] prefixes;
+private final @Nullable String[] messages;
+/** The slot for the next message. */
+private int next = 0;
+/** The number of slots in use. */
+private int size = 0;
+/** The number of messages overwritten since the last {@link #clear()}. */
+private long dropped = 0;
+/** Where each message is also printed as soon as it is posted, or null for nowhere. */
+private @Nullable PrintStream echo = null;
+
+/** @param capacity the most messages that are kept */
+ProverOutput(int capacity) {
+  if (capacity < 1)
+    throw new IllegalArgumentException("The prover output must keep at least one message, not "
+                                       + capacity);
+  this.capacity = capacity;
+  this.prefixes = new @Nullable String[capacity];
+  this.messages = new @Nullable String[capacity];
+}
+
+ProverOutput() {
+  this(defaultCapacity);
+}
+
+/** Keep the message, overwriting the oldest one when the buffer is full.
+ * @param kind    the prefix of the message, such as {@link #exception}
+ * @param message the message as the engine gave it */
+synchronized void post(String kind, String message) {
+  prefixes[next] = kind;
+  messages[next] = message;
+  next = (next + 1) % capacity;
+  if (size < capacity)
+    size++;
+  else
+    dropped++;
+  final @Nullable PrintStream stream = echo;
+  if (stream != null) {
+    stream.print(kind);
+    stream.print(message);
+  }
+}
+
+/** Print each message as it is posted, as well as keeping it.
+ * @param stream where the messages are printed, or null to stop printing them */
+synchronized void echoTo(@Nullable PrintStream stream) {
+  echo = stream;
+}
+
+/** Forget the messages, as at the start of a proof. */
+synchronized void clear() {
+  for (int i = 0; i < capacity; i++) {
+    prefixes[i] = null;
+    messages[i] = null;
+  }
+  next = 0;
+  size = 0;
+  dropped = 0;
+}
+
+synchronized boolean isEmpty() {
+  return size == 0;
+}
+
+/** The kept messages, oldest first, after a note of how many were overwritten, which are then
+ * forgotten. Messages that were already echoed are left out, so they are not written again. */
+synchronized String drain() {
+  final String text = (size == 0 || echo != null) ? "" : toString();
+  clear();
+  return text;
+}
+
+/** The kept messages, oldest first, after a note of how many were overwritten. */
+@Override
+public synchronized String toString() {
+  final StringBuilder text = new StringBuilder();
+  if (dropped > 0)
+    text.append("\n... ").append(dropped).append(" earlier prover messages were dropped");
+  final int first = (next - size + capacity) % capacity;
+  for (int i = 0; i < size; i++) {
+    final int slot = (first + i) % capacity;
+    text.append(prefixes[slot]).append(messages[slot]);
+  }
+  return notNull(text.toString());
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProverOutput
@@ -0,0 +1,350 @@
+package tlang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A first-order term for the {@link TableauProver}: either a logic variable or a structure made of
+ * a functor and its arguments. Atoms and numbers are structures without arguments.
+ * <p>
+ * Functors are interned, so two structures have the same functor exactly when their functors are
+ * the same object, and atoms are interned as well. A term without variables never changes and may be
+ * shared freely, even between threads; a variable is bound and unbound through a {@link Trail} that
+ * belongs to a single proof.
+ *
+ * @implNote Unification has no occurs check, matching the Prolog systems that run etleantap.pl.
+ */
+abstract class ProverTerm {
+
+/** The term that this term stands for, following the bindings of variables. */
+abstract ProverTerm deref();
+
+/** Is the dereferenced term free of unbound variables? */
+abstract boolean isGround();
+
+
+/** The name and arity of a structure, interned so that functors can be compared by identity. */
+static final class Functor {
+  private static final Map<String, Functor> interned = new ConcurrentHashMap<>();
+
+  final String name;
+  final int arity;
+  final boolean isNumber;
+  /** The single atom for a functor without arguments, otherwise null. */
+  private final @Nullable Struct atom;
+
+  private Functor(String name, int arity, boolean isNumber) {
+    this.name = name;
+    this.arity = arity;
+    this.isNumber = isNumber;
+    this.atom = (arity == 0) ? new Struct(this, noArgs) : null;
+  }
+
+  static Functor of(String name, int arity) {
+    return intern(name, arity, false);
+  }
+
+  private static Functor intern(String name, int arity, boolean isNumber) {
+    final String key = (isNumber ? "#" : "") + arity +"/"+ name;
+    return notNull(interned.computeIfAbsent(key, k -> new Functor(name, arity, isNumber)));
+  }
+
+  @Override
+  public String toString() { return name +"/"+ arity; }
+}
+
+private static final ProverTerm[] noArgs = {};
+
+static final Functor negation    = Functor.of("-",     1);
+static final Functor equality    = Functor.of("=",     2);
+static final Functor notEqual    = Functor.of("#=",    2);
+static final Functor comma       = Functor.of(",",     2);
+static final Functor semicolon   = Functor.of(";",     2);
+static final Functor and         = Functor.of("/\\",   2);
+static final Functor or          = Functor.of("\\/",   2);
+static final Functor implies     = Functor.of("==>",   2);
+static final Functor impliedBy   = Functor.of("<==",   2);
+static final Functor equivalent  = Functor.of("===",   2);
+static final Functor inequivalent= Functor.of("=#=",   2);
+static final Functor all         = Functor.of("all",   2);
+static final Functor allLastVar  = Functor.of("all",   3);
+static final Functor exists      = Functor.of("ex",    2);
+static final Functor existsRange = Functor.of("ex",    3);
+static final Functor guarded     = Functor.of("guarded", 2);
+static final Functor listCell    = Functor.of(".",     2);
+
+static final Struct trueAtom  = atom("true");
+static final Struct falseAtom = atom("false");
+static final Struct emptyList = atom("[]");
+static final Struct exAtom    = atom("ex");
+
+
+static Struct atom(String name) {
+  return notNull(Functor.of(name, 0).atom);
+}
+
+static Struct number(String text) {
+  return notNull(Functor.intern(text, 0, true).atom);
+}
+
+static Struct struct(Functor functor, ProverTerm... args) {
+  return (args.length == 0) ? notNull(functor.atom) : new Struct(functor, args);
+}
+
+static Struct neg(ProverTerm term)                   { return new Struct(negation, term); }
+static Struct eq(ProverTerm left, ProverTerm right)  { return new Struct(equality, left, right); }
+static Struct pair(ProverTerm left, ProverTerm right){ return new Struct(comma, left, right); }
+
+/** A Prolog list of the terms. */
+static ProverTerm list(List<? extends ProverTerm> elements) {
+  ProverTerm list = emptyList;
+  for (int i = elements.size() - 1; i >= 0; i--)
+    list = new Struct(listCell, notNull(elements.get(i)), list);
+  return list;
+}
+
+
+/** A logic variable, which is either unbound or bound to another term. */
+static final class Var extends ProverTerm {
+  private @Nullable ProverTerm binding = null;
+
+  boolean isUnbound() { return binding == null; }
+
+  @Override
+  ProverTerm deref() {
+    ProverTerm term = this;
+    while (term instanceof Var) {
+      final @Nullable ProverTerm next = ((Var)term).binding;
+      if (next == null)
+        return term;
+      term = next;
+    }
+    return term;
+  }
+
+  @Override
+  boolean isGround() {
+    final ProverTerm term = deref();
+    return term != this && term.isGround();
+  }
+
+  @Override
+  public String toString() {
+    final ProverTerm term = deref();
+    return (term == this) ? "_G"+ Integer.toHexString(System.identityHashCode(this)) : term.toString();
+  }
+}
+
+/** A functor applied to arguments. The arguments of a structure never change, although variables
+ * among them may be bound. */
+static final class Struct extends ProverTerm {
+  final Functor functor;
+  private final ProverTerm[] args;
+  /** Known to be ground when it was built, so it can be shared without being copied. */
+  private final boolean isBuiltGround;
+
+  Struct(Functor functor, ProverTerm... args) {
+    this.functor = functor;
+    this.args = args;
+    boolean ground = true;
+    for (ProverTerm arg : args)
+      if ( ! (arg instanceof Struct && ((Struct)arg).isBuiltGround)) {
+        ground = false;
+        break;
+      }
+    this.isBuiltGround = ground;
+  }
+
+  ProverTerm arg(int i) { return notNull(args[i]); }
+
+  boolean is(Functor f) { return functor == f; }
+
+  boolean isAtom() { return args.length == 0; }
+
+  @Override
+  ProverTerm deref() { return this; }
+
+  @Override
+  boolean isGround() {
+    if (isBuiltGround)
+      return true;
+    for (ProverTerm arg : args)
+      if ( ! arg.isGround())
+        return false;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    if (args.length == 0)
+      return functor.name;
+    if (functor == listCell)
+      return listToString();
+    StringBuilder text = new StringBuilder(functor.name).append('(');
+    for (int i = 0; i < args.length; i++)
+      text.append(i == 0 ? "" : ",").append(args[i]);
+    return notNull(text.append(')').toString());
+  }
+
+  private String listToString() {
+    StringBuilder text = new StringBuilder("[");
+    ProverTerm rest = this;
+    String separator = "";
+    while (rest instanceof Struct && ((Struct)rest).functor == listCell) {
+      text.append(separator).append(((Struct)rest).arg(0));
+      separator = ",";
+      rest = ((Struct)rest).arg(1).deref();
+    }
+    if (rest != emptyList)
+      text.append('|').append(rest);
+    return notNull(text.append(']').toString());
+  }
+}
+
+
+/** The bindings made during a proof, in the order they were made, so that they can be undone when
+ * the proof backtracks. */
+static final class Trail {
+  private final ArrayList<Var> bound = new ArrayList<>();
+
+  int mark() { return bound.size(); }
+
+  void bind(Var var, ProverTerm term) {
+    var.binding = term;
+    bound.add(var);
+  }
+
+  /** Undo every binding made since the mark was taken. */
+  void undo(int mark) {
+    for (int i = bound.size() - 1; i >= mark; i--)
+      notNull(bound.remove(i)).binding = null;
+  }
+
+  /** Unify the terms, leaving no bindings behind if they do not unify. */
+  boolean unify(ProverTerm left, ProverTerm right) {
+    final int mark = mark();
+    if (unifyTerms(left, right))
+      return true;
+    undo(mark);
+    return false;
+  }
+
+  /** Would the terms unify? No bindings are left behind. */
+  boolean unifiable(ProverTerm left, ProverTerm right) {
+    final int mark = mark();
+    final boolean result = unifyTerms(left, right);
+    undo(mark);
+    return result;
+  }
+
+  private boolean unifyTerms(ProverTerm left, ProverTerm right) {
+    while (true) {
+      final ProverTerm a = left.deref();
+      final ProverTerm b = right.deref();
+      if (a == b)
+        return true;
+      if (a instanceof Var) {
+        bind((Var)a, b);
+        return true;
+      }
+      if (b instanceof Var) {
+        bind((Var)b, a);
+        return true;
+      }
+      final Struct sa = (Struct)a;
+      final Struct sb = (Struct)b;
+      if (sa.functor != sb.functor)
+        return false;
+      final int last = sa.args.length - 1;
+      if (last < 0)
+        return true;
+      for (int i = 0; i < last; i++)
+        if ( ! unifyTerms(notNull(sa.args[i]), notNull(sb.args[i])))
+          return false;
+      left = notNull(sa.args[last]); // iterate on the last argument to spare the stack
+      right = notNull(sb.args[last]);
+    }
+  }
+}
+
+
+/** A copy of the term with fresh variables, as Prolog's <code>copy_term</code> makes. */
+static ProverTerm copy(ProverTerm term) {
+  return copy(term, new IdentityHashMap<>());
+}
+
+/** A copy of the term in which the variables already in the map are replaced by their values and
+ * every other unbound variable is replaced by a fresh variable, which is then added to the map.
+ * Parts of the term that are ground are shared rather than copied. */
+static ProverTerm copy(ProverTerm term, Map<Var, ProverTerm> renaming) {
+  final ProverTerm t = term.deref();
+  if (t instanceof Var)
+    return notNull(renaming.computeIfAbsent((Var)t, v -> new Var()));
+  final Struct s = (Struct)t;
+  if (s.isBuiltGround)
+    return s;
+  ProverTerm @Nullable [] copiedArgs = null;
+  for (int i = 0; i < s.args.length; i++) {
+    final ProverTerm arg = notNull(s.args[i]);
+    final ProverTerm copied = copy(arg, renaming);
+    if (copied != arg && copiedArgs == null) {
+      copiedArgs = new ProverTerm[s.args.length];
+      System.arraycopy(s.args, 0, copiedArgs, 0, i);
+    }
+    if (copiedArgs != null)
+      copiedArgs[i] = copied;
+  }
+  return (copiedArgs == null) ? s : new Struct(s.functor, copiedArgs);
+}
+
+/** Add the unbound variables of the term to the map, each standing for itself, so that a following
+ * {@link #copy(ProverTerm, Map)} keeps them instead of renaming them. */
+static void keepVariablesOf(ProverTerm term, Map<Var, ProverTerm> renaming) {
+  final ProverTerm t = term.deref();
+  if (t instanceof Var)
+    renaming.put((Var)t, t);
+  else if ( ! ((Struct)t).isBuiltGround)
+    for (ProverTerm arg : ((Struct)t).args)
+      keepVariablesOf(arg, renaming);
+}
+
+
+/** The prover's form of a tuProlog term. Variables that occur more than once in the term become the
+ * same variable. */
+static ProverTerm from(alice.tuprolog.Term term) {
+  return from(term, new HashMap<>());
+}
+
+private static ProverTerm from(alice.tuprolog.Term term, Map<alice.tuprolog.Var, Var> vars) {
+  final alice.tuprolog.Term t = term.getTerm();
+  if (t instanceof alice.tuprolog.Var)
+    return notNull(vars.computeIfAbsent((alice.tuprolog.Var)t, v -> new Var()));
+  if (t instanceof alice.tuprolog.Number)
+    return number(notNull(t.toString()));
+  final alice.tuprolog.Struct s = (alice.tuprolog.Struct)t;
+  final ProverTerm[] args = new ProverTerm[s.getArity()];
+  for (int i = 0; i < args.length; i++)
+    args[i] = from(notNull(s.getArg(i)), vars);
+  return struct(Functor.of(notNull(s.getName()), args.length), args);
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProverTerm
@@ -0,0 +1,192 @@
+package tlang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import alice.tuprolog.*;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The prover theory with its clauses already parsed, so that a prover engine can be loaded without
+ * parsing the Prolog source. The build writes a snapshot of the theory files beside them on the
+ * classpath (see the <code>proverTheorySnapshot</code> task in build.gradle), and
+ * {@link ProverEnginePool} starts its engines from the snapshot when there is one.
+ * <p>
+ * A snapshot is a serialized stream: its format, the fingerprint of the theory files, then for
+ * each file its name and its clauses as tuProlog terms, in the order they were read. Directives,
+ * such as the <code>op/3</code> declarations of nnf.pl, stay among the clauses and run again when
+ * an engine consults them, so the engine ends up with the same operators and the same clause
+ * database as an engine that consulted the source files.
+ * <p>
+ * The production snapshot has the debugging goals taken out of its clauses by the
+ * {@link ProverTheoryStripper}. It is the theory that the prover engines load, unless a proof is
+ * being traced.
+ *
+ * @implNote The clauses of a theory can only be parsed with the operators that its directives
+ *           declare, so each directive is run as soon as it has been read. Running it binds its
+ *           variables, so every clause is written to the snapshot before it is run.
+ */
+final class ProverTheorySnapshot {
+
+/** The name of the snapshot, which is kept in the same directory as the theory files. */
+static final String fileName = "prover-theory.snapshot";
+/** The name of the production snapshot, which is kept beside the other one. */
+static final String productionFileName = "prover-theory-production.snapshot";
+
+/** Identifies the layout of a snapshot. Change it whenever the layout changes, so that an older
+ * snapshot is no longer used. */
+private static final String format = "tlang-prover-theory-1";
+
+private ProverTheorySnapshot() {}
+
+/** Write a snapshot of the theory files, which are loaded in the order given, with the debugging
+ * goals taken out when <code>-production</code> is given.
+ * <p>
+ * Usage: <code>java tlang.ProverTheorySnapshot [-production] snapshotFile theoryFile...</code> */
+public static void main(String[] args) throws IOException, InvalidTheoryException {
+  final boolean isProduction = args.length > 0 && args[0].equals("-production");
+  final int first = isProduction ? 1 : 0;
+  if (args.length - first < 2) {
+    System.err.println("Usage: java tlang.ProverTheorySnapshot [-production] "
+                       + "snapshotFile theoryFile...");
+    System.exit(1);
+  }
+  final List<String> names = new ArrayList<>();
+  final List<byte[]> contents = new ArrayList<>();
+  for (int i = first + 1; i < args.length; i++) {
+    final File file = new File(args[i]);
+    names.add(notNull(file.getName()));
+    contents.add(notNull(Files.readAllBytes(file.toPath())));
+  }
+  final File snapshot = new File(args[first]);
+  final @Nullable File directory = snapshot.getAbsoluteFile().getParentFile();
+  if (directory != null)
+    Files.createDirectories(directory.toPath());
+  Files.write(snapshot.toPath(), write(names, contents, isProduction));
+}
+
+/** A snapshot of the theory files, with their debugging goals.
+ * @param names    the names of the theory files, in the order they are loaded
+ * @param contents the contents of each file
+ * @throws InvalidTheoryException when a file cannot be parsed */
+static byte[] write(List<String> names, List<byte[]> contents) throws InvalidTheoryException {
+  return write(names, contents, false);
+}
+
+/** A snapshot of the theory files.
+ * @param names        the names of the theory files, in the order they are loaded
+ * @param contents     the contents of each file
+ * @param isProduction should the debugging goals be taken out? See {@link ProverTheoryStripper}
+ * @throws InvalidTheoryException when a file cannot be parsed */
+static byte[] write(List<String> names, List<byte[]> contents, boolean isProduction)
+      throws InvalidTheoryException {
+  final Prolog prolog = ProverEnginePool.newProlog();
+  final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+    out.writeUTF(format);
+    out.writeUTF(ProverEnginePool.fingerprint(contents));
+    out.writeInt(names.size());
+    for (int i = 0; i < names.size(); i++) {
+      final String name = notNull(names.get(i));
+      out.writeUTF(name);
+      final String text = new String(notNull(contents.get(i)), StandardCharsets.UTF_8);
+      final Parser parser = new Parser(prolog.getOperatorManager(), text);
+      final boolean isStripped = isProduction && ProverTheoryStripper.strippedFiles.contains(name);
+      try {
+        for (@Nullable Term clause = parser.nextTerm(true); clause != null
+            ; clause = parser.nextTerm(true)) {
+          out.writeBoolean(true);
+          out.writeObject(isStripped ? ProverTheoryStripper.stripped(clause) : clause);
+          out.reset(); // so that a term bound by a directive is never written as a back reference
+          if (isDirective(clause))
+            prolog.solve(((Struct)clause).getArg(0));
+        }
+      } catch (InvalidTermException e) {
+        throw new InvalidTheoryException("in "+ name +" - "+ e.getLocalizedMessage());
+      }
+      out.writeBoolean(false);
+    }
+  } catch (IOException impossible) {
+    throw new RuntimeException("Impossible Error - writing to memory failed", impossible);
+  }
+  return notNull(bytes.toByteArray());
+}
+
+/** The fingerprint of the theory files that the snapshot was made from, or null if the bytes are
+ * not a snapshot of the named files in this format.
+ * @param names the names of the theory files, in the order they are loaded */
+static @Nullable String fingerprint(byte[] snapshot, List<String> names) {
+  try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(snapshot))) {
+    if ( ! format.equals(in.readUTF()))
+      return null;
+    final String fingerprint = notNull(in.readUTF());
+    if (in.readInt() != names.size())
+      return null;
+    for (String name : names) {
+      if ( ! name.equals(in.readUTF()))
+        return null;
+      while (in.readBoolean())
+        in.readObject();
+    }
+    return fingerprint;
+  } catch (IOException | ClassNotFoundException e) {
+    return null;
+  }
+}
+
+/** Load the theory of the snapshot into the engine, replacing any theory that it already has. The
+ * snapshot must have been accepted by {@link #fingerprint(byte[], List)}. Each engine reads the
+ * snapshot for itself, because consulting a clause resolves the variables of its term. */
+static void loadInto(Prolog prolog, byte[] snapshot) throws InvalidTheoryException {
+  try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(snapshot))) {
+    in.readUTF(); // format
+    in.readUTF(); // fingerprint
+    final int fileCount = in.readInt();
+    for (int i = 0; i < fileCount; i++) {
+      final String name = notNull(in.readUTF());
+      final List<Term> clauses = new ArrayList<>();
+      while (in.readBoolean())
+        clauses.add((Term)in.readObject());
+      try {
+        final Theory theory = new Theory(new Struct(clauses.toArray(new Term[0])));
+        if (i == 0)
+          prolog.setTheory(theory);
+        else
+          prolog.addTheory(theory);
+      } catch (InvalidTheoryException e) {
+        throw new InvalidTheoryException("in the snapshot of "+ name +" - "+ e.getLocalizedMessage());
+      }
+    }
+  } catch (IOException | ClassNotFoundException e) {
+    throw new RuntimeException("The prover theory snapshot cannot be read", e);
+  }
+}
+
+private static boolean isDirective(Term clause) {
+  return clause instanceof Struct
+      && ((Struct)clause).getArity() == 1
+      && ":-".equals(((Struct)clause).getName());
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProverTheorySnapshot
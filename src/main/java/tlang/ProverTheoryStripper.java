@@ -0,0 +1,143 @@
+package tlang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Takes the debugging goals out of the clauses of the prover theory, for the production theory that
+ * the prover engines load unless a proof is being traced. In nnf.pl and etleantap.pl, the goals
+ * <code>mydebug/1</code>, <code>nnfdebug/1</code>, <code>dbbegin/1,2</code> and
+ * <code>dbend/1,2</code> do nothing unless <code>db_start_debugging</code> has been called, but
+ * each one still costs a call and the construction of its message list on every step of every
+ * proof. The probes for unified variables, such as
+ * <code>( Lits=[lt(A1,B1)], var(A1), ... -&gt; mydebug([...]) ; true )</code>, do nothing but
+ * debug, so they are taken out whole.
+ * <p>
+ * Every debugging goal succeeds exactly once and binds nothing that the rest of its clause uses,
+ * so each one becomes <code>true</code>, and the <code>true</code> goals are then dropped from their
+ * conjunctions. A clause without debugging goals is returned as it is.
+ */
+final class ProverTheoryStripper {
+
+/** The theory files whose clauses are stripped. mydebug.prolog defines the debugging goals
+ * themselves and is loaded unchanged. */
+static final Set<String> strippedFiles = Set.of("nnf.pl", "etleantap.pl");
+
+/** The debugging goals, by name and arity. */
+private static final Set<String> debugGoals
+    = Set.of("mydebug/1", "nnfdebug/1", "dbbegin/1", "dbbegin/2", "dbend/1", "dbend/2");
+
+private static final Struct trueGoal = new Struct("true");
+
+private ProverTheoryStripper() {}
+
+/** The clause with its debugging goals taken out, or the same clause when it has none. A directive
+ * is never changed. */
+static Term stripped(Term clause) {
+  final Term c = notNull(clause.getTerm());
+  if ( ! (c instanceof Struct) || ! is((Struct)c, ":-", 2))
+    return clause;
+  final Struct rule = (Struct)c;
+  final Term body = notNull(rule.getArg(1).getTerm());
+  final Term strippedBody = strippedGoal(body);
+  return (strippedBody == body) ? clause : new Struct(":-", rule.getArg(0), strippedBody);
+}
+
+/** The goal with its debugging goals replaced by <code>true</code>, or the same goal when it has
+ * none. */
+private static Term strippedGoal(Term goal) {
+  final Term g = notNull(goal.getTerm());
+  if ( ! (g instanceof Struct))
+    return g;
+  final Struct s = (Struct)g;
+  if (debugGoals.contains(s.getName() +"/"+ s.getArity()) || isProbe(s))
+    return trueGoal;
+  if (is(s, ",", 2)) {
+    final List<Term> goals = new ArrayList<>();
+    boolean isChanged = false;
+    for (Term conjunct : conjuncts(s)) {
+      final Term stripped = strippedGoal(conjunct);
+      isChanged |= stripped != conjunct;
+      if ( ! isTrue(stripped))
+        goals.add(stripped);
+    }
+    if ( ! isChanged)
+      return s;
+    if (goals.isEmpty())
+      return trueGoal;
+    Term conjunction = notNull(goals.get(goals.size() - 1));
+    for (int i = goals.size() - 2; i >= 0; i--)
+      conjunction = new Struct(",", goals.get(i), conjunction);
+    return conjunction;
+  }
+  if (is(s, ";", 2) || is(s, "->", 2) || is(s, "\\+", 1)) {
+    final Term[] args = new Term[s.getArity()];
+    boolean isChanged = false;
+    for (int i = 0; i < args.length; i++) {
+      args[i] = strippedGoal(notNull(s.getArg(i)));
+      isChanged |= args[i] != s.getArg(i).getTerm();
+    }
+    return isChanged ? new Struct(s.getName(), args) : s;
+  }
+  return s;
+}
+
+/** Is the goal a probe, <code>( X = lt(...) ... -&gt; Debug ; true )</code> or the same with
+ * <code>X = [lt(...)]</code>, whose then-branch is only debugging? */
+private static boolean isProbe(Struct goal) {
+  if ( ! is(goal, ";", 2) || ! isTrue(notNull(goal.getArg(1).getTerm())))
+    return false;
+  final Term ifThen = notNull(goal.getArg(0).getTerm());
+  if ( ! (ifThen instanceof Struct) || ! is((Struct)ifThen, "->", 2))
+    return false;
+  final Term condition = notNull(((Struct)ifThen).getArg(0).getTerm());
+  final Term test = (condition instanceof Struct && is((Struct)condition, ",", 2))
+                    ? notNull(((Struct)condition).getArg(0).getTerm())
+                    : condition;
+  if ( ! (test instanceof Struct) || ! is((Struct)test, "=", 2))
+    return false;
+  Term probed = notNull(((Struct)test).getArg(1).getTerm());
+  if (probed instanceof Struct && is((Struct)probed, ".", 2))
+    probed = notNull(((Struct)probed).getArg(0).getTerm());
+  return probed instanceof Struct && is((Struct)probed, "lt", 2)
+         && isTrue(strippedGoal(notNull(((Struct)ifThen).getArg(1))));
+}
+
+private static List<Term> conjuncts(Struct conjunction) {
+  final List<Term> conjuncts = new ArrayList<>();
+  Term rest = conjunction;
+  while (rest instanceof Struct && is((Struct)rest, ",", 2)) {
+    conjuncts.add(notNull(((Struct)rest).getArg(0).getTerm()));
+    rest = notNull(((Struct)rest).getArg(1).getTerm());
+  }
+  conjuncts.add(rest);
+  return conjuncts;
+}
+
+private static boolean isTrue(Term goal) {
+  return goal instanceof Struct && is((Struct)goal, "true", 0);
+}
+
+private static boolean is(Struct s, String name, int arity) {
+  return s.getArity() == arity && s.getName().equals(name);
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class ProverTheoryStripper
@@ -1,14 +1,11 @@
 package tlang;
 
-import java.util.Map;
 import java.util.Optional;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import static tlang.TUtil.VOIDNULL;
-import static tlang.TUtil.isNull;
-import java.util.HashMap;
 import tlang.TLantlrParser.T_blockContext;
 // import tlang.TLantlrParser.QuantifierExprContext;
 import tlang.TLantlrParser.T_expressionDetailContext;
@@ -31,13 +28,11 @@ class QuantifierMgr {
    */
   QuantifierType quantifierType = QuantifierType.Forall;
 
-  private static Map<T_expressionDetailContext, @NonNull QuantifierMgr> quantifierMap = new HashMap<>();
-
-      /** Find and return the while statement manager for the context, or create a new one. */
-      private static QuantifierMgr findQuantifier(T_expressionDetailContext ctx) {
-        @Nullable
-        QuantifierMgr nullableMgr = quantifierMap.get(ctx);
-        return isNull(nullableMgr) ? new QuantifierMgr(ctx) : nullableMgr;
+      /** Find and return the while statement manager for the context, or create a new one. The
+       * managers of a compile unit are kept in its {@link CompilationContext#quantifiers}. */
+      private static QuantifierMgr findQuantifier( T_expressionDetailContext ctx
+                                                 , CompilationContext context) {
+        return notNull(context.quantifiers.computeIfAbsent(ctx, QuantifierMgr::new));
       }
 
 
@@ -46,12 +41,11 @@ class QuantifierMgr {
 
   public QuantifierMgr(T_expressionDetailContext ctx) {
     this.ctx = ctx;
-    quantifierMap.put(ctx, this);
   }
 
 
   static void checkContext(T_expressionDetailContext ctx, ContextCheckVisitor checker) {
-    QuantifierMgr mgr = findQuantifier(ctx);
+    QuantifierMgr mgr = findQuantifier(ctx, checker.context);
     mgr.quantifierType = mgr.quantificationTypeOf(checker);
 
     Scope quantScope = mgr.newQuantifierScope(checker);
@@ -93,7 +87,7 @@ class QuantifierMgr {
 
   static void validate(T_expressionDetailContext ctx, TLantlrProofVisitor validator) {
     // TODO: lookup instance, and create if not found
-    var quantifierStatement = findQuantifier(ctx);
+    var quantifierStatement = findQuantifier(ctx, validator.context);
     // quantifierStatement.validate(visitor);
   }
 
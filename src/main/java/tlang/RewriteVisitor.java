@@ -19,15 +19,18 @@ abstract class RewriteVisitor extends TLantlrBaseVisitor<Void> {
  * currentScope is always present.
  */
   @Nullable protected Scope currentScope = null;
+/** What is known about the compile unit, especially the scopes of its parse contexts. */
+  protected final CompilationContext context;
 /** Map from a parse context (ctx) to the scope that the ctx's code defines. */
   protected Map<RuleContext, Scope> scopeMap;
 /** A rewriter for collecting transformed code */
   protected ExtendedRewriter rewriter;
 
 public RewriteVisitor( TokenStream             tokenStream
-                      , Map<RuleContext, Scope> ctxToScope
+                      , CompilationContext      context
                       ) {
-  this.scopeMap = ctxToScope;
+  this.context = context;
+  this.scopeMap = context.scopeMap;
   this.rewriter = new ExtendedRewriter(tokenStream);
 }
 
@@ -0,0 +1,522 @@
+package tlang;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+
+/**
+ * Decides a ground formula, one without <code>all</code> or <code>ex</code>, by the method of
+ * DPLL(T). The formula's atoms, such as <code>p('x')</code> or <code>'x' &lt; 'y'</code>, become
+ * propositional variables, and its connectives become clauses, with one variable for each distinct
+ * subformula (Tseitin's encoding), so a subformula shared by several facts, such as the condition of
+ * an <code>if</code>, is encoded once. A conflict-driven clause-learning search with two watched
+ * literals per clause then looks for an assignment to the variables that makes the formula true.
+ * <p>
+ * Each assignment found is checked against the theories of the atoms that are chosen: the
+ * equalities and the predicates by {@link CongruenceClosure}, and the comparisons by
+ * {@link LinearArithmetic}. When the atoms of an assignment contradict each other, the smallest
+ * contradicting set of them that a pass of deletions finds is learned as a clause, so no later
+ * assignment repeats it. The formula is inconsistent when no assignment survives, and consistent
+ * when one does and the theories could tell that it does. When a theory is not chosen, or the
+ * arithmetic gives up or ignores one of the atoms, a surviving assignment decides nothing.
+ * <p>
+ * The tableau branches on each disjunction and explores every branch below it again, where the
+ * learned clauses prune every assignment that fails for a reason already seen.
+ */
+final class SatSolver {
+
+/** The most conflicts that a search may meet before it gives up. */
+static final int conflictLimit = 20_000;
+
+/** The constant that a predicate's atom equals when it holds, for the {@link CongruenceClosure}. */
+private static final Struct holds = new Struct("$true");
+
+private final Function<String, LinearArithmetic.NumericType> numericTypes;
+private final boolean useEqualityClosure;
+private final boolean useArithmetic;
+
+// The encoding: variable v has the literals 2v (v is true) and 2v + 1 (v is false)
+private final Map<String, Integer> varsByKey = new HashMap<>();
+private final List<@Nullable Term> atoms = new ArrayList<>(); // by variable; null for a subformula
+private final List<int[]> clauses = new ArrayList<>();
+private int trueLiteral = -1;
+
+// The search, set up by solve()
+private int varCount;
+private byte[] values = new byte[0];   // by variable: 0 unassigned, 1 true, -1 false
+private int[] levels = new int[0];     // by variable: the decision level of its assignment
+private int[] reasons = new int[0];    // by variable: the clause that implied it, or -1
+private boolean[] phases = new boolean[0];
+private double[] activities = new double[0];
+private boolean[] seen = new boolean[0];
+private IntVector[] watches = new IntVector[0]; // by literal: the clauses that watch it
+private int[] trail = new int[0];
+private int trailSize = 0;
+private int propagated = 0;
+private final IntVector trailLimits = new IntVector();
+private double activityIncrement = 1;
+private boolean isContradicted = false;
+
+private SatSolver( Function<String, LinearArithmetic.NumericType> numericTypes
+                 , boolean useEqualityClosure, boolean useArithmetic) {
+  this.numericTypes = numericTypes;
+  this.useEqualityClosure = useEqualityClosure;
+  this.useArithmetic = useArithmetic;
+}
+
+/** Decide the formula, if it is ground.
+ * @param numericTypes gives the numeric type of the value name of an atom
+ * @param useEqualityClosure whether the equalities and the predicates of an assignment are checked
+ *                           by the {@link CongruenceClosure}
+ * @param useArithmetic whether the comparisons of an assignment are checked by the
+ *                      {@link LinearArithmetic}
+ * @return consistent or inconsistent, or null when the formula is not ground, the search met
+ *         {@link #conflictLimit} conflicts, or the theories could not tell whether an assignment
+ *         that survived is consistent */
+static @Nullable ConsistencyResult check( Term formula
+                                        , Function<String, LinearArithmetic.NumericType> numericTypes
+                                        , boolean useEqualityClosure, boolean useArithmetic) {
+  if ( ! formula.isGround())
+    return null;
+  final SatSolver solver = new SatSolver(numericTypes, useEqualityClosure, useArithmetic);
+  for (Term conjunct : conjuncts(formula))
+    solver.clauses.add(new int[] {solver.literal(conjunct)});
+  return solver.solve();
+}
+
+/* ************************ Encoding ************************************/
+
+/** The literal of a subformula, adding the clauses that define it when it is new. */
+private int literal(Term formula) {
+  final Term t = notNull(formula.getTerm());
+  if ( ! (t instanceof Struct))
+    return atom(t);
+  final Struct s = (Struct)t;
+  if (is(s, "-", 1))
+    return negated(literal(notNull(s.getArg(0))));
+  if (is(s, "#=", 2))
+    return negated(atom(new Struct("=", s.getArg(0), s.getArg(1))));
+  if (is(s, "true", 0))
+    return trueLiteral();
+  if (is(s, "false", 0))
+    return negated(trueLiteral());
+  if (s.getArity() != 2)
+    return atom(s);
+  switch (s.getName()) {
+  case "/\\": return and(literal(notNull(s.getArg(0))), literal(notNull(s.getArg(1))));
+  case "\\/": return negated(and(negated(literal(notNull(s.getArg(0)))),
+                                 negated(literal(notNull(s.getArg(1))))));
+  case "==>": return negated(and(literal(notNull(s.getArg(0))), negated(literal(notNull(s.getArg(1))))));
+  case "<==": return negated(and(negated(literal(notNull(s.getArg(0)))), literal(notNull(s.getArg(1)))));
+  case "===": return equivalent(literal(notNull(s.getArg(0))), literal(notNull(s.getArg(1))));
+  case "=#=": return negated(equivalent(literal(notNull(s.getArg(0))), literal(notNull(s.getArg(1)))));
+  default:    return atom(s);
+  }
+}
+
+private int atom(Term atom) {
+  final String key = atom.toString();
+  final @Nullable Integer known = varsByKey.get(key);
+  if (known != null)
+    return 2 * known;
+  final int var = newVar(key, atom);
+  return 2 * var;
+}
+
+/** x, where x <==> a /\ b */
+private int and(int a, int b) {
+  final String key = "and "+ Math.min(a, b) +" "+ Math.max(a, b);
+  final @Nullable Integer known = varsByKey.get(key);
+  if (known != null)
+    return 2 * known;
+  final int x = 2 * newVar(key, null);
+  clauses.add(new int[] {negated(x), a});
+  clauses.add(new int[] {negated(x), b});
+  clauses.add(new int[] {x, negated(a), negated(b)});
+  return x;
+}
+
+/** x, where x <==> (a <==> b) */
+private int equivalent(int a, int b) {
+  final String key = "eqv "+ Math.min(a, b) +" "+ Math.max(a, b);
+  final @Nullable Integer known = varsByKey.get(key);
+  if (known != null)
+    return 2 * known;
+  final int x = 2 * newVar(key, null);
+  clauses.add(new int[] {negated(x), negated(a), b});
+  clauses.add(new int[] {negated(x), a, negated(b)});
+  clauses.add(new int[] {x, a, b});
+  clauses.add(new int[] {x, negated(a), negated(b)});
+  return x;
+}
+
+private int trueLiteral() {
+  if (trueLiteral < 0) {
+    trueLiteral = 2 * newVar("true", null);
+    clauses.add(new int[] {trueLiteral});
+  }
+  return trueLiteral;
+}
+
+private int newVar(String key, @Nullable Term atom) {
+  final int var = atoms.size();
+  atoms.add(atom);
+  varsByKey.put(key, var);
+  return var;
+}
+
+private static int negated(int literal) { return literal ^ 1; }
+
+private static boolean is(Struct s, String name, int arity) {
+  return s.getArity() == arity && s.getName().equals(name);
+}
+
+/* ************************ Search ************************************/
+
+private @Nullable ConsistencyResult solve() {
+  varCount = atoms.size();
+  values = new byte[varCount];
+  levels = new int[varCount];
+  reasons = new int[varCount];
+  phases = new boolean[varCount];
+  activities = new double[varCount];
+  seen = new boolean[varCount];
+  trail = new int[varCount];
+  watches = new IntVector[2 * varCount];
+  for (int i = 0; i < watches.length; i++)
+    watches[i] = new IntVector();
+  final List<int[]> input = new ArrayList<>(clauses);
+  clauses.clear();
+  for (int[] clause : input)
+    addInputClause(clause);
+
+  int conflicts = 0;
+  while ( ! isContradicted) {
+    int conflict = propagate();
+    if (conflict < 0) {
+      final int var = nextDecision();
+      if (var >= 0) {
+        trailLimits.add(trailSize);
+        assign(phases[var] ? 2 * var : 2 * var + 1, -1);
+        continue;
+      }
+      final List<Integer> assigned = assignedAtoms();
+      final @Nullable ConsistencyResult theories = theoryResult(assigned);
+      if (theories != ConsistencyResult.inconsistent)
+        return theories;
+      final int[] theoryClause = theoryConflict(assigned);
+      conflict = addTheoryClause(theoryClause);
+      if (conflict < 0)
+        continue; // the clause was a unit, now asserted at level 0
+    }
+    if (decisionLevel() == 0)
+      return ConsistencyResult.inconsistent;
+    if (++conflicts > conflictLimit)
+      return null;
+    learn(conflict);
+  }
+  return ConsistencyResult.inconsistent;
+}
+
+/** Add a clause of the formula, which is simplified first. */
+private void addInputClause(int[] literals) {
+  final int[] clause = Arrays.stream(literals).distinct().toArray();
+  for (int literal : clause)
+    if (Arrays.stream(clause).anyMatch(other -> other == negated(literal)))
+      return; // always true
+  if (clause.length == 0) {
+    isContradicted = true;
+  } else if (clause.length == 1) {
+    if (value(clause[0]) < 0)
+      isContradicted = true;
+    else if (value(clause[0]) == 0)
+      assign(clause[0], -1);
+  } else {
+    attach(clause);
+  }
+}
+
+private int attach(int[] clause) {
+  final int index = clauses.size();
+  clauses.add(clause);
+  watches[clause[0]].add(index);
+  watches[clause[1]].add(index);
+  return index;
+}
+
+/** 1 when the literal is true, -1 when it is false, and 0 when its variable is unassigned. */
+private int value(int literal) {
+  final int v = values[literal >> 1];
+  return ((literal & 1) == 0) ? v : -v;
+}
+
+private void assign(int literal, int reason) {
+  final int var = literal >> 1;
+  values[var] = (byte)(((literal & 1) == 0) ? 1 : -1);
+  levels[var] = decisionLevel();
+  reasons[var] = reason;
+  trail[trailSize++] = literal;
+}
+
+private int decisionLevel() { return trailLimits.size; }
+
+/** Assign the literals that the assignments so far imply, using the watched literals.
+ * @return the clause that became false, or -1 when none did */
+private int propagate() {
+  while (propagated < trailSize) {
+    final int falseLiteral = negated(trail[propagated++]);
+    final IntVector watching = watches[falseLiteral];
+    int kept = 0;
+    for (int i = 0; i < watching.size; i++) {
+      final int index = watching.items[i];
+      final int[] clause = clauses.get(index);
+      if (clause[0] == falseLiteral) { // keep the false literal second
+        clause[0] = clause[1];
+        clause[1] = falseLiteral;
+      }
+      if (value(clause[0]) > 0) {
+        watching.items[kept++] = index;
+        continue;
+      }
+      boolean isMoved = false;
+      for (int k = 2; k < clause.length && ! isMoved; k++) {
+        if (value(clause[k]) >= 0) {
+          clause[1] = clause[k];
+          clause[k] = falseLiteral;
+          watches[clause[1]].add(index);
+          isMoved = true;
+        }
+      }
+      if (isMoved)
+        continue;
+      watching.items[kept++] = index;
+      if (value(clause[0]) < 0) {
+        while (++i < watching.size)
+          watching.items[kept++] = watching.items[i];
+        watching.size = kept;
+        return index;
+      }
+      assign(clause[0], index);
+    }
+    watching.size = kept;
+  }
+  return -1;
+}
+
+/** The unassigned variable with the most activity, or -1 when every variable is assigned. */
+private int nextDecision() {
+  int best = -1;
+  for (int var = 0; var < varCount; var++)
+    if (values[var] == 0 && (best < 0 || activities[var] > activities[best]))
+      best = var;
+  return best;
+}
+
+/** Learn the clause that the conflict implies at its first unique implication point, go back to
+ * the level where that clause first has a single unassigned literal, and assign that literal. */
+private void learn(int conflict) {
+  final IntVector learned = new IntVector();
+  learned.add(-1); // for the asserting literal
+  int pending = 0;
+  int literal = -1;
+  int index = trailSize - 1;
+  int reason = conflict;
+  do {
+    final int[] clause = clauses.get(reason);
+    for (int j = (literal < 0) ? 0 : 1; j < clause.length; j++) {
+      final int var = clause[j] >> 1;
+      if ( ! seen[var] && levels[var] > 0) {
+        bump(var);
+        seen[var] = true;
+        if (levels[var] >= decisionLevel())
+          pending++;
+        else
+          learned.add(clause[j]);
+      }
+    }
+    while ( ! seen[trail[index] >> 1])
+      index--;
+    literal = trail[index--];
+    reason = reasons[literal >> 1];
+    seen[literal >> 1] = false;
+    pending--;
+  } while (pending > 0);
+  learned.items[0] = negated(literal);
+  activityIncrement /= 0.95;
+
+  int backLevel = 0;
+  for (int i = 1; i < learned.size; i++) {
+    seen[learned.items[i] >> 1] = false;
+    if (levels[learned.items[i] >> 1] > backLevel) {
+      backLevel = levels[learned.items[i] >> 1];
+      final int swapped = learned.items[1];
+      learned.items[1] = learned.items[i];
+      learned.items[i] = swapped;
+    }
+  }
+  backtrack(backLevel);
+  final int[] clause = Arrays.copyOf(learned.items, learned.size);
+  assign(clause[0], (clause.length == 1) ? -1 : attach(clause));
+}
+
+private void bump(int var) {
+  activities[var] += activityIncrement;
+  if (activities[var] > 1e100) {
+    for (int v = 0; v < varCount; v++)
+      activities[v] *= 1e-100;
+    activityIncrement *= 1e-100;
+  }
+}
+
+private void backtrack(int level) {
+  if (decisionLevel() <= level)
+    return;
+  final int limit = trailLimits.items[level];
+  for (int i = trailSize - 1; i >= limit; i--) {
+    final int var = trail[i] >> 1;
+    phases[var] = values[var] > 0;
+    values[var] = 0;
+  }
+  trailSize = limit;
+  propagated = limit;
+  trailLimits.size = level;
+}
+
+/* ************************ Theories ************************************/
+
+/** The literals of the atoms in the complete assignment. */
+private List<Integer> assignedAtoms() {
+  final List<Integer> assigned = new ArrayList<>();
+  for (int var = 0; var < varCount; var++)
+    if (atoms.get(var) != null)
+      assigned.add(values[var] > 0 ? 2 * var : 2 * var + 1);
+  return assigned;
+}
+
+/** A clause that rules out the assigned atoms, which contradict each other.
+ * @return the negations of a contradicting set of the assigned atoms */
+private int[] theoryConflict(List<Integer> assigned) {
+  final List<Integer> core = new ArrayList<>(assigned);
+  for (int i = core.size() - 1; i >= 0; i--) {
+    final Integer removed = core.remove(i);
+    if (theoryResult(core) != ConsistencyResult.inconsistent)
+      core.add(i, removed);
+  }
+  return core.stream().mapToInt(literal -> negated(literal)).toArray();
+}
+
+/** Add a clause that is false under the current assignment, going back to the highest level of
+ * its literals.
+ * @return the clause, or -1 when it held a single literal and that literal is now asserted */
+private int addTheoryClause(int[] clause) {
+  if (clause.length == 0) {
+    isContradicted = true;
+    return -1;
+  }
+  final int[] sorted = Arrays.stream(clause).boxed()
+                             .sorted((a, b) -> levels[b >> 1] - levels[a >> 1])
+                             .mapToInt(Integer::intValue).toArray();
+  if (sorted.length == 1) {
+    backtrack(0);
+    if (value(sorted[0]) < 0)
+      isContradicted = true;
+    else if (value(sorted[0]) == 0)
+      assign(sorted[0], -1);
+    return -1;
+  }
+  backtrack(levels[sorted[0] >> 1]);
+  return attach(sorted);
+}
+
+/** Do the atoms, each true or false as its literal says, contradict each other? A theory that is
+ * not chosen is not asked, so the answer is not known when one of its atoms is there.
+ * @return inconsistent or consistent, or null when the theories cannot tell */
+private @Nullable ConsistencyResult theoryResult(List<Integer> literals) {
+  final List<Term> equalities = new ArrayList<>();
+  final List<Term> comparisons = new ArrayList<>();
+  boolean isKnown = true;
+  for (int literal : literals) {
+    final Term atom = notNull(atoms.get(literal >> 1));
+    final boolean isTrue = (literal & 1) == 0;
+    final Term equality = (atom instanceof Struct && is((Struct)atom, "=", 2))
+                          ? atom : new Struct("=", atom, holds);
+    equalities.add(isTrue ? equality : new Struct("-", equality));
+    comparisons.add(isTrue ? atom : new Struct("-", atom));
+    if ( ! useEqualityClosure && ! (atom instanceof Struct && ((Struct)atom).getArity() == 0))
+      isKnown = false; // an equality or a predicate, which only the closure reads
+    if ( ! useArithmetic && LinearArithmetic.isRelation(atom))
+      isKnown = false;
+  }
+  if ( useEqualityClosure && ! equalities.isEmpty()
+    && CongruenceClosure.residual(conjoined(equalities)) == null)
+    return ConsistencyResult.inconsistent;
+  if (useArithmetic) {
+    final @Nullable ConsistencyResult arithmetic = LinearArithmetic.decide(comparisons, numericTypes);
+    if (arithmetic == ConsistencyResult.inconsistent)
+      return arithmetic;
+    isKnown &= arithmetic != null;
+  }
+  return isKnown ? ConsistencyResult.consistent : null;
+}
+
+/** The conjuncts of the formula, taking apart nested conjunctions. */
+private static List<Term> conjuncts(Term formula) {
+  final List<Term> conjuncts = new ArrayList<>();
+  final Deque<Term> pending = new ArrayDeque<>();
+  pending.push(formula);
+  while ( ! pending.isEmpty()) {
+    final Term t = notNull(pending.pop().getTerm());
+    if (t instanceof Struct && is((Struct)t, "/\\", 2)) {
+      pending.push(notNull(((Struct)t).getArg(1)));
+      pending.push(notNull(((Struct)t).getArg(0)));
+    } else {
+      conjuncts.add(t);
+    }
+  }
+  return conjuncts;
+}
+
+private static Term conjoined(List<Term> conjuncts) {
+  Term conjunction = notNull(conjuncts.get(conjuncts.size() - 1));
+  for (int i = conjuncts.size() - 2; i >= 0; i--)
+    conjunction = new Struct("/\\", conjuncts.get(i), conjunction);
+  return conjunction;
+}
+
+/** A growable array of ints, without boxing them. */
+private static final class IntVector {
+  int[] items = new int[4];
+  int size = 0;
+
+  void add(int item) {
+    if (size == items.length)
+      items = Arrays.copyOf(items, 2 * size);
+    items[size++] = item;
+  }
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class SatSolver
@@ -32,24 +32,30 @@ package tlang;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.ZonedDateTime;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import static java.time.format.DateTimeFormatter.*;
 
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.DiagnosticErrorListener;
-import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import tlang.BuildState.UnitRecord;
 import tlang.TUtil.TCompilerCounts;
 import static tlang.TUtil.*;
 
@@ -73,42 +79,53 @@ static boolean xDiagnostics                        = false;
 static boolean xJavaTestOption                     = false;
 static boolean isGeneratedFilesDirectoryRequested  = false;
 static boolean isCompileUnitInCommandLine          = false;
-
-private static int finalDecorationSetOnLine = 0;
-  static int finalDecorationLine() { return finalDecorationSetOnLine;}
-
-private static String finalDecorationValue = "";
-  static String finalDecorationValue() {return finalDecorationValue;}
+static boolean isProofCacheRequested               = true;
+static String  proofCacheDir                       = ProofCache.defaultDirectory;
+static boolean isIncrementalRequested              = false;
+static int     unitThreads                         = 1;
 
 private static enum FinalDecoration {Open, Required, Prohibited}
-private static FinalDecoration finalDecRequired = FinalDecoration.Open;
-// finalDecorationSetOnLine = 0   ===   finalDecRequired = Open
 
+/** The decoration of final value names that a compile unit has settled on. Each unit starts out
+ * Open, and its first final value name settles it. Units compiled at the same time each run on
+ * their own thread, so the state is kept per thread and reset when a unit starts. See
+ * {@link #resetFinalDecorationToOpen()} */
+private static final class FinalDecorationState {
+  FinalDecoration required = FinalDecoration.Open;
+  int setOnLine = 0;
+  String value = "";
+}
+private static final ThreadLocal<FinalDecorationState> finalDecoration
+    = ThreadLocal.withInitial(FinalDecorationState::new);
+// setOnLine = 0   ===   required = Open
+
+  static int finalDecorationLine() { return finalDecoration.get().setOnLine;}
+  static String finalDecorationValue() {return finalDecoration.get().value;}
 
-  static FinalDecoration getFinalDecorationState() {return finalDecRequired;}
+  static FinalDecoration getFinalDecorationState() {return finalDecoration.get().required;}
   static void requireFinalDecoration(Token valueNameToken) {
-    finalDecRequired= FinalDecoration.Required;
-    finalDecorationSetOnLine = valueNameToken.getLine();
-    finalDecorationValue = valueNameToken.getText();
+    settleFinalDecoration(FinalDecoration.Required, valueNameToken.getLine(), valueNameToken.getText());
   }
   static void prohibitFinalDecoration(Token valueNameToken) {
-    finalDecRequired= FinalDecoration.Prohibited;
-    finalDecorationSetOnLine = valueNameToken.getLine();
-    finalDecorationValue = valueNameToken.getText();
+    settleFinalDecoration(FinalDecoration.Prohibited, valueNameToken.getLine(), valueNameToken.getText());
   }
   static void resetFinalDecorationToOpen() {
-    finalDecRequired= FinalDecoration.Open;
-    finalDecorationSetOnLine = 0;
-    finalDecorationValue = "";
+    settleFinalDecoration(FinalDecoration.Open, 0, "");
+  }
+  private static void settleFinalDecoration(FinalDecoration required, int line, String value) {
+    final FinalDecorationState state = finalDecoration.get();
+    state.required = required;
+    state.setOnLine = line;
+    state.value = value;
   }
   static boolean isFinalDecorationRequired()   {
-    return finalDecRequired == FinalDecoration.Required;
+    return getFinalDecorationState() == FinalDecoration.Required;
   }
   static boolean isFinalDecorationProhibited() {
-    return finalDecRequired == FinalDecoration.Prohibited;
+    return getFinalDecorationState() == FinalDecoration.Prohibited;
   }
   static boolean isFinalDecorationOpen() {
-    return finalDecRequired == FinalDecoration.Open;
+    return getFinalDecorationState() == FinalDecoration.Open;
   }
 
 private static boolean isFinalDecorationSwitchSet = false;
@@ -130,20 +147,53 @@ private  CollectingMsgListener javaMessages = new CollectingMsgListener("Java Co
   public CollectingMsgListener javaMessages() { return javaMessages; }
 private  TCompilerCounts counts = new TCompilerCounts();
   public TCompilerCounts counts() { return counts; }
-private final Map<RuleContext, Scope> scopeMap = new HashMap<>();
+private int traceBackSize = 1; // to report the violated rule
 private ParameterCollector parameterCollector = new ParameterCollector();
 
-private String generatedJavaDir;
+/** Where the generated Java files are written, when <code>-genout</code> asks for them */
+private String generatedJavaDir = "";
+
+/** Where the Java compiler puts the class files (see <code>-d</code>), and where the
+ * {@link BuildState} is kept */
+private String outputDir = ".";
+
+/** The options given on the command line, which the {@link BuildState} must have been recorded
+ * with */
+private String commandLineOptions = "";
 
+/** What the compiler reports about one compile unit before the Java compiler runs: its messages
+ * and counts, what it would print, and the Java to pass on to the Java compiler. Each unit has its
+ * own, so that units can be compiled at the same time (see <code>-j</code>), and what they print is
+ * reported in the order of the files. The scopes and managers of a unit are kept in a
+ * {@link CompilationContext} instead, which is dropped as soon as the unit is compiled. */
+private final class CompiledUnit {
+  final CollectingMsgListener msgs;
+  final TCompilerCounts counts = new TCompilerCounts();
+  private final StringBuilder printed = new StringBuilder();
+
+  /** Whether to run the proofs, which need not be run again for a unit whose source is unchanged
+   *  since they succeeded. See {@link BuildState} */
+  boolean isProofNeeded = true;
+
+  /** The Java file from the command line to pass on to the Java compiler, or null */
+  @Nullable String intermixedJava = null;
+  /** The Java generated from the unit, or null when none was generated */
+  @Nullable String generatedJava = null;
+  String packageName = "";
+  String topTypeName = "";
+
+  /** What the {@link BuildState} records about the unit besides its hashes */
+  List<String> proofObligations = List.of();
+  Set<String> referencedTypes = Set.of();
+
+  CompiledUnit(CollectingMsgListener msgs) { this.msgs = msgs; }
+
+  void println(String text) { printed.append(text).append('\n'); }
+}
 
 
 public TCompiler() {
   msgCollector.clear();
-  scopeMap.clear();
-  generatedJavaDir
-    =   System.getProperty("java.io.tmpdir") +"generatedTJava"
-      + File.separator+ System.getProperty("user.name")
-      + File.separator+ ZonedDateTime.now().format(ISO_LOCAL_DATE_TIME).replace(":", "-");
 }
 
 /** Compile TrueJ programs.
@@ -171,66 +221,309 @@ static TCompiler runTrueJCompiler(String[] args) throws IOException, Interrupted
 
     private void
 sequentialParse(String[] fileNames) throws IOException, InterruptedException {
-  resetFinalDecorationToOpen();
+  final boolean isIncremental = isIncrementalRequested && ! isCompileUnitInCommandLine
+                             && ! xDiagnostics && ! xJavaTestOption;
+  final List<String> javaOptions = isIncremental ? withOutputOnClassPath(javaCompilerOptions)
+                                                 : javaCompilerOptions;
   JavaFileHandler javaCollector
-    = new JavaFileHandler( generatedJavaDir, javaCompilerOptions);
+    = isGeneratedFilesDirectoryRequested
+        ? new JavaFileHandler(generatedJavaDir, javaOptions)
+        : new JavaFileHandler(javaOptions);
   msgCollector.clear();
   javaMessages.clear();
+  final ProofCache proofCache = isProofCacheRequested
+                                  ? KnowledgeBase.useProofCache(Paths.get(proofCacheDir))
+                                  : null;
+  KnowledgeBase.useLearnedLimits(isProofCacheRequested ? Paths.get(proofCacheDir) : null);
+  final @Nullable BuildState buildState
+      = isIncremental ? new BuildState(Paths.get(outputDir), buildConfiguration()) : null;
+  List<String> unitsForJava = List.of();
 
-  CommonTokenStream tokenStream;
   if (isCompileUnitInCommandLine) {
     String name = "the compile unit from the command line";
-    tokenStream = truejStringToTokens(name, commandLineCompileUnit, msgCollector);
-    compileTokens(tokenStream, name, counts, javaCollector);
+    CompiledUnit unit = new CompiledUnit(new CollectingMsgListener(traceBackSize));
+    resetFinalDecorationToOpen();
+    CommonTokenStream tokenStream = truejStringToTokens(name, commandLineCompileUnit, unit.msgs);
+    compileTokens(tokenStream, name, unit);
+    report(unit);
+    submitJava(unit, javaCollector);
+  }
+  else if (buildState != null) {
+    unitsForJava = incrementalParse(fileNames, javaCollector, buildState);
   }
   else {
-    tryingEachFileName: for (String fileName : fileNames) {
-      msgCollector.newSource(fileName);
-      boolean fileDone = specialFileCases(javaCollector, counts, fileName);
-      if (fileDone)
-        continue tryingEachFileName;
-
-      tokenStream = fileToTokens(fileName, msgCollector);
-      compileTokens(tokenStream, fileName, counts, javaCollector);
-    }
+    for (CompiledUnit unit : compileFiles(Arrays.asList(fileNames), true))
+      submitJava(unit, javaCollector);
   }
 
   javaCollector.compileJavaFiles(javaMessages);
-  if (javaMessages.hasMsgs()) {
+  if (javaMessages.hasMsgs())
     System.out.println("====================================\n"+ javaMessages.toString());
+  if (javaMessages.hasErrs())
     counts.incErrorCount();
+  if (buildState != null) {
+    if (javaMessages.hasErrs())
+      for (String unitName : unitsForJava)
+        buildState.forget(unitName); // which of them failed is not known, so compile all again
+    buildState.save();
+  }
+  if (proofCache != null) {
+    counts.addProofCacheCounts(proofCache.hitCount(), proofCache.missCount());
+    KnowledgeBase.stopUsingProofCache();
   }
-  if ( ! isGeneratedFilesDirectoryRequested)
-    deleteDirectory(generatedJavaDir);
 
   System.out.println(counts.toString());
 }
 
-private void compileTokens(CommonTokenStream tokenStream, String sourceName,
-                                       TCompilerCounts counts, JavaFileHandler javaCollector) {
+/** Compile the files and report each of them in the order of the files. When more than one
+ * thread is allowed (see {@link #unitThreads}), each thread takes another file when it finishes
+ * one. The Java compiler is run once for all of them afterwards.
+ * @param isProofNeeded whether to run the proofs of the files
+ * @return the compiled units, in the order of the files */
+    private List<CompiledUnit>
+compileFiles(List<String> fileNames, boolean isProofNeeded)
+      throws IOException, InterruptedException {
+  final List<CompiledUnit> units = new ArrayList<>(fileNames.size());
+  if (unitThreads == 1 || fileNames.size() < 2) {
+    for (String fileName : fileNames) {
+      final CompiledUnit unit = compileFile(fileName, isProofNeeded);
+      report(unit);
+      units.add(unit);
+    }
+    return units;
+  }
+
+  final ExecutorService unitCompilers = Executors.newWorkStealingPool(unitThreads);
+  final List<Future<CompiledUnit>> pendingUnits = new ArrayList<>();
+  try {
+    for (String fileName : fileNames)
+      pendingUnits.add(unitCompilers.submit(() -> compileFile(fileName, isProofNeeded)));
+    for (Future<CompiledUnit> pending : pendingUnits) {
+      final CompiledUnit unit = compiledUnit(pending);
+      report(unit);
+      units.add(unit);
+    }
+    return units;
+  } finally {
+    for (Future<CompiledUnit> pending : pendingUnits)
+      pending.cancel(true);
+    unitCompilers.shutdownNow();
+  }
+}
+
+private static CompiledUnit compiledUnit(Future<CompiledUnit> pendingUnit)
+      throws IOException, InterruptedException {
+  try {
+    return pendingUnit.get();
+  } catch (ExecutionException e) {
+    final Throwable cause = e.getCause();
+    if (cause instanceof IOException)
+      throw (IOException)cause;
+    if (cause instanceof RuntimeException)
+      throw (RuntimeException)cause;
+    throw new RuntimeException(cause);
+  }
+}
+
+/** Compile one .t file, or take one .java file to pass on to the Java compiler. */
+private CompiledUnit compileFile(String fileName, boolean isProofNeeded)
+      throws IOException {
+  CompiledUnit unit = new CompiledUnit(new CollectingMsgListener(fileName, traceBackSize));
+  unit.isProofNeeded = isProofNeeded;
+  resetFinalDecorationToOpen();
+  boolean fileDone = specialFileCases(unit, fileName);
+  if ( ! fileDone) {
+    CommonTokenStream tokenStream = fileToTokens(fileName, unit.msgs);
+    compileTokens(tokenStream, fileName, unit);
+  }
+  return unit;
+}
+
+/** Give the Java of the unit to the Java compiler. A generated file that cannot be written where
+ * <code>-genout</code> asks is reported among the messages of the Java compiler. */
+private void submitJava(CompiledUnit unit, JavaFileHandler javaCollector) {
+  final String intermixedJava = unit.intermixedJava;
+  if (intermixedJava != null)
+    javaCollector.saveIntermixedJava(intermixedJava);
+  final String generatedJava = unit.generatedJava;
+  if (generatedJava == null)
+    return;
+  try {
+    javaCollector.saveGeneratedJava(generatedJava, unit.packageName, unit.topTypeName);
+  } catch (IOException e) {
+    final String pkg = unit.packageName.isEmpty() ? "default package"
+                                                  : "package "+ unit.packageName;
+    javaMessages.collectError
+        ("Unable to save generated Java file for class "+ unit.topTypeName
+        +" in "+ pkg
+        +"\n" + e.getMessage()
+        );
+  }
+}
+
+/**
+ * Compile only the files that have changed since they were recorded in the build state, and pass
+ * on to the Java compiler only the Java that has changed. The files that refer to a type whose
+ * Java or proofs changed are then generated again for the Java compiler, but their own proofs are
+ * not run again, since their sources are unchanged. See {@link BuildState}
+ * @return the files whose Java was passed on to the Java compiler
+ */
+    private List<String>
+incrementalParse(String[] fileNames, JavaFileHandler javaCollector, BuildState buildState)
+      throws IOException, InterruptedException {
+  final List<String> changed = new ArrayList<>();
+  final List<String> sourceHashes = new ArrayList<>();
+  final List<String> upToDate = new ArrayList<>();
+  for (String fileName : fileNames) {
+    final String sourceHash = sourceHash(fileName);
+    if (buildState.isUpToDate(fileName, sourceHash)) {
+      upToDate.add(fileName);
+    } else {
+      changed.add(fileName);
+      sourceHashes.add(sourceHash);
+    }
+  }
+
+  final List<CompiledUnit> changedUnits = compileFiles(changed, true);
+  final List<@Nullable UnitRecord> earlierRecords = new ArrayList<>();
+  final Set<String> changedTypes = new HashSet<>();
+  for (int i = 0; i < changed.size(); i++) {
+    final String fileName = changed.get(i);
+    final @Nullable UnitRecord earlier = buildState.recordOf(fileName);
+    final @Nullable UnitRecord record
+        = unitRecord(sourceHashes.get(i), changedUnits.get(i));
+    earlierRecords.add(earlier);
+    if (record == null)
+      buildState.forget(fileName);
+    else
+      buildState.record(fileName, record);
+    if (earlier != null && (record == null || ! record.isInterchangeableWith(earlier)))
+      changedTypes.add(earlier.declaredType);
+    if (record != null && (earlier == null || ! record.isInterchangeableWith(earlier)))
+      changedTypes.add(record.declaredType);
+  }
+
+  final List<String> unitsForJava = new ArrayList<>();
+  for (int i = 0; i < changed.size(); i++) {
+    final String fileName = changed.get(i);
+    final CompiledUnit unit = changedUnits.get(i);
+    final @Nullable UnitRecord earlier = earlierRecords.get(i);
+    final @Nullable UnitRecord record = buildState.recordOf(fileName);
+    final boolean isJavaUnchanged
+        =  earlier != null && record != null && unit.generatedJava != null
+        && earlier.generatedHash.equals(record.generatedHash)
+        && Collections.disjoint(record.referencedTypes, changedTypes);
+    if ( ! isJavaUnchanged) {
+      submitJava(unit, javaCollector);
+      unitsForJava.add(fileName);
+    }
+  }
+
+  final List<String> dependents = buildState.dependentsOf(changedTypes, upToDate);
+  upToDate.removeAll(dependents);
+  final List<CompiledUnit> dependentUnits = compileFiles(dependents, false);
+  for (int i = 0; i < dependents.size(); i++) {
+    final CompiledUnit unit = dependentUnits.get(i);
+    if (unit.msgs.hasErrs())
+      buildState.forget(dependents.get(i));
+    submitJava(unit, javaCollector);
+  }
+  unitsForJava.addAll(dependents);
+  counts.addUpToDateCount(upToDate.size());
+  return unitsForJava;
+}
+
+/** The hash of the file's contents, or an empty string when the file cannot be read, in which
+ * case compiling it reports the problem. */
+private static String sourceHash(String fileName) {
+  try {
+    return BuildState.hashOfFile(Paths.get(fileName));
+  } catch (IOException | InvalidPathException e) {
+    return "";
+  }
+}
+
+/** What the build state records about a unit that was compiled, or null when it had errors. */
+private static @Nullable UnitRecord unitRecord(String sourceHash, CompiledUnit unit)
+      throws IOException {
+  if (unit.msgs.hasErrs() || sourceHash.isEmpty())
+    return null;
+  final String intermixedJava = unit.intermixedJava;
+  if (intermixedJava != null) {
+    final String className = new File(intermixedJava).getName().replaceFirst("\\.java$", "");
+    final CommonTokenStream tokens = fileToTokens(intermixedJava, new CollectingMsgListener());
+    tokens.fill();
+    return new UnitRecord( sourceHash, "", List.of(), className
+                         , BuildState.referencedTypes(tokens, className)
+                         , BuildState.classFileOf(BuildState.packageName(tokens), className));
+  }
+  final String generatedJava = unit.generatedJava;
+  if (generatedJava == null)
+    return null;
+  return new UnitRecord( sourceHash, ProofCache.sha256(generatedJava), unit.proofObligations
+                       , unit.topTypeName, unit.referencedTypes
+                       , BuildState.classFileOf(unit.packageName, unit.topTypeName));
+}
+
+/** The fingerprint of everything besides the sources that the result of a unit depends on. */
+private String buildConfiguration() {
+  return ProofCache.sha256(KnowledgeBase.theoryFingerprint() +"\n"+ commandLineOptions);
+}
+
+/** The options for the Java compiler with the output directory added to the class path, so that
+ * the units that are up to date are found as class files. */
+private List<String> withOutputOnClassPath(List<String> options) {
+  final List<String> withOutput = new ArrayList<>(options);
+  for (int i = withOutput.size() - 2; i >= 0; i--) {
+    final String option = withOutput.get(i);
+    if (option.equals("-cp") || option.equals("-classpath") || option.equals("--class-path")) {
+      withOutput.set(i + 1, withOutput.get(i + 1) + File.pathSeparator + outputDir);
+      return withOutput;
+    }
+  }
+  withOutput.add("-cp");
+  withOutput.add(outputDir);
+  return withOutput;
+}
+
+/** Print what the unit would have printed and add its counts to those of the compiler. The
+ * messages of the unit reported last are kept as the compiler's messages. */
+private void report(CompiledUnit unit) {
+  if (unit.printed.length() > 0)
+    System.out.print(unit.printed);
+  counts.add(unit.counts);
+  msgCollector = unit.msgs;
+}
+
+private void compileTokens(CommonTokenStream tokenStream, String sourceName, CompiledUnit unit) {
+  final CollectingMsgListener msgs = unit.msgs;
+  final CompilationContext context = new CompilationContext();
   TLantlrParser parser = new TLantlrParser(tokenStream);
-  ParseTree tree = fastParse(parser, msgCollector, counts);
+  ParseTree tree = fastParse(parser, msgs, unit.counts);
 
-  if (msgCollector.hasNoErrs()) { // only errors are issued by the parser
+  if (msgs.hasNoErrs()) { // only errors are issued by the parser
     ContextCheckVisitor sourceInfo
-      = new ContextCheckVisitor(tree, msgCollector, scopeMap);
+      = new ContextCheckVisitor(tree, msgs, context);
     sourceInfo.visit(tree);
     String topQualifiedName = sourceInfo.getCompoundTypeName();
-    checkNameAgreement(topQualifiedName, sourceName);
-    if (msgCollector.hasNoErrs()) {
+    checkNameAgreement(topQualifiedName, sourceName, msgs);
+    if (msgs.hasNoErrs()) {
       ExtendedRewriter rewriter = new ExtendedRewriter(tokenStream);
-      saveGenerated(javaCollector, sourceInfo, tree, rewriter, tokenStream);
-      counts.incTCompileCount();
+      saveGenerated(sourceInfo, tree, rewriter, tokenStream, unit, context);
+      unit.counts.incTCompileCount();
     }
   }
-  if (msgCollector.hasNoErrs()) {
+  if (msgs.hasNoErrs()) {
     // TODO Run tests and collect any test errors
   }
-  if (msgCollector.hasNoErrs()) {
+  if (msgs.hasNoErrs()) {
     // TODO Generate SAT checks and collect any errors
   }
-  if (msgCollector.hasNoErrs()) {
-    TLantlrProofVisitor.proveCorrectness(tree, tokenStream, scopeMap, msgCollector);
+  if (msgs.hasNoErrs() && unit.isProofNeeded) {
+    TLantlrProofVisitor.proveCorrectness(tree, tokenStream, context, msgs);
+    unit.proofObligations = context.proofObligations;
+    if (context.proverOutput.length() > 0)
+      unit.println(context.proverOutput.toString());
     /* TODO: Would be good to do proof checking after compile to avoid trivial errors
      * but I want to shell out to the compiler a single time.
      * So perhaps the best thing to do is to check for the first proof checking error
@@ -241,14 +534,14 @@ private void compileTokens(CommonTokenStream tokenStream, String sourceName,
      *       generated java before compile (or recompile)
      */
   }
-  if (msgCollector.hasNoErrs()) {
+  if (msgs.hasNoErrs()) {
     // TODO Generate semantic web page for the public class of the run unit
   }
-  if (msgCollector.hasErrs()) {
-    counts.incErrorCount();
+  if (msgs.hasErrs()) {
+    unit.counts.incErrorCount();
   }
-  if (msgCollector.hasMsgs()) {
-    System.out.println(msgCollector.toString());
+  if (msgs.hasMsgs()) {
+    unit.println(msgs.toString());
   }
 }
 
@@ -260,24 +553,22 @@ private void compileTokens(CommonTokenStream tokenStream, String sourceName,
  * <li> compiling java instead of T language
  * </ul>
  */
-private boolean specialFileCases(JavaFileHandler javaCollector,
-                                 TCompilerCounts counts,
-                                 String fileName)
+private boolean specialFileCases(CompiledUnit unit, String fileName)
     throws IOException, ParseCancellationException
 {
-  if (fileNameErrorReporting(counts, msgCollector, fileName))
+  if (fileNameErrorReporting(unit.counts, unit.msgs, fileName))
     return true;
 
   if (xDiagnostics) {
-    AmbiguityDetection(fileName, msgCollector, counts);
+    AmbiguityDetection(fileName, unit);
     return true;
   }
   if (fileName.endsWith(".java")) {
     if (xJavaTestOption) {
-      testJavaParsing(fileName, counts);
+      testJavaParsing(fileName, unit);
     } else {
-      javaCollector.saveIntermixedJava(fileName);
-      counts.incJavaPassThruCount();
+      unit.intermixedJava = fileName;
+      unit.counts.incJavaPassThruCount();
     }
     return true;
   }
@@ -286,10 +577,9 @@ private boolean specialFileCases(JavaFileHandler javaCollector,
 }
 
     private static void
-AmbiguityDetection(String fileName
-                  , CollectingMsgListener msgCollector
-                  , TCompilerCounts counts
-                  ) throws IOException {
+AmbiguityDetection(String fileName, CompiledUnit unit) throws IOException {
+  final CollectingMsgListener msgCollector = unit.msgs;
+  final TCompilerCounts counts = unit.counts;
   CommonTokenStream tokenStream = fileToTokens(fileName, msgCollector);
   final TLantlrParser parser = new TLantlrParser(tokenStream);
   parser.removeErrorListeners();
@@ -308,18 +598,18 @@ AmbiguityDetection(String fileName
   }
   if (msgCollector.hasErrs())
     counts.incErrorCount();
-  System.out.println("Ambiguity Detection Messages for "+ fileName +": \n"+ msgCollector.toString());
+  unit.println("Ambiguity Detection Messages for "+ fileName +": \n"+ msgCollector.toString());
 }
 
     private void
-testJavaParsing(String fileName, TCompilerCounts counts)
+testJavaParsing(String fileName, CompiledUnit unit)
       throws IOException, ParseCancellationException
-{ CommonTokenStream tokenStream = fileToTokens(fileName, msgCollector);
+{ CommonTokenStream tokenStream = fileToTokens(fileName, unit.msgs);
   TLantlrParser parser = new TLantlrParser(tokenStream);
-  fastParse(parser, msgCollector, counts);
-  if (msgCollector.hasMsgs()) {
-    counts.incErrorCount();
-    System.out.println("Parsing messages for "+ fileName +":\n"+ msgCollector.toString());
+  fastParse(parser, unit.msgs, unit.counts);
+  if (unit.msgs.hasMsgs()) {
+    unit.counts.incErrorCount();
+    unit.println("Parsing messages for "+ fileName +":\n"+ unit.msgs.toString());
   }
 }
 
@@ -333,7 +623,7 @@ testJavaParsing(String fileName, TCompilerCounts counts)
 //}
 
     private void
-checkNameAgreement(String topQualifiedName, String fileName) {
+checkNameAgreement(String topQualifiedName, String fileName, CollectingMsgListener msgCollector) {
       if (isCompileUnitInCommandLine)
         return;
 
@@ -346,31 +636,22 @@ checkNameAgreement(String topQualifiedName, String fileName) {
     }
 
     private void
-saveGenerated( JavaFileHandler javaCollector
-             , ContextCheckVisitor semanticCheckResults
+saveGenerated( ContextCheckVisitor semanticCheckResults
              , ParseTree tree
              , @SuppressWarnings("unused") ExtendedRewriter rewriter
                 // will need later for other outputs to be compiled, e.g., tests
              , CommonTokenStream tokens
+             , CompiledUnit unit
+             , CompilationContext context
              ) {
+  final CollectingMsgListener msgCollector = unit.msgs;
   if (msgCollector.hasNoErrs()) {
     String javaCodeFromT
-        = TLantlrJavaRewriter.treeToJava(tree, tokens, scopeMap);
-    final String topTypeName = semanticCheckResults.getTopTypeName();
-    final String packageName = semanticCheckResults.getPackageName();
-    try {
-      javaCollector.saveGeneratedJava(javaCodeFromT, packageName, topTypeName);
-    } catch (IOException e) {
-      String pkg;
-      if (packageName == null)    { pkg = "null package"; }
-      else if (packageName == "") { pkg = "default package"; }
-      else                        { pkg = "package "+ packageName; }
-      msgCollector.collectError
-          ("Unable to save generated Java file for class "+ topTypeName
-          +" in "+ pkg
-          +"\n" + e.getMessage()
-          );
-    }
+        = TLantlrJavaRewriter.treeToJava(tree, tokens, context);
+    unit.generatedJava = javaCodeFromT;
+    unit.topTypeName = semanticCheckResults.getTopTypeName();
+    unit.packageName = semanticCheckResults.getPackageName();
+    unit.referencedTypes = BuildState.referencedTypes(tokens, unit.topTypeName);
 //        boolean succcessful = TUtil.compileSource
 //                                ( topQualifiedName, javaCodeFromT
 //                                , comp, javaCompilerOptions, msgCollector
@@ -417,7 +698,7 @@ saveGenerated( JavaFileHandler javaCollector
               int depth = Integer.parseInt(args[thisArg]);
               if (depth < 1)
                 throw new NumberFormatException("Positive integer required");
-              msgCollector.setTraceBackSize(depth);
+              traceBackSize = depth;
             } catch (NumberFormatException e) {
               exitWithCommandLineFormatError(args,
                      "ERROR: Invalid traceback depth after '-traceback'"
@@ -447,6 +728,99 @@ saveGenerated( JavaFileHandler javaCollector
           case "-decorateFinal"    :
             setSwitchToFinalDecoration();
             break;
+          case "-proofcache"       :
+            isProofCacheRequested = true;
+            thisArg++;
+            if (thisArg >= args.length || args[thisArg].startsWith("-"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: The directory for cached proof results is missing after '-proofcache'");
+            proofCacheDir = args[thisArg];
+            break;
+          case "-noproofcache"     :
+            isProofCacheRequested = false;
+            break;
+          case "-incremental"      :
+            isIncrementalRequested = true;
+            break;
+          case "-factcontext"      :
+            KnowledgeBase.useFactContext(true);
+            break;
+          case "-allfacts"         :
+            KnowledgeBase.useRelevantFacts(false);
+            break;
+          case "-noequalityclosure":
+            KnowledgeBase.useEqualityClosure(false);
+            break;
+          case "-noarithmetic"     :
+            KnowledgeBase.useArithmetic(false);
+            break;
+          case "-nosat"            :
+            KnowledgeBase.useSatSolver(false);
+            break;
+          case "-notriggers"       :
+            KnowledgeBase.useTriggers(false);
+            break;
+          case "-debugprover"      :
+            KnowledgeBase.debugProver(true);
+            break;
+          case "-j"                :
+            thisArg++;
+            if (thisArg >= args.length || ! args[thisArg].matches("[1-9][0-9]*"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: A positive number of threads is required after '-j'");
+            unitThreads = Integer.parseInt(args[thisArg]);
+            break;
+          case "-provers"          :
+            thisArg++;
+            if (thisArg >= args.length || ! args[thisArg].matches("[1-9][0-9]*"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: A positive number of provers is required after '-provers'");
+            KnowledgeBase.setProverEngineLimit(Integer.parseInt(args[thisArg]));
+            break;
+          case "-prover"           :
+            thisArg++;
+            if (thisArg >= args.length || ! args[thisArg].matches("prolog|java|crosscheck"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: One of prolog, java or crosscheck is required after '-prover'");
+            KnowledgeBase.useProver(args[thisArg].equals("crosscheck")
+                                    ? KnowledgeBase.Prover.crossCheck
+                                    : KnowledgeBase.Prover.valueOf(args[thisArg]));
+            break;
+          case "-provertime"       :
+            thisArg++;
+            if (thisArg >= args.length || ! args[thisArg].matches("[0-9]{1,18}"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: A number of milliseconds is required after '-provertime'");
+            KnowledgeBase.setDefaultProverBudget(KnowledgeBase.defaultProverBudget()
+                                                 .withTimeLimit(Long.parseLong(args[thisArg])));
+            break;
+          case "-proversteps"      :
+            thisArg++;
+            if (thisArg >= args.length || ! args[thisArg].matches("[0-9]{1,18}"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: A number of inference steps is required after '-proversteps'");
+            KnowledgeBase.setDefaultProverBudget(KnowledgeBase.defaultProverBudget()
+                                                 .withStepLimit(Long.parseLong(args[thisArg])));
+            break;
+          case "-proverlimits"     :
+            thisArg++;
+            if ( thisArg >= args.length
+              || ! args[thisArg].matches("[1-9][0-9]{0,8}(/[1-9][0-9]{0,8}/[0-9]{1,9})?"
+                                        +"(,[1-9][0-9]{0,8}(/[1-9][0-9]{0,8}/[0-9]{1,9})?)*"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: A list of limits such as 2,4,8,16 is required after '-proverlimits'");
+            KnowledgeBase.setProverLimitSchedule(ProverLimits.parseSchedule(args[thisArg]));
+            break;
+          case "-methodbudget"     :
+            thisArg++;
+            if ( thisArg >= args.length
+              || ! args[thisArg].matches("[^=]+=[0-9]{1,18}(,[0-9]{1,18})?"))
+              exitWithCommandLineFormatError(args,
+                    "ERROR: A method=millis or method=millis,steps is required after '-methodbudget'");
+            final String[] methodAndBudget = args[thisArg].split("=", 2);
+            TLantlrProofVisitor.setMethodBudget(methodAndBudget[0],
+                                                ProverBudget.parse(methodAndBudget[1]));
+            break;
           case "-wg":
           case "-Xjavatest"    : xJavaTestOption = true;
             break;
@@ -460,6 +834,7 @@ saveGenerated( JavaFileHandler javaCollector
             thisArg++;
             javaCompilerOptions.add(args[thisArg]);
             TUtil.ensureDirExists(args[thisArg]);
+            outputDir = args[thisArg];
             break;
           case "-cp":
           case "-classpath" :
@@ -478,6 +853,7 @@ saveGenerated( JavaFileHandler javaCollector
         }
         thisArg++;
       }
+      commandLineOptions = String.join(" ", Arrays.copyOfRange(args, 0, thisArg));
       String errMsg = "";
       if (  isCompileUnitInCommandLine && thisArg < args.length)
         exitWithCommandLineFormatError(args,
@@ -521,13 +897,89 @@ saveGenerated( JavaFileHandler javaCollector
       + "\n      -genout dirpath"
       + "\n        The path to the directory where Java files generated from"
       + "\n        TrueJ compilation units will be placed and saved for later"
-      + "\n        examination. The default is that the Java files are placed in"
-      + "\n        system temp directory at generatedTJava/<user>/<date and time>"
-      + "\n        and that these files are deleted after generating .class files"
+      + "\n        examination. The default is that the Java files are kept in"
+      + "\n        memory only, from where they are compiled to .class files"
       + "\n      -decorateFinal"
       + "\n        Require final value names to be decorated. The default is that"
       + "\n        final value names may either be decorated or be the same as"
       + "\n        the name of the variable that holds the value."
+      + "\n      -proofcache dirpath"
+      + "\n        The directory where the results of proofs are kept so that"
+      + "\n        unchanged proofs are not repeated in later compiles. The"
+      + "\n        default is "+ ProofCache.defaultDirectory
+      + "\n        The results are discarded whenever the prover changes."
+      + "\n      -noproofcache"
+      + "\n        Send every proof to the prover, neither using nor recording"
+      + "\n        earlier results."
+      + "\n      -incremental"
+      + "\n        Compile a file only when it or a type that it refers to has"
+      + "\n        changed since the last compile, as recorded in the file"
+      + "\n        "+ BuildState.stateFileName +" in the directory of the class files,"
+      + "\n        which is then also on the class path. Give it with -d, so that"
+      + "\n        the record is kept with the classes of the project. The default"
+      + "\n        is to compile every file that is given."
+      + "\n      -factcontext"
+      + "\n        Keep the facts of enclosing scopes loaded in the prover"
+      + "\n        between proofs, so that each proof sends and normalizes"
+      + "\n        only its new statement."
+      + "\n      -allfacts"
+      + "\n        Give the prover every fact in scope. The default is to give it"
+      + "\n        only the facts that share a name with the statement, directly"
+      + "\n        or through other facts, and all of the facts only when those"
+      + "\n        are not enough to prove it."
+      + "\n      -noequalityclosure"
+      + "\n        Give the prover the equalities among the facts as they are."
+      + "\n        The default is to merge them into classes of equal values"
+      + "\n        first, and to give the prover one name for each class."
+      + "\n      -noarithmetic"
+      + "\n        Leave the comparisons among the facts to the prover alone."
+      + "\n        The default is to solve them as linear arithmetic first, so"
+      + "\n        that contradictions such as x < y and y < x are found."
+      + "\n      -nosat"
+      + "\n        Give every proof to the prover. The default is to decide each"
+      + "\n        proof without quantifiers by a SAT solver that learns from"
+      + "\n        its conflicts, which is much faster on many branches."
+      + "\n      -notriggers"
+      + "\n        Leave the instances of quantified facts to the prover alone."
+      + "\n        The default is to first try the instances for the terms that"
+      + "\n        match each fact's triggers, with the SAT solver."
+      + "\n      -debugprover"
+      + "\n        Run the Prolog prover on its theory with the debugging goals"
+      + "\n        left in, and print what it decides. The default is the"
+      + "\n        production theory, from which the build takes them out."
+      + "\n      -j threads"
+      + "\n        The most compile units that are compiled at the same time,"
+      + "\n        each on its own thread, before the Java compiler is run"
+      + "\n        once for all of them. Their messages are reported in the"
+      + "\n        order of the files. The default is 1."
+      + "\n      -provers count"
+      + "\n        The most proofs that may run at the same time, each in its"
+      + "\n        own prover. The default is the number of processors."
+      + "\n      -prover prolog|java|crosscheck"
+      + "\n        Which prover checks the proofs: the Prolog prover, the same"
+      + "\n        prover rewritten in Java, or both, with a warning for each"
+      + "\n        proof where they disagree. The default is prolog."
+      + "\n      -provertime millis"
+      + "\n        The most milliseconds that each proof may run. A proof that"
+      + "\n        runs longer is stopped and reported as having reached a"
+      + "\n        limit. The default, 0, is no limit."
+      + "\n      -proversteps count"
+      + "\n        The most inference steps that each proof may take, with the"
+      + "\n        same result as -provertime when they run out. The default,"
+      + "\n        0, is no limit."
+      + "\n      -proverlimits limits[,limits]..."
+      + "\n        The limits that each proof tries in turn, smallest first,"
+      + "\n        until one decides it. Each is a number for all of the"
+      + "\n        limits, or all/depth/continuations for the most variables"
+      + "\n        from ALL-expressions, the depth of guarded expressions and"
+      + "\n        the continuations. The default is 2,4,8. The limits that"
+      + "\n        decide each proof are kept beside the proof cache, so the"
+      + "\n        next compile starts that proof at those limits."
+      + "\n      -methodbudget method=millis[,steps]"
+      + "\n        The most milliseconds and inference steps for each proof of"
+      + "\n        one method, instead of -provertime and -proversteps. The"
+      + "\n        method is named Class.method or just method, for every"
+      + "\n        method of that name. The option may be repeated."
       + "\n"
       + "\n    Java compiler options that have additional meaning in TrueJ"
       + "\n         (The other options of your javac compiler may also be used)"
@@ -2,7 +2,6 @@ package tlang;
 
 import java.util.Map;
 import org.antlr.v4.runtime.ParserRuleContext;
-import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -32,16 +31,16 @@ boolean inAssignableExpression = false;
 public static final String $T$ = "$T$";
 
 public TLantlrJavaRewriter( TokenStream             tokenStream
-                            , Map<RuleContext, Scope> ctxToScope
+                            , CompilationContext      context
                             ) {
-  super(tokenStream, ctxToScope);
+  super(tokenStream, context);
 }
 
 static public String treeToJava( ParseTree parseTree
                                , TokenStream tokenStream
-                               , Map<RuleContext, Scope> ctxToScope
+                               , CompilationContext context
                                ) {
-  TLantlrJavaRewriter visitor = new TLantlrJavaRewriter(tokenStream, ctxToScope);
+  TLantlrJavaRewriter visitor = new TLantlrJavaRewriter(tokenStream, context);
   visitor.visit(parseTree);
   return visitor.getJava();
 }
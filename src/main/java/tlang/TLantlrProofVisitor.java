@@ -1,7 +1,10 @@
 package tlang;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.Token;
@@ -53,20 +56,30 @@ private static final String prover = "Prover";
 private CollectingMsgListener errors;
 
 private static char prologDecoratorChar = '^';
-private static RewriteVisitor latestProofVisitor;
+/** Budgets for the proofs of particular methods, named either <code>Class.method</code> or just
+ * <code>method</code>. See {@link #setMethodBudget(String, ProverBudget)} */
+private static final Map<String, ProverBudget> methodBudgets = new ConcurrentHashMap<>();
 
 /** Contains a logical representation of the state of a program. A child KnowledgeBase is created
  * for each scope in which something might need to be proven. */
 private KnowledgeBase kb = new KnowledgeBase();
+/** The proven contracts of the methods visited so far, which are assumed at their calls. */
+private final MethodSummaryStore methodSummaries = new MethodSummaryStore();
+/** The result of the proof of the final means of the method being visited, if it has one. */
+private @Nullable ProofResult finalMeansResult = null;
+/** The facts of the method being visited, without those of its class, as they were when its final
+ * means was proven. See {@link #summarizeMethod(T_methodDeclarationContext)} */
+private @Nullable KnowledgeBase finalMeansFacts = null;
 
 
 public TLantlrProofVisitor(
   TokenStream tokenStream,
-  Map<RuleContext, Scope> ctxToScope,
+  CompilationContext context,
   CollectingMsgListener errors)
 {
-  super(tokenStream, ctxToScope);
+  super(tokenStream, context);
   this.errors = errors;
+  kb.setProverOutput(context.proverOutput::append);
 }
 
 /** All <code>axiom, constraint, conjecture,</code> and <code>given</code> statements must be
@@ -75,19 +88,20 @@ public TLantlrProofVisitor(
  *
  * @param  parseTree   of the code to be proven
  * @param  tokenStream that was used to generate the parseTree
- * @param  ctxToScope  map from a parse context to all scope information, especially variables
+ * @param  context     what is known about the compile unit, especially the scope of each parse
+ *                     context and its variables
  * @param  errors      collects all error messages
  * @return             a record of the prolog calls that were made to the prover
  */
 public static String proveCorrectness( ParseTree               parseTree,
                                        TokenStream             tokenStream,
-                                       Map<RuleContext, Scope> ctxToScope,
+                                       CompilationContext      context,
                                        CollectingMsgListener   errors
                                      )
 {
-  latestProofVisitor = new TLantlrProofVisitor(tokenStream, ctxToScope, errors);
-  latestProofVisitor.visit(parseTree);
-  String textSentToProver = notNull(latestProofVisitor.rewriter.getText());
+  final TLantlrProofVisitor proofVisitor = new TLantlrProofVisitor(tokenStream, context, errors);
+  proofVisitor.visit(parseTree);
+  String textSentToProver = notNull(proofVisitor.rewriter.getText());
   return textSentToProver;
 }
 
@@ -124,6 +138,7 @@ public Void visitT_PreValueName(T_PreValueNameContext valueNameCtx) {
   final String scopePrefix = getScopePrefix(variableName);
   final String prologName = "'" + scopePrefix + "^" + variableName + "'"; // e.g., 'this.^xxx'
   rewriter.substituteText(valueNameCtx, prologName);
+  assumeTypeOf(variableName, prologName);
   return VOIDNULL;
 }
 
@@ -145,6 +160,7 @@ public Void visitT_MidValueName(T_MidValueNameContext valueNameCtx) {
   final String prologName = "'" + getScopePrefix(n[0]) + n[0] + "^" + n[1] + "'";
                         // 'this.varName^xxx'
   rewriter.substituteText(valueNameCtx, prologName);
+  assumeTypeOf(n[0], prologName);
   return VOIDNULL;
 }
 
@@ -163,8 +179,10 @@ public Void visitT_MidValueName(T_MidValueNameContext valueNameCtx) {
 public Void visitT_PostValueName(T_PostValueNameContext valueNameCtx) {
   final String valueName = rewriter.source(valueNameCtx);
   final String variableName = valueName.substring(0, valueName.length() - 1);
-  rewriter.substituteText(valueNameCtx, "'" + getScopePrefix(variableName) + variableName + "^'");
+  final String prologName = "'" + getScopePrefix(variableName) + variableName + "^'";
     // "'" is part of the prolog name, not a decorator
+  rewriter.substituteText(valueNameCtx, prologName);
+  assumeTypeOf(variableName, prologName);
   return VOIDNULL;
 }
 
@@ -280,10 +298,80 @@ private String returnExpression(String returnedExpression) {
 
 /**
  * A method declaration has a background scope for a parent in order to hold all
- * the higher scope fields.
+ * the higher scope fields. Once its final means is proven, the method is summarized for its calls.
  */
 @Override public Void visitT_methodDeclaration(T_methodDeclarationContext ctx) {
+  finalMeansResult = null;
+  finalMeansFacts = null;
   withChildOfKb( () -> {super.visitT_methodDeclaration(ctx);} );
+  summarizeMethod(ctx);
+  return VOIDNULL;
+}
+
+/** Keep the contract of the method for its calls if its final means was proven and can be moved to
+ * a call site. The final means was proven with the facts of the class as well, e.g., the initial
+ * values of fields, which may no longer hold at a later call, so it is proven once more with only
+ * the facts of the method itself, i.e., of its parameters and its body, and the method gets no
+ * summary unless that proof succeeds too. See {@link MethodSummaryStore} */
+private void summarizeMethod(T_methodDeclarationContext ctx) {
+  final @Nullable String className = enclosingClassName(ctx);
+  if (className == null)
+    return;
+  final String methodName = ctx.UndecoratedIdentifier().getText();
+  final List<String> parameterNames = new ArrayList<>();
+  final List<String> parameterTypes = new ArrayList<>();
+  boolean hasVarargs = false;
+  final @Nullable T_formalParameterListContext parameters
+      = ctx.t_formalParameters().t_formalParameterList();
+  if (parameters != null) {
+    for (T_formalParameterContext parameter : parameters.t_formalParameter()) {
+      parameterNames.add(parameter.t_initializedVariableDeclaratorId().t_idDeclaration()
+                                  .t_identifier().getText());
+      parameterTypes.add(parameter.t_type().getText());
+    }
+    hasVarargs = parameters.t_lastFormalParameter() != null;
+  }
+  final String signature = className +"."+ methodName +"("+ String.join(",", parameterTypes) +")";
+  methodSummaries.declare(signature, className, methodName, parameterNames.size());
+
+  final @Nullable T_finalMeansContext finalMeans = ctx.t_finalMeans();
+  if (finalMeans == null || finalMeansResult != ProofResult.provenTrue || ctx.t_type() == null
+      || hasVarargs)
+    return; // nothing proven about a returned value
+  final Scope methodScope = notNull(scopeMap.get(ctx));
+  final List<String> initialValues = new ArrayList<>();
+  for (String name : parameterNames)
+    initialValues.add("'"+ getScopePrefix(methodScope, name) +"^"+ name +"'");
+  final List<String> returnValues
+      = List.of("'"+ getScopePrefix(methodScope, "return") +"return^'", "return");
+  final String finalMeansStatement = rewriter.source(finalMeans.t_means().t_expression());
+  final @Nullable MethodSummaryStore.MethodSummary summary
+      = MethodSummaryStore.summarize( signature, className, methodName, parameterNames
+                                    , initialValues, returnValues, finalMeansStatement);
+  final @Nullable KnowledgeBase methodFacts = finalMeansFacts;
+  if ( summary != null && methodFacts != null
+    && methodFacts.prove(finalMeansStatement) == ProofResult.provenTrue)
+    methodSummaries.record(summary);
+}
+
+/** Assume what the final means of the called method says about the value of the call, when the
+ * method has been summarized. The call itself stands for its returned value. */
+@Override public Void visitFuncCallExpr(FuncCallExprContext ctx) {
+  visitChildren(ctx);
+
+  final List<T_expressionDetailContext> parts = ctx.t_expressionDetail();
+  final String methodName = notNull(parts.get(0)).getText();
+  final @Nullable String className = enclosingClassName(ctx);
+  if (className == null || ! methodName.matches("[A-Za-z_$][A-Za-z0-9_$]*"))
+    return VOIDNULL; // only a call to a method of the same class is summarized
+  final @Nullable MethodSummaryStore.MethodSummary summary
+      = methodSummaries.forCall(className, methodName, parts.size() - 1);
+  if (summary == null)
+    return VOIDNULL;
+  final List<String> arguments = new ArrayList<>();
+  for (T_expressionDetailContext argument : parts.subList(1, parts.size()))
+    arguments.add(rewriter.source(argument));
+  kb.assume(summary.instantiate(arguments, rewriter.source(ctx)));
   return VOIDNULL;
 }
 
@@ -292,14 +380,11 @@ private String returnExpression(String returnedExpression) {
  * issued, which summarizes everything needed from the code above it in this block. */
 /* TODO: Progress from the top down. Every status statement will need to be proven. At each
  * means-statement, discard the preceeding statements, but keep variable type info. */
-/* TODO: after the means-statement is encountered, keep looking for variable declarations to collect
- * type information for all valueNames that occur in the meaningful code. */
 @Override public Void visitT_block(T_blockContext ctx) {
   withChildOfKb(() ->
     withChildScopeForCtx(ctx, () -> visitChildren(ctx))
   );
   boolean statementsAreActive = true; // so far
-  String types = "true";
   String meaning = "true";
   for (int i = ctx.t_blockStatement().size()-1; i >= 0; i-- ) {
     T_blockStatementContext bStCtx = ctx.t_blockStatement(i);
@@ -323,11 +408,11 @@ private String returnExpression(String returnedExpression) {
           if (declarator instanceof UninitializedVariableContext) {
             var uninitStatement = (UninitializedVariableContext)declarator;
             String valueName = rewriter.source(uninitStatement.t_uninitializedVariableDeclaratorId());
-            types += and + " type("+ type +","+ valueName +")";
+            kb.assumeType(type, valueName);
           } else { // initialization instanceof InitializedVariableContext
             InitializedVariableContext initStatement = (InitializedVariableContext)declarator;
             String valueName = rewriter.source(initStatement.t_initializedVariableDeclaratorId());
-            types += and + " type("+ type +","+ valueName +")";
+            kb.assumeType(type, valueName);
             if (statementsAreActive)
               meaning += and + parenthesize(rewriter.source(initStatement));
           }
@@ -530,11 +615,16 @@ public Void visitT_means(T_meansContext ctx) {
   T_expressionDetailContext predicate = ctx.t_expression().t_expressionDetail();
   String meansStatementForProver = knowledgeBaseCode(predicate);
 
+  recordObligation(meansStatementForProver);
+  if (ctx.getParent() instanceof T_finalMeansContext)
+    finalMeansFacts = kb.detached(); // before the means takes the place of the method's facts
   ProofResult result = kb.substituteIfProven(meansStatementForProver);
 
   if ( result != ProofResult.provenTrue) {
     result = proveEachConjunct(predicate);
   }
+  if (ctx.getParent() instanceof T_finalMeansContext)
+    finalMeansResult = result;
   rewriter.substituteText(ctx.t_expression(), meansStatementForProver);
   return VOIDNULL;
 }
@@ -550,6 +640,7 @@ public Void visitT_lemma(T_lemmaContext ctx) {
   T_expressionDetailContext predicate = ctx.t_expression().t_expressionDetail();
   String lemmaStatementForProver = knowledgeBaseCode(predicate);
 
+  recordObligation(lemmaStatementForProver);
   ProofResult result = kb.assumeIfProven(lemmaStatementForProver);
 
   if ( result != ProofResult.provenTrue) {
@@ -559,25 +650,61 @@ public Void visitT_lemma(T_lemmaContext ctx) {
   return VOIDNULL;
 }
 
+/** Note a statement that the unit must prove, so that a later compile can tell whether what the
+ *  unit proves has changed. See {@link BuildState} */
+private void recordObligation(String statementForProver) {
+  context.proofObligations.add(ProofCache.sha256(ProofCache.normalized(statementForProver)));
+}
+
+/** Prove each conjunct of a statement that could not be proven as a whole, so that the error
+ * message names the first conjunct that fails. The conjuncts are proven together against the facts
+ * as they stand (see {@link KnowledgeBase#proveAll(List)}), and the results are then taken in source
+ * order. Each proven conjunct is assumed in turn, so a conjunct that failed alone is tried once
+ * more with the conjuncts before it assumed, just as if they had been proven one after another.
+ * @param  conjunction the statement that failed to be proven
+ * @return             the result for the first conjunct that was not proven, or
+ *                     <code>provenTrue</code> if every conjunct was proven */
 private ProofResult proveEachConjunct(T_expressionDetailContext conjunction) {
-  conjunction = removeAnyParentheses(conjunction);
-  if (isSingleConjunct(conjunction)) {
-    ProofResult result = kb.assumeIfProven(knowledgeBaseCode(conjunction));
-    reportAnyError(conjunction, result);
+  final List<T_expressionDetailContext> conjuncts = new ArrayList<>();
+  collectConjuncts(conjunction, conjuncts);
+  if (conjuncts.size() == 1) {
+    ProofResult result = kb.assumeIfProven(knowledgeBaseCode(conjuncts.get(0)));
+    reportAnyError(conjuncts.get(0), result);
     return result;
   }
 
-  for (ParseTree child : conjunction.children) {
-    if (child instanceof T_expressionDetailContext) {
-      T_expressionDetailContext expr = (T_expressionDetailContext)child;
-      ProofResult conjunctResult = proveEachConjunct(expr);
-      if (conjunctResult != ProofResult.provenTrue)
-        return conjunctResult;
+  final List<String> statements = new ArrayList<>();
+  for (T_expressionDetailContext conjunct : conjuncts)
+    statements.add(knowledgeBaseCode(conjunct)); // the rewriter is used only on this thread
+  final List<ProofResult> results = kb.proveAll(statements); // against the facts as they stand
+
+  for (int i = 0; i < conjuncts.size(); i++) {
+    ProofResult result = notNull(results.get(i));
+    if (result != ProofResult.provenTrue && i > 0)
+      result = kb.prove(statements.get(i)); // with the earlier conjuncts now assumed
+    if (result != ProofResult.provenTrue) {
+      reportAnyError(conjuncts.get(i), result);
+      return result;
     }
+    kb.assume(statements.get(i));
   }
   return ProofResult.provenTrue;
 }
 
+/** Collect the conjuncts of a conjunction in source order, looking inside any parentheses and any
+ * nested conjunctions. */
+private void collectConjuncts( T_expressionDetailContext       conjunction
+                             , List<T_expressionDetailContext> conjuncts ) {
+  conjunction = removeAnyParentheses(conjunction);
+  if (isSingleConjunct(conjunction)) {
+    conjuncts.add(conjunction);
+    return;
+  }
+  for (ParseTree child : conjunction.children)
+    if (child instanceof T_expressionDetailContext)
+      collectConjuncts((T_expressionDetailContext)child, conjuncts);
+}
+
 private T_expressionDetailContext removeAnyParentheses(T_expressionDetailContext conjunction) {
   if ( ! (conjunction instanceof PrimaryExprContext))
     return conjunction;
@@ -647,11 +774,26 @@ private String parenthesize(String expression) {
  * @param  variableName
  * @return              scope name followed by a dot separator */
 private String getScopePrefix(final String variableName) {
-  final Optional<VarInfo> info = notNull(currentScope).getOptionalExistingVarInfo(variableName);
+  return getScopePrefix(notNull(currentScope), variableName);
+}
+
+/** Get the name of the scope where the variable that is visible from the given scope was declared,
+ * with a following dot separator. See {@link #getScopePrefix(String)} */
+private static String getScopePrefix(final Scope scope, final String variableName) {
+  final Optional<VarInfo> info = scope.getOptionalExistingVarInfo(variableName);
   return info.map(v -> v.getScopeWhereDeclared().getLabel() + ".")
              .orElse("");
 }
 
+/** Tell the KnowledgeBase the type of the variable of a value name, so that, e.g., the value of an
+ * <code>int</code> is known to be an integer.
+ * @param variableName the variable of the value name
+ * @param prologName   the Prolog form of the value name */
+private void assumeTypeOf(final String variableName, final String prologName) {
+  notNull(currentScope).getOptionalExistingVarInfo(variableName)
+                       .ifPresent(v -> kb.assumeType(v.getType(), prologName));
+}
+
 /** The full type name will need to include the package where it is defined unless it is a
  * primitive, but for now we just return the type as given in the code.
  * @param  idType
@@ -676,6 +818,63 @@ private String varName(String val) {
     return val.substring(0, pos) + "'"; // return 'abc' for 'abc^' or 'abc^de'
 }
 
+/** Give the proofs of a method their own budget instead of the default budget of
+ * {@link KnowledgeBase#setDefaultProverBudget(ProverBudget)}. A constructor is named after its class.
+ * @param methodName either <code>Class.method</code> for one method, or <code>method</code> for the
+ *                   methods of that name in every class. The first is used when both are given.
+ * @param budget     the most time and the most inference steps for each proof in the method */
+static void setMethodBudget(String methodName, ProverBudget budget) {
+  methodBudgets.put(methodName, budget);
+}
+
+/** {@inheritDoc}
+ * The proofs of a method or constructor use the budget given for it, if there is one. */
+@Override
+protected void executableVisit(ParserRuleContext ctx, ParserRuleContext bodyCtx) {
+  final @Nullable ProverBudget budget = methodBudget(ctx);
+  if (budget == null) {
+    super.executableVisit(ctx, bodyCtx);
+    return;
+  }
+  kb.setProverBudget(budget);
+  try {
+    super.executableVisit(ctx, bodyCtx);
+  } finally {
+    kb.setProverBudget(null);
+  }
+}
+
+/** The budget given for the method or constructor, or null if there is none. */
+private static @Nullable ProverBudget methodBudget(ParserRuleContext ctx) {
+  if (methodBudgets.isEmpty())
+    return null;
+  final @Nullable TerminalNode name
+      = (ctx instanceof T_methodDeclarationContext)
+            ? ((T_methodDeclarationContext)ctx).UndecoratedIdentifier()
+      : (ctx instanceof T_constructorDeclarationContext)
+            ? ((T_constructorDeclarationContext)ctx).UndecoratedIdentifier()
+      : null; // an initializer has no name
+  if (name == null)
+    return null;
+  final @Nullable String className = enclosingClassName(ctx);
+  if (className != null) {
+    final @Nullable ProverBudget forClassMethod = methodBudgets.get(className +"."+ name.getText());
+    if (forClassMethod != null)
+      return forClassMethod;
+  }
+  return methodBudgets.get(name.getText());
+}
+
+/** The name of the class whose declaration contains the context, or null if there is none. */
+private static @Nullable String enclosingClassName(ParserRuleContext ctx) {
+  @Nullable RuleContext enclosing = ctx.getParent();
+  while (enclosing != null && ! (enclosing instanceof T_classDeclarationContext))
+    enclosing = enclosing.getParent();
+  if (enclosing == null)
+    return null;
+  return ((T_classDeclarationContext)enclosing).UndecoratedIdentifier().getText();
+}
+
 /** Use the Java execution stack as an implicit stack for knowledgebases  */
 private void withChildOfKb(Runnable acceptFunction) {
   KnowledgeBase parentKb = kb;
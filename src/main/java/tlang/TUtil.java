@@ -184,10 +184,6 @@ compileSource(String packageName, String typeName, String javaCodeFromT
              ) throws IOException, InterruptedException
 { javaMgr.saveGeneratedJava(javaCodeFromT, packageName, typeName);
   javaMgr.compileJavaFiles(msgCollector);
-  /* I would like to use the internal compiler but it doesn't implement all the
-   * commandline options. See my issue at Java site.
-   * Meanwhile, I have deprecated the CompileToTemp class
-   */
   // TODO translate Java errors to correspond to T code
   boolean wasSuccessful = true;
   return wasSuccessful;
@@ -472,6 +468,9 @@ TCompilerCounts {
   private int errorCount        = 0;
   private int tCompileCount     = 0;
   private int javaPassThruCount = 0;
+  private int proofCacheHitCount  = 0;
+  private int proofCacheMissCount = 0;
+  private int upToDateCount     = 0;
 
   public void incTCodeCount()        { tCodeCount       ++; }
   public void incJavaParseCount()    { javaParseCount   ++; }
@@ -479,6 +478,23 @@ TCompilerCounts {
   public void incTCompileCount()     { tCompileCount    ++; }
   public void incCatchSLLCount()     { catchSLLCount++;  }
   public void incErrorCount()        { errorCount++;     }
+  public void addUpToDateCount(int units) { upToDateCount += units; }
+  public void addProofCacheCounts(int hits, int misses) {
+    proofCacheHitCount  += hits;
+    proofCacheMissCount += misses;
+  }
+  /** Add the counts of one compile unit to the counts of the whole compile. */
+  public void add(TCompilerCounts unit) {
+    tCodeCount          += unit.tCodeCount;
+    javaParseCount      += unit.javaParseCount;
+    catchSLLCount       += unit.catchSLLCount;
+    errorCount          += unit.errorCount;
+    tCompileCount       += unit.tCompileCount;
+    javaPassThruCount   += unit.javaPassThruCount;
+    proofCacheHitCount  += unit.proofCacheHitCount;
+    proofCacheMissCount += unit.proofCacheMissCount;
+    upToDateCount       += unit.upToDateCount;
+  }
 
 
   public boolean hasError()          { return errorCount > 0; }
@@ -501,9 +517,16 @@ TCompilerCounts {
     if (tCompileCount > 0) {
       msg.append("Compiled "+ tCompileCount +" T language compile units\n");
     }
+    if (upToDateCount > 0) {
+      msg.append("Skipped "+ upToDateCount +" files that were up to date\n");
+    }
     if (catchSLLCount > 0) {
       msg.append("Programs that required LL parsing: " + catchSLLCount +"\n");
     }
+    if (proofCacheHitCount + proofCacheMissCount > 0) {
+      msg.append("Proof results reused from the cache: "+ proofCacheHitCount
+                +" of "+ (proofCacheHitCount + proofCacheMissCount) +"\n");
+    }
     if (errorCount > 0) {
       msg.append("Programs with errors: " + errorCount +"\n");
     }
@@ -0,0 +1,902 @@
+package tlang;
+
+import static tlang.ProverTerm.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+
+/**
+ * The tableau prover of etleantap.pl and the normalization of nnf.pl, running in the JVM instead of
+ * in the tuProlog interpreter. It gives the same three results for the same formulas: a formula is
+ * inconsistent when every branch of its tableau closes; consistent when some branch stays open;
+ * and it reached a limit when a branch was abandoned at the depth limit and no proof of
+ * inconsistency was found.
+ * <p>
+ * Each method named after a Prolog predicate follows the clauses of that predicate in order. The
+ * prover only ever asks for the first solution of <code>inconsistent/6</code> (each call in
+ * etleantap.pl is either the condition of an if-then-else or the last goal of a clause), so each
+ * such method returns whether the first solution exists. When it does, its bindings are left on the
+ * {@link Trail}; when it does not, the caller undoes the bindings back to its own mark before it
+ * tries the next alternative, just as Prolog does when it backtracks. The global state that
+ * etleantap.pl keeps with <code>assert</code>, i.e., <code>reached_limit</code>,
+ * <code>with_limit</code> and <code>maxLimit/1</code>, is kept in fields, and like the asserted
+ * facts it is not undone by backtracking.
+ * <p>
+ * The literals of a branch are indexed by sign and predicate (see {@link Lits}), so a search for a
+ * complementary literal looks only at the literals that could unify with it, in the same order that
+ * <code>member/2</code> would find them.
+ *
+ * @implNote A prover is used for a single proof, by a single thread. The proofs run on threads with
+ *           a large stack, because the tableau for a long list of facts recurses once for each
+ *           literal. A proof that overflows even that stack is reported as having reached a limit.
+ */
+final class TableauProver {
+
+private static final long proverStackSize = 256L * 1024 * 1024;
+private static final ExecutorService proverThreads = Executors.newCachedThreadPool(task -> {
+  final Thread thread = new Thread(null, task, "tableau prover", proverStackSize);
+  thread.setDaemon(true);
+  return thread;
+});
+
+private final Trail trail = new Trail();
+/** <code>limit/1</code>: the most free variables that expanding ALL-expressions may add to a branch */
+private int allLimit;
+/** <code>depth_limit/1</code>: the depth that a branch is given when it continues after a limit */
+private int depthLimit;
+/** <code>maxLimit/1</code>: how many more times a branch may continue after reaching the limit */
+private int continuationsLeft;
+/** <code>reached_limit</code>: stops the exploration of the current branch */
+private boolean reachedLimit = false;
+/** <code>with_limit</code>: some branch was abandoned, so the formula cannot be called consistent */
+private boolean withLimit = false;
+/** The steps left in the proof's budget, or a negative number when there is no step limit */
+private long stepsLeft;
+/** When the proof's time runs out, in the units of {@link System#nanoTime()}, if it has a time limit */
+private final long deadline;
+private final boolean hasDeadline;
+/** The proof has used up its budget, so every call of <code>inconsistent/6</code> fails */
+private boolean isOverBudget = false;
+/** Index numbers for the predicates that appear in literals, see {@link #keyOf(ProverTerm, boolean)} */
+private final Map<Functor, Integer> predicateNumbers = new HashMap<>();
+
+
+private TableauProver(ProverBudget budget) {
+  this.stepsLeft = budget.hasStepLimit() ? budget.stepLimit : -1;
+  this.hasDeadline = budget.hasTimeLimit();
+  this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget.timeLimitMillis);
+}
+
+/** Check the consistency of a formula of the KnowledgeBase language, as
+ * <code>nnf(Formula, NNF), runProver(NNF, Schedule, Result, Decided)</code> does.
+ * @param formula  the statement conjoined with the facts; it is not changed
+ * @param budget   the most time and inference steps for the proof; a proof that exceeds either
+ *                 stops and is reported as having reached a limit
+ * @param schedule the limits to try in turn, until one of them decides the proof; not empty
+ * @return         the result and the limits that decided it */
+static ProverLimits.Outcome check(ProverTerm formula, ProverBudget budget,
+                                  List<ProverLimits> schedule) {
+  final Future<ProverLimits.Outcome> proof = proverThreads.submit(() -> {
+    try {
+      return new TableauProver(budget).run(formula, schedule);
+    } catch (StackOverflowError tooDeep) {
+      return new ProverLimits.Outcome( ConsistencyResult.reachedLimit
+                                     , notNull(schedule.get(schedule.size() - 1)));
+    }
+  });
+  try {
+    return notNull(proof.get());
+  } catch (InterruptedException e) {
+    proof.cancel(true);
+    Thread.currentThread().interrupt();
+    throw new RuntimeException("Interrupted while waiting for the tableau prover", e);
+  } catch (ExecutionException e) {
+    throw new RuntimeException("The tableau prover failed on: "+ formula, e.getCause());
+  }
+}
+
+/** <code>runProver/4</code> applied to the negation normal form of the formula */
+private ProverLimits.Outcome run(ProverTerm formula, List<ProverLimits> schedule) {
+  final ProverTerm normalized = nnf(formula, emptyList).term;
+  for (int rung = 0; ; rung++) {
+    final ProverLimits limits = notNull(schedule.get(rung));
+    final ConsistencyResult result = run(normalized, limits);
+    if (result != ConsistencyResult.reachedLimit || isOverBudget || rung + 1 == schedule.size())
+      return new ProverLimits.Outcome(result, limits);
+  }
+}
+
+/** <code>runProver/3</code>, for a formula in negation normal form */
+private ConsistencyResult run(ProverTerm normalized, ProverLimits limits) {
+  allLimit = limits.allLimit;
+  depthLimit = limits.depthLimit;
+  continuationsLeft = limits.continuations;
+  reachedLimit = false;
+  withLimit = false;
+  if (inconsistent(normalized, Seq.empty(), Lits.empty, Seq.empty(), Seq.empty(), depthLimit))
+    return ConsistencyResult.inconsistent;
+  return withLimit ? ConsistencyResult.reachedLimit : ConsistencyResult.consistent;
+}
+
+
+//=================================================================================================
+//  nnf.pl
+//=================================================================================================
+
+/** A formula in negation normal form together with its number of disjunctive paths. */
+private static final class Normalized {
+  final ProverTerm term;
+  final long paths;
+  Normalized(ProverTerm term, long paths) {
+    this.term = term;
+    this.paths = paths;
+  }
+}
+
+/** <code>nnf(Fml, FreeV, NNF, Paths)</code>, where conjunctions become <code>(A,B)</code> and
+ * disjunctions become <code>(A;B)</code> with the branch with fewer paths first. */
+private Normalized nnf(ProverTerm formula, ProverTerm freeV) {
+  ProverTerm fml = formula.deref();
+  for (@Nullable ProverTerm rewritten = rewrite(fml); rewritten != null; rewritten = rewrite(fml))
+    fml = rewritten.deref();
+
+  final Struct s = (Struct)fml; // a variable is always rewritten
+  if (s.is(all)) {
+    final Normalized body = nnf(s.arg(1), new Struct(listCell, s.arg(0), freeV));
+    return new Normalized(new Struct(all, s.arg(0), body.term), body.paths);
+  }
+  if (s.is(exists))
+    return nnf(skolemized(s.arg(0), s.arg(1), freeV), freeV);
+  if (s.is(and)) {
+    final Normalized left  = nnf(s.arg(0), freeV);
+    final Normalized right = nnf(s.arg(1), freeV);
+    return new Normalized(pair(left.term, right.term), left.paths * right.paths);
+  }
+  if (s.is(or)) {
+    final Normalized left  = nnf(s.arg(0), freeV);
+    final Normalized right = nnf(s.arg(1), freeV);
+    final ProverTerm disjunction = (left.paths > right.paths)
+                                   ? new Struct(semicolon, right.term, left.term)
+                                   : new Struct(semicolon, left.term, right.term);
+    return new Normalized(disjunction, left.paths + right.paths);
+  }
+  return new Normalized(s, 1);
+}
+
+/** The body of <code>ex(X,Fml)</code> as the two <code>copy_term</code> calls of nnf.pl make it. */
+private ProverTerm skolemized(ProverTerm x, ProverTerm fml, ProverTerm freeV) {
+  final Var fml1 = new Var();
+  trail.unify(copy(pair(x, pair(fml, freeV))), pair(fml, pair(fml1, freeV)));
+  final Var fml2 = new Var();
+  trail.unify(copy(pair(x, pair(fml1, freeV))), pair(exAtom, pair(fml2, freeV)));
+  return fml2;
+}
+
+/** One rewrite of the if-then-else chain at the start of nnf.pl: a pattern and its replacement,
+ * built from the same fresh variables. */
+private static final class Rewrite {
+  interface Template { ProverTerm build(ProverTerm a, ProverTerm b, ProverTerm c); }
+  final Template pattern;
+  final Template replacement;
+  final Functor principal;
+  Rewrite(Template pattern, Template replacement) {
+    this.pattern = pattern;
+    this.replacement = replacement;
+    this.principal = ((Struct)pattern.build(new Var(), new Var(), new Var())).functor;
+  }
+}
+
+private static Struct f(Functor functor, ProverTerm... args) { return new Struct(functor, args); }
+
+/** The rewrites of nnf.pl, in the same order, since the first pattern that unifies is used. */
+private static final Rewrite[] rewrites =
+  { new Rewrite((a,b,c) -> neg(falseAtom)                 , (a,b,c) -> trueAtom)
+  , new Rewrite((a,b,c) -> neg(trueAtom)                  , (a,b,c) -> falseAtom)
+  , new Rewrite((a,b,c) -> neg(neg(a))                    , (a,b,c) -> a)
+  , new Rewrite((a,b,c) -> neg(f(notEqual, a, b))         , (a,b,c) -> eq(a, b))
+  , new Rewrite((a,b,c) -> f(notEqual, a, b)              , (a,b,c) -> neg(eq(a, b)))
+  , new Rewrite((a,b,c) -> neg(f(all, a, b))              , (a,b,c) -> f(exists, a, neg(b)))
+  , new Rewrite((a,b,c) -> neg(f(exists, a, b))           , (a,b,c) -> f(all, a, neg(b)))
+  , new Rewrite((a,b,c) -> f(allLastVar, a, b, c)         , (a,b,c) -> f(all, a, f(implies, b, c)))
+  , new Rewrite((a,b,c) -> neg(f(allLastVar, a, b, c))    , (a,b,c) -> f(exists, a, f(and, b, neg(c))))
+  , new Rewrite((a,b,c) -> f(existsRange, a, b, c)        , (a,b,c) -> f(exists, a, f(and, b, c)))
+  , new Rewrite((a,b,c) -> neg(f(existsRange, a, b, c))   , (a,b,c) -> f(all, a, f(implies, b, neg(c))))
+  , new Rewrite((a,b,c) -> neg(f(or, a, b))               , (a,b,c) -> f(and, neg(a), neg(b)))
+  , new Rewrite((a,b,c) -> neg(f(or, a, neg(b)))          , (a,b,c) -> f(and, neg(a), b))
+  , new Rewrite((a,b,c) -> neg(f(or, neg(a), b))          , (a,b,c) -> f(and, a, neg(b)))
+  , new Rewrite((a,b,c) -> neg(f(or, neg(a), neg(b)))     , (a,b,c) -> f(and, a, b))
+  , new Rewrite((a,b,c) -> neg(f(and, a, b))              , (a,b,c) -> f(or, neg(a), neg(b)))
+  , new Rewrite((a,b,c) -> neg(f(and, a, neg(b)))         , (a,b,c) -> f(or, neg(a), b))
+  , new Rewrite((a,b,c) -> neg(f(and, neg(a), b))         , (a,b,c) -> f(or, a, neg(b)))
+  , new Rewrite((a,b,c) -> neg(f(and, neg(a), neg(b)))    , (a,b,c) -> f(or, a, b))
+  , new Rewrite((a,b,c) -> f(and, trueAtom, b)            , (a,b,c) -> b)
+  , new Rewrite((a,b,c) -> f(and, neg(falseAtom), b)      , (a,b,c) -> b)
+  , new Rewrite((a,b,c) -> f(and, a, trueAtom)            , (a,b,c) -> a)
+  , new Rewrite((a,b,c) -> f(and, a, neg(falseAtom))      , (a,b,c) -> a)
+  , new Rewrite((a,b,c) -> f(and, falseAtom, b)           , (a,b,c) -> falseAtom)
+  , new Rewrite((a,b,c) -> f(and, neg(trueAtom), b)       , (a,b,c) -> falseAtom)
+  , new Rewrite((a,b,c) -> f(and, a, falseAtom)           , (a,b,c) -> falseAtom)
+  , new Rewrite((a,b,c) -> f(and, a, neg(trueAtom))       , (a,b,c) -> falseAtom)
+  , new Rewrite((a,b,c) -> f(or, trueAtom, b)             , (a,b,c) -> trueAtom)
+  , new Rewrite((a,b,c) -> f(or, neg(falseAtom), b)       , (a,b,c) -> trueAtom)
+  , new Rewrite((a,b,c) -> f(or, a, trueAtom)             , (a,b,c) -> trueAtom)
+  , new Rewrite((a,b,c) -> f(or, a, neg(falseAtom))       , (a,b,c) -> trueAtom)
+  , new Rewrite((a,b,c) -> f(or, falseAtom, b)            , (a,b,c) -> b)
+  , new Rewrite((a,b,c) -> f(or, neg(trueAtom), b)        , (a,b,c) -> b)
+  , new Rewrite((a,b,c) -> f(or, a, falseAtom)            , (a,b,c) -> a)
+  , new Rewrite((a,b,c) -> f(or, a, neg(trueAtom))        , (a,b,c) -> a)
+  , new Rewrite((a,b,c) -> f(impliedBy, a, b)             , (a,b,c) -> f(or, a, neg(b)))
+  , new Rewrite((a,b,c) -> neg(f(impliedBy, a, b))        , (a,b,c) -> f(and, neg(a), b))
+  , new Rewrite((a,b,c) -> f(implies, a, b)               , (a,b,c) -> f(or, neg(a), b))
+  , new Rewrite((a,b,c) -> neg(f(implies, a, b))          , (a,b,c) -> f(and, a, neg(b)))
+  , new Rewrite((a,b,c) -> f(inequivalent, a, b)          , (a,b,c) -> neg(f(equivalent, a, b)))
+  , new Rewrite((a,b,c) -> neg(f(inequivalent, a, b))     , (a,b,c) -> f(equivalent, a, b))
+  , new Rewrite((a,b,c) -> f(equivalent, a, b)            , (a,b,c) -> f(and, f(implies, a, b),
+                                                                                f(implies, b, a)))
+  , new Rewrite((a,b,c) -> neg(f(equivalent, a, b))       , (a,b,c) -> f(or, neg(f(implies, a, b)),
+                                                                               neg(f(implies, b, a))))
+  };
+
+/** The rewrites for each principal functor, keeping their order. */
+private static final Map<Functor, List<Rewrite>> rewritesByFunctor = new IdentityHashMap<>();
+static {
+  for (Rewrite rewrite : rewrites)
+    rewritesByFunctor.computeIfAbsent(rewrite.principal, f -> new ArrayList<>()).add(rewrite);
+}
+
+/** The formula as rewritten by the first pattern that unifies with it, or null if none does. */
+private @Nullable ProverTerm rewrite(ProverTerm fml) {
+  final List<Rewrite> candidates = (fml instanceof Var)
+                                   ? Arrays.asList(rewrites)
+                                   : rewritesByFunctor.get(((Struct)fml).functor);
+  if (candidates == null)
+    return null;
+  for (Rewrite rewrite : candidates) {
+    final Var a = new Var(), b = new Var(), c = new Var();
+    if (trail.unify(fml, rewrite.pattern.build(a, b, c)))
+      return rewrite.replacement.build(a, b, c);
+  }
+  return null;
+}
+
+
+//=================================================================================================
+//  etleantap.pl
+//=================================================================================================
+
+/** <code>inconsistent(Fml, UnExp, Lits, FreeV, Guarded, DepthLeft)</code>: does every branch
+ * through the formula, the unexpanded formulas and the literals close? */
+private boolean inconsistent(ProverTerm formula, Seq<ProverTerm> unExp, Lits lits,
+                             Seq<ProverTerm> freeV, Seq<Guard> guarded, int depthLeft) {
+  if (isOverBudget())
+    return false;
+  final ProverTerm fml = formula.deref();
+  if (fml instanceof Var) { // a variable unifies with the first clause, -true
+    trail.bind((Var)fml, neg(trueAtom));
+    return true;
+  }
+  final Struct s = (Struct)fml;
+  final int mark = trail.mark();
+
+  if (s.is(negation) && trail.unify(s.arg(0), trueAtom))
+    return true;
+  if (s == falseAtom)
+    return true;
+  if (s.is(comma))
+    return ! reachedLimit
+           && inconsistent(s.arg(0), unExp.push(s.arg(1)), lits, freeV, guarded, depthLeft);
+  if (s.is(semicolon)) {
+    if (reachedLimit)
+      return false;
+    final Seq<Guard> oldGuarded = copyOf(guarded);
+    return inconsistent(s.arg(0), unExp, lits, freeV, guarded,    depthLeft)
+        && inconsistent(s.arg(1), unExp, lits, freeV, oldGuarded, depthLeft);
+  }
+  if (s.is(all))
+    return inconsistent( new Struct(allLastVar, s.arg(0), s.arg(1), emptyList)
+                       , unExp, lits, freeV, guarded, depthLeft);
+  if (s.is(allLastVar))
+    return ! reachedLimit && expandAll(s, unExp, lits, freeV, guarded, depthLeft);
+
+  final ProverTerm negated = s.is(negation) ? s.arg(0).deref() : s;
+  final boolean isNegated = negated != s;
+  final boolean isEquality = negated instanceof Struct && ((Struct)negated).is(equality);
+  if (isEquality) {
+    final Struct equation = (Struct)negated;
+    if (isNegated && trail.unify(equation.arg(0), equation.arg(1)))
+      return true;
+    final @Nullable Boolean result = equality(s, equation.arg(0), equation.arg(1), isNegated,
+                                              unExp, lits, freeV, guarded, depthLeft);
+    if (result != null)
+      return result;
+    trail.undo(mark);
+  } else if ( ! reachedLimit && ! (negated instanceof Struct && ((Struct)negated).is(allLastVar))) {
+    return literal(s, negated, isNegated, unExp, lits, freeV, guarded, depthLeft);
+  }
+
+  if ( ! reachedLimit && ! isEquality && ! s.is(allLastVar)) {
+    final ProverTerm complement = isNegated ? negated : neg(s);
+    if (complement(complement, lits))
+      return true;
+    trail.undo(mark);
+  }
+
+  if (unExp.isEmpty())
+    return false;
+  int newDepthLeft = depthLeft;
+  if (reachedLimit) {
+    if (continuationsLeft <= 0)
+      return false;
+    continuationsLeft--;
+    newDepthLeft = depthLimit;
+    reachedLimit = false; // but with_limit is kept
+  }
+  return inconsistent(unExp.head(), unExp.tail(), pushLit(lits, s), freeV, guarded, newDepthLeft);
+}
+
+/** <code>take_step</code>: take a step of the budget, unless the steps or the time have run out.
+ * Like etleantap.pl, a proof that is over its budget is treated as having reached a limit. */
+private boolean isOverBudget() {
+  if ( ! isOverBudget && (stepsLeft-- == 0 || (hasDeadline && System.nanoTime() - deadline > 0))) {
+    isOverBudget = true;
+    withLimit = true;
+  }
+  return isOverBudget;
+}
+
+/** <code>member(Complement, Lits)</code>, keeping the bindings of the first match */
+private boolean complement(ProverTerm complement, Lits lits) {
+  final int key = keyOf(complement, false);
+  for (@Nullable Lits n = lits.first(key); n != null; n = n.following(key, lits))
+    if (trail.unify(complement, n.lit()))
+      return true;
+  return false;
+}
+
+/** The clause for <code>all(X,Fml,LastVar)</code>. When the last copy of the formula has not been
+ * used, the proof moves on to the next formula that is not such an unused <code>all</code>;
+ * otherwise it expands another copy with a fresh variable. */
+private boolean expandAll(Struct all3, Seq<ProverTerm> unExp, Lits lits,
+                          Seq<ProverTerm> freeV, Seq<Guard> guarded, int depthLeft) {
+  if (all3.arg(2).deref() instanceof Var) {
+    Seq<ProverTerm> unused = Seq.<ProverTerm>empty().push(all3);
+    for (Seq<ProverTerm> rest = unExp; ! rest.isEmpty(); rest = rest.tail()) {
+      final ProverTerm next = rest.head().deref();
+      if (next instanceof Struct && ((Struct)next).is(allLastVar)
+          && ((Struct)next).arg(2).deref() instanceof Var)
+        unused = unused.push(next);
+      else
+        return inconsistent(next, rest.tail().append(unused), lits, freeV, guarded, depthLeft);
+    }
+    return false;
+  }
+
+  if (freeV.size() >= allLimit) {
+    reachedLimit = true;
+    withLimit = true;
+    return false;
+  }
+  final Map<Var, ProverTerm> renaming = new IdentityHashMap<>();
+  for (ProverTerm variable : freeV)
+    keepVariablesOf(variable, renaming);
+  final ProverTerm x1 = copy(all3.arg(0), renaming);
+  final ProverTerm fml1 = copy(all3.arg(1), renaming);
+  final Seq<ProverTerm> unExp1
+      = unExp.append(Seq.<ProverTerm>empty().push(new Struct(allLastVar, all3.arg(0), all3.arg(1), x1)));
+  return inconsistent(fml1, unExp1, lits, freeV.push(x1), guarded, depthLeft);
+}
+
+/** The clauses for a literal that is neither an equation nor a disequation: close the branch
+ * against a complementary literal whose arguments can be proven equal, or else add the literal to
+ * the branch and go on with the next unexpanded formula.
+ * @param lit       the literal, positive or negative
+ * @param atom      the literal without its negation */
+private boolean literal(Struct lit, ProverTerm atom, boolean isNegated, Seq<ProverTerm> unExp,
+                       Lits lits, Seq<ProverTerm> freeV, Seq<Guard> guarded, int depthLeft) {
+  final Generalized general = generalized(atom);
+  final ProverTerm complement = isNegated ? general.term : neg(general.term);
+  final Lits newLits = pushLit(lits, lit);
+  final int key = keyOf(complement, false);
+  final int mark = trail.mark();
+  for (@Nullable Lits n = lits.first(key); n != null; n = n.following(key, lits)) {
+    if (trail.unify(complement, n.lit())) {
+      final @Nullable ProverTerm disjunct = toFilledDisjunct(general.args, general.vars);
+      if (disjunct != null && inconsistent(disjunct, unExp, newLits, freeV, guarded, depthLeft))
+        return true;
+      trail.undo(mark);
+    }
+  }
+  return ! unExp.isEmpty()
+         && inconsistent(unExp.head(), unExp.tail(), newLits, freeV, guarded, depthLeft);
+}
+
+/**
+ * The clauses for <code>(A=B)</code> and <code>-(A=B)</code>. The branch closes against a literal of
+ * the opposite sign whose arguments can be proven equal, or, for a disequation, when A and B have
+ * the same functor and their arguments can be proven equal. Otherwise the guarded expressions of
+ * the transitivity of equality are matched against the literal, adding any that it enables to
+ * the unexpanded formulas.
+ * @return the result, or null when the clause fails before its cut, so that the later clauses of
+ *         <code>inconsistent/6</code> are tried
+ */
+private @Nullable Boolean equality(Struct lit, ProverTerm a, ProverTerm b, boolean isNegated,
+                                   Seq<ProverTerm> unExp, Lits lits, Seq<ProverTerm> freeV,
+                                   Seq<Guard> guarded, int depthLeft) {
+  if (reachedLimit || isAnyLit(lits, signed(isNegated, eq(a, b)), signed(isNegated, eq(b, a))))
+    return null;
+  final Generalized ga = generalized(a);
+  final Generalized gb = generalized(b);
+  final List<ProverTerm> args = concatenated(ga.args, gb.args);
+  final List<ProverTerm> vars = concatenated(ga.vars, gb.vars);
+  final ProverTerm newLit = eq(ga.term, gb.term);
+  final ProverTerm symmetric = eq(gb.term, ga.term);
+  final Lits newLits = pushLit(lits, lit);
+  final int mark = trail.mark();
+
+  // negTest/3 or posTest/3: each literal of the opposite sign, in either direction
+  final ProverTerm opposite = signed( ! isNegated, newLit);
+  final ProverTerm oppositeSymmetric = signed( ! isNegated, symmetric);
+  final List<ProverTerm> tests = List.of(opposite, oppositeSymmetric);
+  final int key = keyOf(opposite, false);
+  for (@Nullable Lits n = lits.first(key); n != null; n = n.following(key, lits))
+    for (ProverTerm test : tests) {
+      if (trail.unify(test, n.lit())) {
+        if (args.isEmpty())
+          return true;
+        final @Nullable ProverTerm disjunct = toFilledDisjunct(args, vars);
+        if (disjunct != null && inconsistent(disjunct, unExp, newLits, freeV, guarded, depthLeft))
+          return true;
+        trail.undo(mark);
+      }
+    }
+
+  if (isNegated && trail.unify(ga.functor, gb.functor)) {
+    final @Nullable ProverTerm disjunct = toFilledDisjunct(ga.args, gb.args);
+    if (disjunct != null && inconsistent(disjunct, unExp, newLits, freeV, guarded, depthLeft))
+      return true;
+    trail.undo(mark);
+  }
+
+  if (depthLeft <= 0) {
+    reachedLimit = true;
+    withLimit = true;
+    return null;
+  }
+  final Matcher original = new Matcher( signed(isNegated, newLit), signed(isNegated, symmetric)
+                                      , args, vars);
+  final Added added = addList(original.copy(new IdentityHashMap<>()), original, guarded,
+                              unExp, lits, freeV, depthLeft);
+  final Seq<Guard> newGuarded = guardedMatches( lit, signed(isNegated, eq(b, a))
+                                              , added.guarded);
+  final int newDepthLeft = (added.unExp.size() != unExp.size()) ? depthLeft - 1 : depthLeft;
+  // the cut: from here on, failure is final
+  return ! added.unExp.isEmpty()
+         && inconsistent(added.unExp.head(), added.unExp.tail(), newLits, freeV,
+                         newGuarded, newDepthLeft);
+}
+
+private static ProverTerm signed(boolean isNegated, ProverTerm term) {
+  return isNegated ? neg(term) : term;
+}
+
+/** <code>gnzArgs/5</code>: a literal with each argument that is not a variable replaced by a fresh
+ * variable, with its functor, its arguments and the variables that replaced them. */
+private static final class Generalized {
+  final ProverTerm term;
+  final ProverTerm functor;
+  final List<ProverTerm> args;
+  final List<ProverTerm> vars;
+  Generalized(ProverTerm term, ProverTerm functor, List<ProverTerm> args, List<ProverTerm> vars) {
+    this.term = term;
+    this.functor = functor;
+    this.args = args;
+    this.vars = vars;
+  }
+}
+
+private static Generalized generalized(ProverTerm literal) {
+  final ProverTerm t = literal.deref();
+  if (t instanceof Var || ((Struct)t).isAtom())
+    return new Generalized(t, t, List.of(), List.of());
+  final Struct s = (Struct)t;
+  final List<ProverTerm> args = new ArrayList<>(s.functor.arity);
+  final ProverTerm[] vars = new ProverTerm[s.functor.arity];
+  for (int i = 0; i < vars.length; i++) {
+    final ProverTerm arg = s.arg(i).deref();
+    args.add(arg);
+    vars[i] = (arg instanceof Var) ? arg : new Var();
+  }
+  return new Generalized(new Struct(s.functor, vars), atom(s.functor.name), args,
+                         notNull(Arrays.asList(vars)));
+}
+
+/** <code>toFilledDisjunct/3</code>: the disjunction of <code>-(A=V)</code> for each argument that
+ * does not unify with its variable, or <code>false</code> when all of them unify. Those that do are
+ * left unified.
+ * @return the disjunction, or null when there are fewer variables than arguments, or when there
+ *         are no arguments but there are variables */
+private @Nullable ProverTerm toFilledDisjunct(List<ProverTerm> args, List<ProverTerm> vars) {
+  if (args.isEmpty())
+    return vars.isEmpty() ? falseAtom : null;
+  ProverTerm soFar = falseAtom;
+  for (int i = 0; i < args.size(); i++) {
+    if (i >= vars.size())
+      return null;
+    final ProverTerm arg = notNull(args.get(i));
+    final ProverTerm var = notNull(vars.get(i));
+    if ( ! trail.unify(arg, var)) {
+      final ProverTerm disequation = neg(eq(arg, var));
+      soFar = (soFar == falseAtom) ? disequation : new Struct(semicolon, disequation, soFar);
+    }
+  }
+  return soFar;
+}
+
+
+//-------------------------------------------------------------------------------------------------
+//  Guarded expressions for the transitivity of equality
+//-------------------------------------------------------------------------------------------------
+
+/** An element of the Guarded list: <code>[Working, Original]</code>, where the working copy of a
+ * <code>guarded(Guard, X)</code> may be unified with a literal, and the original is kept so that a
+ * fresh working copy can replace one that has been used. */
+private static final class Guard {
+  final ProverTerm working;
+  final ProverTerm original;
+  Guard(ProverTerm working, ProverTerm original) {
+    this.working = working;
+    this.original = original;
+  }
+  ProverTerm guard()      { return ((Struct)working.deref()).arg(0); }
+  ProverTerm expression() { return ((Struct)working.deref()).arg(1); }
+}
+
+/** <code>copy_term(Guarded, OldGuarded)</code> */
+private static Seq<Guard> copyOf(Seq<Guard> guarded) {
+  final Map<Var, ProverTerm> renaming = new IdentityHashMap<>();
+  final List<Guard> copies = new ArrayList<>(guarded.size());
+  for (Guard g : guarded)
+    copies.add(new Guard(copy(g.working, renaming), copy(g.original, renaming)));
+  return Seq.of(copies);
+}
+
+/** The tuple <code>(Lit, SymmetricLit, Args, VarArgs)</code> that addList/10 matches against the
+ * guards. */
+private static final class Matcher {
+  final ProverTerm lit;
+  final ProverTerm symmetric;
+  final List<ProverTerm> args;
+  final List<ProverTerm> vars;
+  Matcher(ProverTerm lit, ProverTerm symmetric, List<ProverTerm> args, List<ProverTerm> vars) {
+    this.lit = lit;
+    this.symmetric = symmetric;
+    this.args = args;
+    this.vars = vars;
+  }
+  Matcher copy(Map<Var, ProverTerm> renaming) {
+    final List<ProverTerm> copiedArgs = new ArrayList<>(args.size());
+    for (ProverTerm arg : args)
+      copiedArgs.add(ProverTerm.copy(arg, renaming));
+    final List<ProverTerm> copiedVars = new ArrayList<>(vars.size());
+    for (ProverTerm var : vars)
+      copiedVars.add(ProverTerm.copy(var, renaming));
+    return new Matcher( ProverTerm.copy(lit, renaming), ProverTerm.copy(symmetric, renaming)
+                      , copiedArgs, copiedVars);
+  }
+}
+
+/** The Guarded list and the unexpanded formulas after addList/10 */
+private static final class Added {
+  final Seq<Guard> guarded;
+  final Seq<ProverTerm> unExp;
+  Added(Seq<Guard> guarded, Seq<ProverTerm> unExp) {
+    this.guarded = guarded;
+    this.unExp = unExp;
+  }
+}
+
+/** <code>addList/10</code>: match each guard against the literal. A guard that matches, with its
+ * arguments proven equal, releases its expression into the unexpanded formulas and is replaced by
+ * a fresh copy. The first solution of addList/10 is the only one ever used, and each clause after
+ * the head always succeeds, so the guards are matched one by one without backtracking. */
+private Added addList(Matcher matcher, Matcher original, Seq<Guard> toCheck, Seq<ProverTerm> unExp,
+                      Lits lits, Seq<ProverTerm> freeV, int depthLeft) {
+  Seq<Guard> checked = Seq.empty();
+  for (Seq<Guard> rest = toCheck; ! rest.isEmpty(); rest = rest.tail()) {
+    final Guard g = rest.head();
+    final int mark = trail.mark();
+
+    if (matcher.args.isEmpty() && matcher.vars.isEmpty() && trail.unify(matcher.lit, g.guard())) {
+      checked = checked.push(new Guard(copy(g.original), g.original));
+      unExp = transferGuarded(g.expression(), unExp, lits);
+      continue;
+    }
+
+    boolean isMatched = false;
+    for (ProverTerm side : List.of(matcher.lit, matcher.symmetric)) {
+      if (trail.unify(g.guard(), side)) {
+        final @Nullable ProverTerm disjunct = toFilledDisjunct(matcher.args, matcher.vars);
+        if (disjunct != null && inconsistent(disjunct, unExp, lits, freeV,
+                                             rest.tail().append(checked), depthLeft)) {
+          isMatched = true;
+          break;
+        }
+      }
+      trail.undo(mark);
+    }
+    if (isMatched) {
+      final Map<Var, ProverTerm> renaming = new IdentityHashMap<>();
+      checked = checked.push(new Guard(copy(g.original, renaming), g.original));
+      unExp = transferGuarded(g.expression(), unExp, lits);
+      matcher = original.copy(renaming);
+    } else {
+      checked = checked.push(g);
+    }
+  }
+  return new Added(checked, unExp);
+}
+
+/** <code>transferGuarded/4</code>: add the released expression to the end of the unexpanded
+ * formulas unless it, or the same equation reversed, is already there or on the branch. */
+private Seq<ProverTerm> transferGuarded(ProverTerm x, Seq<ProverTerm> unExp, Lits lits) {
+  if (isMember(x, unExp) || isAnyLit(lits, x, x))
+    return unExp;
+  final ProverTerm t = x.deref();
+  final ProverTerm equation = (t instanceof Struct && ((Struct)t).is(negation))
+                              ? ((Struct)t).arg(0).deref() : t;
+  if (equation instanceof Struct && ((Struct)equation).is(equality)) {
+    final Struct e = (Struct)equation;
+    final ProverTerm reversed = signed(equation != t, eq(e.arg(1), e.arg(0)));
+    if (isMember(reversed, unExp) || isAnyLit(lits, reversed, reversed))
+      return unExp;
+  }
+  return unExp.append(Seq.<ProverTerm>empty().push(x));
+}
+
+/** <code>getGuardedMatches/4</code>: add to the Guarded list a working copy and an original of
+ * each guarded expression whose guard unifies with the literal, then of each whose guard unifies
+ * with the symmetric literal. */
+private Seq<Guard> guardedMatches(ProverTerm lit, ProverTerm symmetric, Seq<Guard> guarded) {
+  for (ProverTerm side : List.of(lit, symmetric))
+    for (ProverTerm expression : ruleMatches(side))
+      guarded = guarded.push(new Guard(copy(expression), expression));
+  return guarded;
+}
+
+/** <code>findall(E, guarded(Lit,E), Matches)</code> over the three guarded facts of
+ * etleantap.pl, which state the transitivity of equality. */
+private List<ProverTerm> ruleMatches(ProverTerm lit) {
+  final Var x1 = new Var(), y1 = new Var(), z1 = new Var();
+  final Var x2 = new Var(), y2 = new Var(), z2 = new Var();
+  final Var x3 = new Var(), y3 = new Var(), z3 = new Var();
+  final ProverTerm[][] facts
+      = { {     eq(x1, y1)  , f(guarded,     eq(y1, z1) ,     eq(x1, z1))  }
+        , {     eq(x2, y2)  , f(guarded, neg(eq(x2, z2)), neg(eq(y2, z2))) }
+        , { neg(eq(x3, z3)) , f(guarded,     eq(x3, y3) , neg(eq(y3, z3))) }
+        };
+  final List<ProverTerm> matches = new ArrayList<>();
+  for (ProverTerm[] fact : facts) {
+    final int mark = trail.mark();
+    if (trail.unify(notNull(fact[0]), lit))
+      matches.add(copy(notNull(fact[1])));
+    trail.undo(mark);
+  }
+  return matches;
+}
+
+
+//-------------------------------------------------------------------------------------------------
+//  Lists
+//-------------------------------------------------------------------------------------------------
+
+/** Is the term unifiable with an element of the list? (<code>\+ \+ member(X, List)</code>) */
+private boolean isMember(ProverTerm x, Seq<ProverTerm> list) {
+  for (ProverTerm element : list)
+    if (trail.unifiable(x, element))
+      return true;
+  return false;
+}
+
+/** Is either term unifiable with a literal on the branch? Both must have the same key. */
+private boolean isAnyLit(Lits lits, ProverTerm test, ProverTerm otherTest) {
+  final int key = keyOf(test, false);
+  for (@Nullable Lits n = lits.first(key); n != null; n = n.following(key, lits))
+    if (trail.unifiable(test, n.lit()) || trail.unifiable(otherTest, n.lit()))
+      return true;
+  return false;
+}
+
+private static List<ProverTerm> concatenated(List<ProverTerm> first, List<ProverTerm> second) {
+  if (second.isEmpty())
+    return first;
+  final List<ProverTerm> all = new ArrayList<>(first);
+  all.addAll(second);
+  return all;
+}
+
+/** An immutable list that shares its tail, as a Prolog list does. */
+private static final class Seq<T> implements Iterable<T> {
+  private static final Seq<?> emptySeq = new Seq<>(null, null);
+  private final @Nullable T head;
+  private final @Nullable Seq<T> tail;
+  private final int size;
+
+  private Seq(@Nullable T head, @Nullable Seq<T> tail) {
+    this.head = head;
+    this.tail = tail;
+    this.size = (tail == null) ? 0 : tail.size + 1;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> Seq<T> empty() { return (Seq<T>)emptySeq; }
+
+  static <T> Seq<T> of(List<T> elements) {
+    Seq<T> seq = empty();
+    for (int i = elements.size() - 1; i >= 0; i--)
+      seq = seq.push(notNull(elements.get(i)));
+    return seq;
+  }
+
+  boolean isEmpty() { return tail == null; }
+  int size()        { return size; }
+  T head()          { return notNull(head); }
+  Seq<T> tail()     { return notNull(tail); }
+
+  Seq<T> push(T element) { return new Seq<>(element, this); }
+
+  /** This list followed by the other, sharing the other list. */
+  Seq<T> append(Seq<T> other) {
+    if (other.isEmpty())
+      return this;
+    final List<T> elements = new ArrayList<>(size);
+    for (T element : this)
+      elements.add(element);
+    Seq<T> result = other;
+    for (int i = elements.size() - 1; i >= 0; i--)
+      result = result.push(notNull(elements.get(i)));
+    return result;
+  }
+
+  @Override
+  public java.util.Iterator<T> iterator() {
+    return new java.util.Iterator<T>() {
+      private Seq<T> rest = Seq.this;
+      @Override public boolean hasNext() { return ! rest.isEmpty(); }
+      @Override public T next() {
+        final T element = rest.head();
+        rest = rest.tail();
+        return element;
+      }
+    };
+  }
+}
+
+
+//-------------------------------------------------------------------------------------------------
+//  The literals of a branch
+//-------------------------------------------------------------------------------------------------
+
+/** The key of a literal whose predicate is not known because it is a variable */
+private static final int anyKey = -1;
+/** The key of a literal whose predicate has never been on any branch of this proof */
+private static final int absentKey = -2;
+
+/** The key that indexes a literal in {@link Lits}: the number of its predicate, doubled, plus one
+ * for a negative literal.
+ * @param isAdding is the literal being added to a branch, so that its predicate needs a number? */
+private int keyOf(ProverTerm literal, boolean isAdding) {
+  ProverTerm t = literal.deref();
+  final boolean isNegative = t instanceof Struct && ((Struct)t).is(negation);
+  if (isNegative)
+    t = ((Struct)t).arg(0).deref();
+  if (t instanceof Var)
+    return anyKey;
+  final Functor predicate = ((Struct)t).functor;
+  @Nullable Integer number = predicateNumbers.get(predicate);
+  if (number == null) {
+    if ( ! isAdding)
+      return absentKey;
+    number = predicateNumbers.size();
+    predicateNumbers.put(predicate, number);
+  }
+  return 2 * number + (isNegative ? 1 : 0);
+}
+
+private Lits pushLit(Lits lits, ProverTerm lit) {
+  return lits.push(lit, keyOf(lit, true));
+}
+
+/**
+ * The literals on a branch of the tableau, most recent first. Like the Prolog list that it
+ * replaces, a branch shares all of its older literals with the branch it was extended from.
+ * <p>
+ * Each node also links to the next older literal with the same key, and holds the most recent
+ * literal for every key, so a search for literals that could unify with a pattern follows only
+ * the literals of the pattern's predicate and sign, in the same order as a scan of the whole
+ * list. A literal whose predicate is a variable could unify with anything, so once the branch
+ * holds one, a search falls back to a scan of the whole list.
+ */
+private static final class Lits {
+  static final Lits empty = new Lits();
+
+  private final @Nullable ProverTerm lit;
+  private final @Nullable Lits older;
+  private final @Nullable Lits olderWithSameKey;
+  private final @Nullable Lits[] latestByKey;
+  private final boolean hasLiteralWithAnyKey;
+
+  private Lits() {
+    lit = null;
+    older = null;
+    olderWithSameKey = null;
+    latestByKey = new Lits[0];
+    hasLiteralWithAnyKey = false;
+  }
+
+  private Lits(ProverTerm lit, Lits older, int key) {
+    this.lit = lit;
+    this.older = older;
+    this.hasLiteralWithAnyKey = older.hasLiteralWithAnyKey || key == anyKey;
+    if (key == anyKey) {
+      this.olderWithSameKey = null;
+      this.latestByKey = older.latestByKey;
+    } else {
+      this.olderWithSameKey = (key < older.latestByKey.length) ? older.latestByKey[key] : null;
+      this.latestByKey = Arrays.copyOf(older.latestByKey, Math.max(key + 1,
+                                                                   older.latestByKey.length));
+      this.latestByKey[key] = this;
+    }
+  }
+
+  Lits push(ProverTerm literal, int key) { return new Lits(literal, this, key); }
+
+  ProverTerm lit() { return notNull(lit); }
+
+  private boolean isScanned(int key) { return hasLiteralWithAnyKey || key == anyKey; }
+
+  /** The most recent literal that might unify with a pattern with the key, or null. */
+  @Nullable Lits first(int key) {
+    if (isScanned(key))
+      return (older == null) ? null : this;
+    return (key >= 0 && key < latestByKey.length) ? latestByKey[key] : null;
+  }
+
+  /** The next older literal after this one, in the branch being searched, that might unify with a
+   * pattern with the key, or null. */
+  @Nullable Lits following(int key, Lits searched) {
+    if (searched.isScanned(key)) {
+      final Lits next = notNull(older);
+      return (next.older == null) ? null : next;
+    }
+    return olderWithSameKey;
+  }
+}
+
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class TableauProver
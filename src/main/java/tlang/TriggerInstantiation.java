@@ -0,0 +1,393 @@
+package tlang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import alice.tuprolog.Struct;
+import alice.tuprolog.Term;
+import alice.tuprolog.Var;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Instances of the universal formulas of a proof, made only for the ground terms that the proof is
+ * about. The tableau of etleantap.pl copies a universal formula whenever its last copy has been
+ * used, whether or not the copy can close a branch, until it reaches the limit on free variables.
+ * This instead instantiates a formula such as <code>all(X, p(X) ==&gt; q(f(X)))</code> only for a
+ * term <code>t</code> when <code>p(t)</code> or <code>q(f(t))</code> already occurs in the proof,
+ * which is the E-matching of SMT solvers without the equalities.
+ * <p>
+ * Each universal conjunct gets <em>triggers</em>: the smallest set of its applications of
+ * uninterpreted functions or predicates that mention all of its bound variables. The ground terms
+ * of the proof are indexed by their functor, and each match of a trigger with indexed terms gives
+ * one instance. The terms of the instances are indexed in turn, for a few rounds. Existential
+ * conjuncts are replaced by an instance for a new constant, as in Skolemization.
+ * <p>
+ * The result is ground, so the {@link SatSolver} decides it. The instances follow from the formula,
+ * so when they are inconsistent with its ground conjuncts, the formula is inconsistent. When they
+ * are not, the formula still goes to the prover, which may need instances that no trigger matched.
+ */
+final class TriggerInstantiation {
+
+/** The most rounds of matching, each of which may match the terms of the last round's instances. */
+static final int roundLimit = 3;
+/** The most instances that are made for one proof. */
+static final int instanceLimit = 500;
+
+private static final String and = "/\\";
+private static final Set<String> connectives
+    = Set.of("/\\", "\\/", "-", "==>", "<==", "===", "=#=");
+/** The functors of the prover's built-in relations and arithmetic, which are never triggers since
+ * they would match nearly every term. */
+private static final Set<String> interpreted
+    = Set.of("=", "#=", "<", ">", "=<", ">=", "+", "-", "*", "/", "all", "ex", "true", "false");
+
+/** A universal formula, with its bound variables and its triggers. */
+private static final class Universal {
+  final List<Var> variables;
+  final Term body;
+  /** Each trigger is a list of patterns that together mention every bound variable. */
+  final List<List<Struct>> triggers;
+  final Set<String> instantiated = new HashSet<>();
+
+  Universal(List<Var> variables, Term body, List<List<Struct>> triggers) {
+    this.variables = variables;
+    this.body = body;
+    this.triggers = triggers;
+  }
+}
+
+private final List<Term> ground = new ArrayList<>();
+private final List<Universal> universals = new ArrayList<>();
+/** The ground applications of the proof by <code>name/arity</code>, in the order they were found. */
+private final Map<String, Set<Struct>> termIndex = new HashMap<>();
+private final Set<String> indexedTerms = new HashSet<>();
+private int skolemCount = 0;
+private int instanceCount = 0;
+private boolean hasQuantifiers = false;
+
+private TriggerInstantiation() {}
+
+/**
+ * The ground conjuncts of the formula conjoined with instances of its quantified conjuncts, or
+ * null when the formula has no quantified conjunct or no instance could be made.
+ * @param formula the statement conjoined with the facts
+ */
+static @Nullable Term instances(Term formula) {
+  final TriggerInstantiation state = new TriggerInstantiation();
+  state.add(formula);
+  if ( ! state.hasQuantifiers || state.universals.isEmpty() && state.skolemCount == 0)
+    return null;
+  for (Term g : state.ground)
+    state.index(g);
+
+  final int groundCount = state.ground.size();
+  for (int round = 0; round < roundLimit; round++) {
+    final int before = state.ground.size();
+    for (Universal universal : state.universals)
+      state.instantiate(universal);
+    if (state.ground.size() == before)
+      break;
+    for (Term instance : state.ground.subList(before, state.ground.size()))
+      state.index(instance);
+  }
+  if (state.ground.isEmpty() || state.ground.size() == groundCount && state.skolemCount == 0)
+    return null;
+
+  Term conjunction = state.ground.get(state.ground.size() - 1);
+  for (int i = state.ground.size() - 2; i >= 0; i--)
+    conjunction = new Struct(and, state.ground.get(i), conjunction);
+  return conjunction;
+}
+
+/** Sort a conjunct of the formula into the ground conjuncts or the universal formulas, Skolemizing
+ * it first if it is existential. A conjunct with a quantifier nested under a connective is left to
+ * the prover. */
+private void add(Term conjunct) {
+  final Term c = notNull(conjunct.getTerm());
+  if (c.isGround()) {
+    if ( ! isTrue(c))
+      ground.add(c);
+    return;
+  }
+  if ( ! (c instanceof Struct))
+    return;
+  final Struct s = (Struct)c;
+  if (is(s, and, 2)) {
+    add(notNull(s.getArg(0)));
+    add(notNull(s.getArg(1)));
+    return;
+  }
+  if (is(s, "-", 1) && s.getArg(0).getTerm() instanceof Struct) {
+    final Struct negated = (Struct)notNull(s.getArg(0).getTerm());
+    if (is(negated, "-", 1)) {
+      add(notNull(negated.getArg(0)));
+      return;
+    }
+    if (is(negated, "\\/", 2)) {
+      add(new Struct("-", negated.getArg(0)));
+      add(new Struct("-", negated.getArg(1)));
+      return;
+    }
+    if (is(negated, "==>", 2)) {
+      add(notNull(negated.getArg(0)));
+      add(new Struct("-", negated.getArg(1)));
+      return;
+    }
+  }
+  final @Nullable Term existential = skolemized(s);
+  if (existential != null) {
+    hasQuantifiers = true;
+    add(existential);
+    return;
+  }
+  final List<Var> variables = new ArrayList<>();
+  final @Nullable Term body = universalBody(s, variables);
+  if (body == null)
+    return;
+  hasQuantifiers = true;
+  if (hasQuantifier(body))
+    return;
+  final List<List<Struct>> triggers = triggers(body, variables);
+  if ( ! triggers.isEmpty())
+    universals.add(new Universal(variables, body, triggers));
+}
+
+/** The instance of an existential formula, <code>ex(X,F)</code> or <code>-all(X,F)</code>, for a
+ * new constant, or null if the formula is not existential. */
+private @Nullable Term skolemized(Struct s) {
+  final boolean isNegated = is(s, "-", 1) && s.getArg(0).getTerm() instanceof Struct;
+  final Struct q = isNegated ? (Struct)notNull(s.getArg(0).getTerm()) : s;
+  final boolean isAll = is(q, "all", 2) || is(q, "all", 3);
+  final boolean isEx  = is(q, "ex", 2)  || is(q, "ex", 3);
+  if ( ! (isNegated ? isAll : isEx) || ! (q.getArg(0).getTerm() instanceof Var))
+    return null;
+  final Term body = (q.getArity() == 2) ? notNull(q.getArg(1))
+                  : isAll ? new Struct("==>", q.getArg(1), q.getArg(2))
+                  : new Struct(and, q.getArg(1), q.getArg(2));
+  final Map<Var, Term> binding = new HashMap<>();
+  binding.put((Var)notNull(q.getArg(0).getTerm()), new Struct("$sk"+ (++skolemCount)));
+  final Term instance = substituted(body, binding);
+  return isNegated ? new Struct("-", instance) : instance;
+}
+
+/** The body of a universal formula, <code>all(X,F)</code> or <code>-ex(X,F)</code> or their
+ * guarded forms, collecting the variables of any directly nested universal formulas, or null if
+ * the formula is not universal. */
+private static @Nullable Term universalBody(Struct s, List<Var> variables) {
+  final boolean isNegated = is(s, "-", 1) && s.getArg(0).getTerm() instanceof Struct;
+  final Struct q = isNegated ? (Struct)notNull(s.getArg(0).getTerm()) : s;
+  final boolean isAll = is(q, "all", 2) || is(q, "all", 3);
+  final boolean isEx  = is(q, "ex", 2)  || is(q, "ex", 3);
+  if ( ! (isNegated ? isEx : isAll) || ! (q.getArg(0).getTerm() instanceof Var))
+    return null;
+  variables.add((Var)notNull(q.getArg(0).getTerm()));
+  Term body;
+  if (q.getArity() == 2)
+    body = isNegated ? new Struct("-", q.getArg(1)) : notNull(q.getArg(1));
+  else
+    body = new Struct("==>", q.getArg(1), isNegated ? new Struct("-", q.getArg(2)) : q.getArg(2));
+  final Term inner = notNull(body.getTerm());
+  if (inner instanceof Struct) {
+    final List<Var> innerVariables = new ArrayList<>();
+    final @Nullable Term innerBody = universalBody((Struct)inner, innerVariables);
+    if (innerBody != null) {
+      variables.addAll(innerVariables);
+      return innerBody;
+    }
+  }
+  return body;
+}
+
+/** The triggers of a quantifier-free body: each application that mentions every variable, or
+ * else one set of applications that together mention them all. */
+private static List<List<Struct>> triggers(Term body, List<Var> variables) {
+  final Set<Struct> candidates = new LinkedHashSet<>();
+  collectCandidates(body, variables, candidates);
+  final List<List<Struct>> triggers = new ArrayList<>();
+  for (Struct candidate : candidates)
+    if (variablesOf(candidate, variables).size() == variables.size())
+      triggers.add(List.of(candidate));
+  if ( ! triggers.isEmpty())
+    return triggers;
+
+  final List<Struct> cover = new ArrayList<>(); // a greedy cover of the variables
+  final Set<Var> covered = new HashSet<>();
+  while (covered.size() < variables.size()) {
+    @Nullable Struct best = null;
+    int bestGain = 0;
+    for (Struct candidate : candidates) {
+      final Set<Var> gain = variablesOf(candidate, variables);
+      gain.removeAll(covered);
+      if (gain.size() > bestGain) {
+        best = candidate;
+        bestGain = gain.size();
+      }
+    }
+    if (best == null)
+      return List.of(); // a variable occurs only under interpreted functors
+    cover.add(best);
+    covered.addAll(variablesOf(best, variables));
+  }
+  triggers.add(cover);
+  return triggers;
+}
+
+/** Collect the applications of uninterpreted functors that mention a bound variable. */
+private static void collectCandidates(Term term, List<Var> variables, Set<Struct> candidates) {
+  final Term t = notNull(term.getTerm());
+  if ( ! (t instanceof Struct))
+    return;
+  final Struct s = (Struct)t;
+  final boolean isApplication = s.getArity() > 0 && ! connectives.contains(s.getName())
+                                && ! interpreted.contains(s.getName());
+  if (isApplication && ! variablesOf(s, variables).isEmpty())
+    candidates.add(s);
+  for (int i = 0; i < s.getArity(); i++)
+    collectCandidates(notNull(s.getArg(i)), variables, candidates);
+}
+
+/** The bound variables that occur in the term. */
+private static Set<Var> variablesOf(Term term, List<Var> variables) {
+  final Set<Var> found = new HashSet<>();
+  collectVariables(term, variables, found);
+  return found;
+}
+
+private static void collectVariables(Term term, List<Var> variables, Set<Var> found) {
+  final Term t = notNull(term.getTerm());
+  if (t instanceof Var) {
+    for (Var v : variables)
+      if (v == t)
+        found.add(v);
+  } else if (t instanceof Struct) {
+    final Struct s = (Struct)t;
+    for (int i = 0; i < s.getArity(); i++)
+      collectVariables(notNull(s.getArg(i)), variables, found);
+  }
+}
+
+/** Make an instance of the universal formula for each new match of one of its triggers. */
+private void instantiate(Universal universal) {
+  for (List<Struct> trigger : universal.triggers)
+    match(universal, trigger, 0, new LinkedHashMap<>());
+}
+
+private void match(Universal universal, List<Struct> trigger, int next, Map<Var, Term> binding) {
+  if (instanceCount >= instanceLimit)
+    return;
+  if (next == trigger.size()) {
+    final StringBuilder key = new StringBuilder();
+    for (Var v : universal.variables)
+      key.append(notNull(binding.get(v))).append('\n');
+    if (universal.instantiated.add(notNull(key.toString()))) {
+      instanceCount++;
+      ground.add(substituted(universal.body, binding));
+    }
+    return;
+  }
+  final Struct pattern = notNull(trigger.get(next));
+  final @Nullable Set<Struct> terms = termIndex.get(pattern.getName() +"/"+ pattern.getArity());
+  if (terms == null)
+    return;
+  for (Struct candidate : new ArrayList<>(terms)) {
+    final Map<Var, Term> extended = new LinkedHashMap<>(binding);
+    if (matches(pattern, candidate, extended))
+      match(universal, trigger, next + 1, extended);
+  }
+}
+
+/** Does the pattern match the ground term, extending the binding of its variables? */
+private static boolean matches(Term pattern, Term term, Map<Var, Term> binding) {
+  final Term p = notNull(pattern.getTerm());
+  final Term t = notNull(term.getTerm());
+  if (p instanceof Var) {
+    final @Nullable Term bound = binding.get(p);
+    if (bound == null) {
+      binding.put((Var)p, t);
+      return true;
+    }
+    return bound.isEqual(t);
+  }
+  if ( ! (p instanceof Struct) || ! (t instanceof Struct))
+    return p.isEqual(t);
+  final Struct ps = (Struct)p;
+  final Struct ts = (Struct)t;
+  if ( ! ps.getName().equals(ts.getName()) || ps.getArity() != ts.getArity())
+    return false;
+  for (int i = 0; i < ps.getArity(); i++)
+    if ( ! matches(notNull(ps.getArg(i)), notNull(ts.getArg(i)), binding))
+      return false;
+  return true;
+}
+
+/** Index the ground applications of uninterpreted functors in the term. */
+private void index(Term term) {
+  final Term t = notNull(term.getTerm());
+  if ( ! (t instanceof Struct))
+    return;
+  final Struct s = (Struct)t;
+  if (s.getArity() > 0 && ! connectives.contains(s.getName()) && ! interpreted.contains(s.getName())
+      && indexedTerms.add(notNull(s.toString())))
+    termIndex.computeIfAbsent(s.getName() +"/"+ s.getArity(), k -> new LinkedHashSet<>()).add(s);
+  for (int i = 0; i < s.getArity(); i++)
+    index(notNull(s.getArg(i)));
+}
+
+/** The term with its bound variables replaced. */
+private static Term substituted(Term term, Map<Var, Term> binding) {
+  final Term t = notNull(term.getTerm());
+  if (t instanceof Var) {
+    final @Nullable Term bound = binding.get(t);
+    return (bound != null) ? bound : t;
+  }
+  if ( ! (t instanceof Struct) || ((Struct)t).getArity() == 0)
+    return t;
+  final Struct s = (Struct)t;
+  final Term[] args = new Term[s.getArity()];
+  for (int i = 0; i < args.length; i++)
+    args[i] = substituted(notNull(s.getArg(i)), binding);
+  return new Struct(s.getName(), args);
+}
+
+private static boolean hasQuantifier(Term term) {
+  final Term t = notNull(term.getTerm());
+  if ( ! (t instanceof Struct))
+    return false;
+  final Struct s = (Struct)t;
+  if ((is(s, "all", 2) || is(s, "all", 3) || is(s, "ex", 2) || is(s, "ex", 3))
+      && s.getArg(0).getTerm() instanceof Var)
+    return true;
+  for (int i = 0; i < s.getArity(); i++)
+    if (hasQuantifier(notNull(s.getArg(i))))
+      return true;
+  return false;
+}
+
+private static boolean isTrue(Term t) {
+  return t instanceof Struct && is((Struct)t, "true", 0);
+}
+
+private static boolean is(Struct s, String name, int arity) {
+  return s.getArity() == arity && s.getName().equals(name);
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class TriggerInstantiation
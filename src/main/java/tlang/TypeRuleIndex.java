@@ -0,0 +1,147 @@
+package tlang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * What is known about every value of a type, indexed by the name of the type. When a value name is
+ * given a type (see {@link KnowledgeBase#assumeType(String, String)}), the rules of that type are
+ * looked up here and instantiated for the value name in one step, instead of the prover searching
+ * for rules that match a <code>type(Type, ValueName)</code> atom on every branch of every proof.
+ * <p>
+ * A rule is a template in the KnowledgeBase language in which the word {@value #placeholder} stands
+ * for the value name, e.g., <code>length(Value) &gt;= 0</code>. Each template is split around its
+ * placeholders when it is defined, so instantiating it is only a concatenation. The index is shared
+ * by every KnowledgeBase and every compile unit.
+ * <p>
+ * No type has built-in rules yet, since the KnowledgeBase language has no term that such a rule
+ * could speak of, e.g., for the length of an array or a <code>String</code>;
+ * {@link #define(String, String)} is where they will be added.
+ * <p>
+ * The index also gives the numeric type of each primitive type and its wrapper, for the arithmetic.
+ * The bounds of the integral types are not rules but are part of that type, since the arithmetic
+ * must also wrap a sum around at the width of the type: as a rule, code such as <code>int y = x +
+ * 1</code> with the largest <code>int</code> for <code>x</code> would make the facts inconsistent,
+ * and from inconsistent facts everything is proven. See {@link LinearArithmetic}
+ */
+final class TypeRuleIndex {
+
+/** The word in a template that stands for the value name. */
+static final String placeholder = "Value";
+
+/** A template instantiated by concatenation: the value name goes between each of the segments. */
+static final class TypeRule {
+  final String template;
+  private final String[] segments;
+
+  TypeRule(String template) {
+    this.template = template;
+    final List<String> parts = new ArrayList<>();
+    final Matcher m = atomOrWord.matcher(template);
+    int start = 0;
+    while (m.find()) {
+      if (m.group().equals(placeholder)) {
+        parts.add(template.substring(start, m.start()));
+        start = m.end();
+      }
+    }
+    parts.add(template.substring(start));
+    this.segments = parts.toArray(new @NonNull String[parts.size()]);
+    if (segments.length == 1)
+      throw new IllegalArgumentException("The type rule does not mention "+ placeholder +": "
+                                         + template);
+  }
+
+  /** The rule for the value name, in the KnowledgeBase language. */
+  String instantiate(String valueName) {
+    final StringBuilder fact = new StringBuilder(segments[0]);
+    for (int i = 1; i < segments.length; i++)
+      fact.append(valueName).append(segments[i]);
+    return notNull(fact.toString());
+  }
+
+  @Override
+  public String toString() { return template; }
+}
+
+/** The rules of one type. */
+static final class TypeRules {
+  final LinearArithmetic.NumericType numericType;
+  final List<TypeRule> rules;
+
+  private TypeRules(LinearArithmetic.NumericType numericType, List<TypeRule> rules) {
+    this.numericType = numericType;
+    this.rules = rules;
+  }
+}
+
+/** A quoted atom, which is never searched for the placeholder, or an unquoted word. */
+private static final Pattern atomOrWord = Pattern.compile("'[^']*'|[A-Za-z_][A-Za-z0-9_]*");
+
+/** The rules of a type that has none. */
+private static final TypeRules noRules = new TypeRules(LinearArithmetic.NumericType.rational, List.of());
+
+private static final Map<String, TypeRules> index = new ConcurrentHashMap<>();
+static {
+  numeric(LinearArithmetic.NumericType.int8,     "byte", "Byte");
+  numeric(LinearArithmetic.NumericType.int16,    "short", "Short");
+  numeric(LinearArithmetic.NumericType.char16,   "char", "Character");
+  numeric(LinearArithmetic.NumericType.int32,    "int", "Integer");
+  numeric(LinearArithmetic.NumericType.int64,    "long", "Long");
+  numeric(LinearArithmetic.NumericType.integer,  "BigInteger");
+  numeric(LinearArithmetic.NumericType.floating, "float", "double", "Float", "Double");
+}
+
+private static void numeric(LinearArithmetic.NumericType numericType, String... types) {
+  for (String type : types)
+    index.put(type, new TypeRules(numericType, new CopyOnWriteArrayList<>()));
+}
+
+private TypeRuleIndex() {}
+
+/** The rules of the type, which are empty when nothing is known about it. */
+static TypeRules rulesFor(String type) {
+  final @Nullable TypeRules rules = index.get(type);
+  return (rules != null) ? rules : noRules;
+}
+
+/** Add a rule that holds for every value of the type.
+ * @param type     the name of the type, as it is written in a declaration
+ * @param template the rule, with {@value #placeholder} standing for the value name */
+static void define(String type, String template) {
+  final TypeRule rule = new TypeRule(template);
+  index.computeIfAbsent(type, t -> new TypeRules( LinearArithmetic.NumericType.rational
+                                                 , new CopyOnWriteArrayList<>()))
+       .rules.add(rule);
+}
+
+/** Remove a rule that {@link #define(String, String)} added, e.g., at the end of a test.
+ * @param type     the name of the type, as it was given to define
+ * @param template the rule, as it was given to define */
+static void remove(String type, String template) {
+  final @Nullable TypeRules rules = index.get(type);
+  if (rules != null)
+    rules.rules.removeIf(rule -> rule.template.equals(template));
+}
+
+/**
+ * Juggle the type of an object from @Nullable to @NonNull for an object that is known to be
+ * non-null. The programmer must ensure that the object is guaranteed by other code to be non-null.
+ * Instead of using this method, it is much safer to check for <code>null</code> and throw an
+ * exception if you made a mistake. But if you are confident, using this is more elegant than a
+ * <code>@SuppressWarnings("null")</code> on a whole method. Since this method is private and
+ * does not affect runtime state, it compiles away to almost nothing.
+ */
+@SuppressWarnings({"null", "unused"})
+private static <T> @NonNull T notNull(@Nullable T item) {
+  return (@NonNull T)item;
+}
+
+} // end class TypeRuleIndex
@@ -1,7 +1,5 @@
 package tlang;
 
-import java.util.Map;
-import java.util.HashMap;
 import org.eclipse.jdt.annotation.*;
 
 import tlang.TLantlrParser.*;
@@ -21,22 +19,19 @@ import static tlang.TUtil.*;
 
 final class VariantMgr {
 
-  private static Map< T_variantContext, @NonNull VariantMgr> VariantMap = new HashMap<>();
-
-    /** Find (or create) and return the while statement manager for the context. */
-    private static VariantMgr findVariantMgr(T_variantContext ctx) {
-      @Nullable VariantMgr nullableMgr = VariantMap.get(ctx);
-      return isNull(nullableMgr) ? new VariantMgr(ctx) : nullableMgr;
+    /** Find (or create) and return the while statement manager for the context. The managers of
+     * a compile unit are kept in its {@link CompilationContext#variants}. */
+    private static VariantMgr findVariantMgr(T_variantContext ctx, CompilationContext context) {
+      return notNull(context.variants.computeIfAbsent(ctx, VariantMgr::new));
     }
 
 
   public VariantMgr(T_variantContext ctx) {
-    VariantMap.put(ctx, this);
   }
 
 
   public static void checkContext(T_variantContext v, ContextCheckVisitor contextChecker) {
-    VariantMgr mgr = findVariantMgr(v);
+    VariantMgr mgr = findVariantMgr(v, contextChecker.context);
     // ensure <,>,<=, or >=
 
 // save this for use in invariant processing
@@ -49,7 +44,7 @@ final class VariantMgr {
   }
 
   public static void validateVariant(T_variantContext ctx, TLantlrProofVisitor validator) {
-    var mgr = findVariantMgr(ctx);
+    var mgr = findVariantMgr(ctx, validator.context);
 //    VariantStatement.validate(verifier);
   }
 
@@ -35,7 +35,7 @@
 %%%%%%%%%% BEGIN OF TOPLEVEL PREDICATES
 
 % -------------------------------------------------------------------
-% runProver(+Formula, +TextOfFormula, -Result)
+% runProver(+Formula, -Result)
 %
 % Is the formula consistent or inconsistent? Or did the prover reach
 % its limits while trying to find an inconsistency?
@@ -46,18 +46,123 @@
 %   limit         - the formula was too complicated for the prover to solve
 
 runProver(Formula, Result)
-:- Limit = 8
+:- runProver(Formula, limits(8, 8, 8), Result)
+ .
+
+% -------------------------------------------------------------------
+% runProver(+Formula, +Limits, -Result)
+%
+% The same as runProver/2 with separate limits, given as
+% limits(AllLimit, DepthLimit, Continuations):
+%   AllLimit      - the most free variables that expanding ALL-expressions
+%                   may add to a branch
+%   DepthLimit    - the DepthLeft that a branch starts with, and that it is
+%                   given again when it continues after reaching a limit
+%   Continuations - the number of times that the proof may continue after
+%                   a branch reaches a limit
+
+runProver(Formula, limits(AllLimit, DepthLimit, Continuations), Result)
+:- retractall(limit(_))
 % , nl, print('***** FORMULA: '), print(Formula), nl
- , retractall(limit(_))
+ , retractall(depth_limit(_))
  , retractall(with_limit) % with_limit marks that a consistent result is
         % actually ambiguous because a depth limit was reached.
  , retractall(reached_limit) % reached_limit prevents further exploration but
         % is retracted at each backtrack to process another conjunct of an AND
- , nonvar(Limit),!, assert(maxLimit(Limit)) % the number of times that we backtrack from Limit
- , assert(limit(Limit)) % for now, var limit, depth, and maxLimit are the same
- , ( inconsistent(Formula,[],[],[],[],Limit) -> Result = inconsistent
-   ; with_limit                              -> Result = limit
-   ;                                            Result = consistent
+ , retractall(maxLimit(_)) % each proof starts with all of its continuations
+ , assert(limit(AllLimit))
+ , assert(depth_limit(DepthLimit))
+ , assert(maxLimit(Continuations)) % the number of times that we backtrack from a limit
+ , ( inconsistent(Formula,[],[],[],[],DepthLimit) -> Result = inconsistent
+   ; with_limit                                   -> Result = limit
+   ;                                                 Result = consistent
+   )
+ .
+
+% -------------------------------------------------------------------
+% runProver(+Formula, +Schedule, -Result, -Decided)
+%
+% Iterative deepening: runProver/3 with each of the limits in the
+% Schedule list in turn, until one of them gives a Result other than
+% limit. Decided is the limits that gave the Result. The Result is limit
+% only when the last limits of the Schedule reach a limit too, or when
+% the proof has used up its step budget (see set_step_budget/1).
+
+runProver(Formula, [Limits], Result, Limits)
+:- !, runProver(Formula, Limits, Result)
+ .
+runProver(Formula, [Limits|Schedule], Result, Decided)
+:- runProver(Formula, Limits, FirstResult)
+ , ( FirstResult == limit, \+ steps_left(0)
+      -> runProver(Formula, Schedule, Result, Decided)
+       ; Result = FirstResult, Decided = Limits
+   )
+ .
+
+% -------------------------------------------------------------------
+% runProverWithContext(+Formula, -Result)
+%
+% The same as runProver/2 for the formula conjoined with every fact held
+% in the context, the most recently asserted first. The facts are kept
+% from one call to the next already in negation normal form, so only the
+% new formula needs to be normalized for each call.
+%
+% The context is made of frames, one for each enclosing scope of the
+% KnowledgeBase, numbered from 0 for the outermost. The facts of a frame
+% are added by kb_assume/2 and all removed by kb_retract_frame/1.
+
+runProverWithContext(Formula, Result)
+:- findall(Fact, kb_fact(_, Fact), Facts) % findall gives each proof fresh variables
+ , conjoin_context(Facts, Formula, FormulaInContext)
+ , runProver(FormulaInContext, Result)
+ .
+
+% runProverWithContext(+Formula, +Schedule, -Result, -Decided) - the same
+% as runProver/4 for the formula conjoined with the facts of the context
+runProverWithContext(Formula, Schedule, Result, Decided)
+:- findall(Fact, kb_fact(_, Fact), Facts)
+ , conjoin_context(Facts, Formula, FormulaInContext)
+ , runProver(FormulaInContext, Schedule, Result, Decided)
+ .
+
+conjoin_context([], Formula, Formula).
+conjoin_context([Fact|Facts], Formula, (Formula, InContext))
+:- conjoin_context(Facts, Fact, InContext).
+
+% kb_assume(+Depth, +Fact) - add the fact to the frame at Depth
+kb_assume(Depth, Fact)
+:- nnf(Fact, NNF)
+ , asserta(kb_fact(Depth, NNF))
+ .
+
+% kb_retract_frame(+Depth) - remove every fact of the frame at Depth
+kb_retract_frame(Depth)
+:- retractall(kb_fact(Depth, _))
+ .
+
+% -------------------------------------------------------------------
+% set_step_budget(+Steps)
+%
+% Limit the next proof to Steps inference steps, that is, calls of
+% inconsistent/6, or lift the limit with Steps = none. A proof that uses
+% up its steps stops as if it had reached a depth limit, so its Result is
+% limit unless it has already found an inconsistency.
+
+set_step_budget(Steps)
+:- retractall(steps_left(_))
+ , assert(steps_left(Steps))
+ .
+
+steps_left(none).
+
+% take_step - use one step of the budget, failing when none are left
+take_step
+:- steps_left(Steps)
+ , ( Steps == none -> true
+   ; Steps > 0
+   , retract(steps_left(Steps))
+   , StepsLeft is Steps - 1
+   , assert(steps_left(StepsLeft))
    )
  .
 
@@ -109,8 +214,6 @@ runProver(Formula, Result)
 %%    constraints, given-statement, or program statements. An alternative is
 %%    to change the statement to a conjecture.
 %
-% TODO: allow separate values for ALL-variable limit, depth limit, and
-%       continuations limit
 % TODO: Try adding a rule to allow "a /\ a=b => b"
 %       Check for an equality in lits with either end that matches Lit. If
 %       found, run inconsistent(X,...) where X is the other end of the equality
@@ -119,12 +222,14 @@ runProver(Formula, Result)
 inconsistent(Fml,Limit, FmlTxt)
  :- mydebug(['Beginning ',Fml]), mydebug(['Text: ', FmlTxt])
   , retractall(limit(_))
+  , retractall(depth_limit(_))
   , retractall(with_limit) % with_limit marks that a consistent result is
          % actually ambiguous because a depth limit was reached.
   , retractall(reached_limit) % reached_limit prevents further exploration but
          % is retracted at each backtrack to process another conjunct of an AND
   , nonvar(Limit),!, assert(maxLimit(Limit)) % the number of times that we backtrack from Limit
-  , assert(limit(Limit)) % for now, var limit, depth, and maxLimit are the same
+  , assert(limit(Limit)) % here, var limit, depth, and maxLimit are the same
+  , assert(depth_limit(Limit))
   , ( inconsistent(Fml,[],[],[],[],Limit)
        -> mydebug(['Proven: ',FmlTxt])
         ; ( with_limit
@@ -287,6 +392,14 @@ iterate(Limit,Current,Goal,Result)
 %%             expressions that then match additional guarded expressions. Because equality uses the
 %%             Guarded-list processing, the number of chained equalities is limited here.
 
+% Each call takes a step of the proof's budget. Once the steps are used up,
+% every call fails at once, as though it had reached a depth limit.
+inconsistent(_,_,_,_,_,_)
+ :- \+ take_step, !
+  , ( with_limit -> true ; assert(with_limit) )
+  , fail
+  .
+
 % true is consistent, therefore (not true) is inconsistent
 inconsistent(-true ,_,_,_,_,_).
 
@@ -634,7 +747,7 @@ inconsistent(Lit,[Next|UnExp],Lits,FreeV,Guarded, DepthLeft)
         % we limit the number of conjuncts that reach the depth limit
      -> maxLimit(ContinuationLimit)
         , ( ContinuationLimit > 0
-           -> limit(Limit)
+           -> depth_limit(Limit)
               , mydebug(['At limit. DepthLeft:',DepthLeft
                         ,'ContinuationLimit:',ContinuationLimit,'for Lit: ',Lit
                         ])
@@ -0,0 +1,117 @@
+package tlang;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.After;
+import org.junit.Test;
+
+import tlang.BuildState.UnitRecord;
+
+public class BuildStateTest {
+
+private static final Path outputDir
+    = Paths.get(System.getProperty("java.io.tmpdir") + File.separator + "BuildStateTest");
+
+private static UnitRecord record(String sourceHash, String declaredType, String... references) {
+  return new UnitRecord( sourceHash, "java"+ sourceHash, List.of("p1", "p2")
+                       , declaredType, Set.of(references), "a/"+ declaredType +".class");
+}
+
+/** Write the class file of the type, as the Java compiler would. */
+private static void writeClassFile(String declaredType, String contents) throws IOException {
+  final Path classFile = outputDir.resolve("a/"+ declaredType +".class");
+  Files.createDirectories(classFile.getParent());
+  Files.writeString(classFile, contents);
+}
+
+@After
+public void deleteOutputDir() throws IOException {
+  TUtil.deleteDirectory(outputDir.toString());
+}
+
+@Test
+public void records_survive_into_a_new_run() throws Exception {
+  BuildState firstRun = new BuildState(outputDir, "config1");
+  firstRun.record("a/Abc.t", record("h1", "Abc", "Def", "String"));
+  writeClassFile("Abc", "class Abc");
+  firstRun.save();
+
+  BuildState laterRun = new BuildState(outputDir, "config1");
+  assertTrue(laterRun.isUpToDate("a/Abc.t", "h1"));
+  assertFalse(laterRun.isUpToDate("a/Abc.t", "h2"));
+  assertFalse(laterRun.isUpToDate("a/Def.t", "h1"));
+  UnitRecord recorded = laterRun.recordOf("a/Abc.t");
+  assertNotNull(recorded);
+  assertEquals(List.of("p1", "p2"), recorded.obligationHashes);
+  assertEquals(Set.of("Def", "String"), recorded.referencedTypes);
+  assertFalse(recorded.isInterchangeableWith(record("h2", "Abc")));
+  assertTrue(recorded.isInterchangeableWith(
+      new UnitRecord("h2", "javah1", List.of("p1", "p2"), "Abc", Set.of(), "a/Abc.class")));
+}
+
+@Test
+public void a_unit_whose_class_file_is_missing_or_changed_is_not_up_to_date() throws Exception {
+  BuildState firstRun = new BuildState(outputDir, "config1");
+  firstRun.record("a/Abc.t", record("h1", "Abc"));
+  firstRun.record("a/Def.t", record("h2", "Def"));
+  writeClassFile("Abc", "class Abc");
+  firstRun.save(); // Def has no class file, as when the Java compiler did not write it
+  assertNull(new BuildState(outputDir, "config1").recordOf("a/Def.t"));
+
+  writeClassFile("Abc", "class Abc, from another build");
+  assertFalse(new BuildState(outputDir, "config1").isUpToDate("a/Abc.t", "h1"));
+  Files.delete(outputDir.resolve("a/Abc.class"));
+  assertFalse(new BuildState(outputDir, "config1").isUpToDate("a/Abc.t", "h1"));
+}
+
+@Test
+public void finds_the_types_that_a_source_file_refers_to() throws Exception {
+  final Path source = outputDir.resolve("Abc.t");
+  Files.createDirectories(outputDir);
+  Files.writeString(source, "package a.bb;\n"
+                            + "class Abc {\n"
+                            + "  Def field;\n"
+                            + "  String name(int count) { return Ghi.NAME; }\n"
+                            + "}\n");
+  final CommonTokenStream tokens = TUtil.fileToTokens(source.toString(), new CollectingMsgListener());
+  assertEquals(Set.of("Def", "String", "Ghi", "NAME"), BuildState.referencedTypes(tokens, "Abc"));
+  assertEquals("a.bb", BuildState.packageName(tokens));
+}
+
+@Test
+public void finds_the_class_file_of_a_type() throws Exception {
+  assertEquals("a/bb/Abc.class", BuildState.classFileOf("a.bb", "Abc"));
+  assertEquals("Abc.class", BuildState.classFileOf("", "Abc"));
+}
+
+@Test
+public void a_changed_configuration_discards_the_record() throws Exception {
+  BuildState firstRun = new BuildState(outputDir, "config1");
+  firstRun.record("Abc.t", record("h1", "Abc"));
+  writeClassFile("Abc", "class Abc");
+  firstRun.save();
+
+  assertTrue(new BuildState(outputDir, "config1").isUpToDate("Abc.t", "h1"));
+  assertFalse(new BuildState(outputDir, "config2").isUpToDate("Abc.t", "h1"));
+}
+
+@Test
+public void finds_the_units_that_refer_to_a_changed_type() throws Exception {
+  BuildState state = new BuildState(outputDir, "config1");
+  state.record("Abc.t", record("h1", "Abc"));
+  state.record("Def.t", record("h2", "Def", "Abc"));
+  state.record("Ghi.java", record("h3", "Ghi", "Def"));
+
+  assertEquals(List.of("Def.t"), state.dependentsOf(Set.of("Abc"), List.of("Def.t", "Ghi.java")));
+  assertEquals(List.of(), state.dependentsOf(Set.of(), List.of("Def.t", "Ghi.java")));
+}
+
+}
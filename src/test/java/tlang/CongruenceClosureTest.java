@@ -0,0 +1,59 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import alice.tuprolog.Term;
+import tlang.KnowledgeBase.Fact;
+
+public class CongruenceClosureTest {
+
+private static Term parsed(String formula) {
+  return new Fact(formula).term();
+}
+
+@Test
+public void finds_contradicting_equalities_without_the_prover() throws Exception {
+  assertNull(CongruenceClosure.residual(parsed("'a' = 'b' /\\ 'b' = 'c' /\\ -('a' = 'c')")));
+  assertNull(CongruenceClosure.residual(parsed("'a' = 'b' /\\ f('a') #= f('b')")));
+  assertNull(CongruenceClosure.residual(parsed("p('x') /\\ -('x' = 'x')")));
+}
+
+@Test
+public void replaces_equal_terms_by_one_representative() throws Exception {
+  Term residual = CongruenceClosure.residual(parsed("'b' = 'a' /\\ p('a') /\\ -p('b')"));
+  assertNotNull(residual);
+  assertEquals(parsed("p('b') /\\ -p('b')").toString(), residual.toString());
+}
+
+@Test
+public void keeps_what_the_prover_still_needs() throws Exception {
+  Term residual = CongruenceClosure.residual(parsed("'c' = f('a') /\\ ('a' = 'd' \\/ q) /\\ -('c' = 'e')"));
+  assertNotNull(residual);
+  assertEquals(parsed("('a' = 'd' \\/ q) /\\ -('c' = 'e') /\\ f('a') = 'c'").toString(),
+               residual.toString());
+}
+
+@Test
+public void leaves_a_formula_without_equalities_alone() throws Exception {
+  Term formula = parsed("p('a') /\\ all(X, p(X) ==> q(X))");
+  assertSame(formula, CongruenceClosure.residual(formula));
+}
+
+@Test
+public void proves_the_same_with_and_without_the_closure() throws Exception {
+  try {
+    for (boolean isOn : new boolean[] {true, false}) {
+      KnowledgeBase.useEqualityClosure(isOn);
+      KnowledgeBase kb = new KnowledgeBase();
+      kb.assume("'x^' = 'x' + 1");
+      kb.assume("'y' = 'x^'");
+      kb.assume("p('x' + 1)");
+      assertEquals(KnowledgeBase.ProofResult.provenTrue, kb.prove("p('y')"));
+      assertEquals(KnowledgeBase.ProofResult.provenTrue, kb.prove("'y' = 'x' + 1"));
+    }
+  } finally {
+    KnowledgeBase.useEqualityClosure(true);
+  }
+}
+
+}
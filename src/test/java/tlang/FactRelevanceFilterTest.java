@@ -0,0 +1,49 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import alice.tuprolog.Term;
+import tlang.KnowledgeBase.Fact;
+
+public class FactRelevanceFilterTest {
+
+private static final List<Fact> facts
+    = List.of( new Fact("'this.x^' = 'this.x' + 1")
+             , new Fact("'this.y' = 2")
+             , new Fact("'this.x' > 'n'")
+             , new Fact("all(X, all(Y, X = Y))")
+             , new Fact("p('this.y')") );
+
+private static List<String> relevantTo(String statement) {
+  Term term = new Fact(statement).term();
+  return new FactRelevanceFilter(facts).relevantTo(term).stream()
+                                       .map(fact -> fact.text)
+                                       .collect(Collectors.toList());
+}
+
+@Test
+public void chooses_the_facts_connected_to_the_statement() throws Exception {
+  assertEquals(List.of("'this.x^' = 'this.x' + 1", "'this.x' > 'n'", "all(X, all(Y, X = Y))"),
+               relevantTo("'this.x^' > 0"));
+  assertEquals(List.of("'this.y' = 2", "all(X, all(Y, X = Y))", "p('this.y')"),
+               relevantTo("-p(2)"));
+}
+
+@Test
+public void operators_do_not_connect_facts() throws Exception {
+  assertEquals(List.of("all(X, all(Y, X = Y))"), relevantTo("1 + 1 = 2"));
+}
+
+@Test
+public void a_statement_that_needs_a_fact_left_out_is_still_proven() throws Exception {
+  KnowledgeBase kb = new KnowledgeBase();
+  kb.assume("q");
+  kb.assume("-q"); // facts that are not connected to the statement, but prove anything
+  kb.assume("all(X, p(X))");
+  assertEquals(KnowledgeBase.ProofResult.provenTrue, kb.prove("p('b')"));
+  assertEquals(KnowledgeBase.ProofResult.provenTrue, kb.prove("r"));
+}
+
+}
@@ -99,6 +99,45 @@ testInvalidRunCommand() throws IOException, InterruptedException {
   assertTrue(result>0);
 }
 
+@Test
+public void
+testCompileReportsDiagnosticsByLine() throws IOException, InterruptedException {
+  final String dir = tempLocation + slash + "compiled";
+  JavaFileHandler jFiler = new JavaFileHandler(dir, Arrays.asList("-d", "\""+ dir +"\""));
+  jFiler.saveGeneratedJava("class Good {}", "", "Good");
+  jFiler.saveGeneratedJava("class Bad {\n  int x = ;\n}", "", "Bad");
+  CollectingMsgListener msgCollector = new CollectingMsgListener();
+  jFiler.compileJavaFiles(msgCollector);
+  assertTrue(msgCollector.toString(), msgCollector.hasErrs());
+  assertTrue(msgCollector.toString(), msgCollector.errLines().get(0).contains("Bad.java:2: error"));
+}
+
+@Test
+public void
+testCompileWritesClassFiles() throws IOException, InterruptedException {
+  final String dir = tempLocation + slash + "compiledClean";
+  JavaFileHandler jFiler = new JavaFileHandler(dir, Arrays.asList("-d", dir));
+  jFiler.saveGeneratedJava("package a.bb; class Abc {}", "a.bb", "Abc");
+  CollectingMsgListener msgCollector = new CollectingMsgListener();
+  jFiler.compileJavaFiles(msgCollector);
+  assertTrue(msgCollector.toString(), msgCollector.hasNoErrs());
+  assertTrue(new File(dir, "a"+slash+"bb"+slash+"Abc.class").isFile());
+}
+
+@Test
+public void
+testGeneratedJavaStaysInMemory() throws IOException, InterruptedException {
+  final String dir = tempLocation + slash + "inMemory";
+  JavaFileHandler jFiler = new JavaFileHandler(Arrays.asList("-d", dir));
+  jFiler.saveGeneratedJava("package a.bb; class Abc {}", "a.bb", "Abc");
+  assertTrue(jFiler.getJavaSourceLocations().isEmpty());
+  CollectingMsgListener msgCollector = new CollectingMsgListener();
+  jFiler.compileJavaFiles(msgCollector);
+  assertTrue(msgCollector.toString(), msgCollector.hasNoErrs());
+  assertTrue(new File(dir, "a"+slash+"bb"+slash+"Abc.class").isFile());
+  assertFalse(new File(dir, "a"+slash+"bb"+slash+"Abc.java").exists());
+}
+
 @Ignore // spike: verify understanding of backslashes in String.split()
 @Test
 public void
@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -56,6 +59,129 @@ public void test_empty_copies_equal() throws Exception {
   assertTrue(expected.equals(actual));
 }
 
+@Test
+public void a_child_sees_facts_added_to_its_parent_after_earlier_proofs() throws Exception {
+  KnowledgeBase parent = new KnowledgeBase();
+  parent.assume("a");
+  KnowledgeBase child = new KnowledgeBase(parent);
+  child.assume("a ==> b");
+  assertEquals(KnowledgeBase.ProofResult.provenTrue,  child.prove("b"));
+  assertEquals(KnowledgeBase.ProofResult.unsupported, child.prove("c"));
+
+  parent.assume("c");
+  assertEquals(KnowledgeBase.ProofResult.provenTrue,  child.prove("c"));
+}
+
+@Test
+public void a_detached_kb_proves_nothing_from_the_facts_of_its_ancestors() throws Exception {
+  KnowledgeBase parent = new KnowledgeBase();
+  parent.assume("a");
+  KnowledgeBase child = new KnowledgeBase(parent);
+  child.assume("a ==> b");
+  child.assume("c");
+  assertEquals(KnowledgeBase.ProofResult.provenTrue,  child.prove("b"));
+
+  KnowledgeBase detached = child.detached();
+  assertEquals(KnowledgeBase.ProofResult.unsupported, detached.prove("b"));
+  assertEquals(KnowledgeBase.ProofResult.provenTrue,  detached.prove("c"));
+}
+
+@Test
+public void finds_the_facts_that_a_statement_conflicts_with() throws Exception {
+  KnowledgeBase parent = new KnowledgeBase();
+  parent.assume("a ==> b");
+  parent.assume("c");
+  KnowledgeBase child = new KnowledgeBase(parent);
+  child.assume("d");
+  child.assume("a");
+  assertEquals(List.of("a", "a ==> b"), child.findInconsistentFacts("-b"));
+  assertEquals(List.of(), child.findInconsistentFacts("e"));
+  try {
+    child.assumeIfConsistent("-b");
+    fail("-b was assumed");
+  } catch (KnowledgeBase.InvalidConsistencyResultException e) {
+    assertEquals(List.of("a", "a ==> b"), e.getConflictingFacts());
+  }
+}
+
+@Test
+public void facts_kept_in_the_prover_follow_the_scopes() throws Exception {
+  KnowledgeBase.useFactContext(true);
+  try {
+    KnowledgeBase parent = new KnowledgeBase();
+    parent.assume("a");
+    KnowledgeBase firstChild = new KnowledgeBase(parent);
+    firstChild.assume("a ==> b");
+    assertEquals(KnowledgeBase.ProofResult.provenTrue,  firstChild.prove("b"));
+    firstChild.assume("b ==> c");
+    assertEquals(KnowledgeBase.ProofResult.provenTrue,  firstChild.prove("c"));
+
+    KnowledgeBase secondChild = new KnowledgeBase(parent);
+    assertEquals(KnowledgeBase.ProofResult.unsupported, secondChild.prove("b"));
+    assertEquals(KnowledgeBase.ProofResult.provenTrue,  secondChild.prove("a"));
+  } finally {
+    KnowledgeBase.useFactContext(false);
+  }
+}
+
+@Test
+public void proofs_run_at_the_same_time_get_their_own_results() throws Exception {
+  int engineLimit = KnowledgeBase.proverEngineLimit();
+  KnowledgeBase.setProverEngineLimit(4);
+  try {
+    List<KnowledgeBase.ProofResult> results
+        = IntStream.range(0, 8).parallel()
+                   .mapToObj(i -> {
+                      KnowledgeBase kb = new KnowledgeBase();
+                      kb.assume("p"+ i);
+                      kb.assume("p"+ i +" ==> q"+ i);
+                      return kb.prove((i % 2 == 0) ? "q"+ i : "r"+ i);
+                    })
+                   .collect(Collectors.toList());
+    for (int i = 0; i < results.size(); i++)
+      assertEquals( (i % 2 == 0) ? KnowledgeBase.ProofResult.provenTrue
+                                 : KnowledgeBase.ProofResult.unsupported
+                  , results.get(i));
+  } finally {
+    KnowledgeBase.setProverEngineLimit(engineLimit);
+  }
+}
+
+@Test
+public void a_batch_of_proofs_gets_a_result_for_each_statement() throws Exception {
+  KnowledgeBase parent = new KnowledgeBase();
+  parent.assume("all(X, p(X) ==> q(X))");
+  KnowledgeBase child = new KnowledgeBase(parent);
+  child.assume("p(a) /\\ p(b)");
+  List<String> statements = List.of("q(a)", "q(c)", "q(b)", "p(a) /\\ q(b)");
+  assertEquals(List.of( KnowledgeBase.ProofResult.provenTrue, KnowledgeBase.ProofResult.unsupported
+                      , KnowledgeBase.ProofResult.provenTrue, KnowledgeBase.ProofResult.provenTrue)
+              , child.proveAll(statements));
+  for (String statement : statements)
+    assertEquals(child.prove(statement), child.proveAll(List.of(statement)).get(0));
+}
+
+@Test
+public void a_proof_that_runs_out_of_steps_reaches_a_limit() throws Exception {
+  try {
+    for (KnowledgeBase.Prover prover : KnowledgeBase.Prover.values()) {
+      KnowledgeBase.useProver(prover);
+      KnowledgeBase parent = new KnowledgeBase();
+      parent.assume("p(a)");
+      parent.assume("all(X, -p(X) \\/ p(f(X)))");
+      KnowledgeBase child = new KnowledgeBase(parent);
+      assertEquals(prover.name(), KnowledgeBase.ProofResult.provenTrue, child.prove("p(f(f(a)))"));
+
+      parent.setProverBudget(new ProverBudget(0, 5));
+      assertEquals(prover.name(), KnowledgeBase.ProofResult.reachedLimit, child.prove("p(f(f(a)))"));
+      child.setProverBudget(ProverBudget.unlimited);
+      assertEquals(prover.name(), KnowledgeBase.ProofResult.provenTrue, child.prove("p(f(f(a)))"));
+    }
+  } finally {
+    KnowledgeBase.useProver(KnowledgeBase.Prover.prolog);
+  }
+}
+
 /** SPIKE: Insure that we get array in most-recent-fact first order */
 @Ignore
 @Test
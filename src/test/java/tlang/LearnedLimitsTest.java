@@ -0,0 +1,35 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+
+public class LearnedLimitsTest {
+
+private static final List<ProverLimits> schedule = ProverLimits.parseSchedule("2,4,8/8/2,16");
+
+@Test
+public void reads_a_schedule_as_it_is_written() throws Exception {
+  assertEquals(4, schedule.size());
+  assertEquals(new ProverLimits(8, 8, 2), schedule.get(2));
+  assertEquals("2/2/2,4/4/4,8/8/2,16/16/16", ProverLimits.toString(schedule));
+  assertEquals(schedule, ProverLimits.parseSchedule(ProverLimits.toString(schedule)));
+}
+
+@Test
+public void a_later_compile_starts_at_the_limits_that_decided_the_proof() throws Exception {
+  Path directory = Files.createTempDirectory("learnedLimits");
+  LearnedLimits firstCompile = new LearnedLimits(directory);
+  assertEquals(schedule, firstCompile.scheduleFor("p(a)  /\\ q", schedule));
+  firstCompile.learn("p(a)  /\\ q", schedule.get(2));
+
+  LearnedLimits nextCompile = new LearnedLimits(directory);
+  assertEquals(schedule.subList(2, 4), nextCompile.scheduleFor("p(a) /\\ q", schedule));
+  assertEquals(schedule, nextCompile.scheduleFor("p(b) /\\ q", schedule));
+  assertEquals(List.of(ProverLimits.of(3)),
+               nextCompile.scheduleFor("p(a) /\\ q", List.of(ProverLimits.of(3))));
+}
+
+}
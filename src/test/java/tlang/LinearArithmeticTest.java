@@ -0,0 +1,86 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.util.function.Function;
+import org.junit.Test;
+import alice.tuprolog.Term;
+import tlang.KnowledgeBase.Fact;
+import tlang.LinearArithmetic.NumericType;
+
+public class LinearArithmeticTest {
+
+private static final Function<String, NumericType> noIntegers = name -> NumericType.rational;
+private static final Function<String, NumericType> allIntegers = name -> NumericType.integer;
+
+private static Function<String, NumericType> all(NumericType type) {
+  return name -> type;
+}
+
+private static Term parsed(String formula) {
+  return new Fact(formula).term();
+}
+
+@Test
+public void finds_contradicting_comparisons() throws Exception {
+  assertTrue(LinearArithmetic.refutes(parsed("'x' < 'y' /\\ 'y' < 'x'"), noIntegers));
+  assertTrue(LinearArithmetic.refutes(parsed("'x^' = 'x' + 1 /\\ -('x^' > 'x')"), noIntegers));
+  assertTrue(LinearArithmetic.refutes(parsed("'y' = 2 /\\ 'y' > 3"), noIntegers));
+  assertTrue(LinearArithmetic.refutes(parsed("1 = 2"), noIntegers));
+}
+
+@Test
+public void leaves_satisfiable_comparisons_alone() throws Exception {
+  assertFalse(LinearArithmetic.refutes(parsed("'x' < 'y' /\\ 'y' =< 3 /\\ 'y' = 2 * 'z'"), noIntegers));
+  assertFalse(LinearArithmetic.refutes(parsed("'x' #= 'y' /\\ f('x') > 0 /\\ p('x')"), noIntegers));
+}
+
+@Test
+public void integers_have_no_values_in_between() throws Exception {
+  final Term formula = parsed("'i' < 'n' /\\ -('i' + 1 =< 'n')");
+  assertTrue(LinearArithmetic.refutes(formula, allIntegers));
+  assertFalse(LinearArithmetic.refutes(formula, noIntegers));
+  assertTrue(LinearArithmetic.refutes(parsed("2 * 'i' = 1"), allIntegers));
+}
+
+@Test
+public void an_int_sum_may_wrap_around() throws Exception {
+  final Term formula = parsed("'y' = 'x' + 1 /\\ -('y' > 'x')");
+  assertTrue(LinearArithmetic.refutes(formula, allIntegers));
+  assertFalse(LinearArithmetic.refutes(formula, all(NumericType.int32)));
+  assertFalse(LinearArithmetic.refutes(formula, all(NumericType.int64)));
+  assertTrue(LinearArithmetic.refutes(parsed("'x' < 10 /\\ 'y' = 'x' + 1 /\\ -('y' > 'x')")
+                                     , all(NumericType.int32)));
+  assertTrue(LinearArithmetic.refutes(parsed("'x' > 2147483647"), all(NumericType.int32)));
+}
+
+@Test
+public void a_narrow_value_wraps_at_its_own_width() throws Exception {
+  final Term formula = parsed("'b1' = 127 /\\ 'b2' = 'b1' + 1");
+  assertFalse(LinearArithmetic.refutes(formula, all(NumericType.int8)));
+  assertTrue(LinearArithmetic.refutes(parsed("'b1' = 127 /\\ 'b2' = 'b1' + 1 /\\ 'b2' > 'b1'")
+                                     , all(NumericType.int8)));
+}
+
+@Test
+public void ignores_floating_point_values() throws Exception {
+  assertFalse(LinearArithmetic.refutes(parsed("-('d' + 1 > 'd')"), all(NumericType.floating)));
+  assertFalse(LinearArithmetic.refutes(parsed("-('d' < 0) /\\ -('d' >= 0)"), all(NumericType.floating)));
+  assertFalse(LinearArithmetic.refutes(parsed("-(f('d') < 0) /\\ -(f('d') >= 0)")
+                                      , all(NumericType.floating)));
+}
+
+@Test
+public void proves_what_the_tableau_alone_cannot() throws Exception {
+  try {
+    KnowledgeBase kb = new KnowledgeBase();
+    kb.assume("'x' < 'y'");
+    kb.assume("'y' < 'z'");
+    assertEquals(KnowledgeBase.ProofResult.provenTrue, kb.prove("'x' < 'z'"));
+    KnowledgeBase.useArithmetic(false);
+    assertEquals(KnowledgeBase.ProofResult.unsupported, kb.prove("'x' < 'z'"));
+  } finally {
+    KnowledgeBase.useArithmetic(true);
+  }
+}
+
+}
@@ -0,0 +1,48 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.util.List;
+import org.junit.Test;
+import tlang.MethodSummaryStore.MethodSummary;
+
+public class MethodSummaryStoreTest {
+
+private static final List<String> returnValues = List.of("'m.return^'", "return");
+
+private static MethodSummary square() {
+  MethodSummary summary
+      = MethodSummaryStore.summarize( "C.square(int)", "C", "square", List.of("x")
+                                    , List.of("'m.^x'"), returnValues
+                                    , "('m.return^' = ('m.^x' * 'm.^x')) /\\ (return >= 0)");
+  assertNotNull(summary);
+  return summary;
+}
+
+@Test
+public void puts_the_arguments_of_a_call_in_place_of_the_parameters() throws Exception {
+  assertEquals("(square(('y^' + 1)) = (('y^' + 1) * ('y^' + 1))) /\\ (square(('y^' + 1)) >= 0)",
+               square().instantiate(List.of("'y^' + 1"), "square(('y^' + 1))"));
+}
+
+@Test
+public void summarizes_only_what_a_caller_can_rename() throws Exception {
+  assertNull(MethodSummaryStore.summarize( "C.f(int)", "C", "f", List.of("x")
+                                         , List.of("'m.^x'"), returnValues
+                                         , "'m.return^' = 'this.a^'"));
+  assertNull(MethodSummaryStore.summarize( "C.g(int)", "C", "g", List.of("x")
+                                         , List.of("'m.^x'"), returnValues
+                                         , "'m.^x' > 0"));
+}
+
+@Test
+public void an_overloaded_method_gives_its_calls_no_summary() throws Exception {
+  MethodSummaryStore store = new MethodSummaryStore();
+  store.record(square());
+  assertSame(store.forCall("C", "square", 1), store.forCall("C", "square", 1));
+  assertNotNull(store.forCall("C", "square", 1));
+  assertNull(store.forCall("D", "square", 1));
+  store.declare("C.square(long)", "C", "square", 1);
+  assertNull(store.forCall("C", "square", 1));
+}
+
+}
@@ -0,0 +1,50 @@
+package tlang;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Test;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+
+public class ProofCacheTest {
+
+private static final Path cacheDir
+    = Paths.get(System.getProperty("java.io.tmpdir") + File.separator + "ProofCacheTest");
+
+@After
+public void deleteCacheDir() throws IOException {
+  TUtil.deleteDirectory(cacheDir.toString());
+}
+
+@Test
+public void results_survive_into_a_new_cache() throws Exception {
+  new ProofCache(cacheDir, "theory1").record("(-(a)) /\\ (a)", ConsistencyResult.inconsistent);
+
+  ProofCache laterRun = new ProofCache(cacheDir, "theory1");
+  assertEquals(ConsistencyResult.inconsistent, laterRun.lookup("(-(a)) /\\ (a)").get());
+  assertEquals(1, laterRun.hitCount());
+  assertEquals(0, laterRun.missCount());
+}
+
+@Test
+public void white_space_differences_are_ignored() throws Exception {
+  ProofCache cache = new ProofCache(cacheDir, "theory1");
+  cache.record("(a) /\\  (b)", ConsistencyResult.consistent);
+  assertTrue(cache.lookup(" (a)\n /\\ (b) ").isPresent());
+}
+
+@Test
+public void a_changed_theory_discards_the_results() throws Exception {
+  new ProofCache(cacheDir, "theory1").record("(a)", ConsistencyResult.consistent);
+
+  ProofCache changedTheory = new ProofCache(cacheDir, "theory2");
+  assertFalse(changedTheory.lookup("(a)").isPresent());
+  assertEquals(1, changedTheory.missCount());
+}
+
+}
@@ -0,0 +1,38 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+
+public class ProverOutputTest {
+
+@Test
+public void keeps_the_messages_in_the_order_they_came() throws Exception {
+  ProverOutput output = new ProverOutput(4);
+  output.post(ProverOutput.output, "one");
+  output.post(ProverOutput.exception, "two");
+  assertEquals("\none\n***** EXCEPTION: two", output.drain());
+  assertTrue(output.isEmpty());
+  assertEquals("", output.drain());
+}
+
+@Test
+public void keeps_only_the_latest_messages() throws Exception {
+  ProverOutput output = new ProverOutput(3);
+  for (int i = 1; i <= 7; i++)
+    output.post(ProverOutput.output, "m"+ i);
+  assertEquals("\n... 4 earlier prover messages were dropped\nm5\nm6\nm7", output.drain());
+}
+
+@Test
+public void does_not_repeat_what_it_echoed() throws Exception {
+  ByteArrayOutputStream echoed = new ByteArrayOutputStream();
+  ProverOutput output = new ProverOutput(3);
+  output.echoTo(new PrintStream(echoed, true));
+  output.post(ProverOutput.warning, "w");
+  assertEquals("\nw", echoed.toString());
+  assertEquals("", output.drain());
+}
+
+}
@@ -0,0 +1,81 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import alice.tuprolog.Prolog;
+import alice.tuprolog.SolveInfo;
+import alice.tuprolog.Term;
+import alice.tuprolog.Theory;
+
+public class ProverTheorySnapshotTest {
+
+private static final String theoryDir = "./src/main/prolog/leantap/";
+private static final List<String> names = List.of("mydebug.prolog", "nnf.pl", "etleantap.pl");
+
+private static List<byte[]> contents() throws Exception {
+  List<byte[]> contents = new ArrayList<>();
+  for (String name : names)
+    contents.add(Files.readAllBytes(new File(theoryDir + name).toPath()));
+  return contents;
+}
+
+@Test
+public void keeps_the_fingerprint_of_the_theory_files() throws Exception {
+  byte[] snapshot = ProverTheorySnapshot.write(names, contents());
+  assertEquals(ProverEnginePool.fingerprint(contents()), ProverTheorySnapshot.fingerprint(snapshot, names));
+  assertNull(ProverTheorySnapshot.fingerprint(snapshot, List.of("nnf.pl", "etleantap.pl")));
+}
+
+@Test
+public void proves_what_the_source_theory_proves() throws Exception {
+  Prolog fromSource = ProverEnginePool.newProlog();
+  boolean isFirst = true;
+  for (byte[] file : contents()) {
+    Theory theory = new Theory(new ByteArrayInputStream(file));
+    if (isFirst)
+      fromSource.setTheory(theory);
+    else
+      fromSource.addTheory(theory);
+    isFirst = false;
+  }
+  Prolog fromSnapshot = ProverEnginePool.newProlog();
+  ProverTheorySnapshot.loadInto(fromSnapshot, ProverTheorySnapshot.write(names, contents()));
+
+  for (String formula : List.of("a /\\ -a", "(a ==> b) /\\ a /\\ -b", "a \\/ b"
+                               , "all(X, p(X) ==> q(X)) /\\ p(c) /\\ -q(c)")) {
+    String goal = "runProver(("+ formula +"), Result).";
+    SolveInfo expected = fromSource.solve(goal);
+    SolveInfo actual   = fromSnapshot.solve(goal);
+    assertEquals(formula, expected.isSuccess(), actual.isSuccess());
+    assertEquals(formula, expected.getVarValue("Result").toString()
+                        , actual.getVarValue("Result").toString());
+  }
+}
+
+@Test
+public void the_production_theory_proves_the_same_without_its_debugging_goals() throws Exception {
+  Prolog fromSnapshot = ProverEnginePool.newProlog();
+  ProverTheorySnapshot.loadInto(fromSnapshot, ProverTheorySnapshot.write(names, contents()));
+  Prolog fromProduction = ProverEnginePool.newProlog();
+  ProverTheorySnapshot.loadInto(fromProduction, ProverTheorySnapshot.write(names, contents(), true));
+
+  for (String formula : List.of("a /\\ -a", "(a ==> b) /\\ a /\\ -b", "a \\/ b"
+                               , "all(X, p(X) ==> q(X)) /\\ p(c) /\\ -q(c)")) {
+    String goal = "runProver(("+ formula +"), Result).";
+    assertEquals(formula, fromSnapshot.solve(goal).getVarValue("Result").toString()
+                        , fromProduction.solve(goal).getVarValue("Result").toString());
+  }
+  assertEquals(Term.createTerm("p(X) :- q(X), r(X)").toString(),
+               ProverTheoryStripper.stripped(Term.createTerm(
+                   "p(X) :- dbbegin(p, [X]), q(X), mydebug([x, X]), r(X), dbend(p)")).toString());
+  assertEquals(Term.createTerm("p(L) :- true").toString(),
+               ProverTheoryStripper.stripped(Term.createTerm(
+                   "p(L) :- ( L = [lt(A,B)], var(A) -> mydebug([A]) ; true )")).toString());
+}
+
+}
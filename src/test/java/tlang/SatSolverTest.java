@@ -0,0 +1,68 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import java.util.function.Function;
+import org.junit.Test;
+import alice.tuprolog.Term;
+import tlang.KnowledgeBase.ConsistencyResult;
+import tlang.KnowledgeBase.Fact;
+
+public class SatSolverTest {
+
+private static final Function<String, LinearArithmetic.NumericType> noIntegers
+    = name -> LinearArithmetic.NumericType.rational;
+
+private static ConsistencyResult check(String formula) {
+  Term term = new Fact(formula).term();
+  ConsistencyResult result = SatSolver.check(term, noIntegers, true, true);
+  assertNotNull("The solver gave up on "+ formula, result);
+  return result;
+}
+
+@Test
+public void decides_propositional_formulas() throws Exception {
+  assertEquals(ConsistencyResult.inconsistent, check("(p \\/ q) /\\ -p /\\ -q"));
+  assertEquals(ConsistencyResult.inconsistent, check("-((p ==> q) ==> (-q ==> -p))"));
+  assertEquals(ConsistencyResult.inconsistent, check("(p === q) /\\ (p =#= q)"));
+  assertEquals(ConsistencyResult.consistent, check("(p \\/ q) /\\ (-p \\/ r) /\\ -q"));
+  assertEquals(ConsistencyResult.consistent, check("p <== q"));
+}
+
+@Test
+public void learns_from_the_theories_of_the_atoms() throws Exception {
+  assertEquals(ConsistencyResult.inconsistent,
+               check("('a' = 'b' \\/ 'a' = 'c') /\\ -p('a') /\\ p('b') /\\ p('c')"));
+  assertEquals(ConsistencyResult.inconsistent,
+               check("('x' < 'y' \\/ 'y' < 'x') /\\ 'x' = 'y'"));
+  assertEquals(ConsistencyResult.consistent,
+               check("('x' < 'y' \\/ q) /\\ 'x' = 'y'"));
+}
+
+@Test
+public void decides_the_branches_of_nested_conditions() throws Exception {
+  StringBuilder formula = new StringBuilder("true");
+  for (int i = 0; i < 12; i++)
+    formula.append(" /\\ ((c"+ i +" /\\ 'x"+ i +"' = 1) \\/ (-c"+ i +" /\\ 'x"+ i +"' = 2))");
+  formula.append(" /\\ 'x11' = 3");
+  assertEquals(ConsistencyResult.inconsistent, check(formula.toString()));
+}
+
+@Test
+public void leaves_quantified_formulas_to_the_prover() throws Exception {
+  assertNull(SatSolver.check(new Fact("all(X, p(X)) /\\ -p('a')").term(), noIntegers, true, true));
+}
+
+@Test
+public void does_not_call_an_assignment_consistent_when_a_theory_cannot_tell() throws Exception {
+  Term equalities = new Fact("'a' = 'b' /\\ p('a') /\\ -p('b')").term();
+  assertNull(SatSolver.check(equalities, noIntegers, false, true));
+  Term comparisons = new Fact("'x' < 'y' /\\ 'y' < 'x'").term();
+  assertNull(SatSolver.check(comparisons, noIntegers, true, false));
+  Term disequality = new Fact("'x' =< 'y' /\\ 'y' =< 'x' /\\ -('x' = 'y')").term();
+  assertNull(SatSolver.check(disequality, noIntegers, true, true));
+  Term unboundedIntegers = new Fact("'x' + 'x' = 2 * 'y' + 1").term(); // branch and bound gives up
+  assertNull(SatSolver.check(unboundedIntegers, name -> LinearArithmetic.NumericType.integer,
+                             true, true));
+}
+
+}
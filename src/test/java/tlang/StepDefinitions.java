@@ -34,7 +34,7 @@ private TUtil.TCompilerCounts counts = new TCompilerCounts();
 private ParseTree tree = null; // (tree != null) ==> we have a parsed program
 private TLantlrParser parser;
 private CommonTokenStream tokens;
-private Map<RuleContext, Scope> scopeMap = new HashMap<>();
+private CompilationContext context = new CompilationContext();
 private String packageName = "dummyTestPackageName";
 private String topTypeName = "dummyTestClassName";
 private JavaFileHandler javaMgr;
@@ -293,7 +293,7 @@ private void attemptProofs() {
 
   errs.newSource("Prove code correct");
 //  System.out.println("vvvvvvvvvv PROLOG CODE FROM T vvvvvvvvvv");
-  prologCodeFromT = TLantlrProofVisitor.proveCorrectness(tree, tokens, scopeMap, errs);
+  prologCodeFromT = TLantlrProofVisitor.proveCorrectness(tree, tokens, context, errs);
 //  System.out.println(prologCodeFromT);
 //  System.out.println("^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^");
 }
@@ -359,7 +359,7 @@ private void attemptContextCheck() {
     return;
 
   errs.newSource("Context Checking during testing");
-  ContextCheckVisitor scVisitor = new ContextCheckVisitor(tree, errs, scopeMap);
+  ContextCheckVisitor scVisitor = new ContextCheckVisitor(tree, errs, context);
   scVisitor.visit(tree);
   packageName = scVisitor.getPackageName();
   topTypeName = scVisitor.getTopTypeName();
@@ -370,7 +370,7 @@ private void attemptJavaCodeGeneration() {
     return;
 
   errs.newSource("Generate Java code");
-  javaCodeFromT = TLantlrJavaRewriter.treeToJava(tree, tokens, scopeMap);
+  javaCodeFromT = TLantlrJavaRewriter.treeToJava(tree, tokens, context);
 }
 
 private void
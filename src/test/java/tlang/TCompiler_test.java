@@ -4,7 +4,13 @@
 package tlang;
 
 import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -162,6 +168,86 @@ public void InitializeFinalFieldWithoutDecoration_test() throws Exception {
   compileMustSucceed(truejCompiler);
 }
 
+@Test
+public void compilingFilesAtTheSameTimeMatchesCompilingThemInTurn_test() throws Exception {
+  Path dir = Files.createTempDirectory("unitThreads");
+  try {
+    // The units alternate between settling on decorated and on undecorated final value names,
+    // so a decoration that leaked from one unit into another would change the messages.
+    List<String> files = new ArrayList<>();
+    files.add(writeUnit(dir, "Decorated",
+        """
+        class Decorated {
+          int n' = 5;
+          int m' = 2;
+        } // end class
+        """));
+    files.add(writeUnit(dir, "UndecoratedFirst",
+        """
+        class UndecoratedFirst {
+          int a;
+          int n' = 5;           // ERROR LINE
+        } // end class
+        """));
+    files.add(writeUnit(dir, "Undecorated",
+        """
+        class Undecorated {
+          int a = 1;
+          int b = 2;
+        } // end class
+        """));
+    files.add(writeUnit(dir, "DecoratedFirst",
+        """
+        class DecoratedFirst {
+          int n' = 5;
+          int a = 3;            // ERROR LINE
+        } // end class
+        """));
+
+    String inTurn = compileFilesWithThreads("1", files);
+    String atTheSameTime = compileFilesWithThreads("4", files);
+    assertEquals(inTurn, atTheSameTime);
+    assertTrue(inTurn, inTurn.contains(
+        "Valuename n' must be undecorated to agree with the previous use of undecorated final values"));
+    assertTrue(inTurn, inTurn.contains(
+        "Valuename a must be decorated to agree with the previous use of decorated final values"));
+    assertTrue(inTurn, inTurn.contains("Programs with errors: 2"));
+  } finally {
+    TUtil.deleteDirectory(dir);
+  }
+}
+
+private static String writeUnit(Path dir, String className, String compileUnit) throws IOException {
+  Path file = dir.resolve(className +".t");
+  Files.writeString(file, compileUnit);
+  return file.toString();
+}
+
+/** What the compiler printed, its messages and its counts after compiling the files with the given
+ * number of threads. The options are static, so those that the other tests or this one change are
+ * restored. */
+private String compileFilesWithThreads(String threads, List<String> files)
+      throws IOException, InterruptedException {
+  PrintStream console = System.out;
+  ByteArrayOutputStream printed = new ByteArrayOutputStream();
+  boolean wasCompileUnitInCommandLine = TCompiler.isCompileUnitInCommandLine;
+  TCompiler.isCompileUnitInCommandLine = false;
+  List<String> args = new ArrayList<>(List.of("-j", threads, "-noproofcache"));
+  args.addAll(files);
+  System.setOut(new PrintStream(printed, true));
+  try {
+    TCompiler truejCompiler = TCompiler.runTrueJCompiler(args.toArray(new String[0]));
+    return printed.toString()
+         + "\n"+ truejCompiler.msgCollector().toString()
+         + "\n"+ truejCompiler.counts().toString();
+  } finally {
+    System.setOut(console);
+    TCompiler.unitThreads = 1;
+    TCompiler.isProofCacheRequested = true;
+    TCompiler.isCompileUnitInCommandLine = wasCompileUnitInCommandLine;
+  }
+}
+
 private TCompiler compileBody(String methodBody) throws IOException, InterruptedException {
   String unitMarker = "-unit";
   String compileUnit =
@@ -0,0 +1,67 @@
+package tlang;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import tlang.KnowledgeBase.ConsistencyResult;
+import tlang.KnowledgeBase.ProofResult;
+import tlang.KnowledgeBase.Prover;
+
+public class TableauProverTest {
+
+private static final String[] formulas =
+  { "a /\\ -a"
+  , "a /\\ b"
+  , "a \\/ b"
+  , "(a ==> b) /\\ a /\\ -b"
+  , "(a === b) /\\ a /\\ -b"
+  , "all(X, p(X) ==> q(X)) /\\ p(c) /\\ -q(c)"
+  , "all(X, p(X) ==> q(X)) /\\ p(c) /\\ -q(d)"
+  , "ex(X, p(X)) /\\ all(Y, -p(Y))"
+  , "(a = b) /\\ (b = c) /\\ -(a = c)"
+  , "(f(a) = b) /\\ -(f(a) = b)"
+  , "(f(a) = b) /\\ (a = c) /\\ -(f(c) = b)"
+  , "p(a) /\\ -p(f(f(a))) /\\ all(X, -p(X) \\/ p(f(X)))"
+  };
+
+@After
+public void restoreTheDefaultProver() {
+  KnowledgeBase.useProver(Prover.prolog);
+  KnowledgeBase.useSatSolver(true);
+  KnowledgeBase.useEqualityClosure(true);
+  KnowledgeBase.useArithmetic(true);
+  KnowledgeBase.useTriggers(true);
+}
+
+@Test
+public void finds_the_same_results_as_the_prolog_prover() throws Exception {
+  // Only the provers are compared, so nothing decides a formula before they see it.
+  KnowledgeBase.useSatSolver(false);
+  KnowledgeBase.useEqualityClosure(false);
+  KnowledgeBase.useArithmetic(false);
+  KnowledgeBase.useTriggers(false);
+  KnowledgeBase kb = new KnowledgeBase();
+  for (String formula : formulas) {
+    KnowledgeBase.useProver(Prover.prolog);
+    ConsistencyResult expected = kb.checkConsistency(formula);
+    KnowledgeBase.useProver(Prover.java);
+    assertEquals(formula, expected, kb.checkConsistency(formula));
+  }
+}
+
+@Test
+public void proves_from_the_facts_of_a_knowledge_base() throws Exception {
+  KnowledgeBase.useProver(Prover.java);
+  KnowledgeBase parent = new KnowledgeBase();
+  parent.assume("a");
+  KnowledgeBase child = new KnowledgeBase(parent);
+  child.assume("a ==> b");
+  child.assume("(x = y)");
+  assertEquals(ProofResult.provenTrue,  child.prove("b"));
+  assertEquals(ProofResult.provenTrue,  child.prove("(y = x)"));
+  assertEquals(ProofResult.unsupported, child.prove("c"));
+}
+
+}
@@ -0,0 +1,44 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import alice.tuprolog.Term;
+import tlang.KnowledgeBase.ConsistencyResult;
+import tlang.KnowledgeBase.Fact;
+
+public class TriggerInstantiationTest {
+
+private static ConsistencyResult checkInstances(String formula) {
+  Term instances = TriggerInstantiation.instances(new Fact(formula).term());
+  assertNotNull("No instances for "+ formula, instances);
+  ConsistencyResult result = SatSolver.check(instances, name -> LinearArithmetic.NumericType.rational,
+                                             true, true);
+  assertNotNull(result);
+  return result;
+}
+
+@Test
+public void instantiates_for_the_terms_that_match_a_trigger() throws Exception {
+  assertEquals(ConsistencyResult.inconsistent,
+               checkInstances("all(X, p(X) ==> q(X)) /\\ p(a) /\\ -q(a)"));
+  assertEquals(ConsistencyResult.inconsistent,
+               checkInstances("all(X, p(X) ==> p(f(X))) /\\ p(a) /\\ -p(f(f(a)))"));
+  assertEquals(ConsistencyResult.inconsistent,
+               checkInstances("all(X, all(Y, r(X,Y) ==> r(Y,X))) /\\ r(a,b) /\\ -r(b,a)"));
+  assertEquals(ConsistencyResult.consistent,
+               checkInstances("all(X, p(X) ==> q(X)) /\\ p(a)"));
+}
+
+@Test
+public void gives_an_existential_formula_a_new_constant() throws Exception {
+  assertEquals(ConsistencyResult.inconsistent,
+               checkInstances("-all(Y, q(Y)) /\\ all(X, q(X))"));
+}
+
+@Test
+public void leaves_a_formula_without_triggers_to_the_prover() throws Exception {
+  assertNull(TriggerInstantiation.instances(new Fact("all(X, X = X) /\\ p").term()));
+  assertNull(TriggerInstantiation.instances(new Fact("p /\\ q").term()));
+}
+
+}
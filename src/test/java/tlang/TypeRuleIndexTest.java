@@ -0,0 +1,50 @@
+package tlang;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class TypeRuleIndexTest {
+
+private static final String counterType = "TypeRuleIndexTest.Counter";
+private static final String counterRule = "count(Value) >= 0";
+
+@After
+public void removeTheCounterRule() {
+  TypeRuleIndex.remove(counterType, counterRule);
+}
+
+@Test
+public void instantiates_a_rule_for_a_value_name() throws Exception {
+  TypeRuleIndex.TypeRule rule = new TypeRuleIndex.TypeRule("size(Value) >= 0 /\\ p('Value', Value)");
+  assertEquals("size('x^') >= 0 /\\ p('Value', 'x^')", rule.instantiate("'x^'"));
+}
+
+@Test
+public void knows_the_numeric_types() throws Exception {
+  assertTrue(TypeRuleIndex.rulesFor("int").numericType.isIntegral);
+  assertEquals(LinearArithmetic.NumericType.floating, TypeRuleIndex.rulesFor("double").numericType);
+  assertTrue(TypeRuleIndex.rulesFor("double").rules.isEmpty());
+}
+
+@Test
+public void type_facts_outlast_a_means_statement() throws Exception {
+  TypeRuleIndex.define(counterType, counterRule);
+  KnowledgeBase kb = new KnowledgeBase();
+  kb.assumeType(counterType, "'c^'");
+  kb.assumeType(counterType, "'c^'");
+  assertEquals(1, kb.getFacts().size());
+  kb.assume("'x' = 1");
+  kb.substitute("'y' = 2");
+  assertEquals(KnowledgeBase.ProofResult.provenTrue, kb.prove("count('c^') >= 0"));
+  assertEquals(KnowledgeBase.ProofResult.unsupported, kb.prove("'x' = 1"));
+}
+
+@Test
+public void a_removed_rule_is_no_longer_assumed() throws Exception {
+  TypeRuleIndex.define(counterType, counterRule);
+  TypeRuleIndex.remove(counterType, counterRule);
+  assertTrue(TypeRuleIndex.rulesFor(counterType).rules.isEmpty());
+}
+
+}